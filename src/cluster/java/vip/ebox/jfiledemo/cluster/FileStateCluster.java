@@ -0,0 +1,236 @@
+package vip.ebox.jfiledemo.cluster;
+
+import com.hazelcast.cluster.Member;
+import com.hazelcast.cluster.MembershipEvent;
+import com.hazelcast.cluster.MembershipListener;
+import com.hazelcast.config.Config;
+import com.hazelcast.config.NetworkConfig;
+import com.hazelcast.config.TcpIpConfig;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.topic.Message;
+import lombok.extern.slf4j.Slf4j;
+import org.filesys.server.config.InvalidConfigurationException;
+import org.filesys.server.config.ServerConfiguration;
+import org.filesys.server.filesys.cache.cluster.ClusterFileStateCache;
+import org.filesys.server.filesys.cache.hazelcast.ClusterConfigSection;
+import org.filesys.server.filesys.cache.hazelcast.ClusterMessage;
+import org.filesys.server.filesys.cache.hazelcast.ClusterMessageType;
+import org.filesys.server.filesys.cache.hazelcast.HazelCastClusterFileStateCacheV5;
+import org.springframework.extensions.config.element.GenericConfigElement;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/21  19:40
+ * @Description: 集群文件状态
+ *  多个实例访问同一存储时，每个实例内嵌一个 Hazelcast 成员，按配置的成员地址（TCP/IP，不使用组播）互相发现；
+ *  各共享的文件状态使用 jFileServer 的 HazelCastClusterFileStateCacheV5，保存在以共享名命名的分布式 Map 中：
+ *  - 打开计数与共享模式检查在持有该状态的成员上执行，不同实例上的打开同样会发生共享冲突
+ *  - 字节范围锁记录在集群状态上，加锁需要一次远程调用
+ *  - 机会锁的持有者可以在其它实例上，中断请求与确认通过共享的 Topic 消息传递
+ *  成员地址全部为回环地址时只绑定回环接口，可在同一台机器上启动多个实例测试
+ *
+ *  统计本实例发布与收到的集群消息数（按消息类型）以及成员加入、离开的次数
+ *
+ *  本类及 Hazelcast 依赖只在 cluster profile 中编译打包，由 StateCluster.create 在启用集群时按名称加载
+ */
+@Slf4j
+public class FileStateCluster implements StateCluster {
+
+    private static final String MAP_PREFIX = "jfs.state.";
+    private static final String TOPIC_PREFIX = "jfs.topic.";
+
+    private final String clusterName;
+    private final ServerConfiguration serverConfig;
+    private final HazelcastInstance hazelcast;
+    private final List<String> shares = new CopyOnWriteArrayList<>();
+
+    // 按 ClusterMessageType 的序号计数
+    private final LongAdder[] sent = newCounters(ClusterMessageType.values().length);
+    private final LongAdder[] received = newCounters(ClusterMessageType.values().length);
+    private final LongAdder membersAdded = new LongAdder();
+    private final LongAdder membersRemoved = new LongAdder();
+
+    /**
+     * @param serverConfig 服务器配置，需已包含核心配置（集群使用其中的线程池处理机会锁中断）
+     * @param clusterName  集群名称，名称相同的成员才会组成集群
+     * @param port         本成员的端口，被占用时依次尝试之后的 portCount 个端口
+     * @param portCount    可尝试的端口数
+     * @param members      成员地址（host 或 host:port，端口可写为范围如 127.0.0.1:5701-5720）
+     */
+    public FileStateCluster(ServerConfiguration serverConfig, String clusterName, int port, int portCount,
+                            List<String> members) {
+        this.clusterName = clusterName;
+        this.serverConfig = serverConfig;
+
+        Config config = new Config();
+        config.setClusterName(clusterName);
+        config.setProperty("hazelcast.logging.type", "slf4j");
+        config.setProperty("hazelcast.phone.home.enabled", "false");
+        // 由 shutdown 在文件状态缓存停止后关闭
+        config.setProperty("hazelcast.shutdownhook.enabled", "false");
+
+        NetworkConfig network = config.getNetworkConfig();
+        network.setPort(port).setPortAutoIncrement(portCount > 1).setPortCount(Math.max(1, portCount));
+        network.getJoin().getMulticastConfig().setEnabled(false);
+        network.getJoin().getAutoDetectionConfig().setEnabled(false);
+        TcpIpConfig tcpIp = network.getJoin().getTcpIpConfig().setEnabled(true);
+        for (String member : members) {
+            expandPortRange(member.trim()).forEach(tcpIp::addMember);
+        }
+        if (!members.isEmpty() && members.stream().allMatch(FileStateCluster::isLoopback)) {
+            network.getInterfaces().setEnabled(true).addInterface("127.0.0.1");
+        }
+
+        this.hazelcast = Hazelcast.newHazelcastInstance(config);
+        hazelcast.getCluster().addMembershipListener(new MembershipListener() {
+            @Override
+            public void memberAdded(MembershipEvent event) {
+                membersAdded.increment();
+                log.info("集群 {} 成员加入: {}", clusterName, event.getMember().getAddress());
+            }
+
+            @Override
+            public void memberRemoved(MembershipEvent event) {
+                membersRemoved.increment();
+                log.warn("集群 {} 成员离开: {}", clusterName, event.getMember().getAddress());
+            }
+        });
+
+        // 文件状态缓存从配置节获取 Hazelcast 实例，外部实例不会在关闭配置时被关闭
+        ClusterConfigSection section = new ClusterConfigSection(serverConfig);
+        section.setClusterName(clusterName);
+        section.setHazelcastInstance(hazelcast);
+        serverConfig.addConfigSection(section);
+    }
+
+    @Override
+    public ClusterFileStateCache createStateCache(String shareName) {
+        GenericConfigElement args = new GenericConfigElement("stateCache");
+        args.addChild(child("clusterName", clusterName));
+        args.addChild(child("clusterMap", MAP_PREFIX + shareName));
+        args.addChild(child("clusterTopic", TOPIC_PREFIX + shareName));
+
+        HazelCastClusterFileStateCacheV5 cache = new HazelCastClusterFileStateCacheV5();
+        try {
+            cache.initializeCache(args, serverConfig);
+        } catch (InvalidConfigurationException e) {
+            throw new IllegalStateException("初始化集群文件状态缓存失败: " + e.getMessage(), e);
+        }
+        hazelcast.<ClusterMessage>getTopic(TOPIC_PREFIX + shareName).addMessageListener(this::count);
+        shares.add(shareName);
+        return cache;
+    }
+
+    /**
+     * 共享移除后不再列出，分布式 Map 中的状态由其它实例继续使用
+     */
+    @Override
+    public void removeShare(String shareName) {
+        shares.remove(shareName);
+    }
+
+    @Override
+    public void shutdown() {
+        try {
+            hazelcast.shutdown();
+        } catch (RuntimeException e) {
+            log.warn("关闭集群成员失败: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public ClusterStats getStats() {
+        List<String> members = new ArrayList<>();
+        String local = null;
+        try {
+            for (Member member : hazelcast.getCluster().getMembers()) {
+                String address = member.getAddress().getHost() + ":" + member.getAddress().getPort();
+                members.add(address);
+                if (member.localMember()) {
+                    local = address;
+                }
+            }
+        } catch (RuntimeException e) {
+            // 成员已关闭
+        }
+        Map<String, Long> sentCounts = new LinkedHashMap<>();
+        Map<String, Long> receivedCounts = new LinkedHashMap<>();
+        for (ClusterMessageType type : ClusterMessageType.values()) {
+            sentCounts.put(type.name(), sent[type.ordinal()].sum());
+            receivedCounts.put(type.name(), received[type.ordinal()].sum());
+        }
+        return new ClusterStats(clusterName, local, members, List.copyOf(shares), membersAdded.sum(),
+                membersRemoved.sum(), sentCounts, receivedCounts);
+    }
+
+    private void count(Message<ClusterMessage> message) {
+        ClusterMessage msg = message.getMessageObject();
+        if (msg == null || msg.isType() == null) {
+            return;
+        }
+        Member from = message.getPublishingMember();
+        LongAdder[] counters = from != null && from.localMember() ? sent : received;
+        counters[msg.isType().ordinal()].increment();
+    }
+
+    private static GenericConfigElement child(String name, String value) {
+        GenericConfigElement element = new GenericConfigElement(name);
+        element.setValue(value);
+        return element;
+    }
+
+    /**
+     * Hazelcast 的成员地址不支持端口范围，host:5701-5720 展开为每个端口一个地址
+     */
+    static List<String> expandPortRange(String member) {
+        int colon = member.lastIndexOf(':');
+        int dash = member.indexOf('-', colon + 1);
+        if (colon < 0 || dash < 0 || member.indexOf(']', colon) >= 0) {
+            return List.of(member);
+        }
+        String host = member.substring(0, colon);
+        int from = Integer.parseInt(member.substring(colon + 1, dash).trim());
+        int to = Integer.parseInt(member.substring(dash + 1).trim());
+        List<String> addresses = new ArrayList<>();
+        for (int port = from; port <= to; port++) {
+            addresses.add(host + ":" + port);
+        }
+        return addresses;
+    }
+
+    /**
+     * 成员地址的主机部分是否为回环地址
+     */
+    private static boolean isLoopback(String member) {
+        String host = member.trim();
+        if (host.startsWith("[")) {
+            host = host.substring(1, Math.max(1, host.indexOf(']')));
+        } else if (host.indexOf(':') == host.lastIndexOf(':') && host.indexOf(':') >= 0) {
+            host = host.substring(0, host.indexOf(':'));
+        }
+        try {
+            return InetAddress.getByName(host).isLoopbackAddress();
+        } catch (UnknownHostException e) {
+            return false;
+        }
+    }
+
+    private static LongAdder[] newCounters(int n) {
+        LongAdder[] counters = new LongAdder[n];
+        for (int i = 0; i < n; i++) {
+            counters[i] = new LongAdder();
+        }
+        return counters;
+    }
+}
@@ -0,0 +1,155 @@
+package vip.ebox.jfiledemo.cluster;
+
+import org.filesys.locking.FileLock;
+import org.filesys.locking.LockConflictException;
+import org.filesys.server.config.CoreServerConfigSection;
+import org.filesys.server.config.ServerConfiguration;
+import org.filesys.server.filesys.*;
+import org.filesys.server.locking.LockManager;
+import org.filesys.server.locking.LockParams;
+import org.filesys.smb.ImpersonationLevel;
+import org.filesys.smb.SharingMode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.extensions.config.element.GenericConfigElement;
+import vip.ebox.jfiledemo.filesys.FileStateDiskDriver;
+import vip.ebox.jfiledemo.filesys.NIODiskDriver;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/22  11:10
+ * @Description: 同一进程内的两个集群成员访问同一目录，共享模式与字节范围锁在成员间可见
+ */
+class FileStateClusterTest {
+
+    private static final String SHARE = "TEST";
+    private static final int PORT = 5801;
+    private static final int PORT_COUNT = 20;
+
+    @TempDir
+    Path dir;
+
+    private Member first;
+    private Member second;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Files.write(dir.resolve("a.dat"), new byte[4096]);
+        String clusterName = "jfs-test-" + UUID.randomUUID();
+        first = new Member(clusterName);
+        second = new Member(clusterName);
+
+        long deadline = System.currentTimeMillis() + 30000;
+        while (first.cluster.getStats().getMembers().size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(2, first.cluster.getStats().getMembers().size());
+        assertEquals(List.of(SHARE), second.cluster.getStats().getShares());
+        assertTrue(first.driver.isClustered());
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (second != null) {
+            second.shutdown();
+        }
+        if (first != null) {
+            first.shutdown();
+        }
+    }
+
+    @Test
+    void sharingModeIsCheckedAcrossMembers() throws Exception {
+        NetworkFile exclusive = first.open("\\a.dat", SharingMode.NOSHARING, AccessMode.NTReadWrite);
+
+        assertThrows(FileSharingException.class, () -> second.open("\\a.dat", SharingMode.ALL, AccessMode.NTRead));
+
+        first.close(exclusive);
+        NetworkFile file = second.open("\\a.dat", SharingMode.ALL, AccessMode.NTRead);
+        second.close(file);
+    }
+
+    @Test
+    void byteRangeLockIsVisibleAcrossMembers() throws Exception {
+        NetworkFile a = first.open("\\a.dat", SharingMode.ALL, AccessMode.NTReadWrite);
+        NetworkFile b = second.open("\\a.dat", SharingMode.ALL, AccessMode.NTReadWrite);
+        // 锁对象由锁管理器创建，集群状态只接受带成员信息的 ClusterFileLock
+        FileLock held = first.lock(a, 0, 100, 1);
+        first.locks().lockFile(null, first.tree, a, held);
+
+        assertThrows(LockConflictException.class,
+                () -> second.locks().lockFile(null, second.tree, b, second.lock(b, 50, 100, 2)));
+        second.locks().lockFile(null, second.tree, b, second.lock(b, 200, 10, 2));
+
+        first.locks().unlockFile(null, first.tree, a, held);
+        second.locks().lockFile(null, second.tree, b, second.lock(b, 50, 100, 2));
+
+        second.close(b);
+        first.close(a);
+    }
+
+    /**
+     * 一个实例：核心配置的线程池、集群成员与共享的文件状态驱动
+     */
+    private class Member {
+
+        final CoreServerConfigSection core;
+        final StateCluster cluster;
+        final FileStateDiskDriver driver;
+        final TreeConnection tree;
+
+        Member(String clusterName) throws Exception {
+            ServerConfiguration config = new ServerConfiguration("TEST");
+            core = new CoreServerConfigSection(config);
+            core.setThreadPool(2, 4);
+            config.addConfigSection(core);
+            cluster = StateCluster.create(config, clusterName, PORT, PORT_COUNT,
+                    List.of("127.0.0.1:" + PORT + "-" + (PORT + PORT_COUNT - 1)));
+
+            driver = new FileStateDiskDriver(new NIODiskDriver(null, null, null), SHARE, cluster, 60000, 15000,
+                    false);
+            GenericConfigElement args = new GenericConfigElement("disk");
+            GenericConfigElement localPath = new GenericConfigElement("LocalPath");
+            localPath.setValue(dir.toAbsolutePath().toString());
+            args.addChild(localPath);
+            DiskDeviceContext ctx = (DiskDeviceContext) driver.createContext(SHARE, args);
+            ctx.setStateCache(driver.getStateCache());
+            tree = new TreeConnection(new DiskSharedDevice(SHARE, driver, ctx));
+        }
+
+        NetworkFile open(String path, SharingMode sharing, int access) throws IOException {
+            FileOpenParams params = new FileOpenParams(path, CreateDisposition.OPEN, access, 0, sharing, 0,
+                    ImpersonationLevel.IMPERSONATION, 0);
+            return driver.openFile(null, tree, params);
+        }
+
+        void close(NetworkFile file) throws IOException {
+            driver.closeFile(null, tree, file);
+        }
+
+        LockManager locks() {
+            return driver.getLockManager(null, tree);
+        }
+
+        FileLock lock(NetworkFile file, long offset, long length, int pid) {
+            return locks().createLockObject(null, tree, file, new LockParams(offset, length, pid));
+        }
+
+        void shutdown() {
+            driver.shutdown();
+            cluster.shutdown();
+            core.getThreadPool().shutdownThreadPool();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package vip.ebox.jfiledemo.benchmark;
+
+import org.filesys.server.filesys.DiskDeviceContext;
+import org.filesys.server.filesys.DiskInterface;
+import org.filesys.server.filesys.DiskSharedDevice;
+import org.filesys.server.filesys.TreeConnection;
+import org.filesys.smb.server.disk.JavaNIODiskDriver;
+import org.springframework.extensions.config.element.GenericConfigElement;
+import vip.ebox.jfiledemo.filesys.BlockCache;
+import vip.ebox.jfiledemo.filesys.CachingDiskDriver;
+import vip.ebox.jfiledemo.filesys.FileStateDiskDriver;
+import vip.ebox.jfiledemo.filesys.IndexedDiskDriver;
+import vip.ebox.jfiledemo.filesys.MappedFileManager;
+import vip.ebox.jfiledemo.filesys.NIODiskDriver;
+import vip.ebox.jfiledemo.filesys.WriteBehindManager;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/19  14:00
+ * @Description: 基准测试使用的共享
+ *  在临时目录上创建磁盘驱动和 TreeConnection，driver 取值：
+ *  - javanio：jFileServer 原生 JavaNIODiskDriver
+ *  - wrapper：JFileServerService 的驱动链（文件状态缓存 + 元数据缓存 + 目录列表索引 + 块缓存），另启用默认关闭的延迟写入
+ *  - wrapper-nostate：不含文件状态缓存的 wrapper，用于单独比较文件状态缓存的开销与收益
+ *  - indexed：只在原生驱动上加目录列表索引（不限最小条目数），用于单独比较索引搜索
+ *  - mmap：所有只读打开的文件都使用内存映射读取的 NIODiskDriver，用于单独比较内存映射读取
+ */
+final class BenchmarkShare {
+
+    static final String SHARE_NAME = "BENCH";
+
+    private final Path dir;
+    private final DiskInterface driver;
+    private final TreeConnection tree;
+    private final BlockCache blockCache;
+    private final WriteBehindManager writeBehind;
+    private final FileStateDiskDriver fileState;
+
+    private BenchmarkShare(Path dir, DiskInterface driver, BlockCache blockCache,
+                           WriteBehindManager writeBehind) throws Exception {
+        this.dir = dir;
+        this.driver = driver;
+        this.blockCache = blockCache;
+        this.writeBehind = writeBehind;
+        this.fileState = driver instanceof FileStateDiskDriver ? (FileStateDiskDriver) driver : null;
+
+        // 使用驱动自己的 createContext，删除、截断等操作需要 JavaNIODeviceContext
+        GenericConfigElement args = new GenericConfigElement("disk");
+        GenericConfigElement localPath = new GenericConfigElement("LocalPath");
+        localPath.setValue(dir.toAbsolutePath().toString());
+        args.addChild(localPath);
+        DiskDeviceContext ctx = (DiskDeviceContext) driver.createContext(SHARE_NAME, args);
+        if (fileState != null) {
+            ctx.setStateCache(fileState.getStateCache());
+        }
+        this.tree = new TreeConnection(new DiskSharedDevice(SHARE_NAME, driver, ctx));
+    }
+
+    /**
+     * 在新建的临时目录上创建共享
+     */
+    static BenchmarkShare create(String driverName) throws Exception {
+        Path dir = Files.createTempDirectory("jfs-bench");
+        switch (driverName) {
+            case "javanio":
+                return new BenchmarkShare(dir, new JavaNIODiskDriver(), null, null);
+            case "wrapper":
+            case "wrapper-nostate":
+                BlockCache blockCache = new BlockCache(256L * 1024 * 1024, 262144, 8, 2);
+                WriteBehindManager writeBehind = new WriteBehindManager(1048576, 200, 64L * 1024 * 1024);
+                DiskInterface chain = new NIODiskDriver(blockCache, null, writeBehind);
+                chain = new IndexedDiskDriver(chain, 1000, 64, 300000);
+                chain = new CachingDiskDriver(chain, 10000, 5000);
+                if (driverName.equals("wrapper")) {
+                    chain = new FileStateDiskDriver(chain, SHARE_NAME, 60000, 15000, true);
+                }
+                return new BenchmarkShare(dir, chain, blockCache, writeBehind);
+            case "indexed":
+                return new BenchmarkShare(dir, new IndexedDiskDriver(new JavaNIODiskDriver(), 0, 4, Long.MAX_VALUE),
+                        null, null);
+            case "mmap":
+                return new BenchmarkShare(dir, new NIODiskDriver(null, new MappedFileManager(0, 16 << 20, 1L << 30),
+                        null), null, null);
+            default:
+                throw new IllegalArgumentException("未知的驱动: " + driverName);
+        }
+    }
+
+    Path getDir() {
+        return dir;
+    }
+
+    DiskInterface getDriver() {
+        return driver;
+    }
+
+    TreeConnection getTree() {
+        return tree;
+    }
+
+    /**
+     * 文件状态缓存驱动，driver 不是 wrapper 时为 null
+     */
+    FileStateDiskDriver getFileState() {
+        return fileState;
+    }
+
+    /**
+     * 释放缓存并删除临时目录
+     */
+    void close() {
+        if (fileState != null) {
+            fileState.shutdown();
+        }
+        if (writeBehind != null) {
+            writeBehind.shutdown();
+        }
+        if (blockCache != null) {
+            blockCache.shutdown();
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> {
+                try {
+                    Files.deleteIfExists(p);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 生成指定大小的随机内容文件
+     */
+    static void fill(Path file, long size) throws IOException {
+        byte[] chunk = new byte[1 << 20];
+        new Random(1).nextBytes(chunk);
+        try (OutputStream out = Files.newOutputStream(file)) {
+            for (long written = 0; written < size; written += chunk.length) {
+                out.write(chunk, 0, (int) Math.min(chunk.length, size - written));
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package vip.ebox.jfiledemo.benchmark;
+
+import org.filesys.server.filesys.AccessMode;
+import org.filesys.server.filesys.FileAction;
+import org.filesys.server.filesys.FileOpenParams;
+import org.filesys.server.filesys.NetworkFile;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/19  15:00
+ * @Description: 文件创建/删除
+ *  每次调用创建一个新文件、写入 size 字节、关闭后删除，覆盖编译输出、临时文件等大量小文件的场景；
+ *  各线程使用不同的文件名前缀，互不冲突
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CreateDeleteBenchmark {
+
+    @Param({"javanio", "wrapper"})
+    private String driver;
+
+    @Param({"0", "4096"})
+    private int size;
+
+    private BenchmarkShare share;
+    private byte[] data;
+    private final AtomicInteger threadIds = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        share = BenchmarkShare.create(driver);
+        Files.createDirectory(share.getDir().resolve("churn"));
+        data = new byte[Math.max(1, size)];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        share.close();
+    }
+
+    /**
+     * 每个线程的文件名前缀与计数
+     */
+    @State(Scope.Thread)
+    public static class ThreadNames {
+        private String prefix;
+        private long next;
+
+        @Setup(Level.Trial)
+        public void setup(CreateDeleteBenchmark benchmark) {
+            prefix = "\\churn\\t" + benchmark.threadIds.getAndIncrement() + "-";
+        }
+
+        String next() {
+            return prefix + (next++) + ".tmp";
+        }
+    }
+
+    @Benchmark
+    public void createWriteDelete(ThreadNames names) throws IOException {
+        String name = names.next();
+        NetworkFile file = share.getDriver().createFile(null, share.getTree(),
+                new FileOpenParams(name, FileAction.CreateNotExist, AccessMode.ReadWrite, 0, 0));
+        try {
+            if (size > 0) {
+                share.getDriver().writeFile(null, share.getTree(), file, data, 0, size, 0);
+            }
+        } finally {
+            share.getDriver().closeFile(null, share.getTree(), file);
+        }
+        share.getDriver().deleteFile(null, share.getTree(), name);
+    }
+}
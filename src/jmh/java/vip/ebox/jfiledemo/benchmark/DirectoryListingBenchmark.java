@@ -0,0 +1,74 @@
+package vip.ebox.jfiledemo.benchmark;
+
+import org.filesys.server.filesys.FileAttribute;
+import org.filesys.server.filesys.FileInfo;
+import org.filesys.server.filesys.SearchContext;
+import org.filesys.server.filesys.SearchFlags;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.FileNotFoundException;
+import java.nio.file.Files;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/18  14:10
+ * @Description: 目录列表索引
+ *  在共享根目录中生成 entries 个文件，以资源管理器列目录时使用的搜索属性分别经原生驱动与目录列表索引
+ *  列出 *、前缀（file-0001*）、后缀（*.iso）三种模式的全部结果；预热时建立索引
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DirectoryListingBenchmark {
+
+    // 普通文件、目录、隐藏与系统文件
+    private static final int SEARCH_ATTR = FileAttribute.Directory + FileAttribute.Hidden + FileAttribute.System;
+
+    @Param({"javanio", "indexed"})
+    private String driver;
+
+    @Param({"1000", "100000", "1000000"})
+    private int entries;
+
+    @Param({"*", "file-0001*", "*.iso"})
+    private String pattern;
+
+    private BenchmarkShare share;
+    private String searchPath;
+    private final FileInfo info = new FileInfo();
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        share = BenchmarkShare.create(driver);
+        for (int i = 0; i < entries; i++) {
+            Files.createFile(share.getDir().resolve(String.format("file-%07d%s", i, i % 100 == 0 ? ".iso" : ".dat")));
+        }
+        searchPath = "\\" + pattern;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        share.close();
+    }
+
+    @Benchmark
+    public int list() throws FileNotFoundException {
+        SearchContext ctx = share.getDriver().startSearch(null, share.getTree(), searchPath, SEARCH_ATTR,
+                EnumSet.noneOf(SearchFlags.class));
+        int count = 0;
+        try {
+            while (ctx.nextFileInfo(info)) {
+                count++;
+            }
+        } finally {
+            ctx.closeSearch();
+        }
+        return count;
+    }
+}
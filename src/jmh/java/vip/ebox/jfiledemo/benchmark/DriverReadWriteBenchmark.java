@@ -0,0 +1,78 @@
+package vip.ebox.jfiledemo.benchmark;
+
+import org.filesys.server.filesys.AccessMode;
+import org.filesys.server.filesys.FileAction;
+import org.filesys.server.filesys.FileOpenParams;
+import org.filesys.server.filesys.NetworkFile;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/19  14:20
+ * @Description: 通过磁盘驱动读写文件
+ *  按 SMB 请求的路径调用 DiskInterface.readFile / writeFile，对比原生驱动与包装后驱动链的吞吐量；
+ *  bufferSize 对应单次请求的数据大小，access 为顺序或随机（按 bufferSize 对齐）访问
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DriverReadWriteBenchmark {
+
+    @Param({"javanio", "wrapper"})
+    private String driver;
+
+    @Param({"4096", "65536", "1048576"})
+    private int bufferSize;
+
+    @Param({"sequential", "random"})
+    private String access;
+
+    @Param({"256"})
+    private int fileSizeMb;
+
+    private BenchmarkShare share;
+    private NetworkFile readFile;
+    private NetworkFile writeFile;
+    private byte[] buf;
+    private ReadWriteOffsets offsets;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        share = BenchmarkShare.create(driver);
+        long size = (long) fileSizeMb * 1024 * 1024;
+        BenchmarkShare.fill(share.getDir().resolve("read.dat"), size);
+        BenchmarkShare.fill(share.getDir().resolve("write.dat"), size);
+
+        readFile = share.getDriver().openFile(null, share.getTree(),
+                new FileOpenParams("\\read.dat", FileAction.OpenIfExists, AccessMode.ReadOnly, 0, 0));
+        writeFile = share.getDriver().openFile(null, share.getTree(),
+                new FileOpenParams("\\write.dat", FileAction.OpenIfExists, AccessMode.ReadWrite, 0, 0));
+        buf = new byte[bufferSize];
+        offsets = new ReadWriteOffsets(size, bufferSize, "random".equals(access), new SplittableRandom(42));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        share.getDriver().closeFile(null, share.getTree(), readFile);
+        share.getDriver().closeFile(null, share.getTree(), writeFile);
+        share.close();
+    }
+
+    @Benchmark
+    public int read() throws IOException {
+        return share.getDriver().readFile(null, share.getTree(), readFile, buf, 0, bufferSize, offsets.next());
+    }
+
+    @Benchmark
+    public int write() throws IOException {
+        return share.getDriver().writeFile(null, share.getTree(), writeFile, buf, 0, bufferSize, offsets.next());
+    }
+}
@@ -0,0 +1,65 @@
+package vip.ebox.jfiledemo.benchmark;
+
+import org.filesys.server.filesys.FileInfo;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/19  14:50
+ * @Description: getFileInformation 并发查询
+ *  模拟资源管理器刷新、杀毒软件扫描等场景，多个线程对同一共享中的随机文件（以及不存在的文件）持续查询文件信息
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class FileInformationBenchmark {
+
+    @Param({"javanio", "wrapper"})
+    private String driver;
+
+    @Param({"10000"})
+    private int files;
+
+    private BenchmarkShare share;
+    private String[] names;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        share = BenchmarkShare.create(driver);
+        Path dir = Files.createDirectory(share.getDir().resolve("info"));
+        names = new String[files];
+        for (int i = 0; i < files; i++) {
+            String name = String.format("file-%07d.dat", i);
+            Files.createFile(dir.resolve(name));
+            names[i] = "\\info\\" + name;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        share.close();
+    }
+
+    @Benchmark
+    public FileInfo existing() throws IOException {
+        String name = names[ThreadLocalRandom.current().nextInt(names.length)];
+        return share.getDriver().getFileInformation(null, share.getTree(), name);
+    }
+
+    @Benchmark
+    public FileInfo missing() throws IOException {
+        String name = names[ThreadLocalRandom.current().nextInt(names.length)] + ".missing";
+        return share.getDriver().getFileInformation(null, share.getTree(), name);
+    }
+}
@@ -0,0 +1,65 @@
+package vip.ebox.jfiledemo.benchmark;
+
+import org.filesys.server.filesys.AccessMode;
+import org.filesys.server.filesys.FileAction;
+import org.filesys.server.filesys.FileOpenParams;
+import org.filesys.server.filesys.NetworkFile;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/18  18:05
+ * @Description: 内存映射读取
+ *  只读打开 fileSizeMb 大小的文件，以 SMB 常见的 60KB 请求顺序或随机读取，
+ *  对比原生驱动（FileChannel）与内存映射读取的吞吐量，SampleTime 模式输出单次读取延迟的分位数
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MappedReadBenchmark {
+
+    private static final int READ_SIZE = 61440;
+
+    @Param({"javanio", "mmap"})
+    private String driver;
+
+    @Param({"sequential", "random"})
+    private String access;
+
+    @Param({"512"})
+    private int fileSizeMb;
+
+    private BenchmarkShare share;
+    private NetworkFile file;
+    private final byte[] buf = new byte[READ_SIZE];
+    private ReadWriteOffsets offsets;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        share = BenchmarkShare.create(driver);
+        long size = (long) fileSizeMb * 1024 * 1024;
+        BenchmarkShare.fill(share.getDir().resolve("image.iso"), size);
+        file = share.getDriver().openFile(null, share.getTree(),
+                new FileOpenParams("\\image.iso", FileAction.OpenIfExists, AccessMode.ReadOnly, 0, 0));
+        offsets = new ReadWriteOffsets(size, READ_SIZE, "random".equals(access), new SplittableRandom(2));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        share.getDriver().closeFile(null, share.getTree(), file);
+        share.close();
+    }
+
+    @Benchmark
+    public int read() throws IOException {
+        return share.getDriver().readFile(null, share.getTree(), file, buf, 0, READ_SIZE, offsets.next());
+    }
+}
@@ -0,0 +1,78 @@
+package vip.ebox.jfiledemo.benchmark;
+
+import org.filesys.server.filesys.NetworkFile;
+import org.filesys.smb.server.disk.JavaNIONetworkFile;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/19  14:30
+ * @Description: 直接读写 JavaNIONetworkFile
+ *  不经过磁盘驱动，测量 FileChannel 定位读写本身的开销，作为驱动层读写结果的下限参考
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NetworkFileReadWriteBenchmark {
+
+    @Param({"4096", "65536", "1048576"})
+    private int bufferSize;
+
+    @Param({"sequential", "random"})
+    private String access;
+
+    @Param({"256"})
+    private int fileSizeMb;
+
+    private Path dir;
+    private JavaNIONetworkFile readFile;
+    private JavaNIONetworkFile writeFile;
+    private byte[] buf;
+    private ReadWriteOffsets offsets;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("jfs-bench");
+        long size = (long) fileSizeMb * 1024 * 1024;
+        BenchmarkShare.fill(dir.resolve("read.dat"), size);
+        BenchmarkShare.fill(dir.resolve("write.dat"), size);
+
+        readFile = new JavaNIONetworkFile(dir.resolve("read.dat"), "\\read.dat");
+        readFile.setGrantedAccess(NetworkFile.Access.READ_ONLY);
+        readFile.openFile(false);
+        writeFile = new JavaNIONetworkFile(dir.resolve("write.dat"), "\\write.dat");
+        writeFile.setGrantedAccess(NetworkFile.Access.READ_WRITE);
+        writeFile.openFile(false);
+        buf = new byte[bufferSize];
+        offsets = new ReadWriteOffsets(size, bufferSize, "random".equals(access), new SplittableRandom(42));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        readFile.closeFile();
+        writeFile.closeFile();
+        Files.deleteIfExists(dir.resolve("read.dat"));
+        Files.deleteIfExists(dir.resolve("write.dat"));
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public int read() throws IOException {
+        return readFile.readFile(buf, bufferSize, 0, offsets.next());
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        writeFile.writeFile(buf, bufferSize, 0, offsets.next());
+    }
+}
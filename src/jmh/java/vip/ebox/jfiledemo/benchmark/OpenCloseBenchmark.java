@@ -0,0 +1,115 @@
+package vip.ebox.jfiledemo.benchmark;
+
+import org.filesys.server.filesys.AccessMode;
+import org.filesys.server.filesys.FileAction;
+import org.filesys.server.filesys.FileOpenParams;
+import org.filesys.server.filesys.FileStatus;
+import org.filesys.server.filesys.NetworkFile;
+import org.openjdk.jmh.annotations.*;
+import vip.ebox.jfiledemo.filesys.FileStateDiskDriver;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/19  22:40
+ * @Description: 频繁打开/关闭
+ *  模拟编译、脚本等反复打开少量热点文件的场景，8 个线程对 files 个文件持续执行：
+ *  - openReadClose：只读打开、读取 4KB、关闭
+ *  - openQueryClose：打开后查询两次存在性（客户端打开后的属性查询）再关闭
+ *  - sameFile：所有线程打开同一个文件，衡量同一文件状态上的竞争
+ *  driver 为 wrapper-nostate 与 wrapper 的差值即文件状态缓存（共享模式检查、状态复用）的开销与收益，
+ *  结束时输出文件状态缓存的命中率
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class OpenCloseBenchmark {
+
+    @Param({"javanio", "wrapper-nostate", "wrapper"})
+    private String driver;
+
+    @Param({"100"})
+    private int files;
+
+    private BenchmarkShare share;
+    private String[] names;
+    private final byte[] content = new byte[4096];
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        share = BenchmarkShare.create(driver);
+        Path dir = Files.createDirectory(share.getDir().resolve("hot"));
+        names = new String[files];
+        for (int i = 0; i < files; i++) {
+            String name = String.format("src-%04d.java", i);
+            Files.write(dir.resolve(name), content);
+            names[i] = "\\hot\\" + name;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        FileStateDiskDriver fileState = share.getFileState();
+        if (fileState != null) {
+            FileStateDiskDriver.FileStateStats stats = fileState.getStats();
+            System.out.printf("%n文件状态缓存: states=%d, opens=%d, hitRate=%.3f, sharingViolations=%d%n",
+                    stats.getStates(), stats.getOpens(), stats.getHitRate(), stats.getSharingViolations());
+        }
+        share.close();
+    }
+
+    /**
+     * 每个线程的读取缓冲区
+     */
+    @State(Scope.Thread)
+    public static class Buffer {
+        final byte[] data = new byte[4096];
+    }
+
+    @Benchmark
+    public int openReadClose(Buffer buffer) throws IOException {
+        NetworkFile file = open(names[ThreadLocalRandom.current().nextInt(names.length)]);
+        try {
+            return share.getDriver().readFile(null, share.getTree(), file, buffer.data, 0, buffer.data.length, 0);
+        } finally {
+            share.getDriver().closeFile(null, share.getTree(), file);
+        }
+    }
+
+    @Benchmark
+    public FileStatus openQueryClose() throws IOException {
+        String name = names[ThreadLocalRandom.current().nextInt(names.length)];
+        NetworkFile file = open(name);
+        try {
+            share.getDriver().fileExists(null, share.getTree(), name);
+            return share.getDriver().fileExists(null, share.getTree(), name);
+        } finally {
+            share.getDriver().closeFile(null, share.getTree(), file);
+        }
+    }
+
+    @Benchmark
+    public int sameFile(Buffer buffer) throws IOException {
+        NetworkFile file = open(names[0]);
+        try {
+            return share.getDriver().readFile(null, share.getTree(), file, buffer.data, 0, buffer.data.length, 0);
+        } finally {
+            share.getDriver().closeFile(null, share.getTree(), file);
+        }
+    }
+
+    private NetworkFile open(String name) throws IOException {
+        return share.getDriver().openFile(null, share.getTree(),
+                new FileOpenParams(name, FileAction.OpenIfExists, AccessMode.ReadOnly, 0, 0));
+    }
+}
@@ -0,0 +1,37 @@
+package vip.ebox.jfiledemo.benchmark;
+
+import java.util.SplittableRandom;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/19  14:15
+ * @Description: 读写基准测试的文件偏移生成
+ *  顺序访问时从头到尾循环，随机访问时在按请求大小对齐的位置中均匀选取
+ */
+final class ReadWriteOffsets {
+
+    private final long slots;
+    private final int bufferSize;
+    private final boolean random;
+    private final SplittableRandom rnd;
+    private long next;
+
+    ReadWriteOffsets(long fileSize, int bufferSize, boolean random, SplittableRandom rnd) {
+        this.slots = Math.max(1, fileSize / bufferSize);
+        this.bufferSize = bufferSize;
+        this.random = random;
+        this.rnd = rnd;
+    }
+
+    long next() {
+        long slot;
+        if (random) {
+            slot = rnd.nextLong(slots);
+        } else {
+            slot = next;
+            next = next + 1 == slots ? 0 : next + 1;
+        }
+        return slot * bufferSize;
+    }
+}
@@ -0,0 +1,80 @@
+package vip.ebox.jfiledemo.benchmark;
+
+import org.filesys.server.thread.ThreadRequestPool;
+import org.openjdk.jmh.annotations.*;
+import vip.ebox.jfiledemo.scheduler.VirtualThreadRequestQueue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/19  18:40
+ * @Description: 固定线程池与虚拟线程的请求并发能力
+ *  模拟 clients 个客户端各发出一个请求，每个请求阻塞 ioMicros 微秒（相当于一次慢速磁盘读写），测量全部完成的耗时：
+ *  固定线程池约为 clients / poolThreads * ioMicros，虚拟线程在 maxRequests 以内接近单个请求的耗时。
+ *  virtual 模式需要 JDK 21 及以上，在更早的 JDK 上该组参数直接失败
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestDispatchBenchmark {
+
+    @Param({"pool", "virtual"})
+    private String mode;
+
+    @Param({"50", "200", "800"})
+    private int clients;
+
+    @Param({"1000"})
+    private int ioMicros;
+
+    @Param({"20"})
+    private int poolThreads;
+
+    @Param({"1024"})
+    private int maxRequests;
+
+    private ThreadRequestPool pool;
+    private VirtualThreadRequestQueue virtualThreads;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        pool = new ThreadRequestPool("bench", poolThreads);
+        if ("virtual".equals(mode)) {
+            if (!VirtualThreadRequestQueue.isSupported()) {
+                throw new IllegalStateException("虚拟线程需要 JDK 21 及以上，当前 " + System.getProperty("java.version"));
+            }
+            virtualThreads = VirtualThreadRequestQueue.install(pool, maxRequests);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (virtualThreads != null) {
+            virtualThreads.shutdown();
+        }
+        pool.shutdownThreadPool();
+    }
+
+    /**
+     * 一轮 clients 个并发请求的完成时间
+     */
+    @Benchmark
+    public void dispatch() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(clients);
+        long ioNanos = TimeUnit.MICROSECONDS.toNanos(ioMicros);
+        for (int i = 0; i < clients; i++) {
+            pool.queueRequest(() -> {
+                LockSupport.parkNanos(ioNanos);
+                done.countDown();
+            });
+        }
+        done.await();
+    }
+}
@@ -0,0 +1,73 @@
+package vip.ebox.jfiledemo.benchmark;
+
+import org.filesys.server.filesys.FileAttribute;
+import org.filesys.server.filesys.FileInfo;
+import org.filesys.server.filesys.SearchContext;
+import org.filesys.server.filesys.SearchFlags;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.FileNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/19  14:40
+ * @Description: 大目录搜索
+ *  在包含 entries 个文件的目录中执行 startSearch 并读取全部结果，
+ *  pattern 分别为列出全部、前缀匹配（只命中少量文件）和后缀匹配（命中 1%）
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+
+    @Param({"javanio", "wrapper"})
+    private String driver;
+
+    @Param({"1000", "10000", "100000"})
+    private int entries;
+
+    @Param({"*", "file-00001*", "*.iso"})
+    private String pattern;
+
+    private BenchmarkShare share;
+    private String searchPath;
+    private final FileInfo info = new FileInfo();
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        share = BenchmarkShare.create(driver);
+        Path dir = Files.createDirectory(share.getDir().resolve("big"));
+        for (int i = 0; i < entries; i++) {
+            Files.createFile(dir.resolve(String.format("file-%07d%s", i, i % 100 == 0 ? ".iso" : ".dat")));
+        }
+        searchPath = "\\big\\" + pattern;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        share.close();
+    }
+
+    @Benchmark
+    public int search() throws FileNotFoundException {
+        SearchContext ctx = share.getDriver().startSearch(null, share.getTree(), searchPath,
+                FileAttribute.Directory + FileAttribute.Hidden + FileAttribute.System, EnumSet.noneOf(SearchFlags.class));
+        int count = 0;
+        try {
+            while (ctx.nextFileInfo(info)) {
+                count++;
+            }
+        } finally {
+            ctx.closeSearch();
+        }
+        return count;
+    }
+}
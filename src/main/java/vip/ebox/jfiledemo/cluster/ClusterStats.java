@@ -0,0 +1,81 @@
+package vip.ebox.jfiledemo.cluster;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/22  10:30
+ * @Description: 集群统计信息
+ */
+public class ClusterStats {
+    private final String clusterName;
+    private final String localMember;
+    private final List<String> members;
+    private final List<String> shares;
+    private final long membersAdded;
+    private final long membersRemoved;
+    private final Map<String, Long> messagesSent;
+    private final Map<String, Long> messagesReceived;
+
+    public ClusterStats(String clusterName, String localMember, List<String> members, List<String> shares,
+                        long membersAdded, long membersRemoved, Map<String, Long> messagesSent,
+                        Map<String, Long> messagesReceived) {
+        this.clusterName = clusterName;
+        this.localMember = localMember;
+        this.members = members;
+        this.shares = shares;
+        this.membersAdded = membersAdded;
+        this.membersRemoved = membersRemoved;
+        this.messagesSent = messagesSent;
+        this.messagesReceived = messagesReceived;
+    }
+
+    public String getClusterName() {
+        return clusterName;
+    }
+
+    /**
+     * 本实例成员的地址，成员已关闭时为 null
+     */
+    public String getLocalMember() {
+        return localMember;
+    }
+
+    /**
+     * 集群中全部成员的地址（含本实例）
+     */
+    public List<String> getMembers() {
+        return members;
+    }
+
+    /**
+     * 使用集群文件状态的共享
+     */
+    public List<String> getShares() {
+        return shares;
+    }
+
+    public long getMembersAdded() {
+        return membersAdded;
+    }
+
+    public long getMembersRemoved() {
+        return membersRemoved;
+    }
+
+    /**
+     * 本实例发布的集群消息数，按消息类型
+     */
+    public Map<String, Long> getMessagesSent() {
+        return messagesSent;
+    }
+
+    /**
+     * 从其它实例收到的集群消息数，按消息类型
+     */
+    public Map<String, Long> getMessagesReceived() {
+        return messagesReceived;
+    }
+}
@@ -0,0 +1,73 @@
+package vip.ebox.jfiledemo.cluster;
+
+import org.filesys.server.config.InvalidConfigurationException;
+import org.filesys.server.config.ServerConfiguration;
+import org.filesys.server.filesys.cache.FileStateCache;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.List;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/22  10:30
+ * @Description: 集群文件状态
+ *  基于 Hazelcast 的实现 FileStateCluster 与 Hazelcast 依赖只在 cluster profile（mvn -Pcluster package）中编译打包；
+ *  其它代码只通过本接口访问集群，未启用集群时不会加载任何集群或 Hazelcast 类
+ */
+public interface StateCluster {
+
+    String IMPLEMENTATION = "vip.ebox.jfiledemo.cluster.FileStateCluster";
+
+    /**
+     * 加入集群
+     *
+     * @param serverConfig 服务器配置，需已包含核心配置（集群使用其中的线程池处理机会锁中断）
+     * @param clusterName  集群名称，名称相同的成员才会组成集群
+     * @param port         本成员的端口，被占用时依次尝试之后的 portCount 个端口
+     * @param portCount    可尝试的端口数
+     * @param members      成员地址（host 或 host:port，端口可写为范围如 127.0.0.1:5701-5720）
+     * @throws InvalidConfigurationException 构建时未包含 cluster profile
+     */
+    static StateCluster create(ServerConfiguration serverConfig, String clusterName, int port, int portCount,
+                               List<String> members) throws InvalidConfigurationException {
+        Class<?> type;
+        try {
+            type = Class.forName(IMPLEMENTATION, true, StateCluster.class.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            throw new InvalidConfigurationException("未包含集群支持，需使用 mvn -Pcluster package 构建", e);
+        }
+        try {
+            return (StateCluster) type.getConstructor(ServerConfiguration.class, String.class, int.class, int.class,
+                    List.class).newInstance(serverConfig, clusterName, port, portCount, members);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("加入集群失败: " + cause, cause);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("无法创建 " + IMPLEMENTATION + ": " + e, e);
+        }
+    }
+
+    /**
+     * 创建共享的集群文件状态缓存，由 FileStateDiskDriver 设置机会锁管理器后启动
+     */
+    FileStateCache createStateCache(String shareName);
+
+    /**
+     * 共享移除后不再列出，分布式 Map 中的状态由其它实例继续使用
+     */
+    void removeShare(String shareName);
+
+    /**
+     * 关闭集群成员，需在各共享的文件状态缓存停止后调用
+     */
+    void shutdown();
+
+    /**
+     * 获取集群统计信息
+     */
+    ClusterStats getStats();
+}
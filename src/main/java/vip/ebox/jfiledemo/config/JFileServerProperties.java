@@ -4,6 +4,11 @@ import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 
 /**
  * @Author: Yunnuo
@@ -22,6 +27,26 @@ public class JFileServerProperties {
      */
     private boolean autoStart = true;
 
+    /**
+     * 自动启动前的延迟（毫秒），0 表示应用启动完成后立即启动
+     */
+    private long startupDelay = 0;
+
+    /**
+     * 等待 SMB 服务器绑定端口并开始接受连接的最长时间（毫秒），超时视为启动失败
+     */
+    private long startupTimeout = 10000;
+
+    /**
+     * 等待 SMB 服务器关闭完成的最长时间（毫秒），超时后继续清理
+     */
+    private long shutdownTimeout = 5000;
+
+    /**
+     * 收到就绪事件后是否再连接一次本机端口确认可连接
+     */
+    private boolean readinessProbe = false;
+
     /**
      * SMB/CIFS端口
      */
@@ -32,11 +57,114 @@ public class JFileServerProperties {
      */
     private String sharePath = "share";
 
+    /**
+     * sharePath 的分层存储配置，未设置时共享只有 sharePath 一个目录
+     */
+    private TierConfig shareTier;
+
     /**
      * 共享名称
      */
     private String shareName = "JFILESHARE";
 
+    /**
+     * 内存临时共享名称，设置后另外发布一个文件数据保存在内存中的共享，为空时不发布
+     */
+    private String scratchShareName;
+
+    /**
+     * 内存临时共享的目录，保存目录结构与文件名，内存不足时文件数据写出到这里
+     */
+    private String scratchSharePath = "scratch";
+
+    /**
+     * 所有内存临时共享合计的内存预算（MB），使用堆外内存，需不超过 -XX:MaxDirectMemorySize
+     */
+    private int scratchMemorySize = 256;
+
+    /**
+     * 单个文件保留在内存中的最大大小（MB），超过后写出到磁盘，0 表示只受内存预算限制
+     */
+    private int scratchMaxFileSize = 64;
+
+    /**
+     * 多共享配置，为空时只发布 sharePath / shareName 描述的单个共享
+     */
+    private List<ShareConfig> shares = new ArrayList<>();
+
+    /**
+     * 是否启用共享间的磁盘 I/O 公平调度
+     * 磁盘操作需要先获取执行槽位，各共享按权重公平分配，并受各自的并发与排队上限约束
+     */
+    private boolean ioSchedulerEnabled = false;
+
+    /**
+     * 所有共享合计的磁盘操作并发数，0 表示与实际的工作线程数（虚拟线程模式下为请求数上限）相同
+     */
+    private int ioSchedulerSlots = 0;
+
+    /**
+     * 是否按会话与用户限制带宽和 IOPS
+     * 超出限速的会话的请求延后分发，不占用工作线程；限速值可通过 /api/jfileserver/shaping 在运行时修改
+     */
+    private boolean shapingEnabled = false;
+
+    /**
+     * 每个会话的限速
+     */
+    private RateLimitConfig shapingSession = new RateLimitConfig();
+
+    /**
+     * 每个用户的默认限速，同一用户的所有会话合计
+     */
+    private RateLimitConfig shapingUser = new RateLimitConfig();
+
+    /**
+     * 按用户名（不区分大小写）覆盖 shapingUser
+     */
+    private Map<String, RateLimitConfig> shapingUsers = new LinkedHashMap<>();
+
+    /**
+     * 单个请求最长延后的时间（毫秒），超过该时间的欠账不再累计，避免客户端请求超时
+     */
+    private long shapingMaxDelay = 5000;
+
+    /**
+     * 是否启用配额：按共享与用户限制已用空间
+     * 已用空间在写入、截断、删除、重命名时增量统计，配额检查与磁盘容量查询不扫描目录
+     */
+    private boolean quotaEnabled = false;
+
+    /**
+     * 共享的默认容量上限（MB），共享未设置 quota 时使用，0 表示不限
+     */
+    private long quotaShareLimit = 0;
+
+    /**
+     * 每个用户在每个共享上的默认容量上限（MB），0 表示不限；文件所有者保存在扩展属性中，文件系统需支持扩展属性
+     */
+    private long quotaUserLimit = 0;
+
+    /**
+     * 按用户名（不区分大小写）覆盖 quotaUserLimit（MB）
+     */
+    private Map<String, Long> quotaUsers = new LinkedHashMap<>();
+
+    /**
+     * 已用空间检查点目录（支持相对路径和绝对路径）
+     */
+    private String quotaCheckpointDir = "quota";
+
+    /**
+     * 检查点写入周期（毫秒），没有修改时不写入
+     */
+    private long quotaCheckpointInterval = 60000;
+
+    /**
+     * 上次正常关闭时是否仍在启动后扫描共享目录校正已用空间；进程异常退出或没有检查点时总是扫描
+     */
+    private boolean quotaScanOnStartup = true;
+
     /**
      * 服务器名称
      */
@@ -71,6 +199,32 @@ public class JFileServerProperties {
      */
     private int maxThreads = 20;
 
+    /**
+     * 是否根据请求排队情况在 minThreads ~ maxThreads 之间自动调整工作线程数（虚拟线程模式下不生效）
+     */
+    private boolean autoscaleEnabled = false;
+
+    /**
+     * 自动调整周期（毫秒）
+     */
+    private long autoscaleInterval = 5000;
+
+    /**
+     * 请求排队耗时 p99 的目标值（毫秒），超过后扩容
+     */
+    private long autoscaleTargetWait = 10;
+
+    /**
+     * 是否在虚拟线程上执行 SMB 请求（需要 JDK 21 及以上，不支持时仍使用固定线程池）
+     * 启用后请求处理及其中的磁盘操作不再受最大线程数限制
+     */
+    private boolean virtualThreadsEnabled = false;
+
+    /**
+     * 虚拟线程模式下同时执行的请求数上限，超出的请求排队等待
+     */
+    private int virtualThreadsMaxRequests = 1024;
+
     /**
      * Socket 超时时间（毫秒）
      * 0 或负数表示禁用超时，连接不会被自动关闭
@@ -86,6 +240,221 @@ public class JFileServerProperties {
      */
     private int socketTimeout = 0;
 
+    /**
+     * 内存池各桶的缓冲区大小（字节），需从小到大排列
+     * 最大的桶应能容纳最大的 SMB 数据包（SMB1 约 64KB 数据 + 包头）
+     */
+    private int[] memoryPoolSizes = {256, 4096, 16384, 66000};
+
+    /**
+     * 内存池各桶初始分配的缓冲区数
+     */
+    private int[] memoryPoolInitAlloc = {20, 20, 5, 5};
+
+    /**
+     * 内存池各桶最多分配的缓冲区数，用完后请求需要等待缓冲区释放
+     */
+    private int[] memoryPoolMaxAlloc = {100, 50, 50, 50};
+
+    /**
+     * 是否启用内存池自适应调整
+     * 按周期内各桶的分配次数与等待情况调整最大缓冲区数：出现等待的桶扩容，空闲的桶收缩
+     */
+    private boolean memoryPoolAdaptive = false;
+
+    /**
+     * 自适应调整周期（毫秒）
+     */
+    private long memoryPoolAdaptiveInterval = 10000;
+
+    /**
+     * 自适应调整时所有桶占用之和的上限（MB），0 表示按初始配置的两倍
+     */
+    private int memoryPoolMaxMemory = 0;
+
+    /**
+     * 是否启用元数据缓存
+     * 在磁盘驱动前缓存 getFileInformation / fileExists 结果，减少资源管理器刷新、stat 等带来的文件系统调用
+     */
+    private boolean metadataCacheEnabled = true;
+
+    /**
+     * 元数据缓存最大条目数，超出后按 LRU 淘汰
+     */
+    private int metadataCacheSize = 10000;
+
+    /**
+     * 元数据缓存条目有效期（毫秒）
+     * 通过 SMB 进行的修改会立即失效对应条目，该值决定 SMB 之外的修改多久后可见
+     */
+    private long metadataCacheTtl = 5000;
+
+    /**
+     * 是否启用文件状态缓存
+     * 跟踪各文件的打开情况，同一文件的多个打开之间检查共享模式，并支持字节范围锁
+     */
+    private boolean fileStateCacheEnabled = true;
+
+    /**
+     * 文件全部关闭后状态的保留时间（毫秒），期间再次打开复用该状态，不小于 15000
+     */
+    private long fileStateExpiry = 60000;
+
+    /**
+     * 清理过期文件状态的间隔（毫秒），不小于 5000
+     */
+    private long fileStateReaperInterval = 15000;
+
+    /**
+     * 是否向客户端授予机会锁（batch / exclusive / level II），需要启用文件状态缓存
+     * 客户端持有机会锁时可在本地缓存文件数据与属性，其它客户端打开同一文件时先通知持有者中断
+     * 直接写入共享目录的修改不会中断机会锁，持有者可能继续使用过期的缓存数据，
+     * 因此默认关闭，只应在共享仅通过 SMB 修改时启用；各共享可通过 shares[].oplocks 单独开关
+     */
+    private boolean oplocksEnabled = false;
+
+    /**
+     * 是否在多个实例间共享文件状态（打开计数与共享模式、字节范围锁、机会锁），需要启用文件状态缓存
+     * 每个实例内嵌一个 Hazelcast 成员，各实例的共享名需一致；元数据缓存仍按实例保存，依靠 metadata-cache-ttl 过期
+     */
+    private boolean clusterEnabled = false;
+
+    /**
+     * 集群名称，名称相同的实例才会组成集群
+     */
+    private String clusterName = "jfileserver";
+
+    /**
+     * 本实例集群成员的端口，被占用时依次尝试之后的端口
+     */
+    private int clusterPort = 5701;
+
+    /**
+     * 端口被占用时最多尝试的端口数（含 cluster-port）
+     */
+    private int clusterPortCount = 20;
+
+    /**
+     * 集群成员地址（host 或 host:port，端口可写为范围），通过 TCP/IP 发现，不使用组播
+     * 全部为回环地址时只绑定回环接口，可在一台机器上启动多个实例
+     */
+    private List<String> clusterMembers = new ArrayList<>(List.of("127.0.0.1:5701-5720"));
+
+    /**
+     * 是否启用目录变更通知
+     * 通过 SMB 的修改立即通知等待的客户端，SMB 之外的修改（如直接写入共享目录的文件）由 WatchService 监视后通知，
+     * 同时失效元数据缓存与目录列表索引中的对应条目
+     */
+    private boolean changeNotifyEnabled = true;
+
+    /**
+     * 本地修改的合并时间窗口（毫秒），窗口内没有新的修改时才发送通知，同一路径的多次修改只通知一次
+     */
+    private long changeNotifyDebounce = 200;
+
+    /**
+     * 每个共享最多监视的目录数，按层级由浅到深注册，超出部分的本地修改不会通知
+     * Linux 下还受 fs.inotify.max_user_watches 限制
+     */
+    private int changeNotifyMaxWatches = 8192;
+
+    /**
+     * 是否启用目录列表索引
+     * 大目录的通配符搜索直接从内存中的有序索引返回，foo* / *.iso 等模式无需遍历整个目录
+     */
+    private boolean listingIndexEnabled = true;
+
+    /**
+     * 目录条目数达到该值才保留索引，小目录直接遍历即可
+     */
+    private int listingIndexMinEntries = 1000;
+
+    /**
+     * 最多同时索引的目录数，超出后按 LRU 淘汰
+     */
+    private int listingIndexMaxDirectories = 64;
+
+    /**
+     * 目录索引最长使用时间（毫秒），超过后整体重建
+     */
+    private long listingIndexMaxAge = 300000;
+
+    /**
+     * 是否启用块缓存
+     * 文件数据按块缓存在堆外内存中，所有会话共享，多个客户端读取同一镜像时直接从内存返回
+     */
+    private boolean blockCacheEnabled = true;
+
+    /**
+     * 块缓存内存预算（MB），使用堆外内存，需不超过 -XX:MaxDirectMemorySize
+     */
+    private int blockCacheSize = 256;
+
+    /**
+     * 缓存块大小（字节）
+     */
+    private int blockCacheBlockSize = 262144;
+
+    /**
+     * 检测到顺序读取后预读的块数，0 表示不预读
+     */
+    private int readAheadBlocks = 8;
+
+    /**
+     * 预读线程数
+     */
+    private int readAheadThreads = 2;
+
+    /**
+     * 是否对共享中只读打开的大文件使用内存映射读取
+     * 读取直接从 MappedByteBuffer 拷贝，减少系统调用，由页缓存负责缓存与预读；此类文件不再经过块缓存
+     */
+    private boolean mmapEnabled = false;
+
+    /**
+     * 文件大小达到该值（字节）才使用内存映射
+     */
+    private long mmapThreshold = 67108864;
+
+    /**
+     * 每次映射的分段大小（字节），首次读到某段时才映射
+     */
+    private int mmapChunkSize = 16777216;
+
+    /**
+     * 同时映射的最大内存（MB），超出后按 LRU 解除映射
+     */
+    private int mmapMaxMapped = 1024;
+
+    /**
+     * 是否启用延迟写入
+     * 每个打开文件的相邻/重叠小写入先合并到缓冲区，再以大块顺序写入磁盘；
+     * 刷新、关闭、截断、重叠读取、查询文件信息时立即写出；以 write-through 方式打开的文件不经过缓冲。
+     * 写出失败的数据要到下一次写入或关闭时才能报告给客户端，默认关闭
+     */
+    private boolean writeBehindEnabled = false;
+
+    /**
+     * 每个打开文件的写缓冲大小（字节），写满后立即写出
+     */
+    private int writeBehindBufferSize = 1048576;
+
+    /**
+     * 数据在写缓冲中的最长停留时间（毫秒）
+     */
+    private long writeBehindMaxDelay = 200;
+
+    /**
+     * 所有写缓冲的总内存上限（MB），达到上限后新打开文件的写入直接写盘
+     */
+    private int writeBehindMaxMemory = 64;
+
+    /**
+     * 是否启用磁盘操作统计
+     * 按操作类型记录次数、错误数、读写字节数及耗时直方图，通过 /api/jfileserver/metrics 输出
+     */
+    private boolean metricsEnabled = true;
+
     /**
      * jFileServer 日志文件路径
      * 支持相对路径和绝对路径
@@ -103,4 +472,143 @@ public class JFileServerProperties {
      * 日志是否追加
      */
     private boolean logAppend = true;
+
+    /**
+     * 是否异步写 jFileServer 日志（环形缓冲区 + 后台写线程），关闭时使用 LogFileDebug 同步写
+     */
+    private boolean logAsync = true;
+
+    /**
+     * 异步日志缓冲区条数
+     */
+    private int logBufferSize = 8192;
+
+    /**
+     * 异步日志缓冲区满时的处理策略：DROP 丢弃，BLOCK 等待
+     */
+    private String logBufferPolicy = "DROP";
+
+    /**
+     * 异步日志最长刷新间隔（毫秒）
+     */
+    private long logFlushInterval = 200;
+
+    /**
+     * 启用的 SMB 会话调试类别（SMBSrvSession.Dbg 名称），运行时可通过接口修改
+     */
+    private List<String> sessionDebugFlags = new ArrayList<>(List.of("NEGOTIATE", "STATE", "SOCKET"));
+
+    /**
+     * 单个共享的配置
+     */
+    @Data
+    public static class ShareConfig {
+
+        /**
+         * 共享名称
+         */
+        private String name;
+
+        /**
+         * 共享目录（支持相对路径和绝对路径）
+         */
+        private String path;
+
+        /**
+         * 调度权重，竞争时按权重比例分配磁盘 I/O 槽位
+         */
+        private int weight = 1;
+
+        /**
+         * 该共享的磁盘操作并发上限，0 表示只受总槽位限制
+         */
+        private int maxConcurrent = 0;
+
+        /**
+         * 该共享排队等待的请求上限，超出后直接拒绝，0 表示不限
+         */
+        private int maxQueued = 0;
+
+        /**
+         * 是否在该共享上授予机会锁，未设置时使用 oplocks-enabled
+         */
+        private Boolean oplocks;
+
+        /**
+         * 分层存储配置，未设置时共享只有 path 一个目录；设置后 path 为热层
+         */
+        private TierConfig tier;
+
+        /**
+         * 是否为内存临时共享：新建文件的数据保存在内存中，与其它内存临时共享共用 scratch-memory-size 预算；
+         * 与分层存储不能同时使用
+         */
+        private boolean scratch = false;
+
+        /**
+         * 该共享的容量上限（MB），未设置时使用 quota-share-limit，0 表示不限；启用配额时生效
+         */
+        private Long quota;
+    }
+
+    /**
+     * 分层存储配置
+     * 共享由热层（path，通常是本地 SSD）与冷层（coldPath，大容量慢速存储）组成，客户端看到两层合并后的目录：
+     * 读取直接访问文件所在的层，新文件写入热层，后台迁移线程按访问频率在两层之间移动文件
+     */
+    @Data
+    public static class TierConfig {
+
+        /**
+         * 冷层目录（支持相对路径和绝对路径）
+         */
+        private String coldPath;
+
+        /**
+         * 热层容量上限（MB），超过后优先把最久未访问的文件迁往冷层，直到降到上限的 90%；0 表示不限
+         */
+        private long hotMaxSize = 0;
+
+        /**
+         * 冷层文件在一个迁移周期内被打开的次数达到该值时迁往热层（计数每个周期减半）
+         */
+        private int promoteAccesses = 3;
+
+        /**
+         * 热层文件超过该时间（毫秒）未访问时迁往冷层
+         */
+        private long demoteAfter = 86400000;
+
+        /**
+         * 迁移周期（毫秒）
+         */
+        private long moverInterval = 300000;
+    }
+
+    /**
+     * 限速配置，各项为 0 表示不限制
+     */
+    @Data
+    public static class RateLimitConfig {
+
+        /**
+         * 读取速率（KB/s）
+         */
+        private long readRate = 0;
+
+        /**
+         * 写入速率（KB/s）
+         */
+        private long writeRate = 0;
+
+        /**
+         * 磁盘操作数（次/秒），打开、查询、列目录、读写等每次计一次
+         */
+        private long opsRate = 0;
+
+        /**
+         * 突发容量，按该时间（毫秒）内的速率计算，空闲后允许短时超出速率
+         */
+        private long burst = 1000;
+    }
 }
@@ -1,14 +1,29 @@
 package vip.ebox.jfiledemo.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.filesys.smb.server.SMBSrvSession;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import vip.ebox.jfiledemo.service.JFileServerService;
 import vip.ebox.jfiledemo.config.JFileServerProperties;
+import vip.ebox.jfiledemo.scheduler.VirtualThreadRequestQueue;
+import vip.ebox.jfiledemo.filesys.TieredDiskDriver;
+import vip.ebox.jfiledemo.filesys.ScratchMemory;
+import vip.ebox.jfiledemo.scheduler.TrafficShaper;
+import vip.ebox.jfiledemo.filesys.ShareQuota;
+import vip.ebox.jfiledemo.session.SessionRegistry;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * @Author: Yunnuo
@@ -28,6 +43,9 @@ public class JFileServerController {
     @Autowired
     private JFileServerProperties properties;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
     /**
      * 启动jFileServer
      */
@@ -126,6 +144,7 @@ public class JFileServerController {
             config.put("port", properties.getPort());
             config.put("sharePath", properties.getSharePath());
             config.put("shareName", properties.getShareName());
+            config.put("shares", properties.getShares());
             config.put("serverName", properties.getServerName());
             config.put("domain", properties.getDomain());
             config.put("username", properties.getUsername());
@@ -162,6 +181,620 @@ public class JFileServerController {
         }
     }
 
+    /**
+     * 获取内存池统计信息
+     */
+    @GetMapping("/memory-pool")
+    public ResponseEntity<Map<String, Object>> memoryPool() {
+        Map<String, Object> result = new HashMap<>();
+
+        try {
+            result.put("success", true);
+            result.put("data", jFileServerService.getMemoryPoolStats());
+            return ResponseEntity.ok(result);
+
+        } catch (Exception e) {
+            log.error("获取内存池统计失败", e);
+            result.put("success", false);
+            result.put("message", "获取内存池统计失败: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(result);
+        }
+    }
+
+    /**
+     * 获取元数据缓存统计信息
+     */
+    @GetMapping("/metadata-cache")
+    public ResponseEntity<Map<String, Object>> metadataCache() {
+        Map<String, Object> result = new HashMap<>();
+
+        try {
+            result.put("success", true);
+            result.put("enabled", properties.isMetadataCacheEnabled());
+            result.put("data", jFileServerService.getMetadataCacheStats());
+            return ResponseEntity.ok(result);
+
+        } catch (Exception e) {
+            log.error("获取元数据缓存统计失败", e);
+            result.put("success", false);
+            result.put("message", "获取元数据缓存统计失败: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(result);
+        }
+    }
+
+    /**
+     * 获取目录列表索引统计信息
+     */
+    @GetMapping("/listing-index")
+    public ResponseEntity<Map<String, Object>> listingIndex() {
+        Map<String, Object> result = new HashMap<>();
+
+        try {
+            result.put("success", true);
+            result.put("enabled", properties.isListingIndexEnabled());
+            result.put("data", jFileServerService.getListingIndexStats());
+            return ResponseEntity.ok(result);
+
+        } catch (Exception e) {
+            log.error("获取目录列表索引统计失败", e);
+            result.put("success", false);
+            result.put("message", "获取目录列表索引统计失败: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(result);
+        }
+    }
+
+    /**
+     * 获取块缓存统计信息
+     */
+    @GetMapping("/block-cache")
+    public ResponseEntity<Map<String, Object>> blockCache() {
+        Map<String, Object> result = new HashMap<>();
+
+        try {
+            result.put("success", true);
+            result.put("enabled", properties.isBlockCacheEnabled());
+            result.put("data", jFileServerService.getBlockCacheStats());
+            return ResponseEntity.ok(result);
+
+        } catch (Exception e) {
+            log.error("获取块缓存统计失败", e);
+            result.put("success", false);
+            result.put("message", "获取块缓存统计失败: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(result);
+        }
+    }
+
+    /**
+     * 获取内存映射读取统计信息
+     */
+    @GetMapping("/mmap")
+    public ResponseEntity<Map<String, Object>> mmap() {
+        Map<String, Object> result = new HashMap<>();
+
+        try {
+            result.put("success", true);
+            result.put("enabled", properties.isMmapEnabled());
+            result.put("data", jFileServerService.getMappedStats());
+            return ResponseEntity.ok(result);
+
+        } catch (Exception e) {
+            log.error("获取内存映射统计失败", e);
+            result.put("success", false);
+            result.put("message", "获取内存映射统计失败: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(result);
+        }
+    }
+
+    /**
+     * 获取延迟写入统计信息
+     */
+    @GetMapping("/write-behind")
+    public ResponseEntity<Map<String, Object>> writeBehind() {
+        Map<String, Object> result = new HashMap<>();
+
+        try {
+            result.put("success", true);
+            result.put("enabled", properties.isWriteBehindEnabled());
+            result.put("data", jFileServerService.getWriteBehindStats());
+            return ResponseEntity.ok(result);
+
+        } catch (Exception e) {
+            log.error("获取延迟写入统计失败", e);
+            result.put("success", false);
+            result.put("message", "获取延迟写入统计失败: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(result);
+        }
+    }
+
+    /**
+     * 获取当前启用的会话调试类别
+     */
+    @GetMapping("/debug-flags")
+    public ResponseEntity<Map<String, Object>> debugFlags() {
+        Map<String, Object> result = new HashMap<>();
+
+        try {
+            result.put("success", true);
+            result.put("data", jFileServerService.getSessionDebugFlags());
+            result.put("available", Arrays.stream(SMBSrvSession.Dbg.values()).map(Enum::name)
+                    .collect(Collectors.toList()));
+            return ResponseEntity.ok(result);
+
+        } catch (Exception e) {
+            log.error("获取会话调试类别失败", e);
+            result.put("success", false);
+            result.put("message", "获取会话调试类别失败: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(result);
+        }
+    }
+
+    /**
+     * 修改会话调试类别，请求体为类别名称数组，空数组表示全部关闭
+     */
+    @PostMapping("/debug-flags")
+    public ResponseEntity<Map<String, Object>> updateDebugFlags(@RequestBody List<String> flags) {
+        Map<String, Object> result = new HashMap<>();
+
+        try {
+            result.put("success", true);
+            result.put("data", jFileServerService.updateSessionDebugFlags(flags));
+            return ResponseEntity.ok(result);
+
+        } catch (IllegalArgumentException e) {
+            result.put("success", false);
+            result.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(result);
+        } catch (Exception e) {
+            log.error("修改会话调试类别失败", e);
+            result.put("success", false);
+            result.put("message", "修改会话调试类别失败: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(result);
+        }
+    }
+
+    /**
+     * 在线修改配置，不重启服务器、不断开已连接的会话
+     * 请求体中省略的项保持不变，需要重启才能生效的修改在 restartRequired 中列出
+     */
+    @PostMapping("/reconfigure")
+    public ResponseEntity<Map<String, Object>> reconfigure(@RequestBody JFileServerService.Reconfiguration changes) {
+        Map<String, Object> result = new HashMap<>();
+
+        try {
+            JFileServerService.ReconfigureResult reconfigured = jFileServerService.reconfigure(changes);
+            result.put("success", true);
+            result.put("running", reconfigured.isRunning());
+            result.put("applied", reconfigured.getApplied());
+            result.put("restartRequired", reconfigured.getRestartRequired());
+            return ResponseEntity.ok(result);
+
+        } catch (IllegalArgumentException e) {
+            result.put("success", false);
+            result.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(result);
+        } catch (Exception e) {
+            log.error("修改配置失败", e);
+            result.put("success", false);
+            result.put("message", "修改配置失败: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(result);
+        }
+    }
+
+    /**
+     * 获取异步日志缓冲区统计信息
+     */
+    @GetMapping("/debug-log")
+    public ResponseEntity<Map<String, Object>> debugLog() {
+        Map<String, Object> result = new HashMap<>();
+
+        try {
+            result.put("success", true);
+            result.put("enabled", properties.isLogAsync());
+            result.put("data", jFileServerService.getDebugLogStats());
+            return ResponseEntity.ok(result);
+
+        } catch (Exception e) {
+            log.error("获取日志缓冲区统计失败", e);
+            result.put("success", false);
+            result.put("message", "获取日志缓冲区统计失败: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(result);
+        }
+    }
+
+    /**
+     * 获取线程池自动调整统计信息（含最近的调整记录）
+     */
+    @GetMapping("/autoscaler")
+    public ResponseEntity<Map<String, Object>> autoscaler() {
+        Map<String, Object> result = new HashMap<>();
+
+        try {
+            result.put("success", true);
+            result.put("enabled", properties.isAutoscaleEnabled());
+            result.put("data", jFileServerService.getAutoscalerStats());
+            return ResponseEntity.ok(result);
+
+        } catch (Exception e) {
+            log.error("获取线程池自动调整统计失败", e);
+            result.put("success", false);
+            result.put("message", "获取线程池自动调整统计失败: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(result);
+        }
+    }
+
+    /**
+     * 获取虚拟线程请求执行统计信息
+     */
+    @GetMapping("/virtual-threads")
+    public ResponseEntity<Map<String, Object>> virtualThreads() {
+        Map<String, Object> result = new HashMap<>();
+
+        try {
+            VirtualThreadRequestQueue.Stats stats = jFileServerService.getVirtualThreadStats();
+            result.put("success", true);
+            result.put("enabled", properties.isVirtualThreadsEnabled());
+            // 已启用但 JDK 不支持时为 false
+            result.put("active", stats != null);
+            result.put("data", stats);
+            return ResponseEntity.ok(result);
+
+        } catch (Exception e) {
+            log.error("获取虚拟线程统计失败", e);
+            result.put("success", false);
+            result.put("message", "获取虚拟线程统计失败: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(result);
+        }
+    }
+
+    /**
+     * 获取各共享的 I/O 调度统计信息
+     */
+    @GetMapping("/io-scheduler")
+    public ResponseEntity<Map<String, Object>> ioScheduler() {
+        Map<String, Object> result = new HashMap<>();
+
+        try {
+            result.put("success", true);
+            result.put("enabled", properties.isIoSchedulerEnabled());
+            result.put("data", jFileServerService.getIoSchedulerStats());
+            return ResponseEntity.ok(result);
+
+        } catch (Exception e) {
+            log.error("获取 I/O 调度统计失败", e);
+            result.put("success", false);
+            result.put("message", "获取 I/O 调度统计失败: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(result);
+        }
+    }
+
+    /**
+     * 获取文件状态缓存统计信息
+     */
+    @GetMapping("/file-state-cache")
+    public ResponseEntity<Map<String, Object>> fileStateCache() {
+        Map<String, Object> result = new HashMap<>();
+
+        try {
+            result.put("success", true);
+            result.put("enabled", properties.isFileStateCacheEnabled());
+            result.put("data", jFileServerService.getFileStateStats());
+            return ResponseEntity.ok(result);
+
+        } catch (Exception e) {
+            log.error("获取文件状态缓存统计失败", e);
+            result.put("success", false);
+            result.put("message", "获取文件状态缓存统计失败: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(result);
+        }
+    }
+
+    /**
+     * 获取机会锁统计（各共享合计）
+     */
+    @GetMapping("/oplocks")
+    public ResponseEntity<Map<String, Object>> oplocks() {
+        Map<String, Object> result = new HashMap<>();
+
+        try {
+            result.put("success", true);
+            result.put("enabled", properties.isOplocksEnabled() && properties.isFileStateCacheEnabled());
+            result.put("data", jFileServerService.getOpLockStats());
+            return ResponseEntity.ok(result);
+
+        } catch (Exception e) {
+            log.error("获取机会锁统计失败", e);
+            result.put("success", false);
+            result.put("message", "获取机会锁统计失败: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(result);
+        }
+    }
+
+    /**
+     * 获取集群状态：成员、使用集群文件状态的共享与集群消息数
+     */
+    @GetMapping("/cluster")
+    public ResponseEntity<Map<String, Object>> cluster() {
+        Map<String, Object> result = new HashMap<>();
+
+        try {
+            result.put("success", true);
+            result.put("enabled", properties.isClusterEnabled() && properties.isFileStateCacheEnabled());
+            result.put("data", jFileServerService.getClusterStats());
+            return ResponseEntity.ok(result);
+
+        } catch (Exception e) {
+            log.error("获取集群状态失败", e);
+            result.put("success", false);
+            result.put("message", "获取集群状态失败: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(result);
+        }
+    }
+
+    /**
+     * 获取变更通知统计（各共享合计）
+     */
+    @GetMapping("/change-notify")
+    public ResponseEntity<Map<String, Object>> changeNotify() {
+        Map<String, Object> result = new HashMap<>();
+
+        try {
+            result.put("success", true);
+            result.put("enabled", properties.isChangeNotifyEnabled());
+            result.put("data", jFileServerService.getChangeNotifyStats());
+            return ResponseEntity.ok(result);
+
+        } catch (Exception e) {
+            log.error("获取变更通知统计失败", e);
+            result.put("success", false);
+            result.put("message", "获取变更通知统计失败: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(result);
+        }
+    }
+
+    /**
+     * 获取分层存储统计（各共享合计）
+     */
+    @GetMapping("/tiering")
+    public ResponseEntity<Map<String, Object>> tiering() {
+        Map<String, Object> result = new HashMap<>();
+
+        try {
+            TieredDiskDriver.TierStats stats = jFileServerService.getTierStats();
+            result.put("success", true);
+            result.put("enabled", stats != null);
+            result.put("data", stats);
+            return ResponseEntity.ok(result);
+
+        } catch (Exception e) {
+            log.error("获取分层存储统计失败", e);
+            result.put("success", false);
+            result.put("message", "获取分层存储统计失败: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(result);
+        }
+    }
+
+    /**
+     * 获取内存临时共享统计（所有内存临时共享共用一个内存预算）
+     */
+    @GetMapping("/scratch")
+    public ResponseEntity<Map<String, Object>> scratch() {
+        Map<String, Object> result = new HashMap<>();
+
+        try {
+            ScratchMemory.ScratchStats stats = jFileServerService.getScratchStats();
+            result.put("success", true);
+            result.put("enabled", stats != null);
+            result.put("data", stats);
+            return ResponseEntity.ok(result);
+
+        } catch (Exception e) {
+            log.error("获取内存临时共享统计失败", e);
+            result.put("success", false);
+            result.put("message", "获取内存临时共享统计失败: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(result);
+        }
+    }
+
+    /**
+     * 获取限速配置与各会话、各用户的用量
+     */
+    @GetMapping("/shaping")
+    public ResponseEntity<Map<String, Object>> shaping() {
+        Map<String, Object> result = new HashMap<>();
+
+        try {
+            TrafficShaper.ShapingStats stats = jFileServerService.getShapingStats();
+            result.put("success", true);
+            result.put("enabled", stats != null);
+            result.put("data", stats);
+            return ResponseEntity.ok(result);
+
+        } catch (Exception e) {
+            log.error("获取限速统计失败", e);
+            result.put("success", false);
+            result.put("message", "获取限速统计失败: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(result);
+        }
+    }
+
+    /**
+     * 修改限速，立即作用于已连接的会话；未启用限速时只保存到配置
+     */
+    @PostMapping("/shaping")
+    public ResponseEntity<Map<String, Object>> updateShaping(@RequestBody JFileServerService.ShapingUpdate changes) {
+        Map<String, Object> result = new HashMap<>();
+
+        try {
+            TrafficShaper.ShapingStats stats = jFileServerService.updateShaping(changes);
+            result.put("success", true);
+            result.put("enabled", stats != null);
+            result.put("data", stats);
+            return ResponseEntity.ok(result);
+
+        } catch (IllegalArgumentException e) {
+            result.put("success", false);
+            result.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(result);
+        } catch (Exception e) {
+            log.error("修改限速失败", e);
+            result.put("success", false);
+            result.put("message", "修改限速失败: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(result);
+        }
+    }
+
+    /**
+     * 分页列出活动会话（不含打开的文件），sort 可为 id、bytes、operations 或 idle
+     */
+    @GetMapping("/sessions")
+    public ResponseEntity<Map<String, Object>> sessions(@RequestParam(defaultValue = "0") int offset,
+                                                        @RequestParam(defaultValue = "100") int limit,
+                                                        @RequestParam(defaultValue = "id") String sort) {
+        Map<String, Object> result = new HashMap<>();
+
+        try {
+            SessionRegistry.SessionPage page = jFileServerService.getSessions(offset, limit, sort);
+            result.put("success", true);
+            result.put("enabled", page != null);
+            result.put("data", page);
+            return ResponseEntity.ok(result);
+
+        } catch (IllegalArgumentException e) {
+            result.put("success", false);
+            result.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(result);
+        } catch (Exception e) {
+            log.error("获取会话列表失败", e);
+            result.put("success", false);
+            result.put("message", "获取会话列表失败: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(result);
+        }
+    }
+
+    /**
+     * 以 NDJSON 逐行输出所有会话的详情（含树连接与打开的文件），边生成边发送
+     */
+    @GetMapping(value = "/sessions/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamSessions() {
+        StreamingResponseBody body = out -> {
+            try {
+                jFileServerService.forEachSession(session -> {
+                    try {
+                        out.write(objectMapper.writeValueAsBytes(session));
+                        out.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                // 客户端断开
+                log.debug("会话输出中断: {}", e.getMessage());
+                return;
+            }
+            out.flush();
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    /**
+     * 获取单个会话的树连接与打开的文件
+     */
+    @GetMapping("/sessions/{sessionId}")
+    public ResponseEntity<Map<String, Object>> session(@PathVariable int sessionId) {
+        Map<String, Object> result = new HashMap<>();
+
+        try {
+            SessionRegistry.SessionInfo session = jFileServerService.getSession(sessionId);
+            if (session == null) {
+                result.put("success", false);
+                result.put("message", "会话不存在: " + sessionId);
+                return ResponseEntity.status(404).body(result);
+            }
+            result.put("success", true);
+            result.put("data", session);
+            return ResponseEntity.ok(result);
+
+        } catch (Exception e) {
+            log.error("获取会话失败", e);
+            result.put("success", false);
+            result.put("message", "获取会话失败: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(result);
+        }
+    }
+
+    /**
+     * 关闭会话，关闭其打开的文件并断开连接，不影响其它会话
+     */
+    @PostMapping("/sessions/{sessionId}/close")
+    public ResponseEntity<Map<String, Object>> closeSession(@PathVariable int sessionId) {
+        Map<String, Object> result = new HashMap<>();
+
+        try {
+            if (!jFileServerService.closeSession(sessionId)) {
+                result.put("success", false);
+                result.put("message", "会话不存在: " + sessionId);
+                return ResponseEntity.status(404).body(result);
+            }
+            result.put("success", true);
+            result.put("message", "会话已关闭: " + sessionId);
+            return ResponseEntity.ok(result);
+
+        } catch (Exception e) {
+            log.error("关闭会话失败", e);
+            result.put("success", false);
+            result.put("message", "关闭会话失败: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(result);
+        }
+    }
+
+    /**
+     * 关闭会话在某个树连接上打开的文件句柄
+     */
+    @PostMapping("/sessions/{sessionId}/trees/{treeId}/files/{fileId}/close")
+    public ResponseEntity<Map<String, Object>> closeFile(@PathVariable int sessionId, @PathVariable int treeId,
+                                                         @PathVariable int fileId) {
+        Map<String, Object> result = new HashMap<>();
+
+        try {
+            if (!jFileServerService.closeFile(sessionId, treeId, fileId)) {
+                result.put("success", false);
+                result.put("message", "文件句柄不存在: 会话=" + sessionId + ", 树连接=" + treeId + ", 句柄=" + fileId);
+                return ResponseEntity.status(404).body(result);
+            }
+            result.put("success", true);
+            result.put("message", "文件句柄已关闭: " + fileId);
+            return ResponseEntity.ok(result);
+
+        } catch (Exception e) {
+            log.error("关闭文件句柄失败", e);
+            result.put("success", false);
+            result.put("message", "关闭文件句柄失败: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(result);
+        }
+    }
+
+    /**
+     * 获取各共享的配额与已用空间（含各用户的已用空间）
+     */
+    @GetMapping("/quota")
+    public ResponseEntity<Map<String, Object>> quota() {
+        Map<String, Object> result = new HashMap<>();
+
+        try {
+            Map<String, ShareQuota.QuotaStats> stats = jFileServerService.getQuotaStats();
+            result.put("success", true);
+            result.put("enabled", !stats.isEmpty());
+            result.put("data", stats);
+            return ResponseEntity.ok(result);
+
+        } catch (Exception e) {
+            log.error("获取配额统计失败", e);
+            result.put("success", false);
+            result.put("message", "获取配额统计失败: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(result);
+        }
+    }
+
     /**
      * 健康检查接口
      */
@@ -0,0 +1,57 @@
+package vip.ebox.jfiledemo.controller;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import vip.ebox.jfiledemo.metrics.MetricsExporter;
+import vip.ebox.jfiledemo.service.JFileServerService;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/19  11:40
+ * @Description: jFileServer 运行指标控制器
+ *  /metrics 与 /metrics/{name} 的响应结构与 Actuator 的 metrics 端点一致，/metrics/prometheus 输出 Prometheus 文本格式
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/jfileserver/metrics")
+public class MetricsController {
+
+    private static final MediaType PROMETHEUS = MediaType.parseMediaType("text/plain; version=0.0.4; charset=utf-8");
+
+    @Autowired
+    private JFileServerService jFileServerService;
+
+    /**
+     * 获取所有指标名
+     */
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> names() {
+        return ResponseEntity.ok(MetricsExporter.names());
+    }
+
+    /**
+     * Prometheus 抓取端点
+     */
+    @GetMapping("/prometheus")
+    public ResponseEntity<String> prometheus() {
+        return ResponseEntity.ok().contentType(PROMETHEUS)
+                .body(MetricsExporter.prometheus(jFileServerService.getServerMetrics()));
+    }
+
+    /**
+     * 获取单个指标，可用 tag=operation:read 过滤
+     */
+    @GetMapping("/{name}")
+    public ResponseEntity<Map<String, Object>> meter(@PathVariable String name,
+                                                     @RequestParam(required = false) List<String> tag) {
+        Map<String, Object> meter = MetricsExporter.meter(jFileServerService.getServerMetrics(), name, tag);
+        return meter != null ? ResponseEntity.ok(meter) : ResponseEntity.notFound().build();
+    }
+}
@@ -0,0 +1,620 @@
+package vip.ebox.jfiledemo.filesys;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/18  15:30
+ * @Description: 堆外文件块缓存
+ *  将文件按固定大小切块，块数据保存在 DirectByteBuffer 中，所有会话共享；
+ *  多个客户端同时从同一个 ISO / 虚拟机镜像读取时，热点块直接从内存返回
+ *
+ *  - 总内存不超过配置的预算，按分段 LRU 淘汰，淘汰的缓冲区直接复用，不反复申请堆外内存
+ *  - 每个路径只有一个 FileKey，所有句柄共用；打开文件时比较大小与修改时间，不一致则递增其代数，旧代的块自然淘汰
+ *  - 写入与截断按路径失效，不论由哪个句柄写入，其它句柄都不会读到旧数据
+ *  - 顺序读取时由后台线程异步预读后续的块，预读队列满时直接丢弃，不阻塞读请求
+ */
+@Slf4j
+public class BlockCache {
+
+    // 分段数，降低锁竞争
+    private static final int SEGMENTS = 16;
+
+    // 未打开的文件最多保留的 FileKey 数
+    private static final int MAX_IDLE_KEYS = 4096;
+
+    private final int blockSize;
+    private final long capacity;
+    private final int readAheadBlocks;
+    private final Segment[] segments;
+
+    // 本地路径 -> 当前 FileKey
+    private final LinkedHashMap<String, FileKey> keys;
+
+    // 正在加载的块，避免预读与按需读取重复加载同一块
+    private final ConcurrentHashMap<BlockKey, CompletableFuture<Void>> loading = new ConcurrentHashMap<>();
+
+    private final ThreadPoolExecutor readAheadExecutor;
+
+    // 统计计数
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder readAheads = new LongAdder();
+    private final LongAdder readAheadHits = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder bypassed = new LongAdder();
+
+    /**
+     * @param capacity        缓存总内存（字节）
+     * @param blockSize       块大小（字节）
+     * @param readAheadBlocks 顺序读取时预读的块数，0 表示不预读
+     * @param readAheadThreads 预读线程数
+     */
+    public BlockCache(long capacity, int blockSize, int readAheadBlocks, int readAheadThreads) {
+        this.blockSize = Math.max(4096, blockSize);
+        this.readAheadBlocks = Math.max(0, readAheadBlocks);
+
+        long totalBlocks = Math.max(SEGMENTS, capacity / this.blockSize);
+        int perSegment = (int) Math.min(Integer.MAX_VALUE, totalBlocks / SEGMENTS);
+        this.capacity = (long) perSegment * SEGMENTS * this.blockSize;
+        this.segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+
+        this.keys = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, FileKey> eldest) {
+                // 仍被打开的文件不移除，保证同一路径的所有句柄共用一个 FileKey
+                return size() > MAX_IDLE_KEYS && eldest.getValue().openCount == 0;
+            }
+        };
+
+        AtomicInteger threadNo = new AtomicInteger();
+        this.readAheadExecutor = new ThreadPoolExecutor(Math.max(1, readAheadThreads), Math.max(1, readAheadThreads),
+                60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(Math.max(16, this.readAheadBlocks * 8)), r -> {
+            Thread t = new Thread(r, "jfs-readahead-" + threadNo.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }, new ThreadPoolExecutor.DiscardPolicy());
+        this.readAheadExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * 打开文件时获取其 FileKey，文件大小或修改时间与缓存时不同则递增代数，之前缓存的块不再命中
+     *
+     * @param path  本地文件路径
+     * @param size  当前文件大小
+     * @param mtime 当前修改时间
+     */
+    public FileKey acquire(String path, long size, long mtime) {
+        synchronized (keys) {
+            FileKey key = keys.get(path);
+            if (key == null) {
+                key = new FileKey(path, size, mtime);
+                keys.put(path, key);
+            } else if (key.size != size || key.mtime != mtime) {
+                // 其它句柄仍在使用同一 FileKey，只换代不换 key，之后的写入仍能失效所有句柄读到的块
+                key.size = size;
+                key.mtime = mtime;
+                key.version.incrementAndGet();
+                key.generation++;
+            }
+            key.openCount++;
+            return key;
+        }
+    }
+
+    /**
+     * 文件关闭时释放 FileKey
+     */
+    public void release(FileKey key) {
+        synchronized (keys) {
+            key.openCount--;
+        }
+    }
+
+    /**
+     * 文件被删除或重命名后丢弃其 FileKey，已缓存的块随 LRU 淘汰
+     */
+    public void forget(String path) {
+        synchronized (keys) {
+            keys.remove(path);
+        }
+    }
+
+    /**
+     * 从缓存读取数据，未命中的块从文件通道加载后放入缓存
+     *
+     * @return 读取的字节数，已到文件末尾时返回 -1
+     */
+    public int read(FileKey key, FileChannel channel, byte[] buf, int off, int len, long pos) throws IOException {
+        int total = 0;
+        while (total < len) {
+            long filePos = pos + total;
+            long blockIdx = filePos / blockSize;
+            int blockOff = (int) (filePos % blockSize);
+            int want = Math.min(len - total, blockSize - blockOff);
+
+            int n = copy(key, blockIdx, blockOff, buf, off + total, want, true);
+            if (n == MISS) {
+                misses.increment();
+                if (!load(key, blockIdx, channel, false)) {
+                    // 缓存已被正在加载的块占满，直接读文件
+                    bypassed.increment();
+                    n = readDirect(channel, buf, off + total, want, filePos);
+                } else {
+                    n = copy(key, blockIdx, blockOff, buf, off + total, want, false);
+                    if (n == MISS) {
+                        bypassed.increment();
+                        n = readDirect(channel, buf, off + total, want, filePos);
+                    }
+                }
+            } else {
+                hits.increment();
+            }
+
+            if (n <= 0) {
+                break;
+            }
+            total += n;
+            if (n < want) {
+                // 块未填满说明已到文件末尾
+                break;
+            }
+        }
+        return total == 0 && len > 0 ? -1 : total;
+    }
+
+    /**
+     * 异步预读从 pos 开始的若干块，返回已安排预读的最后一个块号
+     *
+     * @param fromBlock 只预读大于该块号的块，避免重复提交
+     */
+    public long readAhead(FileKey key, FileChannel channel, long pos, long fromBlock) {
+        if (readAheadBlocks == 0) {
+            return fromBlock;
+        }
+        long first = Math.max(pos / blockSize, fromBlock + 1);
+        long last = pos / blockSize + readAheadBlocks;
+        long fileSize;
+        try {
+            fileSize = channel.size();
+        } catch (IOException e) {
+            return fromBlock;
+        }
+        long lastBlock = (fileSize - 1) / blockSize;
+        last = Math.min(last, lastBlock);
+
+        long scheduled = fromBlock;
+        for (long idx = first; idx <= last; idx++) {
+            if (contains(key, idx)) {
+                scheduled = idx;
+                continue;
+            }
+            if (readAheadExecutor.getQueue().remainingCapacity() == 0) {
+                // 预读队列已满，等下次顺序读取时再提交
+                break;
+            }
+            final long blockIdx = idx;
+            readAheadExecutor.execute(() -> {
+                try {
+                    if (load(key, blockIdx, channel, true)) {
+                        readAheads.increment();
+                    }
+                } catch (IOException e) {
+                    // 文件已关闭等情况忽略，按需读取时会重新加载
+                    log.trace("预读失败: {} #{}: {}", key.path, blockIdx, e.getMessage());
+                }
+            });
+            scheduled = idx;
+        }
+        return scheduled;
+    }
+
+    /**
+     * 写入或截断后使文件指定范围内的块失效。按路径查找当前的 FileKey，同一路径的所有句柄都不会再读到旧数据；
+     * 文件被重命名或删除后路径不再对应 key，写入句柄持有的 key 同样失效
+     *
+     * @param key 写入句柄持有的 FileKey
+     */
+    public void invalidate(FileKey key, long pos, long len) {
+        if (len <= 0) {
+            return;
+        }
+        FileKey current;
+        synchronized (keys) {
+            current = keys.get(key.path);
+        }
+        invalidateBlocks(key, pos, len);
+        if (current != null && current != key) {
+            invalidateBlocks(current, pos, len);
+        }
+    }
+
+    /**
+     * 清空缓存，释放全部块
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * 停止预读线程并释放缓存
+     */
+    public void shutdown() {
+        readAheadExecutor.shutdownNow();
+        clear();
+    }
+
+    /**
+     * 获取块缓存统计信息
+     */
+    public CacheStats getStats() {
+        long blocks = 0;
+        long allocated = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                blocks += segment.blocks.size();
+                allocated += segment.allocated;
+            }
+        }
+        return new CacheStats(capacity, allocated * blockSize, blocks, blockSize, readAheadBlocks,
+                hits.sum(), misses.sum(), readAheads.sum(), readAheadHits.sum(), evictions.sum(), bypassed.sum());
+    }
+
+    private static final int MISS = -2;
+
+    private void invalidateBlocks(FileKey key, long pos, long len) {
+        // 先递增版本号，使正在加载的旧数据不会再放入缓存
+        key.version.incrementAndGet();
+        long generation = key.generation;
+        long first = pos / blockSize;
+        long last = (pos + len - 1) / blockSize;
+        for (long idx = first; idx <= last; idx++) {
+            BlockKey bk = new BlockKey(key, generation, idx);
+            segmentFor(bk).remove(bk);
+        }
+    }
+
+    private int copy(FileKey key, long blockIdx, int blockOff, byte[] buf, int off, int len, boolean countReadAhead) {
+        BlockKey bk = new BlockKey(key, key.generation, blockIdx);
+        Segment segment = segmentFor(bk);
+        synchronized (segment) {
+            Block block = segment.blocks.get(bk);
+            if (block == null) {
+                return MISS;
+            }
+            if (block.readAhead) {
+                block.readAhead = false;
+                if (countReadAhead) {
+                    readAheadHits.increment();
+                }
+            }
+            int n = Math.min(len, block.length - blockOff);
+            if (n <= 0) {
+                return 0;
+            }
+            block.data.get(blockOff, buf, off, n);
+            return n;
+        }
+    }
+
+    private boolean contains(FileKey key, long blockIdx) {
+        BlockKey bk = new BlockKey(key, key.generation, blockIdx);
+        Segment segment = segmentFor(bk);
+        synchronized (segment) {
+            return segment.blocks.containsKey(bk) || loading.containsKey(bk);
+        }
+    }
+
+    /**
+     * 加载一个块到缓存，同一块同时只加载一次
+     *
+     * @return 无法分配缓冲区时返回 false
+     */
+    private boolean load(FileKey key, long blockIdx, FileChannel channel, boolean readAhead) throws IOException {
+        BlockKey bk = new BlockKey(key, key.generation, blockIdx);
+        CompletableFuture<Void> mine = new CompletableFuture<>();
+        CompletableFuture<Void> other = loading.putIfAbsent(bk, mine);
+        if (other != null) {
+            // 其它线程（通常是预读）正在加载，等待其完成
+            try {
+                other.join();
+            } catch (CompletionException e) {
+                return false;
+            }
+            return true;
+        }
+
+        Segment segment = segmentFor(bk);
+        try {
+            synchronized (segment) {
+                if (segment.blocks.containsKey(bk)) {
+                    return true;
+                }
+            }
+            ByteBuffer data = segment.allocate();
+            if (data == null) {
+                return false;
+            }
+
+            long version = key.version.get();
+            int length;
+            try {
+                length = fill(channel, data, blockIdx * blockSize);
+            } catch (IOException | RuntimeException e) {
+                segment.free(data);
+                throw e;
+            }
+            return segment.put(bk, new Block(data, length, readAhead), version);
+        } finally {
+            loading.remove(bk, mine);
+            mine.complete(null);
+        }
+    }
+
+    private int fill(FileChannel channel, ByteBuffer data, long pos) throws IOException {
+        data.clear();
+        while (data.hasRemaining()) {
+            int n = channel.read(data, pos + data.position());
+            if (n < 0) {
+                break;
+            }
+        }
+        return data.position();
+    }
+
+    private static int readDirect(FileChannel channel, byte[] buf, int off, int len, long pos) throws IOException {
+        return channel.read(ByteBuffer.wrap(buf, off, len), pos);
+    }
+
+    private Segment segmentFor(BlockKey bk) {
+        return segments[(bk.hash ^ (bk.hash >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    /**
+     * 文件标识，同一路径的所有句柄共享
+     */
+    public static final class FileKey {
+        private final String path;
+        private final int hash;
+
+        // 打开时的大小与修改时间，受 keys 锁保护
+        private long size;
+        private long mtime;
+
+        // 写入、截断或换代时递增
+        private final AtomicLong version = new AtomicLong();
+
+        // 文件在未经本缓存的情况下被修改时递增，块按代缓存
+        private volatile long generation;
+
+        // 受 keys 锁保护
+        private int openCount;
+
+        private FileKey(String path, long size, long mtime) {
+            this.path = path;
+            this.size = size;
+            this.mtime = mtime;
+            this.hash = System.identityHashCode(this);
+        }
+
+        public String getPath() {
+            return path;
+        }
+    }
+
+    private static final class BlockKey {
+        private final FileKey file;
+        private final long generation;
+        private final long index;
+        private final int hash;
+
+        BlockKey(FileKey file, long generation, long index) {
+            this.file = file;
+            this.generation = generation;
+            this.index = index;
+            this.hash = (file.hash * 31 + Long.hashCode(generation)) * 31 + Long.hashCode(index);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof BlockKey)) {
+                return false;
+            }
+            BlockKey other = (BlockKey) o;
+            return file == other.file && generation == other.generation && index == other.index;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Block {
+        private final ByteBuffer data;
+        private final int length;
+
+        // 由预读加载且尚未被读取
+        private boolean readAhead;
+
+        Block(ByteBuffer data, int length, boolean readAhead) {
+            this.data = data;
+            this.length = length;
+            this.readAhead = readAhead;
+        }
+    }
+
+    /**
+     * 缓存分段：LRU 表加空闲缓冲区列表，所有字段受分段对象锁保护
+     */
+    private final class Segment {
+        private final int maxBlocks;
+        private final LinkedHashMap<BlockKey, Block> blocks = new LinkedHashMap<>(64, 0.75f, true);
+        private final ArrayDeque<ByteBuffer> free = new ArrayDeque<>();
+        private int allocated;
+
+        Segment(int maxBlocks) {
+            this.maxBlocks = maxBlocks;
+        }
+
+        /**
+         * 获取一个空闲缓冲区：优先复用，其次新分配，都不行时淘汰最久未使用的块
+         */
+        synchronized ByteBuffer allocate() {
+            ByteBuffer buf = free.pollFirst();
+            if (buf != null) {
+                return buf;
+            }
+            if (allocated < maxBlocks) {
+                allocated++;
+                return ByteBuffer.allocateDirect(blockSize);
+            }
+            Iterator<Block> it = blocks.values().iterator();
+            if (!it.hasNext()) {
+                return null;
+            }
+            Block eldest = it.next();
+            it.remove();
+            evictions.increment();
+            return eldest.data;
+        }
+
+        synchronized void free(ByteBuffer buf) {
+            free.addFirst(buf);
+        }
+
+        /**
+         * 放入加载完成的块，加载期间文件被修改时丢弃
+         */
+        synchronized boolean put(BlockKey bk, Block block, long version) {
+            if (bk.file.version.get() != version) {
+                free.addFirst(block.data);
+                return false;
+            }
+            Block old = blocks.put(bk, block);
+            if (old != null) {
+                free.addFirst(old.data);
+            }
+            return true;
+        }
+
+        synchronized void remove(BlockKey bk) {
+            Block old = blocks.remove(bk);
+            if (old != null) {
+                free.addFirst(old.data);
+            }
+        }
+
+        synchronized void clear() {
+            blocks.clear();
+            free.clear();
+            allocated = 0;
+        }
+    }
+
+    /**
+     * 块缓存统计信息
+     */
+    public static class CacheStats {
+        private final long capacity;
+        private final long allocatedBytes;
+        private final long blocks;
+        private final int blockSize;
+        private final int readAheadBlocks;
+        private final long hits;
+        private final long misses;
+        private final long readAheads;
+        private final long readAheadHits;
+        private final long evictions;
+        private final long bypassed;
+
+        public CacheStats(long capacity, long allocatedBytes, long blocks, int blockSize, int readAheadBlocks,
+                          long hits, long misses, long readAheads, long readAheadHits, long evictions, long bypassed) {
+            this.capacity = capacity;
+            this.allocatedBytes = allocatedBytes;
+            this.blocks = blocks;
+            this.blockSize = blockSize;
+            this.readAheadBlocks = readAheadBlocks;
+            this.hits = hits;
+            this.misses = misses;
+            this.readAheads = readAheads;
+            this.readAheadHits = readAheadHits;
+            this.evictions = evictions;
+            this.bypassed = bypassed;
+        }
+
+        public long getCapacity() {
+            return capacity;
+        }
+
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        public long getBlocks() {
+            return blocks;
+        }
+
+        public int getBlockSize() {
+            return blockSize;
+        }
+
+        public int getReadAheadBlocks() {
+            return readAheadBlocks;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getReadAheads() {
+            return readAheads;
+        }
+
+        public long getReadAheadHits() {
+            return readAheadHits;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public long getBypassed() {
+            return bypassed;
+        }
+
+        public double getHitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0.0 : (double) hits / total;
+        }
+    }
+}
@@ -0,0 +1,465 @@
+package vip.ebox.jfiledemo.filesys;
+
+import lombok.extern.slf4j.Slf4j;
+import org.filesys.server.SrvSession;
+import org.filesys.server.filesys.*;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/18  09:45
+ * @Description: 带元数据缓存的磁盘驱动
+ *  在 JavaNIODiskDriver 前缓存 getFileInformation / fileExists 的结果，
+ *  资源管理器刷新、cifs 挂载的 stat 以及存在性探测不必每次都访问文件系统
+ *
+ *  - 缓存容量有上限，按 LRU 淘汰
+ *  - 每个条目有 TTL，过期后重新从磁盘读取（用于感知 SMB 之外对共享目录的修改）；
+ *    启用变更通知时，监视到的本地修改通过 invalidateExternal 立即失效
+ *  - 通过本驱动进行的创建/删除/重命名/修改属性会精确失效相关条目及其父目录
+ *  - 写入和截断只在句柄首次写入和关闭时失效，期间该路径的信息不写入缓存，
+ *    连续写入不会反复获取全局锁、也不会让其它路径正在加载的结果作废
+ *
+ *  SMB 路径不区分大小写，缓存键统一转为大写
+ */
+@Slf4j
+public class CachingDiskDriver extends FilterDiskDriver {
+
+    private final int maxEntries;
+    private final long ttlMillis;
+
+    // accessOrder=true 的 LinkedHashMap 即为 LRU，所有访问都在 cache 对象上同步
+    private final LinkedHashMap<String, CacheEntry> cache;
+
+    // 每次失效时递增，未命中加载期间若发生过失效则丢弃加载结果，避免把旧数据写回缓存
+    private long generation;
+
+    // 已写入过的句柄 -> 首次写入时的缓存键
+    private final Map<NetworkFile, String> writers = new ConcurrentHashMap<>();
+
+    // 缓存键 -> 已写入且未关闭的句柄数，这些路径的信息不写入缓存
+    private final Map<String, Integer> writing = new ConcurrentHashMap<>();
+
+    // 统计计数
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * @param driver     底层磁盘驱动
+     * @param maxEntries 最大缓存条目数
+     * @param ttlMillis  条目存活时间（毫秒）
+     */
+    public CachingDiskDriver(DiskInterface driver, int maxEntries, long ttlMillis) {
+        super(driver);
+        this.maxEntries = Math.max(1, maxEntries);
+        this.ttlMillis = Math.max(0, ttlMillis);
+        this.cache = new LinkedHashMap<>(Math.min(this.maxEntries, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                if (size() > CachingDiskDriver.this.maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public FileInfo getFileInformation(SrvSession<?> sess, TreeConnection tree, String name) throws IOException {
+        String key = normalizePath(name);
+        CacheEntry entry = lookup(key);
+
+        if (entry != null && entry.hasInfo) {
+            hits.increment();
+            return copyOf(entry.info);
+        }
+
+        misses.increment();
+        long gen = currentGeneration();
+        FileInfo info = driver.getFileInformation(sess, tree, name);
+        store(key, new CacheEntry(copyOf(info), statusOf(info), true), gen);
+        return info;
+    }
+
+    @Override
+    public FileStatus fileExists(SrvSession<?> sess, TreeConnection tree, String name) {
+        String key = normalizePath(name);
+        CacheEntry entry = lookup(key);
+
+        if (entry != null) {
+            hits.increment();
+            return entry.status;
+        }
+
+        misses.increment();
+        long gen = currentGeneration();
+        FileStatus status = driver.fileExists(sess, tree, name);
+
+        // Unknown 不缓存，下次仍交给底层驱动判断
+        if (status != FileStatus.Unknown) {
+            store(key, new CacheEntry(null, status, false), gen);
+        }
+        return status;
+    }
+
+    @Override
+    public NetworkFile createFile(SrvSession<?> sess, TreeConnection tree, FileOpenParams params) throws IOException {
+        try {
+            return driver.createFile(sess, tree, params);
+        } finally {
+            invalidate(params.getPath());
+        }
+    }
+
+    @Override
+    public void createDirectory(SrvSession<?> sess, TreeConnection tree, FileOpenParams params) throws IOException {
+        try {
+            driver.createDirectory(sess, tree, params);
+        } finally {
+            invalidate(params.getPath());
+        }
+    }
+
+    @Override
+    public NetworkFile openFile(SrvSession<?> sess, TreeConnection tree, FileOpenParams params) throws IOException {
+        try {
+            return driver.openFile(sess, tree, params);
+        } finally {
+            // 覆盖/截断方式的打开会改变文件大小和时间
+            if (!params.isReadOnlyAccess()) {
+                invalidate(params.getPath());
+            }
+        }
+    }
+
+    @Override
+    public void deleteFile(SrvSession<?> sess, TreeConnection tree, String name) throws IOException {
+        try {
+            driver.deleteFile(sess, tree, name);
+        } finally {
+            invalidate(name);
+        }
+    }
+
+    @Override
+    public void deleteDirectory(SrvSession<?> sess, TreeConnection tree, String dir) throws IOException {
+        try {
+            driver.deleteDirectory(sess, tree, dir);
+        } finally {
+            invalidateTree(dir);
+        }
+    }
+
+    @Override
+    public void renameFile(SrvSession<?> sess, TreeConnection tree, String oldName, String newName,
+                           NetworkFile netFile) throws IOException {
+        try {
+            driver.renameFile(sess, tree, oldName, newName, netFile);
+        } finally {
+            // 目录重命名时其下所有子路径都已失效
+            invalidateTree(oldName);
+            invalidateTree(newName);
+        }
+    }
+
+    @Override
+    public void setFileInformation(SrvSession<?> sess, TreeConnection tree, String name, FileInfo info) throws IOException {
+        try {
+            driver.setFileInformation(sess, tree, name, info);
+        } finally {
+            invalidate(name);
+        }
+    }
+
+    @Override
+    public int writeFile(SrvSession<?> sess, TreeConnection tree, NetworkFile file,
+                         byte[] buf, int bufoff, int siz, long fileoff) throws IOException {
+        try {
+            return driver.writeFile(sess, tree, file, buf, bufoff, siz, fileoff);
+        } finally {
+            beginWrite(file);
+        }
+    }
+
+    @Override
+    public void truncateFile(SrvSession<?> sess, TreeConnection tree, NetworkFile file, long siz) throws IOException {
+        try {
+            driver.truncateFile(sess, tree, file, siz);
+        } finally {
+            beginWrite(file);
+        }
+    }
+
+    @Override
+    public void closeFile(SrvSession<?> sess, TreeConnection tree, NetworkFile file) throws IOException {
+        try {
+            driver.closeFile(sess, tree, file);
+        } finally {
+            String written = endWrite(file);
+            // 关闭时可能更新修改时间，或执行 delete-on-close
+            if (written != null || file.getWriteCount() > 0 || file.hasDeleteOnClose()) {
+                invalidateFile(file);
+            }
+            // 写入期间被重命名时，原路径同样失效
+            if (written != null && file.getFullName() != null && !written.equals(normalizePath(file.getFullName()))) {
+                invalidate(written);
+            }
+        }
+    }
+
+    /**
+     * 清空全部缓存
+     */
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+            generation++;
+        }
+        log.debug("元数据缓存已清空");
+    }
+
+    /**
+     * 失效在 SMB 之外修改的路径，目录同时失效其下的所有子路径
+     */
+    public void invalidateExternal(String path, boolean directory) {
+        if (directory) {
+            invalidateTree(path);
+        } else {
+            invalidate(path);
+        }
+    }
+
+    /**
+     * 获取缓存统计信息
+     */
+    public CacheStats getStats() {
+        int size;
+        synchronized (cache) {
+            size = cache.size();
+        }
+        return new CacheStats(size, maxEntries, ttlMillis, hits.sum(), misses.sum(),
+                evictions.sum(), invalidations.sum());
+    }
+
+    private CacheEntry lookup(String key) {
+        synchronized (cache) {
+            CacheEntry entry = cache.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAt - System.nanoTime() <= 0) {
+                cache.remove(key);
+                return null;
+            }
+            return entry;
+        }
+    }
+
+    private long currentGeneration() {
+        synchronized (cache) {
+            return generation;
+        }
+    }
+
+    private void store(String key, CacheEntry entry, long gen) {
+        if (ttlMillis == 0) {
+            return;
+        }
+        if (!writing.isEmpty() && writing.containsKey(key)) {
+            return;
+        }
+        synchronized (cache) {
+            if (gen != generation) {
+                return;
+            }
+            // 已有完整信息的条目不要被仅含状态的条目覆盖
+            CacheEntry cur = cache.get(key);
+            if (cur != null && cur.hasInfo && !entry.hasInfo && cur.expiresAt - System.nanoTime() > 0) {
+                return;
+            }
+            cache.put(key, entry);
+        }
+    }
+
+    /**
+     * 句柄首次写入时登记并失效该文件，之后的写入不再获取缓存锁
+     */
+    private void beginWrite(NetworkFile file) {
+        if (file == null || file.getFullName() == null || writers.containsKey(file)) {
+            return;
+        }
+        String key = normalizePath(file.getFullName());
+        if (writers.putIfAbsent(file, key) == null) {
+            writing.merge(key, 1, Integer::sum);
+            invalidateFile(file);
+        }
+    }
+
+    /**
+     * 注销句柄的写入登记
+     *
+     * @return 首次写入时的缓存键，未写入过时返回 null
+     */
+    private String endWrite(NetworkFile file) {
+        String key = writers.remove(file);
+        if (key != null) {
+            writing.computeIfPresent(key, (k, n) -> n > 1 ? n - 1 : null);
+        }
+        return key;
+    }
+
+    private void invalidateFile(NetworkFile file) {
+        if (file != null && file.getFullName() != null) {
+            invalidate(file.getFullName());
+        }
+    }
+
+    /**
+     * 失效指定路径及其父目录
+     */
+    private void invalidate(String path) {
+        if (path == null) {
+            return;
+        }
+        String key = normalizePath(path);
+        synchronized (cache) {
+            generation++;
+            cache.remove(key);
+            cache.remove(parentPath(key));
+        }
+        invalidations.increment();
+    }
+
+    /**
+     * 失效指定路径、其父目录以及其下的所有子路径
+     */
+    private void invalidateTree(String path) {
+        if (path == null) {
+            return;
+        }
+        String key = normalizePath(path);
+        String prefix = key + FileName.DOS_SEPERATOR;
+        synchronized (cache) {
+            generation++;
+            cache.remove(key);
+            cache.remove(parentPath(key));
+            Iterator<String> it = cache.keySet().iterator();
+            while (it.hasNext()) {
+                if (it.next().startsWith(prefix)) {
+                    it.remove();
+                }
+            }
+        }
+        invalidations.increment();
+    }
+
+    private static FileStatus statusOf(FileInfo info) {
+        if (info == null) {
+            return FileStatus.NotExist;
+        }
+        return info.isDirectory() ? FileStatus.DirectoryExists : FileStatus.FileExists;
+    }
+
+    /**
+     * 调用方可能修改返回的 FileInfo，缓存中只保存副本
+     */
+    private static FileInfo copyOf(FileInfo info) {
+        if (info == null) {
+            return null;
+        }
+        FileInfo copy = new FileInfo();
+        copy.copyFrom(info);
+        return copy;
+    }
+
+    private final class CacheEntry {
+        final FileInfo info;
+        final FileStatus status;
+        final boolean hasInfo;
+        final long expiresAt;
+
+        CacheEntry(FileInfo info, FileStatus status, boolean hasInfo) {
+            this.info = info;
+            this.status = status;
+            this.hasInfo = hasInfo;
+            this.expiresAt = System.nanoTime() + ttlMillis * 1_000_000L;
+        }
+    }
+
+    /**
+     * 元数据缓存统计信息
+     */
+    public static class CacheStats {
+        private final int size;
+        private final int maxEntries;
+        private final long ttlMillis;
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long invalidations;
+
+        public CacheStats(int size, int maxEntries, long ttlMillis, long hits, long misses,
+                          long evictions, long invalidations) {
+            this.size = size;
+            this.maxEntries = maxEntries;
+            this.ttlMillis = ttlMillis;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.invalidations = invalidations;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public long getTtlMillis() {
+            return ttlMillis;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public long getInvalidations() {
+            return invalidations;
+        }
+
+        public double getHitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0.0 : (double) hits / total;
+        }
+
+        /**
+         * 合计多个共享的缓存统计，a 为 null 时直接返回 b
+         */
+        public static CacheStats combine(CacheStats a, CacheStats b) {
+            if (a == null) {
+                return b;
+            }
+            return new CacheStats(a.size + b.size, a.maxEntries + b.maxEntries, a.ttlMillis, a.hits + b.hits,
+                    a.misses + b.misses, a.evictions + b.evictions, a.invalidations + b.invalidations);
+        }
+    }
+}
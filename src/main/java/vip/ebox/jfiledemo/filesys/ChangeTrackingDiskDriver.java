@@ -0,0 +1,198 @@
+package vip.ebox.jfiledemo.filesys;
+
+import org.filesys.server.SrvSession;
+import org.filesys.server.filesys.*;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/23  11:30
+ * @Description: 记录通过 SMB 修改的路径
+ *  通过 SMB 的新建、写入、截断、重命名、删除与属性修改由协议处理器直接通知客户端，并由各驱动失效自己的缓存；
+ *  同一修改写到磁盘后还会产生 WatchService 事件，ShareChangeWatcher 按本驱动的记录跳过这些事件，
+ *  不重复通知客户端，也不重复失效元数据缓存与目录列表索引
+ *
+ *  操作前后各记录一次时间，事件在最后一次记录之后 windowMillis 内到达即视为服务器自身的修改；
+ *  启用延迟写入时窗口需包含最长的缓冲时间，定时写出的数据同样不会被当作外部修改
+ */
+public class ChangeTrackingDiskDriver extends FilterDiskDriver {
+
+    // 记录数达到该值时清理已过期的路径
+    private static final int PURGE_THRESHOLD = 4096;
+
+    private final long windowNanos;
+
+    // 规范化的共享内路径 -> 最近一次修改的时间（nanoTime）
+    private final Map<String, Long> changes = new ConcurrentHashMap<>();
+
+    // 下次允许清理的时间，大量路径同时在窗口内时不在每次写入上遍历
+    private volatile long nextPurge;
+
+    /**
+     * @param windowMillis 修改之后多长时间内的本地事件视为服务器自身的修改（毫秒）
+     */
+    public ChangeTrackingDiskDriver(DiskInterface driver, long windowMillis) {
+        super(driver);
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, windowMillis));
+    }
+
+    /**
+     * 共享内路径最近是否由本服务器修改过，路径不区分大小写
+     */
+    public boolean isOwnChange(String path) {
+        String key = normalizePath(path);
+        Long at = changes.get(key);
+        if (at == null) {
+            return false;
+        }
+        if (System.nanoTime() - at <= windowNanos) {
+            return true;
+        }
+        changes.remove(key, at);
+        return false;
+    }
+
+    @Override
+    public NetworkFile createFile(SrvSession<?> sess, TreeConnection tree, FileOpenParams params) throws IOException {
+        record(params.getPath());
+        try {
+            return driver.createFile(sess, tree, params);
+        } finally {
+            record(params.getPath());
+        }
+    }
+
+    @Override
+    public NetworkFile openFile(SrvSession<?> sess, TreeConnection tree, FileOpenParams params) throws IOException {
+        if (!params.isOverwrite()) {
+            return driver.openFile(sess, tree, params);
+        }
+        // 覆盖方式打开会截断文件
+        record(params.getPath());
+        try {
+            return driver.openFile(sess, tree, params);
+        } finally {
+            record(params.getPath());
+        }
+    }
+
+    @Override
+    public void createDirectory(SrvSession<?> sess, TreeConnection tree, FileOpenParams params) throws IOException {
+        record(params.getPath());
+        try {
+            driver.createDirectory(sess, tree, params);
+        } finally {
+            record(params.getPath());
+        }
+    }
+
+    @Override
+    public void deleteFile(SrvSession<?> sess, TreeConnection tree, String name) throws IOException {
+        record(name);
+        try {
+            driver.deleteFile(sess, tree, name);
+        } finally {
+            record(name);
+        }
+    }
+
+    @Override
+    public void deleteDirectory(SrvSession<?> sess, TreeConnection tree, String dir) throws IOException {
+        record(dir);
+        try {
+            driver.deleteDirectory(sess, tree, dir);
+        } finally {
+            record(dir);
+        }
+    }
+
+    @Override
+    public void renameFile(SrvSession<?> sess, TreeConnection tree, String oldName, String newName,
+                           NetworkFile netFile) throws IOException {
+        record(oldName);
+        record(newName);
+        try {
+            driver.renameFile(sess, tree, oldName, newName, netFile);
+        } finally {
+            record(oldName);
+            record(newName);
+        }
+    }
+
+    @Override
+    public void setFileInformation(SrvSession<?> sess, TreeConnection tree, String name, FileInfo info) throws IOException {
+        record(name);
+        try {
+            driver.setFileInformation(sess, tree, name, info);
+        } finally {
+            record(name);
+        }
+    }
+
+    @Override
+    public int writeFile(SrvSession<?> sess, TreeConnection tree, NetworkFile file,
+                         byte[] buf, int bufoff, int siz, long fileoff) throws IOException {
+        record(file.getFullName());
+        try {
+            return driver.writeFile(sess, tree, file, buf, bufoff, siz, fileoff);
+        } finally {
+            record(file.getFullName());
+        }
+    }
+
+    @Override
+    public void truncateFile(SrvSession<?> sess, TreeConnection tree, NetworkFile file, long siz) throws IOException {
+        record(file.getFullName());
+        try {
+            driver.truncateFile(sess, tree, file, siz);
+        } finally {
+            record(file.getFullName());
+        }
+    }
+
+    @Override
+    public void flushFile(SrvSession<?> sess, TreeConnection tree, NetworkFile file) throws IOException {
+        if (file.getWriteCount() == 0) {
+            driver.flushFile(sess, tree, file);
+            return;
+        }
+        record(file.getFullName());
+        try {
+            driver.flushFile(sess, tree, file);
+        } finally {
+            record(file.getFullName());
+        }
+    }
+
+    @Override
+    public void closeFile(SrvSession<?> sess, TreeConnection tree, NetworkFile file) throws IOException {
+        // 关闭时写出缓冲的数据、设置修改时间或按 delete-on-close 删除文件
+        if (file.getWriteCount() == 0 && !file.hasDeleteOnClose()) {
+            driver.closeFile(sess, tree, file);
+            return;
+        }
+        record(file.getFullName());
+        try {
+            driver.closeFile(sess, tree, file);
+        } finally {
+            record(file.getFullName());
+        }
+    }
+
+    private void record(String path) {
+        if (path == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        changes.put(normalizePath(path), now);
+        if (changes.size() > PURGE_THRESHOLD && now - nextPurge >= 0) {
+            nextPurge = now + windowNanos;
+            changes.values().removeIf(at -> now - at > windowNanos);
+        }
+    }
+}
@@ -0,0 +1,408 @@
+package vip.ebox.jfiledemo.filesys;
+
+import org.filesys.server.filesys.FileAttribute;
+import org.filesys.server.filesys.FileInfo;
+import org.filesys.smb.server.disk.JavaNIODiskDriver;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/18  10:40
+ * @Description: 单个目录的列表索引
+ *  保存按名称（不区分大小写）排序的文件名数组以及紧凑存储的属性数组，
+ *  前缀（foo*）与后缀（*.iso）通配符可通过二分查找直接定位结果区间，无需扫描整个目录
+ *
+ *  索引以不可变快照的形式发布，正在进行的搜索始终读取自己的快照；
+ *  驱动的增删改操作只记录变更的文件名，在下一次搜索时批量合并进新快照；
+ *  目录修改时间变化时重新读取目录的文件名列表，只对新增和已记录变更的文件执行 stat
+ */
+public class DirectoryIndex {
+
+    // 每个条目在 packed 数组中占用的 long 个数：大小、修改时间、属性
+    static final int SLOT_SIZE = 0;
+    static final int SLOT_MTIME = 1;
+    static final int SLOT_ATTR = 2;
+    static final int SLOTS = 3;
+
+    private final Path dir;
+
+    // 当前快照
+    private volatile Snapshot snapshot;
+
+    // 构建快照时目录的修改时间及构建时间，用于感知 SMB 之外的修改
+    private long dirModifyTime;
+    private long builtAt;
+
+    // 自上次合并以来发生变化的文件名（大写名 -> 原始名）
+    private final Map<String, String> dirty = new ConcurrentHashMap<>();
+
+    public DirectoryIndex(Path dir) {
+        this.dir = dir;
+    }
+
+    public Path getDirectory() {
+        return dir;
+    }
+
+    /**
+     * 获取最新快照，必要时重建或合并变更
+     *
+     * @param maxAgeMillis 快照最长使用时间，超过后整体重建
+     */
+    public synchronized Snapshot snapshot(long maxAgeMillis) throws IOException {
+        long dirTime = Files.getLastModifiedTime(dir).toMillis();
+        long now = System.currentTimeMillis();
+
+        if (snapshot == null || now - builtAt > maxAgeMillis) {
+            rebuild(dirTime, now);
+        } else if (dirTime != dirModifyTime) {
+            // 目录有增删（无论是否经由 SMB），重新读取文件名列表才能看到 SMB 之外创建的文件
+            rescan(dirTime);
+        } else if (!dirty.isEmpty()) {
+            merge();
+        }
+        return snapshot;
+    }
+
+    /**
+     * 记录目录下某个文件发生了变化（创建、删除、写入、重命名等）
+     */
+    public void markDirty(String name) {
+        dirty.put(name.toUpperCase(Locale.ROOT), name);
+    }
+
+    /**
+     * 当前快照中的条目数，未构建时返回 0
+     */
+    public int size() {
+        Snapshot snap = snapshot;
+        return snap != null ? snap.size() : 0;
+    }
+
+    private void rebuild(long dirTime, long now) throws IOException {
+        dirty.clear();
+
+        List<String> names = listNames();
+        String[] nameArr = new String[names.size()];
+        long[] packed = new long[names.size() * SLOTS];
+        int cnt = 0;
+        for (String name : names) {
+            if (stat(dir.resolve(name), packed, cnt)) {
+                nameArr[cnt++] = name;
+            }
+        }
+
+        snapshot = new Snapshot(cnt == nameArr.length ? nameArr : Arrays.copyOf(nameArr, cnt),
+                cnt * SLOTS == packed.length ? packed : Arrays.copyOf(packed, cnt * SLOTS));
+        dirModifyTime = dirTime;
+        builtAt = now;
+    }
+
+    /**
+     * 重新读取目录的文件名列表，未变化的条目沿用当前快照的属性，新增及已记录变更的条目重新 stat
+     */
+    private void rescan(long dirTime) throws IOException {
+        Snapshot cur = snapshot;
+        Set<String> changed = new HashSet<>();
+        Iterator<String> it = dirty.keySet().iterator();
+        while (it.hasNext()) {
+            changed.add(it.next());
+            it.remove();
+        }
+
+        List<String> names = listNames();
+        String[] nameArr = new String[names.size()];
+        long[] packed = new long[names.size() * SLOTS];
+        int cnt = 0;
+        for (String name : names) {
+            int pos = changed.contains(name.toUpperCase(Locale.ROOT)) ? -1 : cur.indexOf(name);
+            if (pos >= 0 && cur.names[pos].equals(name)) {
+                System.arraycopy(cur.packed, pos * SLOTS, packed, cnt * SLOTS, SLOTS);
+                nameArr[cnt++] = name;
+            } else if (stat(dir.resolve(name), packed, cnt)) {
+                nameArr[cnt++] = name;
+            }
+        }
+
+        snapshot = new Snapshot(cnt == nameArr.length ? nameArr : Arrays.copyOf(nameArr, cnt),
+                cnt * SLOTS == packed.length ? packed : Arrays.copyOf(packed, cnt * SLOTS));
+        dirModifyTime = dirTime;
+    }
+
+    private List<String> listNames() throws IOException {
+        List<String> names = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path path : stream) {
+                names.add(path.getFileName().toString());
+            }
+        }
+        names.sort(String.CASE_INSENSITIVE_ORDER);
+        return names;
+    }
+
+    /**
+     * 将变化的条目合并进新快照，只对变化的文件执行 stat
+     */
+    private void merge() {
+        Snapshot cur = snapshot;
+        TreeMap<String, long[]> changes = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        Iterator<Map.Entry<String, String>> it = dirty.entrySet().iterator();
+        while (it.hasNext()) {
+            String name = it.next().getValue();
+            it.remove();
+            long[] attrs = new long[SLOTS];
+            changes.put(name, stat(dir.resolve(name), attrs, 0) ? attrs : null);
+        }
+
+        // 只有属性变化时复制属性数组后更新，已发布的快照可能正被搜索读取，不能原地修改
+        boolean structural = false;
+        for (Map.Entry<String, long[]> change : changes.entrySet()) {
+            int pos = cur.indexOf(change.getKey());
+            if (pos < 0 || change.getValue() == null) {
+                structural = true;
+                break;
+            }
+        }
+        if (!structural) {
+            long[] packed = cur.packed.clone();
+            for (Map.Entry<String, long[]> change : changes.entrySet()) {
+                int pos = cur.indexOf(change.getKey());
+                System.arraycopy(change.getValue(), 0, packed, pos * SLOTS, SLOTS);
+            }
+            snapshot = new Snapshot(cur.names, packed, cur.suffixOrder);
+            return;
+        }
+
+        // 有增删时做一次有序归并
+        String[] names = new String[cur.size() + changes.size()];
+        long[] packed = new long[names.length * SLOTS];
+        int cnt = 0;
+        int i = 0;
+        Iterator<Map.Entry<String, long[]>> ci = changes.entrySet().iterator();
+        Map.Entry<String, long[]> change = ci.hasNext() ? ci.next() : null;
+
+        while (i < cur.size() || change != null) {
+            int cmp = change == null ? -1 : (i >= cur.size() ? 1
+                    : String.CASE_INSENSITIVE_ORDER.compare(cur.names[i], change.getKey()));
+            if (cmp < 0) {
+                names[cnt] = cur.names[i];
+                System.arraycopy(cur.packed, i * SLOTS, packed, cnt * SLOTS, SLOTS);
+                cnt++;
+                i++;
+            } else {
+                if (change.getValue() != null) {
+                    names[cnt] = change.getKey();
+                    System.arraycopy(change.getValue(), 0, packed, cnt * SLOTS, SLOTS);
+                    cnt++;
+                }
+                if (cmp == 0) {
+                    i++;
+                }
+                change = ci.hasNext() ? ci.next() : null;
+            }
+        }
+
+        snapshot = new Snapshot(Arrays.copyOf(names, cnt), Arrays.copyOf(packed, cnt * SLOTS));
+    }
+
+    /**
+     * 读取文件属性并写入 packed 数组，属性的计算方式与 JavaNIOSearchContext 保持一致
+     *
+     * @return 文件不存在时返回 false
+     */
+    static boolean stat(Path path, long[] packed, int idx) {
+        BasicFileAttributes attrs;
+        boolean hidden = false;
+        try {
+            attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            hidden = Files.isHidden(path);
+        } catch (IOException e) {
+            return false;
+        }
+
+        String name = path.getFileName().toString();
+        int attr = 0;
+        long size = 0;
+
+        if (attrs.isDirectory()) {
+            attr = FileAttribute.Directory;
+        } else {
+            size = attrs.size();
+            if (!Files.isWritable(path)) {
+                attr += FileAttribute.ReadOnly;
+            }
+            if (name.equalsIgnoreCase("Desktop.ini") || name.equalsIgnoreCase("Thumbs.db") || name.startsWith(".")) {
+                hidden = true;
+            }
+        }
+        if (hidden) {
+            attr += FileAttribute.Hidden;
+        }
+
+        int base = idx * SLOTS;
+        packed[base + SLOT_SIZE] = size;
+        packed[base + SLOT_MTIME] = attrs.lastModifiedTime().toMillis();
+        packed[base + SLOT_ATTR] = attr;
+        return true;
+    }
+
+    /**
+     * 目录索引快照，names 与 packed 一经发布不再修改
+     */
+    public static final class Snapshot {
+
+        final String[] names;
+        final long[] packed;
+
+        // 按反转名称排序的下标，首次后缀查询时生成
+        private volatile int[] suffixOrder;
+
+        Snapshot(String[] names, long[] packed) {
+            this(names, packed, null);
+        }
+
+        /**
+         * 名称不变时沿用原快照的后缀排序下标
+         */
+        Snapshot(String[] names, long[] packed, int[] suffixOrder) {
+            this.names = names;
+            this.packed = packed;
+            this.suffixOrder = suffixOrder;
+        }
+
+        public int size() {
+            return names.length;
+        }
+
+        public String name(int idx) {
+            return names[idx];
+        }
+
+        boolean isDirectory(int idx) {
+            return (packed[idx * SLOTS + SLOT_ATTR] & FileAttribute.Directory) != 0;
+        }
+
+        /**
+         * 按名称精确查找（不区分大小写）
+         */
+        int indexOf(String name) {
+            int pos = Arrays.binarySearch(names, name, String.CASE_INSENSITIVE_ORDER);
+            return pos >= 0 ? pos : -1;
+        }
+
+        /**
+         * 查找以 prefix 开头的条目区间 [from, to)
+         */
+        int[] prefixRange(String prefix) {
+            int from = lowerBound(prefix);
+            int to = from;
+            while (to < names.length && names[to].regionMatches(true, 0, prefix, 0, prefix.length())) {
+                to++;
+            }
+            return new int[]{from, to};
+        }
+
+        /**
+         * 查找以 suffix 结尾的条目，返回按反转名称排序的下标数组及区间 [from, to)
+         */
+        int[] suffixRange(String suffix) {
+            int[] order = suffixOrder();
+            int lo = 0;
+            int hi = order.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (compareReversed(names[order[mid]], suffix, suffix.length()) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            int to = lo;
+            while (to < order.length && endsWithIgnoreCase(names[order[to]], suffix)) {
+                to++;
+            }
+            return new int[]{lo, to};
+        }
+
+        int[] suffixOrder() {
+            int[] order = suffixOrder;
+            if (order == null) {
+                Integer[] boxed = new Integer[names.length];
+                for (int i = 0; i < boxed.length; i++) {
+                    boxed[i] = i;
+                }
+                Arrays.sort(boxed, (a, b) -> compareReversed(names[a], names[b], Integer.MAX_VALUE));
+                order = new int[boxed.length];
+                for (int i = 0; i < order.length; i++) {
+                    order[i] = boxed[i];
+                }
+                suffixOrder = order;
+            }
+            return order;
+        }
+
+        /**
+         * 将条目信息填充到 FileInfo
+         */
+        void fillInfo(int idx, String relPath, FileInfo info) {
+            int base = idx * SLOTS;
+            long size = packed[base + SLOT_SIZE];
+            long mtime = packed[base + SLOT_MTIME];
+            int attr = (int) packed[base + SLOT_ATTR];
+
+            info.setFileName(names[idx]);
+            info.setSize(size);
+            info.setAllocationSize((attr & FileAttribute.Directory) != 0 ? 0L : (size + 512L) & 0xFFFFFFFFFFFFFE00L);
+            info.setFileAttributes(attr);
+            info.setFileId((relPath + names[idx]).hashCode());
+            info.setModifyDateTime(mtime);
+            info.setChangeDateTime(mtime);
+            info.setAccessDateTime(mtime);
+            info.setCreationDateTime(Math.min(JavaNIODiskDriver.getGlobalCreateDateTime(), mtime));
+        }
+
+        private int lowerBound(String key) {
+            int lo = 0;
+            int hi = names.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (String.CASE_INSENSITIVE_ORDER.compare(names[mid], key) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        /**
+         * 从末尾开始逐字符比较（不区分大小写），最多比较 limit 个字符
+         */
+        private static int compareReversed(String a, String b, int limit) {
+            int i = a.length() - 1;
+            int j = b.length() - 1;
+            for (int n = 0; n < limit && i >= 0 && j >= 0; n++, i--, j--) {
+                char c1 = Character.toLowerCase(Character.toUpperCase(a.charAt(i)));
+                char c2 = Character.toLowerCase(Character.toUpperCase(b.charAt(j)));
+                if (c1 != c2) {
+                    return c1 - c2;
+                }
+            }
+            if (limit != Integer.MAX_VALUE && j < 0) {
+                return 0;
+            }
+            return (i + 1) - (j + 1);
+        }
+
+        private static boolean endsWithIgnoreCase(String name, String suffix) {
+            return name.length() >= suffix.length()
+                    && name.regionMatches(true, name.length() - suffix.length(), suffix, 0, suffix.length());
+        }
+    }
+}
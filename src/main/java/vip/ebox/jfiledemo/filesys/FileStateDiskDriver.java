@@ -0,0 +1,712 @@
+package vip.ebox.jfiledemo.filesys;
+
+import lombok.extern.slf4j.Slf4j;
+import org.filesys.locking.FileLock;
+import org.filesys.locking.LockConflictException;
+import org.filesys.locking.NotLockedException;
+import org.filesys.server.SrvSession;
+import org.filesys.server.config.InvalidConfigurationException;
+import org.filesys.server.filesys.*;
+import org.filesys.server.filesys.cache.FileState;
+import org.filesys.server.filesys.cache.FileStateCache;
+import org.filesys.server.filesys.cache.FileStateLockManager;
+import org.filesys.server.filesys.cache.NetworkFileStateInterface;
+import org.filesys.server.filesys.cache.StandaloneFileStateCache;
+import org.filesys.server.filesys.cache.cluster.ClusterFileLock;
+import org.filesys.server.filesys.cache.cluster.ClusterFileStateCache;
+import org.filesys.server.filesys.cache.cluster.ClusterNode;
+import org.filesys.server.locking.FileLockingInterface;
+import org.filesys.server.locking.InvalidOplockStateException;
+import org.filesys.server.locking.LockManager;
+import org.filesys.server.locking.LockParams;
+import org.filesys.server.locking.OpLockDetails;
+import org.filesys.server.locking.OpLockInterface;
+import org.filesys.server.locking.OpLockManager;
+import org.filesys.server.locking.OplockOwner;
+import org.filesys.smb.OpLockType;
+import org.filesys.smb.server.SMBSrvPacket;
+import org.filesys.smb.server.SMBSrvSession;
+import org.filesys.smb.server.notify.NotifyChangeHandler;
+import org.springframework.extensions.config.element.GenericConfigElement;
+import vip.ebox.jfiledemo.cluster.StateCluster;
+import vip.ebox.jfiledemo.metrics.LatencyRecorder;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/19  22:10
+ * @Description: 带文件状态缓存的磁盘驱动
+ *  JavaNIODiskDriver 不维护文件状态，同一文件的多个打开之间没有共享模式检查，也不支持字节范围锁。
+ *  本驱动为每个共享维护一个 jFileServer 的 StandaloneFileStateCache：
+ *  - 打开/创建前按共享模式检查已有的打开，冲突时直接返回共享冲突，不访问磁盘
+ *  - 打开期间文件是否存在由状态直接回答，不再经过下层驱动
+ *  - 实现 FileLockingInterface，字节范围锁记录在文件状态上
+ *  - 实现 OpLockInterface，按客户端请求授予 batch / exclusive / level II 机会锁，客户端可在本地缓存文件数据与属性；
+ *    其它客户端的打开与持有的机会锁冲突时，协议处理器把请求挂起为 DeferredRequest 并通知持有者中断，
+ *    持有者确认（写回缓存、降级或释放）后挂起的请求重新排队，超过 15 秒未确认则按中断失败处理
+ *  - 关闭后状态保留 expiryMillis，期间再次打开复用同一状态；后台线程按 reaperIntervalMillis 清理过期状态
+ *  启用集群时改用 StateCluster 创建的 Hazelcast 集群状态缓存，打开计数、字节范围锁与机会锁在各实例间共享
+ *
+ *  协议处理器只对共享的最外层驱动检查 FileLockingInterface / OpLockInterface，本驱动需要放在驱动链最外层
+ */
+@Slf4j
+public class FileStateDiskDriver extends FilterDiskDriver implements FileLockingInterface, OpLockInterface {
+
+    // FileStateCache 允许的最小间隔
+    private static final long MIN_EXPIRY = 15000;
+    private static final long MIN_REAPER_INTERVAL = 5000;
+
+    private final FileStateCache stateCache;
+    private final long expiryMillis;
+    private final long reaperIntervalMillis;
+    private final StateLockManager lockManager;
+    private final ScheduledExecutorService reaper;
+    private final boolean oplocksEnabled;
+
+    // 统计计数
+    private final LongAdder opens = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder sharingViolations = new LongAdder();
+    private final LongAdder locks = new LongAdder();
+    private final LongAdder lockConflicts = new LongAdder();
+    private final LongAdder reaperCycles = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LatencyRecorder lockLatency = new LatencyRecorder();
+
+    // 机会锁统计，授予次数按 OpLockType 的序号计数
+    private final LongAdder[] oplockGrants = newCounters(OpLockType.values().length);
+    private final LongAdder oplockRejects = new LongAdder();
+    private final LongAdder oplockBreaks = new LongAdder();
+    private final LongAdder oplockBreakTimeouts = new LongAdder();
+    private final LatencyRecorder oplockBreakLatency = new LatencyRecorder();
+
+    /**
+     * @param driver               底层磁盘驱动
+     * @param shareName            共享名称，用于清理线程的名称
+     * @param expiryMillis         文件全部关闭后状态的保留时间（毫秒），小于 15000 时按 15000
+     * @param reaperIntervalMillis 清理过期状态的间隔（毫秒），小于 5000 时按 5000
+     * @param oplocksEnabled       是否向客户端授予机会锁
+     */
+    public FileStateDiskDriver(DiskInterface driver, String shareName, long expiryMillis, long reaperIntervalMillis,
+                               boolean oplocksEnabled) {
+        this(driver, shareName, null, expiryMillis, reaperIntervalMillis, oplocksEnabled);
+    }
+
+    /**
+     * @param cluster 集群文件状态，为 null 时使用本实例的 StandaloneFileStateCache
+     */
+    public FileStateDiskDriver(DiskInterface driver, String shareName, StateCluster cluster, long expiryMillis,
+                               long reaperIntervalMillis, boolean oplocksEnabled) {
+        super(driver);
+        this.oplocksEnabled = oplocksEnabled;
+        this.expiryMillis = Math.max(MIN_EXPIRY, expiryMillis);
+        this.reaperIntervalMillis = Math.max(MIN_REAPER_INTERVAL, reaperIntervalMillis);
+
+        FileStateCache cache;
+        if (cluster != null) {
+            cache = cluster.createStateCache(shareName);
+        } else {
+            cache = new StandaloneFileStateCache();
+            try {
+                // 状态表在 initializeCache 中创建，间隔使用毫秒在下面单独设置
+                cache.initializeCache(new GenericConfigElement("stateCache"), null);
+            } catch (InvalidConfigurationException e) {
+                throw new IllegalStateException("初始化文件状态缓存失败: " + e.getMessage(), e);
+            }
+        }
+        cache.setCaseSensitive(false);
+        cache.setFileStateExpireInterval(this.expiryMillis);
+        cache.setCheckInterval(this.reaperIntervalMillis);
+        this.stateCache = cache;
+
+        this.lockManager = new StateLockManager(cache);
+        if (cache instanceof ClusterFileStateCache) {
+            // 其它实例请求中断本实例持有的机会锁时，由集群交给本驱动的机会锁管理器处理
+            ((ClusterFileStateCache) cache).getCluster().setOpLockManager(lockManager);
+        }
+        cache.stateCacheStarted();
+        if (oplocksEnabled) {
+            // 后台线程检查超时未确认的机会锁中断
+            lockManager.startLockManager("jfs-oplock-breaks-" + shareName, null);
+        }
+
+        this.reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "jfs-filestate-reaper-" + shareName);
+            t.setDaemon(true);
+            return t;
+        });
+        reaper.scheduleWithFixedDelay(this::reap, this.reaperIntervalMillis, this.reaperIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    public FileStateCache getStateCache() {
+        return stateCache;
+    }
+
+    /**
+     * 其它实例上的修改通过集群消息转为本实例客户端的变更通知，非集群状态缓存时忽略
+     */
+    public void setNotifyChangeHandler(NotifyChangeHandler handler) {
+        if (stateCache instanceof ClusterFileStateCache && handler != null) {
+            ((ClusterFileStateCache) stateCache).getCluster().setNotifyChangeHandler(handler);
+        }
+    }
+
+    /**
+     * 文件状态是否保存在集群中
+     */
+    public boolean isClustered() {
+        return stateCache instanceof ClusterFileStateCache;
+    }
+
+    @Override
+    public LockManager getLockManager(SrvSession sess, TreeConnection tree) {
+        return lockManager;
+    }
+
+    @Override
+    public OpLockManager getOpLockManager(SrvSession sess, TreeConnection tree) {
+        return lockManager;
+    }
+
+    @Override
+    public boolean isOpLocksEnabled(SrvSession sess, TreeConnection tree) {
+        return oplocksEnabled;
+    }
+
+    @Override
+    public NetworkFile openFile(SrvSession<?> sess, TreeConnection tree, FileOpenParams params) throws IOException {
+        FileState state = lookup(params.getPath());
+        FileAccessToken token = grant(params, state);
+        NetworkFile file;
+        try {
+            file = driver.openFile(sess, tree, params);
+        } catch (IOException | RuntimeException e) {
+            stateCache.releaseFileAccess(state, token);
+            throw e;
+        }
+        attach(file, state, token);
+        return file;
+    }
+
+    @Override
+    public NetworkFile createFile(SrvSession<?> sess, TreeConnection tree, FileOpenParams params) throws IOException {
+        FileState state = lookup(params.getPath());
+        FileAccessToken token = grant(params, state);
+        NetworkFile file;
+        try {
+            file = driver.createFile(sess, tree, params);
+        } catch (IOException | RuntimeException e) {
+            stateCache.releaseFileAccess(state, token);
+            throw e;
+        }
+        attach(file, state, token);
+        return file;
+    }
+
+    @Override
+    public void closeFile(SrvSession<?> sess, TreeConnection tree, NetworkFile file) throws IOException {
+        try {
+            driver.closeFile(sess, tree, file);
+        } finally {
+            FileState state = stateOf(file);
+            if (state != null && file.hasAccessToken()) {
+                FileAccessToken token = file.getAccessToken();
+                file.setAccessToken(null);
+                if (stateCache.releaseFileAccess(state, token) == 0) {
+                    if (file.hasDeleteOnClose()) {
+                        stateCache.removeFileState(state.getPath());
+                    } else {
+                        state.setExpiryTime(System.currentTimeMillis() + expiryMillis);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public FileStatus fileExists(SrvSession<?> sess, TreeConnection tree, String name) {
+        // 只有仍被打开的文件才能确定存在，已关闭的状态可能已被共享目录之外的修改改变
+        FileState state = stateCache.findFileState(name);
+        if (state != null && state.getOpenCount() > 0) {
+            FileStatus status = state.getFileStatus();
+            if (status == FileStatus.FileExists || status == FileStatus.DirectoryExists) {
+                hits.increment();
+                return status;
+            }
+        }
+        misses.increment();
+        return driver.fileExists(sess, tree, name);
+    }
+
+    @Override
+    public void deleteFile(SrvSession<?> sess, TreeConnection tree, String name) throws IOException {
+        // 删除失败时文件仍在，保留其状态
+        driver.deleteFile(sess, tree, name);
+        forget(name);
+    }
+
+    @Override
+    public void deleteDirectory(SrvSession<?> sess, TreeConnection tree, String dir) throws IOException {
+        driver.deleteDirectory(sess, tree, dir);
+        forget(dir);
+    }
+
+    @Override
+    public void renameFile(SrvSession<?> sess, TreeConnection tree, String oldName, String newName,
+                           NetworkFile netFile) throws IOException {
+        FileState state = stateCache.findFileState(oldName);
+        FileState target = stateCache.findFileState(newName);
+        // 仍被打开的目标不能被替换，否则其它会话的共享模式与锁随状态一起丢失；仅大小写不同的重命名是同一个状态
+        if (target != null && target != state && target.getOpenCount() > 0) {
+            sharingViolations.increment();
+            throw new FileSharingException("重命名的目标仍被打开: " + newName);
+        }
+
+        driver.renameFile(sess, tree, oldName, newName, netFile);
+        if (target != null && target != state) {
+            // 目标路径上残留的状态（之前被删除或被替换的同名文件）不再有效
+            stateCache.removeFileState(newName);
+        }
+        if (state != null) {
+            stateCache.renameFileState(newName, state, state.isDirectory());
+        }
+    }
+
+    /**
+     * 清理已过期且没有打开的文件状态，返回清理的数量
+     */
+    public int reap() {
+        try {
+            int count = stateCache.removeExpiredFileStates();
+            reaperCycles.increment();
+            expired.add(count);
+            if (count > 0) {
+                log.debug("已清理 {} 个过期文件状态，剩余 {}", count, stateCache.numberOfStates());
+            }
+            return count;
+        } catch (RuntimeException e) {
+            log.warn("清理文件状态失败: {}", e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * 停止清理线程
+     */
+    public void shutdown() {
+        reaper.shutdown();
+        lockManager.shutdownRequest();
+        stateCache.stateCacheShuttingDown();
+    }
+
+    /**
+     * 获取文件状态缓存统计信息
+     */
+    public FileStateStats getStats() {
+        return new FileStateStats(stateCache.numberOfStates(), expiryMillis, reaperIntervalMillis, opens.sum(),
+                hits.sum(), misses.sum(), sharingViolations.sum(), locks.sum(), lockConflicts.sum(),
+                reaperCycles.sum(), expired.sum(), lockLatency.snapshot());
+    }
+
+    /**
+     * 获取机会锁统计信息
+     */
+    public OpLockStats getOpLockStats() {
+        return new OpLockStats(oplocksEnabled, oplockGrants[OpLockType.LEVEL_BATCH.ordinal()].sum(),
+                oplockGrants[OpLockType.LEVEL_EXCLUSIVE.ordinal()].sum(),
+                oplockGrants[OpLockType.LEVEL_II.ordinal()].sum(), oplockRejects.sum(), oplockBreaks.sum(),
+                oplockBreakTimeouts.sum(), oplockBreakLatency.snapshot());
+    }
+
+    /**
+     * 查找或创建文件状态，已有状态（文件仍打开或刚关闭不久）计为命中
+     */
+    private FileState lookup(String path) {
+        opens.increment();
+        FileState state = stateCache.findFileState(path);
+        if (state != null) {
+            hits.increment();
+            return state;
+        }
+        misses.increment();
+        return stateCache.findFileState(path, true);
+    }
+
+    private FileAccessToken grant(FileOpenParams params, FileState state) throws IOException {
+        try {
+            return stateCache.grantFileAccess(params, state, FileStatus.Unknown);
+        } catch (FileSharingException e) {
+            sharingViolations.increment();
+            throw e;
+        }
+    }
+
+    /**
+     * 删除后丢弃文件状态；仍有打开时保留状态（其它会话的共享模式与锁仍然有效），只标记为已不存在，
+     * 最后一个句柄关闭后按过期时间清理
+     */
+    private void forget(String path) {
+        FileState state = stateCache.findFileState(path);
+        if (state == null) {
+            return;
+        }
+        if (state.getOpenCount() > 0) {
+            state.setFileStatus(FileStatus.NotExist);
+        } else {
+            stateCache.removeFileState(path);
+        }
+    }
+
+    private void attach(NetworkFile file, FileState state, FileAccessToken token) {
+        state.setFileStatus(file.isDirectory() ? FileStatus.DirectoryExists : FileStatus.FileExists);
+        file.setAccessToken(token);
+        if (file instanceof NIONetworkFile) {
+            ((NIONetworkFile) file).setFileState(state);
+        } else if (file instanceof ScratchNetworkFile) {
+            ((ScratchNetworkFile) file).setFileState(state);
+        }
+    }
+
+    private FileState stateOf(NetworkFile file) {
+        if (file instanceof NetworkFileStateInterface) {
+            FileState state = ((NetworkFileStateInterface) file).getFileState();
+            if (state != null) {
+                return state;
+            }
+        }
+        return file.getFullName() != null ? stateCache.findFileState(file.getFullName()) : null;
+    }
+
+    private static LongAdder[] newCounters(int n) {
+        LongAdder[] counters = new LongAdder[n];
+        for (int i = 0; i < n; i++) {
+            counters[i] = new LongAdder();
+        }
+        return counters;
+    }
+
+    /**
+     * 机会锁中断已得到确认（降级或释放），记录从发出中断到确认的耗时
+     */
+    private void breakCompleted(OpLockDetails oplock) {
+        if (oplock != null && oplock.hasBreakInProgress() && oplock.getOplockBreakTime() > 0) {
+            long millis = Math.max(0, System.currentTimeMillis() - oplock.getOplockBreakTime());
+            oplockBreakLatency.record(TimeUnit.MILLISECONDS.toNanos(millis), true);
+        }
+    }
+
+    /**
+     * 基于文件状态的锁与机会锁管理，在 FileStateLockManager 的基础上统计加锁、机会锁授予与中断
+     */
+    private final class StateLockManager extends FileStateLockManager {
+
+        StateLockManager(FileStateCache cache) {
+            super(cache);
+        }
+
+        @Override
+        public void lockFile(SrvSession sess, TreeConnection tree, NetworkFile file, FileLock lock)
+                throws LockConflictException, IOException {
+            // 目录等未关联状态的句柄不能加锁
+            if (!hasState(file)) {
+                throw new IOException("文件不支持字节范围锁: " + file.getFullName());
+            }
+            locks.increment();
+            long start = System.nanoTime();
+            boolean ok = false;
+            try {
+                super.lockFile(sess, tree, file, lock);
+                ok = true;
+            } catch (LockConflictException e) {
+                lockConflicts.increment();
+                throw e;
+            } finally {
+                // 集群模式下包含远程调用的耗时
+                lockLatency.record(System.nanoTime() - start, ok);
+            }
+        }
+
+        /**
+         * 集群状态只接受带成员信息的 ClusterFileLock，FileStateCache 默认创建的是普通 FileLock
+         */
+        @Override
+        public FileLock createLockObject(SrvSession sess, TreeConnection tree, NetworkFile file, LockParams params) {
+            if (!(stateCache instanceof ClusterFileStateCache)) {
+                return super.createLockObject(sess, tree, file, params);
+            }
+            // 进程号为会话内的锁持有者，ClusterFileLock 再按本成员的优先级区分不同实例上的持有者
+            ClusterNode local = ((ClusterFileStateCache) stateCache).getCluster().getLocalNode();
+            ClusterFileLock lock = new ClusterFileLock(local, params.getOffset(), params.getLength(),
+                    params.getOwner());
+            lock.setFlags(params.getFlags());
+            return lock;
+        }
+
+        @Override
+        public void unlockFile(SrvSession sess, TreeConnection tree, NetworkFile file, FileLock lock)
+                throws NotLockedException, IOException {
+            if (!hasState(file)) {
+                throw new NotLockedException();
+            }
+            super.unlockFile(sess, tree, file, lock);
+        }
+
+        @Override
+        public void releaseLocksForFile(SrvSession sess, TreeConnection tree, NetworkFile file) {
+            if (hasState(file)) {
+                super.releaseLocksForFile(sess, tree, file);
+            }
+        }
+
+        @Override
+        public boolean grantOpLock(String path, OpLockDetails oplock, NetworkFile file)
+                throws ExistingOpLockException, InvalidOplockStateException {
+            boolean granted = false;
+            try {
+                granted = super.grantOpLock(path, oplock, file);
+                return granted;
+            } finally {
+                if (granted) {
+                    oplockGrants[oplock.getLockType().ordinal()].increment();
+                } else {
+                    oplockRejects.increment();
+                }
+            }
+        }
+
+        @Override
+        public void requestOpLockBreak(String path, OpLockDetails oplock, SMBSrvSession sess, SMBSrvPacket pkt)
+                throws IOException, DeferFailedException {
+            oplockBreaks.increment();
+            super.requestOpLockBreak(path, oplock, sess, pkt);
+        }
+
+        @Override
+        public void changeOpLockType(OpLockDetails oplock, OpLockType newType, boolean updateState) {
+            breakCompleted(oplock);
+            super.changeOpLockType(oplock, newType, updateState);
+        }
+
+        @Override
+        public void releaseOpLock(String path, OplockOwner owner) {
+            breakCompleted(getOpLockDetails(path));
+            super.releaseOpLock(path, owner);
+        }
+
+        @Override
+        public int checkExpiredOplockBreaks() {
+            int count = super.checkExpiredOplockBreaks();
+            if (count > 0) {
+                oplockBreakTimeouts.add(count);
+                log.warn("{} 个机会锁中断超时未得到客户端确认", count);
+            }
+            return count;
+        }
+
+        private boolean hasState(NetworkFile file) {
+            return file instanceof NetworkFileStateInterface
+                    && ((NetworkFileStateInterface) file).getFileState() != null;
+        }
+    }
+
+    /**
+     * 文件状态缓存统计信息
+     */
+    public static class FileStateStats {
+        private final int states;
+        private final long expiryMillis;
+        private final long reaperIntervalMillis;
+        private final long opens;
+        private final long hits;
+        private final long misses;
+        private final long sharingViolations;
+        private final long locks;
+        private final long lockConflicts;
+        private final long reaperCycles;
+        private final long expired;
+        private final LatencyRecorder.Snapshot lockLatency;
+
+        public FileStateStats(int states, long expiryMillis, long reaperIntervalMillis, long opens, long hits,
+                              long misses, long sharingViolations, long locks, long lockConflicts,
+                              long reaperCycles, long expired, LatencyRecorder.Snapshot lockLatency) {
+            this.states = states;
+            this.expiryMillis = expiryMillis;
+            this.reaperIntervalMillis = reaperIntervalMillis;
+            this.opens = opens;
+            this.hits = hits;
+            this.misses = misses;
+            this.sharingViolations = sharingViolations;
+            this.locks = locks;
+            this.lockConflicts = lockConflicts;
+            this.reaperCycles = reaperCycles;
+            this.expired = expired;
+            this.lockLatency = lockLatency;
+        }
+
+        /**
+         * 当前缓存的文件状态数（含已关闭但未过期的）
+         */
+        public int getStates() {
+            return states;
+        }
+
+        public long getExpiryMillis() {
+            return expiryMillis;
+        }
+
+        public long getReaperIntervalMillis() {
+            return reaperIntervalMillis;
+        }
+
+        public long getOpens() {
+            return opens;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public double getHitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0.0 : (double) hits / total;
+        }
+
+        public long getSharingViolations() {
+            return sharingViolations;
+        }
+
+        public long getLocks() {
+            return locks;
+        }
+
+        public long getLockConflicts() {
+            return lockConflicts;
+        }
+
+        public long getReaperCycles() {
+            return reaperCycles;
+        }
+
+        public long getExpired() {
+            return expired;
+        }
+
+        /**
+         * 字节范围锁的加锁耗时，冲突计为失败
+         */
+        public LatencyRecorder.Snapshot getLockLatency() {
+            return lockLatency;
+        }
+
+        /**
+         * 合计多个共享的统计，a 为 null 时直接返回 b
+         */
+        public static FileStateStats combine(FileStateStats a, FileStateStats b) {
+            if (a == null) {
+                return b;
+            }
+            return new FileStateStats(a.states + b.states, a.expiryMillis, a.reaperIntervalMillis, a.opens + b.opens,
+                    a.hits + b.hits, a.misses + b.misses, a.sharingViolations + b.sharingViolations,
+                    a.locks + b.locks, a.lockConflicts + b.lockConflicts, a.reaperCycles + b.reaperCycles,
+                    a.expired + b.expired, a.lockLatency.merge(b.lockLatency));
+        }
+    }
+
+    /**
+     * 机会锁统计信息
+     */
+    public static class OpLockStats {
+        private final boolean enabled;
+        private final long batchGrants;
+        private final long exclusiveGrants;
+        private final long levelIIGrants;
+        private final long rejects;
+        private final long breaks;
+        private final long breakTimeouts;
+        private final LatencyRecorder.Snapshot breakLatency;
+
+        public OpLockStats(boolean enabled, long batchGrants, long exclusiveGrants, long levelIIGrants, long rejects,
+                           long breaks, long breakTimeouts, LatencyRecorder.Snapshot breakLatency) {
+            this.enabled = enabled;
+            this.batchGrants = batchGrants;
+            this.exclusiveGrants = exclusiveGrants;
+            this.levelIIGrants = levelIIGrants;
+            this.rejects = rejects;
+            this.breaks = breaks;
+            this.breakTimeouts = breakTimeouts;
+            this.breakLatency = breakLatency;
+        }
+
+        /**
+         * 是否有共享启用了机会锁
+         */
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public long getBatchGrants() {
+            return batchGrants;
+        }
+
+        public long getExclusiveGrants() {
+            return exclusiveGrants;
+        }
+
+        public long getLevelIIGrants() {
+            return levelIIGrants;
+        }
+
+        /**
+         * 已有机会锁等原因未能授予的次数
+         */
+        public long getRejects() {
+            return rejects;
+        }
+
+        /**
+         * 向持有者发出中断的次数
+         */
+        public long getBreaks() {
+            return breaks;
+        }
+
+        /**
+         * 超时未得到确认的中断数
+         */
+        public long getBreakTimeouts() {
+            return breakTimeouts;
+        }
+
+        /**
+         * 从发出中断到持有者确认的耗时分布（毫秒精度）
+         */
+        public LatencyRecorder.Snapshot getBreakLatency() {
+            return breakLatency;
+        }
+
+        /**
+         * 合计多个共享的统计，a 为 null 时直接返回 b
+         */
+        public static OpLockStats combine(OpLockStats a, OpLockStats b) {
+            if (a == null) {
+                return b;
+            }
+            return new OpLockStats(a.enabled || b.enabled, a.batchGrants + b.batchGrants,
+                    a.exclusiveGrants + b.exclusiveGrants, a.levelIIGrants + b.levelIIGrants, a.rejects + b.rejects,
+                    a.breaks + b.breaks, a.breakTimeouts + b.breakTimeouts,
+                    a.breakLatency.merge(b.breakLatency));
+        }
+    }
+}
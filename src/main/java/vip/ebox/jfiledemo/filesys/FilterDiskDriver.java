@@ -0,0 +1,175 @@
+package vip.ebox.jfiledemo.filesys;
+
+import org.filesys.server.SrvSession;
+import org.filesys.server.core.DeviceContext;
+import org.filesys.server.core.DeviceContextException;
+import org.filesys.server.filesys.*;
+import org.springframework.extensions.config.ConfigElement;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Locale;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/18  09:20
+ * @Description: 磁盘驱动装饰器基类
+ *  将所有 DiskInterface 调用原样转发给被包装的驱动（通常是 JavaNIODiskDriver），
+ *  子类只需覆盖关心的方法即可在共享与底层驱动之间插入缓存、统计等逻辑；
+ *  协议处理器只检查共享最外层的驱动是否实现 DiskSizeInterface，因此磁盘容量查询也沿驱动链转发
+ */
+public class FilterDiskDriver implements DiskInterface, DiskSizeInterface {
+
+    /**
+     * 被包装的底层磁盘驱动
+     */
+    protected final DiskInterface driver;
+
+    public FilterDiskDriver(DiskInterface driver) {
+        this.driver = driver;
+    }
+
+    /**
+     * 获取被包装的底层磁盘驱动
+     */
+    public DiskInterface getDriver() {
+        return driver;
+    }
+
+    @Override
+    public DeviceContext createContext(String shareName, ConfigElement args) throws DeviceContextException {
+        return driver.createContext(shareName, args);
+    }
+
+    @Override
+    public void treeOpened(SrvSession<?> sess, TreeConnection tree) {
+        driver.treeOpened(sess, tree);
+    }
+
+    @Override
+    public void treeClosed(SrvSession<?> sess, TreeConnection tree) {
+        driver.treeClosed(sess, tree);
+    }
+
+    @Override
+    public void closeFile(SrvSession<?> sess, TreeConnection tree, NetworkFile file) throws IOException {
+        driver.closeFile(sess, tree, file);
+    }
+
+    @Override
+    public void createDirectory(SrvSession<?> sess, TreeConnection tree, FileOpenParams params) throws IOException {
+        driver.createDirectory(sess, tree, params);
+    }
+
+    @Override
+    public NetworkFile createFile(SrvSession<?> sess, TreeConnection tree, FileOpenParams params) throws IOException {
+        return driver.createFile(sess, tree, params);
+    }
+
+    @Override
+    public void deleteDirectory(SrvSession<?> sess, TreeConnection tree, String dir) throws IOException {
+        driver.deleteDirectory(sess, tree, dir);
+    }
+
+    @Override
+    public void deleteFile(SrvSession<?> sess, TreeConnection tree, String name) throws IOException {
+        driver.deleteFile(sess, tree, name);
+    }
+
+    @Override
+    public FileStatus fileExists(SrvSession<?> sess, TreeConnection tree, String name) {
+        return driver.fileExists(sess, tree, name);
+    }
+
+    @Override
+    public void flushFile(SrvSession<?> sess, TreeConnection tree, NetworkFile file) throws IOException {
+        driver.flushFile(sess, tree, file);
+    }
+
+    @Override
+    public FileInfo getFileInformation(SrvSession<?> sess, TreeConnection tree, String name) throws IOException {
+        return driver.getFileInformation(sess, tree, name);
+    }
+
+    @Override
+    public boolean isReadOnly(SrvSession<?> sess, DeviceContext ctx) throws IOException {
+        return driver.isReadOnly(sess, ctx);
+    }
+
+    @Override
+    public NetworkFile openFile(SrvSession<?> sess, TreeConnection tree, FileOpenParams params) throws IOException {
+        return driver.openFile(sess, tree, params);
+    }
+
+    @Override
+    public int readFile(SrvSession<?> sess, TreeConnection tree, NetworkFile file,
+                        byte[] buf, int bufPos, int siz, long filePos) throws IOException {
+        return driver.readFile(sess, tree, file, buf, bufPos, siz, filePos);
+    }
+
+    @Override
+    public void renameFile(SrvSession<?> sess, TreeConnection tree, String oldName, String newName,
+                           NetworkFile netFile) throws IOException {
+        driver.renameFile(sess, tree, oldName, newName, netFile);
+    }
+
+    @Override
+    public long seekFile(SrvSession<?> sess, TreeConnection tree, NetworkFile file, long pos, int typ) throws IOException {
+        return driver.seekFile(sess, tree, file, pos, typ);
+    }
+
+    @Override
+    public void setFileInformation(SrvSession<?> sess, TreeConnection tree, String name, FileInfo info) throws IOException {
+        driver.setFileInformation(sess, tree, name, info);
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public SearchContext startSearch(SrvSession sess, TreeConnection tree, String searchPath, int attrib,
+                                     EnumSet<SearchFlags> flags) throws FileNotFoundException {
+        return driver.startSearch(sess, tree, searchPath, attrib, flags);
+    }
+
+    @Override
+    public void truncateFile(SrvSession<?> sess, TreeConnection tree, NetworkFile file, long siz) throws IOException {
+        driver.truncateFile(sess, tree, file, siz);
+    }
+
+    @Override
+    public int writeFile(SrvSession<?> sess, TreeConnection tree, NetworkFile file,
+                         byte[] buf, int bufoff, int siz, long fileoff) throws IOException {
+        return driver.writeFile(sess, tree, file, buf, bufoff, siz, fileoff);
+    }
+
+    @Override
+    public void getDiskInformation(DiskDeviceContext ctx, SrvDiskInfo diskDev) throws IOException {
+        if (driver instanceof DiskSizeInterface) {
+            ((DiskSizeInterface) driver).getDiskInformation(ctx, diskDev);
+        }
+    }
+
+    /**
+     * 规范化共享内的相对路径，用作缓存/索引的键
+     * SMB 路径不区分大小写，统一转为大写并去掉末尾的分隔符
+     */
+    protected static String normalizePath(String path) {
+        if (path == null || path.isEmpty()) {
+            return FileName.DOS_SEPERATOR_STR;
+        }
+        String key = path.toUpperCase(Locale.ROOT);
+        if (key.length() > 1 && key.charAt(key.length() - 1) == FileName.DOS_SEPERATOR) {
+            key = key.substring(0, key.length() - 1);
+        }
+        return key;
+    }
+
+    /**
+     * 获取规范化路径的父目录
+     */
+    protected static String parentPath(String key) {
+        int pos = key.lastIndexOf(FileName.DOS_SEPERATOR);
+        return pos <= 0 ? FileName.DOS_SEPERATOR_STR : key.substring(0, pos);
+    }
+}
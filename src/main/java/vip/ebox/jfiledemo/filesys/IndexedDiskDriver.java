@@ -0,0 +1,364 @@
+package vip.ebox.jfiledemo.filesys;
+
+import lombok.extern.slf4j.Slf4j;
+import org.filesys.server.SrvSession;
+import org.filesys.server.filesys.*;
+import org.filesys.util.WildCard;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/18  11:30
+ * @Description: 带目录列表索引的磁盘驱动
+ *  对条目数超过阈值的大目录维护 DirectoryIndex，通配符搜索直接从索引返回结果，
+ *  不再在每次 FIND_FIRST 时遍历并 stat 整个目录
+ *
+ *  - 通过本驱动进行的增删改只标记变化的文件名，下次搜索时增量合并
+ *  - 每次搜索前比较目录修改时间，目录有增删时重新读取文件名列表
+ *  - 启用变更通知时，监视到的本地修改通过 invalidateExternal 标记对应条目
+ *  - 被索引的目录数有上限，按 LRU 淘汰
+ */
+@Slf4j
+public class IndexedDiskDriver extends FilterDiskDriver {
+
+    private final int minEntries;
+    private final int maxDirectories;
+    private final long maxAgeMillis;
+
+    // 规范化目录路径 -> 目录索引
+    private final LinkedHashMap<String, DirectoryIndex> indexes;
+
+    // 统计计数
+    private final LongAdder indexedSearches = new LongAdder();
+    private final LongAdder fallbackSearches = new LongAdder();
+
+    /**
+     * @param driver         底层磁盘驱动
+     * @param minEntries     目录条目数达到该值才保留索引
+     * @param maxDirectories 最多同时索引的目录数
+     * @param maxAgeMillis   索引最长使用时间（毫秒），超过后整体重建
+     */
+    public IndexedDiskDriver(DiskInterface driver, int minEntries, int maxDirectories, long maxAgeMillis) {
+        super(driver);
+        this.minEntries = Math.max(0, minEntries);
+        this.maxDirectories = Math.max(1, maxDirectories);
+        this.maxAgeMillis = maxAgeMillis;
+        this.indexes = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, DirectoryIndex> eldest) {
+                return size() > IndexedDiskDriver.this.maxDirectories;
+            }
+        };
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public SearchContext startSearch(SrvSession sess, TreeConnection tree, String searchPath, int attrib,
+                                     EnumSet<SearchFlags> flags) throws FileNotFoundException {
+        String[] paths = FileName.splitPath(searchPath);
+
+        // 单文件搜索仍交给底层驱动
+        if (paths[1] == null || !WildCard.containsWildcards(paths[1])) {
+            fallbackSearches.increment();
+            return driver.startSearch(sess, tree, searchPath, attrib, flags);
+        }
+
+        // 目录名大小写与磁盘不一致等情况交给底层驱动做路径映射
+        Path dir = localPath(tree, paths[0]);
+        if (!Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS)) {
+            fallbackSearches.increment();
+            return driver.startSearch(sess, tree, searchPath, attrib, flags);
+        }
+
+        String key = normalizePath(paths[0]);
+        DirectoryIndex index;
+        synchronized (indexes) {
+            index = indexes.get(key);
+        }
+        boolean created = index == null;
+        if (created) {
+            index = new DirectoryIndex(dir);
+        }
+
+        DirectoryIndex.Snapshot snapshot;
+        try {
+            snapshot = index.snapshot(maxAgeMillis);
+        } catch (IOException e) {
+            removeIndex(key, index);
+            fallbackSearches.increment();
+            return driver.startSearch(sess, tree, searchPath, attrib, flags);
+        }
+
+        // 小目录不值得常驻索引，本次结果仍可直接使用
+        if (snapshot.size() < minEntries) {
+            removeIndex(key, index);
+        } else if (created) {
+            synchronized (indexes) {
+                indexes.putIfAbsent(key, index);
+            }
+            log.debug("已建立目录索引: {} ({} 个条目)", dir, snapshot.size());
+        }
+
+        indexedSearches.increment();
+        return IndexedSearchContext.create(snapshot, paths[1], paths[0], attrib);
+    }
+
+    @Override
+    public NetworkFile createFile(SrvSession<?> sess, TreeConnection tree, FileOpenParams params) throws IOException {
+        try {
+            return driver.createFile(sess, tree, params);
+        } finally {
+            markDirty(params.getPath());
+        }
+    }
+
+    @Override
+    public void createDirectory(SrvSession<?> sess, TreeConnection tree, FileOpenParams params) throws IOException {
+        try {
+            driver.createDirectory(sess, tree, params);
+        } finally {
+            markDirty(params.getPath());
+        }
+    }
+
+    @Override
+    public NetworkFile openFile(SrvSession<?> sess, TreeConnection tree, FileOpenParams params) throws IOException {
+        try {
+            return driver.openFile(sess, tree, params);
+        } finally {
+            if (!params.isReadOnlyAccess()) {
+                markDirty(params.getPath());
+            }
+        }
+    }
+
+    @Override
+    public void deleteFile(SrvSession<?> sess, TreeConnection tree, String name) throws IOException {
+        try {
+            driver.deleteFile(sess, tree, name);
+        } finally {
+            markDirty(name);
+        }
+    }
+
+    @Override
+    public void deleteDirectory(SrvSession<?> sess, TreeConnection tree, String dir) throws IOException {
+        try {
+            driver.deleteDirectory(sess, tree, dir);
+        } finally {
+            dropTree(dir);
+            markDirty(dir);
+        }
+    }
+
+    @Override
+    public void renameFile(SrvSession<?> sess, TreeConnection tree, String oldName, String newName,
+                           NetworkFile netFile) throws IOException {
+        try {
+            driver.renameFile(sess, tree, oldName, newName, netFile);
+        } finally {
+            dropTree(oldName);
+            markDirty(oldName);
+            markDirty(newName);
+        }
+    }
+
+    @Override
+    public void setFileInformation(SrvSession<?> sess, TreeConnection tree, String name, FileInfo info) throws IOException {
+        try {
+            driver.setFileInformation(sess, tree, name, info);
+        } finally {
+            markDirty(name);
+        }
+    }
+
+    @Override
+    public int writeFile(SrvSession<?> sess, TreeConnection tree, NetworkFile file,
+                         byte[] buf, int bufoff, int siz, long fileoff) throws IOException {
+        try {
+            return driver.writeFile(sess, tree, file, buf, bufoff, siz, fileoff);
+        } finally {
+            markDirty(file.getFullName());
+        }
+    }
+
+    @Override
+    public void truncateFile(SrvSession<?> sess, TreeConnection tree, NetworkFile file, long siz) throws IOException {
+        try {
+            driver.truncateFile(sess, tree, file, siz);
+        } finally {
+            markDirty(file.getFullName());
+        }
+    }
+
+    @Override
+    public void closeFile(SrvSession<?> sess, TreeConnection tree, NetworkFile file) throws IOException {
+        try {
+            driver.closeFile(sess, tree, file);
+        } finally {
+            if (file.getWriteCount() > 0 || file.hasDeleteOnClose()) {
+                markDirty(file.getFullName());
+            }
+        }
+    }
+
+    /**
+     * 失效 SMB 之外修改的路径（由 ShareChangeWatcher 调用）
+     *
+     * @param path      共享内的相对路径
+     * @param directory 为 true 时同时删除该目录及其所有子目录的索引
+     */
+    public void invalidateExternal(String path, boolean directory) {
+        if (directory) {
+            dropTree(path);
+        }
+        markDirty(path);
+    }
+
+    /**
+     * 清空全部目录索引
+     */
+    public void clear() {
+        synchronized (indexes) {
+            indexes.clear();
+        }
+    }
+
+    /**
+     * 获取目录索引统计信息
+     */
+    public IndexStats getStats() {
+        int dirs;
+        long entries = 0;
+        synchronized (indexes) {
+            dirs = indexes.size();
+            for (DirectoryIndex index : indexes.values()) {
+                entries += index.size();
+            }
+        }
+        return new IndexStats(dirs, maxDirectories, minEntries, entries,
+                indexedSearches.sum(), fallbackSearches.sum());
+    }
+
+    /**
+     * 标记路径所在目录索引中的条目已变化
+     */
+    private void markDirty(String path) {
+        if (path == null) {
+            return;
+        }
+        String key = normalizePath(path);
+        DirectoryIndex index;
+        synchronized (indexes) {
+            index = indexes.get(parentPath(key));
+        }
+        if (index != null) {
+            String[] paths = FileName.splitPath(path);
+            if (paths[1] != null) {
+                index.markDirty(paths[1]);
+            }
+        }
+    }
+
+    /**
+     * 删除目录及其所有子目录的索引
+     */
+    private void dropTree(String path) {
+        if (path == null) {
+            return;
+        }
+        String key = normalizePath(path);
+        String prefix = key + FileName.DOS_SEPERATOR;
+        synchronized (indexes) {
+            Iterator<String> it = indexes.keySet().iterator();
+            while (it.hasNext()) {
+                String dir = it.next();
+                if (dir.equals(key) || dir.startsWith(prefix)) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private void removeIndex(String key, DirectoryIndex index) {
+        synchronized (indexes) {
+            indexes.remove(key, index);
+        }
+    }
+
+    private static Path localPath(TreeConnection tree, String relPath) {
+        String path = FileName.buildPath(tree.getContext().getDeviceName(), relPath, null, File.separatorChar);
+        return Paths.get(path);
+    }
+
+    /**
+     * 目录索引统计信息
+     */
+    public static class IndexStats {
+        private final int directories;
+        private final int maxDirectories;
+        private final int minEntries;
+        private final long entries;
+        private final long indexedSearches;
+        private final long fallbackSearches;
+
+        public IndexStats(int directories, int maxDirectories, int minEntries, long entries,
+                          long indexedSearches, long fallbackSearches) {
+            this.directories = directories;
+            this.maxDirectories = maxDirectories;
+            this.minEntries = minEntries;
+            this.entries = entries;
+            this.indexedSearches = indexedSearches;
+            this.fallbackSearches = fallbackSearches;
+        }
+
+        public int getDirectories() {
+            return directories;
+        }
+
+        public int getMaxDirectories() {
+            return maxDirectories;
+        }
+
+        public int getMinEntries() {
+            return minEntries;
+        }
+
+        public long getEntries() {
+            return entries;
+        }
+
+        public long getIndexedSearches() {
+            return indexedSearches;
+        }
+
+        public long getFallbackSearches() {
+            return fallbackSearches;
+        }
+
+        /**
+         * 合计多个共享的索引统计，a 为 null 时直接返回 b
+         */
+        public static IndexStats combine(IndexStats a, IndexStats b) {
+            if (a == null) {
+                return b;
+            }
+            return new IndexStats(a.directories + b.directories, a.maxDirectories + b.maxDirectories, a.minEntries,
+                    a.entries + b.entries, a.indexedSearches + b.indexedSearches,
+                    a.fallbackSearches + b.fallbackSearches);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package vip.ebox.jfiledemo.filesys;
+
+import org.filesys.server.filesys.FileAttribute;
+import org.filesys.server.filesys.FileInfo;
+import org.filesys.server.filesys.SearchContext;
+import org.filesys.util.WildCard;
+
+import java.util.Arrays;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/18  11:05
+ * @Description: 基于目录索引快照的搜索上下文
+ *  结果为快照中的一段连续区间（可选经过下标数组映射），分页、恢复搜索都只是移动游标，不再访问磁盘
+ */
+public class IndexedSearchContext extends SearchContext {
+
+    private final DirectoryIndex.Snapshot snapshot;
+
+    // 结果下标映射，为 null 时直接使用快照下标
+    private final int[] order;
+    private final int from;
+    private final int to;
+
+    // 当前游标（相对于 from）
+    private int idx;
+
+    // 搜索目录的相对路径，以 \ 结尾，用于生成文件 id
+    private final String relPath;
+
+    private IndexedSearchContext(DirectoryIndex.Snapshot snapshot, int[] order, int from, int to,
+                                 String relPath, String searchStr) {
+        this.snapshot = snapshot;
+        this.order = order;
+        this.from = from;
+        this.to = to;
+        this.relPath = relPath;
+        setSearchString(searchStr);
+    }
+
+    /**
+     * 根据通配符和搜索属性在快照中定位结果
+     *
+     * @param snapshot 目录索引快照
+     * @param pattern  搜索的文件名部分（包含通配符）
+     * @param relPath  搜索目录在共享内的相对路径
+     * @param attrib   搜索属性，不包含 FileAttribute.Directory 时不返回目录
+     */
+    public static IndexedSearchContext create(DirectoryIndex.Snapshot snapshot, String pattern, String relPath,
+                                              int attrib) {
+        if (relPath == null) {
+            relPath = "";
+        } else if (!relPath.endsWith("\\")) {
+            relPath = relPath + "\\";
+        }
+
+        IndexedSearchContext ctx = locate(snapshot, pattern, relPath);
+        return FileAttribute.hasAttribute(attrib, FileAttribute.Directory) ? ctx : ctx.withoutDirectories();
+    }
+
+    private static IndexedSearchContext locate(DirectoryIndex.Snapshot snapshot, String pattern, String relPath) {
+        // * 或 *.* 返回全部条目
+        if (WildCard.isWildcardAll(pattern)) {
+            return new IndexedSearchContext(snapshot, null, 0, snapshot.size(), relPath, pattern);
+        }
+
+        int star = pattern.indexOf('*');
+        boolean singleStar = star >= 0 && star == pattern.lastIndexOf('*') && !hasOtherWildcards(pattern);
+
+        // foo* 前缀搜索
+        if (singleStar && star == pattern.length() - 1) {
+            int[] range = snapshot.prefixRange(pattern.substring(0, star));
+            return new IndexedSearchContext(snapshot, null, range[0], range[1], relPath, pattern);
+        }
+
+        // *.iso 后缀搜索
+        if (singleStar && star == 0) {
+            int[] range = snapshot.suffixRange(pattern.substring(1));
+            return new IndexedSearchContext(snapshot, snapshot.suffixOrder(), range[0], range[1], relPath, pattern);
+        }
+
+        // 其它通配符在内存中逐个匹配，同样不需要访问磁盘
+        WildCard wildcard = new WildCard(pattern, false);
+        int[] matches = new int[snapshot.size()];
+        int cnt = 0;
+        for (int i = 0; i < snapshot.size(); i++) {
+            if (wildcard.matchesPattern(snapshot.name(i))) {
+                matches[cnt++] = i;
+            }
+        }
+        return new IndexedSearchContext(snapshot, Arrays.copyOf(matches, cnt), 0, cnt, relPath, pattern);
+    }
+
+    /**
+     * 去掉结果中的目录，只需遍历已定位的区间
+     */
+    private IndexedSearchContext withoutDirectories() {
+        int[] matches = new int[to - from];
+        int cnt = 0;
+        for (int pos = 0; from + pos < to; pos++) {
+            int entry = entryAt(pos);
+            if (!snapshot.isDirectory(entry)) {
+                matches[cnt++] = entry;
+            }
+        }
+        if (cnt == matches.length) {
+            return this;
+        }
+        return new IndexedSearchContext(snapshot, Arrays.copyOf(matches, cnt), 0, cnt, relPath, getSearchString());
+    }
+
+    private static boolean hasOtherWildcards(String pattern) {
+        for (int i = 0; i < pattern.length(); i++) {
+            char ch = pattern.charAt(i);
+            if (ch == WildCard.SINGLECHAR_WILDCARD || ch == WildCard.SINGLECHAR_UNICODE_WILDCARD
+                    || ch == WildCard.DOT_UNICODE_WILDCARD || ch == WildCard.MULTICHAR_UNICODE_WILDCARD) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int entryAt(int pos) {
+        int i = from + pos;
+        return order != null ? order[i] : i;
+    }
+
+    @Override
+    public int getResumeId() {
+        return idx;
+    }
+
+    @Override
+    public boolean hasMoreFiles() {
+        return from + idx < to;
+    }
+
+    @Override
+    public boolean nextFileInfo(FileInfo info) {
+        if (!hasMoreFiles()) {
+            return false;
+        }
+        snapshot.fillInfo(entryAt(idx++), relPath, info);
+        return true;
+    }
+
+    @Override
+    public String nextFileName() {
+        if (!hasMoreFiles()) {
+            return null;
+        }
+        return snapshot.name(entryAt(idx++));
+    }
+
+    @Override
+    public int numberOfEntries() {
+        return to - from;
+    }
+
+    @Override
+    public boolean restartAt(int resumeId) {
+        if (resumeId < 0 || from + resumeId > to) {
+            return false;
+        }
+        idx = resumeId;
+        return true;
+    }
+
+    @Override
+    public boolean restartAt(FileInfo info) {
+        if (order == null) {
+            int i = snapshot.indexOf(info.getFileName());
+            if (i < from || i >= to) {
+                return false;
+            }
+            // 从该条目之后继续
+            idx = i - from + 1;
+            return true;
+        }
+
+        for (int pos = 0; from + pos < to; pos++) {
+            if (snapshot.name(entryAt(pos)).equalsIgnoreCase(info.getFileName())) {
+                // 从该条目之后继续
+                idx = pos + 1;
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,140 @@
+package vip.ebox.jfiledemo.filesys;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/18  17:40
+ * @Description: 只读文件的内存映射读取
+ *  文件按固定大小分段，首次读到某段时才映射，读取直接从 MappedByteBuffer 拷贝，由页缓存负责预读与缓存；
+ *  映射的大小以打开时的文件大小为准，超出部分（文件被外部追加）以及映射失败时回退到定位读
+ */
+public class MappedFile {
+
+    private final MappedFileManager manager;
+    private final FileChannel channel;
+    private final long size;
+    private final Chunk[] chunks;
+
+    public MappedFile(MappedFileManager manager, FileChannel channel) throws IOException {
+        this.manager = manager;
+        this.channel = channel;
+        this.size = channel.size();
+        int chunkSize = manager.getChunkSize();
+        this.chunks = new Chunk[(int) ((size + chunkSize - 1) / chunkSize)];
+        for (int i = 0; i < chunks.length; i++) {
+            long start = (long) i * chunkSize;
+            chunks[i] = new Chunk(start, (int) Math.min(chunkSize, size - start));
+        }
+        manager.fileOpened();
+    }
+
+    /**
+     * 读取数据
+     *
+     * @return 读取的字节数，已到文件末尾时返回 -1
+     */
+    public int read(byte[] buf, int off, int len, long pos) throws IOException {
+        if (pos >= size) {
+            // 文件可能在打开后被追加，交给通道处理
+            return channel.read(ByteBuffer.wrap(buf, off, len), pos);
+        }
+
+        int chunkSize = manager.getChunkSize();
+        int total = 0;
+        while (total < len && pos + total < size) {
+            long filePos = pos + total;
+            Chunk chunk = chunks[(int) (filePos / chunkSize)];
+            int chunkOff = (int) (filePos - chunk.start);
+            int n = Math.min(len - total, chunk.length - chunkOff);
+
+            int copied = chunk.copy(chunkOff, buf, off + total, n);
+            if (copied < 0) {
+                // 映射失败或文件被外部截断
+                manager.recordFallback();
+                copied = channel.read(ByteBuffer.wrap(buf, off + total, n), filePos);
+                if (copied <= 0) {
+                    break;
+                }
+            }
+            total += copied;
+        }
+        manager.recordRead(total);
+        return total == 0 && len > 0 ? -1 : total;
+    }
+
+    /**
+     * 解除全部分段的映射
+     */
+    public void close() {
+        for (Chunk chunk : chunks) {
+            manager.release(chunk);
+        }
+        manager.fileClosed();
+    }
+
+    /**
+     * 映射分段，buffer 只在持有分段锁时访问，保证解除映射后不会再被读取
+     */
+    final class Chunk {
+        private final long start;
+        private final int length;
+        private MappedByteBuffer buffer;
+
+        Chunk(long start, int length) {
+            this.start = start;
+            this.length = length;
+        }
+
+        /**
+         * 从分段拷贝数据，必要时先映射
+         *
+         * @return 拷贝的字节数，无法映射或访问失败时返回 -1
+         */
+        int copy(int chunkOff, byte[] buf, int off, int len) {
+            boolean newlyMapped = false;
+            synchronized (this) {
+                if (buffer == null) {
+                    try {
+                        buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+                    } catch (IOException e) {
+                        return -1;
+                    }
+                    newlyMapped = true;
+                }
+                try {
+                    buffer.get(chunkOff, buf, off, len);
+                } catch (InternalError e) {
+                    // 文件被外部截断后访问映射区会触发 SIGBUS，JVM 将其转为 InternalError
+                    return -1;
+                }
+            }
+
+            // 登记与 LRU 更新不在分段锁内进行，避免与淘汰线程的加锁顺序相反
+            if (newlyMapped) {
+                manager.mapped(this, length);
+            } else {
+                manager.touch(this);
+            }
+            return len;
+        }
+
+        /**
+         * 解除映射
+         *
+         * @return 释放的字节数
+         */
+        synchronized long unmap() {
+            if (buffer == null) {
+                return 0;
+            }
+            MappedFileManager.unmap(buffer);
+            buffer = null;
+            return length;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package vip.ebox.jfiledemo.filesys;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/18  17:20
+ * @Description: 内存映射读取管理
+ *  记录所有已映射的分段，映射总量超过上限时按 LRU 解除映射，避免大量大文件同时打开时耗尽地址空间/页表
+ */
+@Slf4j
+public class MappedFileManager {
+
+    private final long threshold;
+    private final int chunkSize;
+    private final long maxMappedBytes;
+
+    // 已映射的分段（按访问顺序）
+    private final LinkedHashMap<MappedFile.Chunk, Boolean> mapped = new LinkedHashMap<>(64, 0.75f, true);
+    private long mappedBytes;
+
+    // 统计计数
+    private final LongAdder maps = new LongAdder();
+    private final LongAdder unmaps = new LongAdder();
+    private final LongAdder reads = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+    private final LongAdder openFiles = new LongAdder();
+
+    /**
+     * @param threshold      文件大小达到该值（字节）才使用内存映射
+     * @param chunkSize      每次映射的分段大小（字节）
+     * @param maxMappedBytes 同时映射的最大字节数
+     */
+    public MappedFileManager(long threshold, int chunkSize, long maxMappedBytes) {
+        this.threshold = Math.max(0, threshold);
+        this.chunkSize = Math.max(1 << 20, chunkSize);
+        this.maxMappedBytes = Math.max(this.chunkSize, maxMappedBytes);
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * 判断指定大小的文件是否使用内存映射读取
+     */
+    public boolean accept(long fileSize) {
+        return fileSize >= threshold && fileSize > 0;
+    }
+
+    /**
+     * 分段完成映射后登记，超出上限时解除最久未使用分段的映射
+     */
+    void mapped(MappedFile.Chunk chunk, long size) {
+        maps.increment();
+        synchronized (mapped) {
+            if (mapped.put(chunk, Boolean.TRUE) == null) {
+                mappedBytes += size;
+            }
+            Iterator<MappedFile.Chunk> it = mapped.keySet().iterator();
+            while (mappedBytes > maxMappedBytes && it.hasNext()) {
+                MappedFile.Chunk eldest = it.next();
+                if (eldest == chunk) {
+                    continue;
+                }
+                it.remove();
+                mappedBytes -= eldest.unmap();
+                unmaps.increment();
+            }
+        }
+    }
+
+    /**
+     * 读取命中已映射分段时更新 LRU 顺序
+     */
+    void touch(MappedFile.Chunk chunk) {
+        synchronized (mapped) {
+            mapped.get(chunk);
+        }
+    }
+
+    /**
+     * 文件关闭时解除该分段的映射
+     */
+    void release(MappedFile.Chunk chunk) {
+        synchronized (mapped) {
+            if (mapped.remove(chunk) != null) {
+                mappedBytes -= chunk.unmap();
+                unmaps.increment();
+            }
+        }
+    }
+
+    void recordRead(int len) {
+        reads.increment();
+        bytesRead.add(len);
+    }
+
+    void recordFallback() {
+        fallbacks.increment();
+    }
+
+    void fileOpened() {
+        openFiles.increment();
+    }
+
+    void fileClosed() {
+        openFiles.decrement();
+    }
+
+    /**
+     * 获取内存映射统计信息
+     */
+    public MappedStats getStats() {
+        long bytes;
+        int chunks;
+        synchronized (mapped) {
+            bytes = mappedBytes;
+            chunks = mapped.size();
+        }
+        return new MappedStats(threshold, chunkSize, maxMappedBytes, bytes, chunks, openFiles.sum(),
+                maps.sum(), unmaps.sum(), reads.sum(), bytesRead.sum(), fallbacks.sum());
+    }
+
+    // ---- 解除映射 ----
+
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method cleaner = null;
+        try {
+            Class<?> clazz = Class.forName("sun.misc.Unsafe");
+            Field field = clazz.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            cleaner = clazz.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (Exception | LinkageError e) {
+            log.warn("无法主动解除内存映射，将由 GC 回收: {}", e.getMessage());
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = cleaner;
+    }
+
+    /**
+     * 立即解除映射；调用方必须保证之后不会再访问该缓冲区
+     */
+    static void unmap(MappedByteBuffer buffer) {
+        if (INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+        } catch (Exception e) {
+            log.debug("解除内存映射失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 内存映射统计信息
+     */
+    public static class MappedStats {
+        private final long threshold;
+        private final int chunkSize;
+        private final long maxMappedBytes;
+        private final long mappedBytes;
+        private final int mappedChunks;
+        private final long openFiles;
+        private final long maps;
+        private final long unmaps;
+        private final long reads;
+        private final long bytesRead;
+        private final long fallbacks;
+
+        public MappedStats(long threshold, int chunkSize, long maxMappedBytes, long mappedBytes, int mappedChunks,
+                           long openFiles, long maps, long unmaps, long reads, long bytesRead, long fallbacks) {
+            this.threshold = threshold;
+            this.chunkSize = chunkSize;
+            this.maxMappedBytes = maxMappedBytes;
+            this.mappedBytes = mappedBytes;
+            this.mappedChunks = mappedChunks;
+            this.openFiles = openFiles;
+            this.maps = maps;
+            this.unmaps = unmaps;
+            this.reads = reads;
+            this.bytesRead = bytesRead;
+            this.fallbacks = fallbacks;
+        }
+
+        public long getThreshold() {
+            return threshold;
+        }
+
+        public int getChunkSize() {
+            return chunkSize;
+        }
+
+        public long getMaxMappedBytes() {
+            return maxMappedBytes;
+        }
+
+        public long getMappedBytes() {
+            return mappedBytes;
+        }
+
+        public int getMappedChunks() {
+            return mappedChunks;
+        }
+
+        public long getOpenFiles() {
+            return openFiles;
+        }
+
+        public long getMaps() {
+            return maps;
+        }
+
+        public long getUnmaps() {
+            return unmaps;
+        }
+
+        public long getReads() {
+            return reads;
+        }
+
+        public long getBytesRead() {
+            return bytesRead;
+        }
+
+        public long getFallbacks() {
+            return fallbacks;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package vip.ebox.jfiledemo.filesys;
+
+import org.filesys.server.SrvSession;
+import org.filesys.server.filesys.*;
+import vip.ebox.jfiledemo.metrics.LatencyRecorder;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/19  10:50
+ * @Description: 磁盘操作统计驱动
+ *  包装在共享的最外层，按操作类型记录次数、错误数、读写字节数及耗时直方图，并统计当前打开的文件数；
+ *  统计的是客户端实际感受到的耗时（包括内层缓存命中），每次调用只有 nanoTime 与计数器累加，不分配对象
+ */
+public class MetricsDiskDriver extends FilterDiskDriver {
+
+    /**
+     * 统计的操作类型
+     */
+    public enum Operation {
+        OPEN, CREATE, CLOSE, READ, WRITE, SEARCH, GET_FILE_INFORMATION, RENAME, DELETE;
+
+        /**
+         * 对外展示的名称，如 get_file_information
+         */
+        public String tagValue() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final LatencyRecorder[] recorders = new LatencyRecorder[Operation.values().length];
+
+    // 当前打开的文件数
+    private final LongAdder openFiles = new LongAdder();
+
+    public MetricsDiskDriver(DiskInterface driver) {
+        super(driver);
+        for (int i = 0; i < recorders.length; i++) {
+            recorders[i] = new LatencyRecorder();
+        }
+    }
+
+    @Override
+    public NetworkFile openFile(SrvSession<?> sess, TreeConnection tree, FileOpenParams params) throws IOException {
+        LatencyRecorder recorder = recorders[Operation.OPEN.ordinal()];
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            NetworkFile file = driver.openFile(sess, tree, params);
+            openFiles.increment();
+            ok = true;
+            return file;
+        } finally {
+            recorder.record(System.nanoTime() - start, ok);
+        }
+    }
+
+    @Override
+    public NetworkFile createFile(SrvSession<?> sess, TreeConnection tree, FileOpenParams params) throws IOException {
+        LatencyRecorder recorder = recorders[Operation.CREATE.ordinal()];
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            NetworkFile file = driver.createFile(sess, tree, params);
+            openFiles.increment();
+            ok = true;
+            return file;
+        } finally {
+            recorder.record(System.nanoTime() - start, ok);
+        }
+    }
+
+    @Override
+    public void closeFile(SrvSession<?> sess, TreeConnection tree, NetworkFile file) throws IOException {
+        LatencyRecorder recorder = recorders[Operation.CLOSE.ordinal()];
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            driver.closeFile(sess, tree, file);
+            ok = true;
+        } finally {
+            // 关闭失败的句柄同样不再可用
+            openFiles.decrement();
+            recorder.record(System.nanoTime() - start, ok);
+        }
+    }
+
+    @Override
+    public int readFile(SrvSession<?> sess, TreeConnection tree, NetworkFile file,
+                        byte[] buf, int bufPos, int siz, long filePos) throws IOException {
+        LatencyRecorder recorder = recorders[Operation.READ.ordinal()];
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            int n = driver.readFile(sess, tree, file, buf, bufPos, siz, filePos);
+            recorder.addBytes(n);
+            ok = true;
+            return n;
+        } finally {
+            recorder.record(System.nanoTime() - start, ok);
+        }
+    }
+
+    @Override
+    public int writeFile(SrvSession<?> sess, TreeConnection tree, NetworkFile file,
+                         byte[] buf, int bufoff, int siz, long fileoff) throws IOException {
+        LatencyRecorder recorder = recorders[Operation.WRITE.ordinal()];
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            int n = driver.writeFile(sess, tree, file, buf, bufoff, siz, fileoff);
+            recorder.addBytes(siz);
+            ok = true;
+            return n;
+        } finally {
+            recorder.record(System.nanoTime() - start, ok);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public SearchContext startSearch(SrvSession sess, TreeConnection tree, String searchPath, int attrib,
+                                     EnumSet<SearchFlags> flags) throws FileNotFoundException {
+        LatencyRecorder recorder = recorders[Operation.SEARCH.ordinal()];
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            SearchContext ctx = driver.startSearch(sess, tree, searchPath, attrib, flags);
+            ok = true;
+            return ctx;
+        } finally {
+            recorder.record(System.nanoTime() - start, ok);
+        }
+    }
+
+    @Override
+    public FileInfo getFileInformation(SrvSession<?> sess, TreeConnection tree, String name) throws IOException {
+        LatencyRecorder recorder = recorders[Operation.GET_FILE_INFORMATION.ordinal()];
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            FileInfo info = driver.getFileInformation(sess, tree, name);
+            ok = true;
+            return info;
+        } finally {
+            recorder.record(System.nanoTime() - start, ok);
+        }
+    }
+
+    @Override
+    public void renameFile(SrvSession<?> sess, TreeConnection tree, String oldName, String newName,
+                           NetworkFile netFile) throws IOException {
+        LatencyRecorder recorder = recorders[Operation.RENAME.ordinal()];
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            driver.renameFile(sess, tree, oldName, newName, netFile);
+            ok = true;
+        } finally {
+            recorder.record(System.nanoTime() - start, ok);
+        }
+    }
+
+    @Override
+    public void deleteFile(SrvSession<?> sess, TreeConnection tree, String name) throws IOException {
+        LatencyRecorder recorder = recorders[Operation.DELETE.ordinal()];
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            driver.deleteFile(sess, tree, name);
+            ok = true;
+        } finally {
+            recorder.record(System.nanoTime() - start, ok);
+        }
+    }
+
+    /**
+     * 当前打开的文件数
+     */
+    public long getOpenFiles() {
+        return Math.max(0, openFiles.sum());
+    }
+
+    /**
+     * 获取指定操作的统计快照
+     */
+    public LatencyRecorder.Snapshot getSnapshot(Operation op) {
+        return recorders[op.ordinal()].snapshot();
+    }
+
+    /**
+     * 获取全部操作的统计快照，按 Operation 声明顺序排列
+     */
+    public Map<Operation, LatencyRecorder.Snapshot> getSnapshots() {
+        Map<Operation, LatencyRecorder.Snapshot> snapshots = new LinkedHashMap<>();
+        for (Operation op : Operation.values()) {
+            snapshots.put(op, recorders[op.ordinal()].snapshot());
+        }
+        return snapshots;
+    }
+}
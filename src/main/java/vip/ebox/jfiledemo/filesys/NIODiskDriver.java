@@ -0,0 +1,195 @@
+package vip.ebox.jfiledemo.filesys;
+
+import org.filesys.server.SrvSession;
+import org.filesys.server.filesys.*;
+import org.filesys.smb.server.disk.JavaNIODiskDriver;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.function.IntConsumer;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/18  16:10
+ * @Description: 扩展的 NIO 磁盘驱动
+ *  路径校验、权限检查等仍由 JavaNIODiskDriver 完成，打开/创建的文件替换为 NIONetworkFile，
+ *  从而在文件读写路径上接入块缓存、内存映射读取、延迟写入等优化
+ */
+public class NIODiskDriver extends JavaNIODiskDriver {
+
+    // 块缓存，未启用时为 null
+    private final BlockCache blockCache;
+
+    // 内存映射读取，未启用时为 null
+    private final MappedFileManager mappedFiles;
+
+    // 延迟写入，未启用时为 null
+    private final WriteBehindManager writeBehind;
+
+    // 读写请求大小的观察者（内存池统计使用），可为 null
+    private volatile IntConsumer transferListener;
+
+    /**
+     * @param blockCache  共享的块缓存，为 null 时不使用缓存
+     * @param mappedFiles 只读大文件的内存映射管理，为 null 时不使用内存映射
+     * @param writeBehind 小写入合并管理，为 null 时直接写入
+     */
+    public NIODiskDriver(BlockCache blockCache, MappedFileManager mappedFiles, WriteBehindManager writeBehind) {
+        this.blockCache = blockCache;
+        this.mappedFiles = mappedFiles;
+        this.writeBehind = writeBehind;
+    }
+
+    public BlockCache getBlockCache() {
+        return blockCache;
+    }
+
+    public MappedFileManager getMappedFiles() {
+        return mappedFiles;
+    }
+
+    public WriteBehindManager getWriteBehind() {
+        return writeBehind;
+    }
+
+    /**
+     * 设置读写请求大小的观察者，每次读写前以请求的数据长度调用
+     */
+    public void setTransferListener(IntConsumer transferListener) {
+        this.transferListener = transferListener;
+    }
+
+    @Override
+    public int readFile(SrvSession sess, TreeConnection tree, NetworkFile file,
+                        byte[] buf, int bufPos, int siz, long filePos) throws IOException {
+        IntConsumer listener = transferListener;
+        if (listener != null) {
+            listener.accept(siz);
+        }
+        return super.readFile(sess, tree, file, buf, bufPos, siz, filePos);
+    }
+
+    @Override
+    public int writeFile(SrvSession sess, TreeConnection tree, NetworkFile file,
+                         byte[] buf, int bufoff, int siz, long fileoff) throws IOException {
+        IntConsumer listener = transferListener;
+        if (listener != null) {
+            listener.accept(siz);
+        }
+        return super.writeFile(sess, tree, file, buf, bufoff, siz, fileoff);
+    }
+
+    @Override
+    public NetworkFile openFile(SrvSession sess, TreeConnection tree, FileOpenParams params) throws IOException {
+        NetworkFile file = super.openFile(sess, tree, params);
+        if (file.isDirectory()) {
+            return file;
+        }
+
+        // 与父类相同的路径解析：优先按原样拼接，不存在时再做大小写映射
+        String devName = tree.getContext().getDeviceName();
+        Path path = localPath(devName, params.getPath());
+        if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+            String mapped = mapPath(devName, params.getPath());
+            if (mapped == null) {
+                return file;
+            }
+            path = Paths.get(mapped);
+        }
+        return wrap(file, path, params, params.isReadOnlyAccess() ? mappedFiles : null);
+    }
+
+    @Override
+    public NetworkFile createFile(SrvSession sess, TreeConnection tree, FileOpenParams params) throws IOException {
+        NetworkFile file = super.createFile(sess, tree, params);
+        String mapped = mapPath(tree.getContext().getDeviceName(), params.getPath());
+        return mapped != null ? wrap(file, Paths.get(mapped), params, null) : file;
+    }
+
+    @Override
+    public FileInfo getFileInformation(SrvSession sess, TreeConnection tree, String name) throws IOException {
+        // 文件大小等信息需要包含尚未写出的数据
+        flushPending(tree, name);
+        return super.getFileInformation(sess, tree, name);
+    }
+
+    @Override
+    public void setFileInformation(SrvSession sess, TreeConnection tree, String name, FileInfo info) throws IOException {
+        flushPending(tree, name);
+        super.setFileInformation(sess, tree, name, info);
+    }
+
+    @Override
+    public void deleteFile(SrvSession sess, TreeConnection tree, String name) throws IOException {
+        try {
+            super.deleteFile(sess, tree, name);
+        } finally {
+            forget(tree, name);
+        }
+    }
+
+    @Override
+    public void renameFile(SrvSession sess, TreeConnection tree, String oldName, String newName,
+                           NetworkFile netFile) throws IOException {
+        flushPending(tree, oldName);
+        try {
+            super.renameFile(sess, tree, oldName, newName, netFile);
+        } finally {
+            forget(tree, oldName);
+            forget(tree, newName);
+        }
+    }
+
+    /**
+     * 解析共享内路径对应的本地路径，与打开文件时相同：优先按原样拼接，不存在时再做大小写映射，
+     * 都找不到时返回按原样拼接的路径
+     */
+    public Path resolvePath(String devName, String relPath) {
+        Path path = localPath(devName, relPath);
+        if (Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+            return path;
+        }
+        try {
+            String mapped = mapPath(devName, relPath);
+            return mapped != null ? Paths.get(mapped) : path;
+        } catch (IOException e) {
+            return path;
+        }
+    }
+
+    /**
+     * 用 NIONetworkFile 替换父类创建的文件对象，父类对象尚未打开通道，无需关闭
+     */
+    private NetworkFile wrap(NetworkFile file, Path path, FileOpenParams params,
+                             MappedFileManager mapped) throws IOException {
+        NIONetworkFile netFile = new NIONetworkFile(path, params.getPath(), blockCache, mapped);
+        netFile.setGrantedAccess(file.getGrantedAccess());
+        netFile.setAccessMask(file.getAccessMask());
+        netFile.setFullName(file.getFullName());
+        netFile.setAttributes(file.getFileAttributes());
+        netFile.setWriteBehind(writeBehind);
+        netFile.setWriteThrough(params.isWriteThrough());
+        return netFile;
+    }
+
+    private void flushPending(TreeConnection tree, String name) throws IOException {
+        if (writeBehind != null && name != null) {
+            writeBehind.flushPath(localPath(tree.getContext().getDeviceName(), name).toString());
+        }
+    }
+
+    private void forget(TreeConnection tree, String name) {
+        if (blockCache != null && name != null) {
+            blockCache.forget(localPath(tree.getContext().getDeviceName(), name).toString());
+        }
+    }
+
+    private static Path localPath(String devName, String relPath) {
+        return Paths.get(FileName.buildPath(devName, relPath, null, File.separatorChar));
+    }
+}
@@ -0,0 +1,281 @@
+package vip.ebox.jfiledemo.filesys;
+
+import org.filesys.server.filesys.cache.FileState;
+import org.filesys.server.filesys.cache.NetworkFileStateInterface;
+import org.filesys.smb.server.disk.JavaNIONetworkFile;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/18  15:50
+ * @Description: 带块缓存的 NIO 网络文件
+ *  读取使用 FileChannel 的定位读，不再依赖通道的当前位置，同一句柄上的并发读取互不干扰；
+ *  启用块缓存时读取经过 BlockCache，并在检测到顺序读取后触发异步预读；
+ *  只读打开的大文件可改为内存映射读取，此时不再经过块缓存；
+ *  启用延迟写入时小写入先合并进 WriteBehindBuffer，读取前写出与读取范围重叠的数据，以 write-through 方式打开的句柄直接写入；
+ *  启用文件状态缓存时关联对应的 FileState，字节范围锁通过它检查冲突
+ */
+public class NIONetworkFile extends JavaNIONetworkFile implements NetworkFileStateInterface {
+
+    // 连续多少次顺序读取后开始预读
+    private static final int SEQUENTIAL_THRESHOLD = 2;
+
+    private final BlockCache blockCache;
+    private BlockCache.FileKey cacheKey;
+
+    // 内存映射读取，首次读取时创建
+    private final MappedFileManager mappedFiles;
+    private MappedFile mappedFile;
+
+    // 延迟写入，writeBuffer 在首次写入时创建
+    private WriteBehindManager writeBehind;
+    private WriteBehindBuffer writeBuffer;
+    private boolean writeThrough;
+    private final String localPath;
+
+    // 文件状态，由 FileStateDiskDriver 在打开时设置
+    private volatile FileState fileState;
+
+    // 顺序读取检测，多个线程同时读时只是检测不准确，不影响数据
+    private long nextReadPos = -1;
+    private int sequentialReads;
+    private long readAheadBlock = -1;
+
+    /**
+     * @param path        本地文件路径
+     * @param netPath     共享内的相对路径
+     * @param blockCache  块缓存，为 null 时不使用缓存
+     * @param mappedFiles 内存映射管理，仅在文件只读打开时传入；文件大小达到阈值时使用内存映射读取
+     */
+    public NIONetworkFile(Path path, String netPath, BlockCache blockCache,
+                          MappedFileManager mappedFiles) throws IOException {
+        super(path, netPath);
+        this.localPath = path.toString();
+        this.mappedFiles = mappedFiles != null && mappedFiles.accept(getFileSize()) ? mappedFiles : null;
+        this.blockCache = this.mappedFiles == null ? blockCache : null;
+        if (this.blockCache != null) {
+            cacheKey = this.blockCache.acquire(localPath, getFileSize(), getModifyDate());
+        }
+    }
+
+    /**
+     * 是否使用内存映射读取
+     */
+    public boolean isMapped() {
+        return mappedFiles != null;
+    }
+
+    /**
+     * 启用延迟写入，所有句柄都需要设置，读取时才能写出其它句柄中重叠的缓冲数据
+     */
+    public void setWriteBehind(WriteBehindManager writeBehind) {
+        this.writeBehind = writeBehind;
+    }
+
+    /**
+     * 客户端以 write-through 方式打开时不经过写缓冲，写入前写出其它句柄中重叠的缓冲数据
+     */
+    public void setWriteThrough(boolean writeThrough) {
+        this.writeThrough = writeThrough;
+    }
+
+    @Override
+    public FileState getFileState() {
+        return fileState;
+    }
+
+    public void setFileState(FileState fileState) {
+        this.fileState = fileState;
+    }
+
+    /**
+     * 获取本地文件路径
+     */
+    public Path getPath() {
+        return m_path;
+    }
+
+    @Override
+    public int readFile(byte[] buf, int len, int pos, long fileOff) throws IOException {
+        if (m_io == null) {
+            openFile(false);
+        }
+
+        if (writeBehind != null) {
+            writeBehind.flushOverlapping(localPath, fileOff, len);
+        }
+
+        if (mappedFiles != null) {
+            return mappedFile().read(buf, pos, len, fileOff);
+        }
+
+        BlockCache.FileKey key = cacheKey;
+        int rdlen;
+        if (key != null) {
+            rdlen = blockCache.read(key, m_io, buf, pos, len, fileOff);
+            detectSequential(key, fileOff, rdlen);
+        } else {
+            rdlen = m_io.read(ByteBuffer.wrap(buf, pos, len), fileOff);
+        }
+
+        return rdlen;
+    }
+
+    @Override
+    public void writeFile(byte[] buf, int len, int pos) throws IOException {
+        flushWriteBuffer();
+        long fileOff = m_io != null ? m_io.position() : 0L;
+        long oldSize = getFileSize();
+        super.writeFile(buf, len, pos);
+        invalidateWrite(fileOff, len, oldSize);
+    }
+
+    @Override
+    public void writeFile(byte[] buf, int len, int pos, long offset) throws IOException {
+        if (writeBehind == null || writeThrough || len <= 0) {
+            if (writeBehind != null && len > 0) {
+                writeBehind.flushOverlapping(localPath, offset, len);
+            }
+            long oldSize = getFileSize();
+            super.writeFile(buf, len, pos, offset);
+            invalidateWrite(offset, len, oldSize);
+            return;
+        }
+
+        if (m_io == null) {
+            openFile(true);
+        }
+        writeBuffer().write(buf, pos, len, offset);
+
+        // 写入计数与文件大小立即更新，与直接写入时一致
+        incrementWriteCount();
+        if (offset + len > getFileSize()) {
+            setFileSize(offset + len);
+        }
+    }
+
+    @Override
+    public void truncateFile(long siz) throws IOException {
+        // 其它句柄缓冲中超出新大小的数据写出后会再次扩展文件，截断前全部写出
+        if (writeBehind != null) {
+            writeBehind.flushPath(localPath);
+        }
+        long oldSize = getFileSize();
+        super.truncateFile(siz);
+        invalidate(Math.min(siz, oldSize), Math.abs(oldSize - siz) + 1);
+    }
+
+    @Override
+    public void flushFile() throws IOException {
+        flushWriteBuffer();
+        super.flushFile();
+    }
+
+    @Override
+    public void closeFile() throws IOException {
+        synchronized (this) {
+            if (mappedFile != null) {
+                mappedFile.close();
+                mappedFile = null;
+            }
+        }
+        try {
+            WriteBehindBuffer buffer = writeBuffer;
+            if (buffer != null) {
+                writeBuffer = null;
+                writeBehind.unregister(buffer);
+                buffer.close();
+            }
+        } finally {
+            closeChannel();
+        }
+    }
+
+    /**
+     * 直接写入文件通道，由 WriteBehindBuffer 写出合并后的数据时调用
+     */
+    void writeThrough(byte[] buf, int off, int len, long pos) throws IOException {
+        long oldSize = cacheKey != null ? m_io.size() : 0L;
+        ByteBuffer data = ByteBuffer.wrap(buf, off, len);
+        while (data.hasRemaining()) {
+            m_io.write(data, pos + data.position() - off);
+        }
+        invalidateWrite(pos, len, oldSize);
+    }
+
+    /**
+     * 磁盘上的实际文件大小（不含缓冲中的数据）
+     */
+    long channelSize() throws IOException {
+        return m_io != null ? m_io.size() : getFileSize();
+    }
+
+    private void closeChannel() throws IOException {
+        try {
+            super.closeFile();
+        } finally {
+            BlockCache.FileKey key = cacheKey;
+            if (key != null) {
+                cacheKey = null;
+                blockCache.release(key);
+            }
+        }
+    }
+
+    private synchronized WriteBehindBuffer writeBuffer() {
+        if (writeBuffer == null) {
+            writeBuffer = writeBehind.register(this);
+        }
+        return writeBuffer;
+    }
+
+    private void flushWriteBuffer() throws IOException {
+        WriteBehindBuffer buffer = writeBuffer;
+        if (buffer != null) {
+            buffer.flush(WriteBehindBuffer.FlushReason.EXPLICIT);
+        }
+    }
+
+    private synchronized MappedFile mappedFile() throws IOException {
+        if (mappedFile == null) {
+            mappedFile = new MappedFile(mappedFiles, m_io);
+        }
+        return mappedFile;
+    }
+
+    /**
+     * 写入超出原文件末尾时，原末尾所在的不完整块同样失效
+     */
+    private void invalidateWrite(long fileOff, long len, long oldSize) {
+        long from = Math.min(fileOff, oldSize);
+        invalidate(from, fileOff + len - from);
+    }
+
+    private void invalidate(long fileOff, long len) {
+        BlockCache.FileKey key = cacheKey;
+        if (key != null) {
+            blockCache.invalidate(key, fileOff, len);
+        }
+    }
+
+    private void detectSequential(BlockCache.FileKey key, long fileOff, int rdlen) {
+        if (rdlen <= 0) {
+            return;
+        }
+        if (fileOff == nextReadPos) {
+            sequentialReads++;
+        } else {
+            sequentialReads = 0;
+            readAheadBlock = -1;
+        }
+        nextReadPos = fileOff + rdlen;
+
+        if (sequentialReads >= SEQUENTIAL_THRESHOLD) {
+            readAheadBlock = blockCache.readAhead(key, m_io, nextReadPos, readAheadBlock);
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package vip.ebox.jfiledemo.filesys;
+
+import org.filesys.server.SrvSession;
+import org.filesys.server.filesys.*;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/21  11:20
+ * @Description: 配额驱动
+ *  jFileServer 的协议处理器不会在写入前调用 QuotaManager.allocateSpace，由本驱动在写入、截断前按文件增长的字节数
+ *  向 ShareQuota 占用空间（超出配额时返回磁盘已满），在截断、删除、覆盖重命名后释放空间：
+ *  - 打开的文件记住大小与所有者，同一文件的多个句柄共用一条记录，写入只比较记录的大小，不访问磁盘
+ *  - 未打开的文件删除或被覆盖时，从下层驱动查询大小、从扩展属性读取所有者
+ *  - 磁盘容量查询按共享的容量上限与已用空间回答，不超过所在文件系统的实际容量
+ *  位于元数据缓存之内，查询到的文件大小不会是缓存中过期的值
+ */
+public class QuotaDiskDriver extends FilterDiskDriver {
+
+    // 容量查询使用 512 字节的块，每个分配单元 64 块
+    private static final int BLOCK_SIZE = 512;
+    private static final int BLOCKS_PER_UNIT = 64;
+    private static final long UNIT_SIZE = (long) BLOCK_SIZE * BLOCKS_PER_UNIT;
+
+    private final NIODiskDriver nio;
+    private final ShareQuota quota;
+    private final List<Path> roots;
+    private final FileStore store;
+
+    // 打开的句柄与规范化路径 -> 文件记录
+    private final Map<NetworkFile, Tracked> handles = new ConcurrentHashMap<>();
+    private final Map<String, Tracked> paths = new ConcurrentHashMap<>();
+
+    /**
+     * @param driver 下一层驱动
+     * @param nio    共享的 NIO 驱动，用于解析文件在磁盘上的路径以读写所有者
+     * @param quota  该共享的配额管理器
+     */
+    public QuotaDiskDriver(DiskInterface driver, NIODiskDriver nio, ShareQuota quota) {
+        super(driver);
+        this.nio = nio;
+        this.quota = quota;
+        this.roots = quota.getRoots();
+        FileStore fileStore;
+        try {
+            fileStore = Files.getFileStore(roots.get(0));
+        } catch (IOException e) {
+            fileStore = null;
+        }
+        this.store = fileStore;
+    }
+
+    public ShareQuota getQuota() {
+        return quota;
+    }
+
+    @Override
+    public NetworkFile openFile(SrvSession<?> sess, TreeConnection tree, FileOpenParams params) throws IOException {
+        NetworkFile file = driver.openFile(sess, tree, params);
+        if (!file.isDirectory()) {
+            track(file, params.getPath(), null, false);
+        }
+        return file;
+    }
+
+    @Override
+    public NetworkFile createFile(SrvSession<?> sess, TreeConnection tree, FileOpenParams params) throws IOException {
+        NetworkFile file = driver.createFile(sess, tree, params);
+        if (!file.isDirectory()) {
+            String owner = quota.ownerOf(sess);
+            quota.writeOwner(locate(params.getPath()), owner);
+            track(file, params.getPath(), owner, true);
+        }
+        return file;
+    }
+
+    @Override
+    public void closeFile(SrvSession<?> sess, TreeConnection tree, NetworkFile file) throws IOException {
+        Tracked tracked = handles.remove(file);
+        if (tracked != null) {
+            untrack(tracked);
+        }
+        String name = file.getFullName();
+        driver.closeFile(sess, tree, file);
+
+        // 关闭时删除的文件由下层驱动删除，确认已不存在后释放
+        if (tracked != null && file.hasDeleteOnClose() && name != null
+                && driver.fileExists(sess, tree, name) == FileStatus.NotExist) {
+            release(tracked);
+        }
+    }
+
+    @Override
+    public int writeFile(SrvSession<?> sess, TreeConnection tree, NetworkFile file,
+                         byte[] buf, int bufoff, int siz, long fileoff) throws IOException {
+        Tracked tracked = handles.get(file);
+        if (tracked == null || siz <= 0) {
+            return driver.writeFile(sess, tree, file, buf, bufoff, siz, fileoff);
+        }
+        long end = fileoff + siz;
+        long before;
+        synchronized (tracked) {
+            before = tracked.size;
+            if (end > before && !tracked.detached) {
+                quota.allocate(tracked.owner, end - before);
+                tracked.size = end;
+            }
+        }
+        try {
+            return driver.writeFile(sess, tree, file, buf, bufoff, siz, fileoff);
+        } catch (IOException e) {
+            // 写入失败，之后没有其它写入扩展文件时退回占用的空间
+            synchronized (tracked) {
+                if (end > before && tracked.size == end && !tracked.detached) {
+                    tracked.size = before;
+                    quota.release(tracked.owner, end - before);
+                }
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void truncateFile(SrvSession<?> sess, TreeConnection tree, NetworkFile file, long siz) throws IOException {
+        Tracked tracked = handles.get(file);
+        if (tracked == null) {
+            driver.truncateFile(sess, tree, file, siz);
+            return;
+        }
+        synchronized (tracked) {
+            if (tracked.detached) {
+                driver.truncateFile(sess, tree, file, siz);
+                return;
+            }
+            long before = tracked.size;
+            if (siz > before) {
+                quota.allocate(tracked.owner, siz - before);
+            }
+            try {
+                driver.truncateFile(sess, tree, file, siz);
+            } catch (IOException e) {
+                if (siz > before) {
+                    quota.release(tracked.owner, siz - before);
+                }
+                throw e;
+            }
+            tracked.size = siz;
+            if (siz < before) {
+                quota.release(tracked.owner, before - siz);
+            }
+        }
+    }
+
+    @Override
+    public void deleteFile(SrvSession<?> sess, TreeConnection tree, String name) throws IOException {
+        Tracked tracked = lookup(sess, tree, name);
+        driver.deleteFile(sess, tree, name);
+        if (tracked != null) {
+            release(tracked);
+        }
+    }
+
+    @Override
+    public void renameFile(SrvSession<?> sess, TreeConnection tree, String oldName, String newName,
+                           NetworkFile netFile) throws IOException {
+        String oldKey = normalizePath(oldName);
+        String newKey = normalizePath(newName);
+
+        // 覆盖已存在的文件，只改变大小写时目标就是源文件
+        Tracked replaced = null;
+        if (!oldKey.equals(newKey) && driver.fileExists(sess, tree, newName) == FileStatus.FileExists) {
+            replaced = lookup(sess, tree, newName);
+        }
+        driver.renameFile(sess, tree, oldName, newName, netFile);
+        if (replaced != null) {
+            release(replaced);
+        }
+        if (paths.isEmpty()) {
+            return;
+        }
+
+        // 文件本身，或重命名的目录下打开的文件
+        String prefix = oldKey + FileName.DOS_SEPERATOR;
+        for (Tracked tracked : paths.values()) {
+            String key = tracked.key;
+            if (key.equals(oldKey) || key.startsWith(prefix)) {
+                paths.remove(key, tracked);
+                tracked.key = newKey + key.substring(oldKey.length());
+                paths.put(tracked.key, tracked);
+            }
+        }
+    }
+
+    /**
+     * 按共享的容量上限与已用空间回答，不限时为文件系统的容量
+     */
+    @Override
+    public void getDiskInformation(DiskDeviceContext ctx, SrvDiskInfo diskDev) throws IOException {
+        if (store == null) {
+            super.getDiskInformation(ctx, diskDev);
+            return;
+        }
+        long total = store.getTotalSpace();
+        long free = store.getUsableSpace();
+        long limit = quota.getLimit();
+        if (limit > 0) {
+            total = Math.min(total, limit);
+            free = Math.min(free, Math.max(0, limit - quota.getUsed()));
+        }
+        diskDev.setBlockSize(BLOCK_SIZE);
+        diskDev.setBlocksPerAllocationUnit(BLOCKS_PER_UNIT);
+        diskDev.setTotalUnits(total / UNIT_SIZE);
+        diskDev.setFreeUnits(free / UNIT_SIZE);
+    }
+
+    private void track(NetworkFile file, String path, String owner, boolean created) {
+        String key = normalizePath(path);
+        String fileOwner = created || paths.containsKey(key) ? owner : quota.readOwner(locate(path));
+        long size = file.getFileSize();
+        Tracked tracked = paths.compute(key, (k, t) -> {
+            if (t == null) {
+                t = new Tracked(k, fileOwner, size);
+            }
+            t.opens++;
+            return t;
+        });
+        handles.put(file, tracked);
+    }
+
+    private void untrack(Tracked tracked) {
+        paths.computeIfPresent(tracked.key, (k, t) -> t != tracked || --t.opens > 0 ? t : null);
+    }
+
+    /**
+     * 查找要删除或被覆盖的文件的记录，未打开时按下层驱动的文件信息创建，目录或不存在时返回 null
+     */
+    private Tracked lookup(SrvSession<?> sess, TreeConnection tree, String name) {
+        Tracked tracked = paths.get(normalizePath(name));
+        if (tracked != null) {
+            return tracked;
+        }
+        FileInfo info;
+        try {
+            info = driver.getFileInformation(sess, tree, name);
+        } catch (IOException e) {
+            return null;
+        }
+        if (info == null || info.isDirectory()) {
+            return null;
+        }
+        return new Tracked(normalizePath(name), quota.readOwner(locate(name)), info.getSize());
+    }
+
+    /**
+     * 文件已删除或被覆盖，释放其大小；仍打开的句柄之后的写入不再计入
+     */
+    private void release(Tracked tracked) {
+        long size;
+        synchronized (tracked) {
+            if (tracked.detached) {
+                return;
+            }
+            tracked.detached = true;
+            size = tracked.size;
+        }
+        paths.remove(tracked.key, tracked);
+        quota.release(tracked.owner, size);
+    }
+
+    /**
+     * 文件在磁盘上的路径，分层存储时依次查找各层
+     */
+    private Path locate(String path) {
+        for (Path root : roots) {
+            Path local = nio.resolvePath(root.toString(), path);
+            if (Files.exists(local, LinkOption.NOFOLLOW_LINKS)) {
+                return local;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 打开的文件的记录，大小由写入与截断在对象锁内更新
+     */
+    private static final class Tracked {
+        private final String owner;
+        private volatile String key;
+        private long size;
+        private int opens;
+        private boolean detached;
+
+        Tracked(String key, String owner, long size) {
+            this.key = key;
+            this.owner = owner;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package vip.ebox.jfiledemo.filesys;
+
+import org.filesys.server.SrvSession;
+import org.filesys.server.filesys.*;
+import vip.ebox.jfiledemo.scheduler.FairShareScheduler;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.EnumSet;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/19  17:20
+ * @Description: 按共享调度磁盘操作的驱动
+ *  每个共享一个实例，位于元数据缓存、目录列表索引之内，只有真正访问磁盘的操作才需要获取 FairShareScheduler 的执行槽位；
+ *  读写按数据量计算开销（每 64KB 计 1），使大块读写的共享不会因请求数少而占用过多份额。
+ *  请求访问的共享已满时由 SharePacketRequest 在分发前留下，这里的等待只处理重新分发与新请求之间的竞争；
+ *  只有打开、创建在排队已满时拒绝，协议处理器会返回打开失败；其余操作始终排队：读写被拒绝会使客户端的复制失败，
+ *  搜索被拒绝时客户端无法区分与目录不存在。关闭文件不排队，避免句柄因拒绝而无法释放
+ */
+public class SchedulingDiskDriver extends FilterDiskDriver {
+
+    private static final int COST_UNIT = 65536;
+
+    private final FairShareScheduler.ShareQueue queue;
+
+    public SchedulingDiskDriver(DiskInterface driver, FairShareScheduler.ShareQueue queue) {
+        super(driver);
+        this.queue = queue;
+    }
+
+    public FairShareScheduler.ShareQueue getQueue() {
+        return queue;
+    }
+
+    @Override
+    public NetworkFile openFile(SrvSession<?> sess, TreeConnection tree, FileOpenParams params) throws IOException {
+        queue.acquire(1, true);
+        try {
+            return driver.openFile(sess, tree, params);
+        } finally {
+            queue.release();
+        }
+    }
+
+    @Override
+    public NetworkFile createFile(SrvSession<?> sess, TreeConnection tree, FileOpenParams params) throws IOException {
+        queue.acquire(1, true);
+        try {
+            return driver.createFile(sess, tree, params);
+        } finally {
+            queue.release();
+        }
+    }
+
+    @Override
+    public int readFile(SrvSession<?> sess, TreeConnection tree, NetworkFile file,
+                        byte[] buf, int bufPos, int siz, long filePos) throws IOException {
+        queue.acquire(cost(siz), false);
+        try {
+            return driver.readFile(sess, tree, file, buf, bufPos, siz, filePos);
+        } finally {
+            queue.release();
+        }
+    }
+
+    @Override
+    public int writeFile(SrvSession<?> sess, TreeConnection tree, NetworkFile file,
+                         byte[] buf, int bufoff, int siz, long fileoff) throws IOException {
+        queue.acquire(cost(siz), false);
+        try {
+            return driver.writeFile(sess, tree, file, buf, bufoff, siz, fileoff);
+        } finally {
+            queue.release();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public SearchContext startSearch(SrvSession sess, TreeConnection tree, String searchPath, int attrib,
+                                     EnumSet<SearchFlags> flags) throws FileNotFoundException {
+        try {
+            queue.acquire(1, false);
+        } catch (IOException e) {
+            throw new FileNotFoundException(e.getMessage());
+        }
+        try {
+            return driver.startSearch(sess, tree, searchPath, attrib, flags);
+        } finally {
+            queue.release();
+        }
+    }
+
+    @Override
+    public FileInfo getFileInformation(SrvSession<?> sess, TreeConnection tree, String name) throws IOException {
+        queue.acquire(1, false);
+        try {
+            return driver.getFileInformation(sess, tree, name);
+        } finally {
+            queue.release();
+        }
+    }
+
+    @Override
+    public void setFileInformation(SrvSession<?> sess, TreeConnection tree, String name, FileInfo info) throws IOException {
+        queue.acquire(1, false);
+        try {
+            driver.setFileInformation(sess, tree, name, info);
+        } finally {
+            queue.release();
+        }
+    }
+
+    @Override
+    public void createDirectory(SrvSession<?> sess, TreeConnection tree, FileOpenParams params) throws IOException {
+        queue.acquire(1, false);
+        try {
+            driver.createDirectory(sess, tree, params);
+        } finally {
+            queue.release();
+        }
+    }
+
+    @Override
+    public void deleteDirectory(SrvSession<?> sess, TreeConnection tree, String dir) throws IOException {
+        queue.acquire(1, false);
+        try {
+            driver.deleteDirectory(sess, tree, dir);
+        } finally {
+            queue.release();
+        }
+    }
+
+    @Override
+    public void deleteFile(SrvSession<?> sess, TreeConnection tree, String name) throws IOException {
+        queue.acquire(1, false);
+        try {
+            driver.deleteFile(sess, tree, name);
+        } finally {
+            queue.release();
+        }
+    }
+
+    @Override
+    public void renameFile(SrvSession<?> sess, TreeConnection tree, String oldName, String newName,
+                           NetworkFile netFile) throws IOException {
+        queue.acquire(1, false);
+        try {
+            driver.renameFile(sess, tree, oldName, newName, netFile);
+        } finally {
+            queue.release();
+        }
+    }
+
+    @Override
+    public void truncateFile(SrvSession<?> sess, TreeConnection tree, NetworkFile file, long siz) throws IOException {
+        queue.acquire(1, false);
+        try {
+            driver.truncateFile(sess, tree, file, siz);
+        } finally {
+            queue.release();
+        }
+    }
+
+    @Override
+    public void flushFile(SrvSession<?> sess, TreeConnection tree, NetworkFile file) throws IOException {
+        queue.acquire(1, false);
+        try {
+            driver.flushFile(sess, tree, file);
+        } finally {
+            queue.release();
+        }
+    }
+
+    private static int cost(int siz) {
+        return 1 + siz / COST_UNIT;
+    }
+}
@@ -0,0 +1,350 @@
+package vip.ebox.jfiledemo.filesys;
+
+import lombok.extern.slf4j.Slf4j;
+import org.filesys.server.SrvSession;
+import org.filesys.server.filesys.*;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/20  15:20
+ * @Description: 内存临时共享的磁盘驱动
+ *  适合 CI 构建产物等只存在几秒的文件：新建文件的数据保存在堆外内存（ScratchMemory）中，不写磁盘；
+ *  目录与文件名仍由 NIO 驱动在共享目录中创建，新建的文件在磁盘上是空文件，权限检查、列目录、删除非空目录等行为不变，
+ *  查询信息与列目录时用内存中的大小和修改时间替换空文件的值
+ *
+ *  - 内存预算用尽或文件超过单文件上限时，文件数据写出到磁盘上的同名文件（溢出），之后与普通文件相同
+ *  - 启动前已存在的文件、覆盖打开的已有文件都按普通文件处理
+ *  - 关闭共享时写出所有仍在内存中的文件；进程异常退出时这些文件在磁盘上只留下空文件
+ */
+@Slf4j
+public class ScratchDiskDriver extends FilterDiskDriver {
+
+    private final NIODiskDriver nio;
+    private final ScratchMemory memory;
+    private final String shareName;
+
+    // 规范化路径 -> 仍在内存中的文件
+    private final Map<String, ScratchFile> files = new ConcurrentHashMap<>();
+
+    // 删除、重命名修改磁盘上的文件名时持有写锁，溢出写出文件时持有读锁，避免写到已改名或删除的路径
+    private final ReentrantReadWriteLock namespace = new ReentrantReadWriteLock();
+
+    /**
+     * @param driver 下一层驱动（I/O 调度或 NIO 驱动）
+     * @param nio    共享的 NIO 驱动，用于解析文件在磁盘上的路径
+     * @param memory 所有内存临时共享共用的页面池
+     */
+    public ScratchDiskDriver(DiskInterface driver, NIODiskDriver nio, ScratchMemory memory, String shareName) {
+        super(driver);
+        this.nio = nio;
+        this.memory = memory;
+        this.shareName = shareName;
+    }
+
+    @Override
+    public NetworkFile createFile(SrvSession<?> sess, TreeConnection tree, FileOpenParams params) throws IOException {
+        NetworkFile created = driver.createFile(sess, tree, params);
+        if (created.isDirectory()) {
+            return created;
+        }
+
+        // NIO 驱动只创建了空文件，返回的文件对象尚未打开通道
+        created.closeFile();
+        String key = normalizePath(params.getPath());
+        Path path = nio.resolvePath(tree.getContext().getDeviceName(), params.getPath());
+        ScratchFile file = new ScratchFile(memory, this, nio.getBlockCache(), key, path);
+        ScratchFile old = files.put(key, file);
+        if (old != null) {
+            old.delete();
+        }
+        return new ScratchNetworkFile(file, created);
+    }
+
+    @Override
+    public NetworkFile openFile(SrvSession<?> sess, TreeConnection tree, FileOpenParams params) throws IOException {
+        // 权限与存在性检查仍由 NIO 驱动完成
+        NetworkFile opened = driver.openFile(sess, tree, params);
+        if (opened.isDirectory()) {
+            return opened;
+        }
+        ScratchFile file = files.get(normalizePath(params.getPath()));
+        if (file == null) {
+            return opened;
+        }
+        opened.closeFile();
+        return new ScratchNetworkFile(file, opened);
+    }
+
+    @Override
+    public void closeFile(SrvSession<?> sess, TreeConnection tree, NetworkFile file) throws IOException {
+        if (!(file instanceof ScratchNetworkFile)) {
+            driver.closeFile(sess, tree, file);
+            return;
+        }
+        file.closeFile();
+        if (file.hasDeleteOnClose() && file.getFullName() != null) {
+            deleteFile(sess, tree, file.getFullName());
+        }
+    }
+
+    @Override
+    public int readFile(SrvSession<?> sess, TreeConnection tree, NetworkFile file,
+                        byte[] buf, int bufPos, int siz, long filePos) throws IOException {
+        if (file instanceof ScratchNetworkFile) {
+            return file.readFile(buf, siz, bufPos, filePos);
+        }
+        return driver.readFile(sess, tree, file, buf, bufPos, siz, filePos);
+    }
+
+    @Override
+    public int writeFile(SrvSession<?> sess, TreeConnection tree, NetworkFile file,
+                         byte[] buf, int bufoff, int siz, long fileoff) throws IOException {
+        if (file instanceof ScratchNetworkFile) {
+            file.writeFile(buf, siz, bufoff, fileoff);
+            return siz;
+        }
+        return driver.writeFile(sess, tree, file, buf, bufoff, siz, fileoff);
+    }
+
+    @Override
+    public long seekFile(SrvSession<?> sess, TreeConnection tree, NetworkFile file, long pos, int typ) throws IOException {
+        if (file instanceof ScratchNetworkFile) {
+            return file.seekFile(pos, typ);
+        }
+        return driver.seekFile(sess, tree, file, pos, typ);
+    }
+
+    @Override
+    public void truncateFile(SrvSession<?> sess, TreeConnection tree, NetworkFile file, long siz) throws IOException {
+        if (file instanceof ScratchNetworkFile) {
+            file.truncateFile(siz);
+            return;
+        }
+        driver.truncateFile(sess, tree, file, siz);
+    }
+
+    @Override
+    public void flushFile(SrvSession<?> sess, TreeConnection tree, NetworkFile file) throws IOException {
+        if (file instanceof ScratchNetworkFile) {
+            file.flushFile();
+            return;
+        }
+        driver.flushFile(sess, tree, file);
+    }
+
+    @Override
+    public FileInfo getFileInformation(SrvSession<?> sess, TreeConnection tree, String name) throws IOException {
+        FileInfo info = driver.getFileInformation(sess, tree, name);
+        if (info != null && !files.isEmpty()) {
+            patch(info, files.get(normalizePath(name)));
+        }
+        return info;
+    }
+
+    @Override
+    public void setFileInformation(SrvSession<?> sess, TreeConnection tree, String name, FileInfo info) throws IOException {
+        driver.setFileInformation(sess, tree, name, info);
+        ScratchFile file = files.get(normalizePath(name));
+        if (file != null && info.hasSetFlag(FileInfo.SetModifyDate)) {
+            file.setModified(info.getModifyDateTime());
+        }
+    }
+
+    @Override
+    public void deleteFile(SrvSession<?> sess, TreeConnection tree, String name) throws IOException {
+        ScratchFile file;
+        namespace.writeLock().lock();
+        try {
+            driver.deleteFile(sess, tree, name);
+            file = files.remove(normalizePath(name));
+            if (file != null) {
+                file.markDeleted();
+            }
+        } finally {
+            namespace.writeLock().unlock();
+        }
+        if (file != null) {
+            file.delete();
+        }
+    }
+
+    @Override
+    public void renameFile(SrvSession<?> sess, TreeConnection tree, String oldName, String newName,
+                           NetworkFile netFile) throws IOException {
+        String devName = tree.getContext().getDeviceName();
+        String oldKey = normalizePath(oldName);
+        String newKey = normalizePath(newName);
+        List<ScratchFile> replaced = new ArrayList<>();
+        namespace.writeLock().lock();
+        try {
+            Path oldPath = nio.resolvePath(devName, oldName);
+            driver.renameFile(sess, tree, oldName, newName, netFile);
+            if (files.isEmpty()) {
+                return;
+            }
+            Path newPath = nio.resolvePath(devName, newName);
+
+            // 文件本身，或重命名的目录下的所有文件
+            String prefix = oldKey + FileName.DOS_SEPERATOR;
+            for (ScratchFile file : files.values()) {
+                String key = file.getKey();
+                if (key.equals(oldKey)) {
+                    moveEntry(file, newKey, newPath, replaced);
+                } else if (key.startsWith(prefix)) {
+                    moveEntry(file, newKey + key.substring(oldKey.length()),
+                            newPath.resolve(oldPath.relativize(file.getPath())), replaced);
+                }
+            }
+        } finally {
+            namespace.writeLock().unlock();
+        }
+
+        // 被覆盖的内存中的文件，释放页面需要文件锁，在写锁外进行
+        for (ScratchFile file : replaced) {
+            file.delete();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public SearchContext startSearch(SrvSession sess, TreeConnection tree, String searchPath, int attrib,
+                                     EnumSet<SearchFlags> flags) throws FileNotFoundException {
+        SearchContext ctx = driver.startSearch(sess, tree, searchPath, attrib, flags);
+        if (ctx == null || files.isEmpty()) {
+            return ctx;
+        }
+        String dir = FileName.splitPath(searchPath)[0];
+        return new ScratchSearchContext(ctx, normalizePath(dir));
+    }
+
+    /**
+     * 写出所有仍在内存中的文件，移除共享时调用
+     */
+    public void shutdown() {
+        int count = 0;
+        for (ScratchFile file : files.values()) {
+            if (file.spill(false)) {
+                count++;
+            }
+        }
+        if (count > 0) {
+            log.info("共享 {} 已将 {} 个内存临时文件写出到磁盘", shareName, count);
+        }
+    }
+
+    /**
+     * 仍在内存中的文件数
+     */
+    public int getResidentFiles() {
+        return files.size();
+    }
+
+    /**
+     * 文件写出到磁盘后由 ScratchFile 调用，之后的打开由 NIO 驱动处理
+     */
+    void spilled(ScratchFile file) {
+        files.remove(file.getKey(), file);
+    }
+
+    /**
+     * 溢出写出文件前获取，期间文件不会被改名或删除
+     */
+    ReentrantReadWriteLock.ReadLock namespaceLock() {
+        return namespace.readLock();
+    }
+
+    private void moveEntry(ScratchFile file, String key, Path path, List<ScratchFile> replaced) {
+        files.remove(file.getKey(), file);
+        file.moved(key, path);
+        ScratchFile old = files.put(key, file);
+        if (old != null && old != file) {
+            old.markDeleted();
+            replaced.add(old);
+        }
+    }
+
+    /**
+     * 用内存中的大小与修改时间替换磁盘上空文件的值
+     */
+    private static void patch(FileInfo info, ScratchFile file) {
+        if (file == null || info.isDirectory()) {
+            return;
+        }
+        long size = file.getSize();
+        long pages = (size + ScratchMemory.PAGE_SIZE - 1) / ScratchMemory.PAGE_SIZE;
+        info.setFileSize(size);
+        info.setAllocationSize(pages * ScratchMemory.PAGE_SIZE);
+        info.setModifyDateTime(file.getModified());
+    }
+
+    private static String childKey(String dirKey, String name) {
+        String upper = normalizePath(name);
+        return dirKey.equals(FileName.DOS_SEPERATOR_STR) ? FileName.DOS_SEPERATOR + upper
+                : dirKey + FileName.DOS_SEPERATOR + upper;
+    }
+
+    /**
+     * 列目录时替换内存临时文件大小的搜索上下文，其余操作交给 NIO 驱动的上下文
+     */
+    private final class ScratchSearchContext extends SearchContext {
+
+        private final SearchContext ctx;
+        private final String dirKey;
+
+        ScratchSearchContext(SearchContext ctx, String dirKey) {
+            this.ctx = ctx;
+            this.dirKey = dirKey;
+            setSearchString(ctx.getSearchString());
+        }
+
+        @Override
+        public int getResumeId() {
+            return ctx.getResumeId();
+        }
+
+        @Override
+        public boolean hasMoreFiles() {
+            return ctx.hasMoreFiles();
+        }
+
+        @Override
+        public boolean nextFileInfo(FileInfo info) {
+            if (!ctx.nextFileInfo(info)) {
+                return false;
+            }
+            patch(info, files.get(childKey(dirKey, info.getFileName())));
+            return true;
+        }
+
+        @Override
+        public String nextFileName() {
+            return ctx.nextFileName();
+        }
+
+        @Override
+        public boolean restartAt(int resumeId) {
+            return ctx.restartAt(resumeId);
+        }
+
+        @Override
+        public boolean restartAt(FileInfo info) {
+            return ctx.restartAt(info);
+        }
+
+        @Override
+        public void closeSearch() {
+            ctx.closeSearch();
+        }
+    }
+}
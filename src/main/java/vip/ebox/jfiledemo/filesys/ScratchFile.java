@@ -0,0 +1,404 @@
+package vip.ebox.jfiledemo.filesys;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/20  14:40
+ * @Description: 内存临时共享中的一个文件
+ *  数据保存在 ScratchMemory 的页面中，未写入过的页面不占内存（读取为 0），页面中超出文件大小的部分始终为 0；
+ *  溢出后数据写入磁盘上的同名文件，仍打开的句柄改为通过 FileChannel 读写，新的打开直接由 NIO 驱动处理
+ */
+@Slf4j
+class ScratchFile {
+
+    private final ScratchMemory memory;
+    private final ScratchDiskDriver owner;
+    private final BlockCache blockCache;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // 规范化的共享内路径与磁盘上的文件，重命名时由 ScratchDiskDriver 更新
+    private volatile String key;
+    private volatile Path path;
+
+    private final List<ByteBuffer> pages = new ArrayList<>();
+    private volatile long size;
+    private volatile long modified;
+
+    private int openCount;
+    private boolean spilled;
+    private volatile boolean deleted;
+
+    // 溢出后仍打开的句柄共用的通道
+    private FileChannel channel;
+
+    ScratchFile(ScratchMemory memory, ScratchDiskDriver owner, BlockCache blockCache, String key, Path path) {
+        this.memory = memory;
+        this.owner = owner;
+        this.blockCache = blockCache;
+        this.key = key;
+        this.path = path;
+        this.modified = System.currentTimeMillis();
+        memory.register(this);
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    void moved(String key, Path path) {
+        this.key = key;
+        this.path = path;
+    }
+
+    long getSize() {
+        return size;
+    }
+
+    long getModified() {
+        return modified;
+    }
+
+    void setModified(long modified) {
+        this.modified = modified;
+    }
+
+    void open() {
+        lock.lock();
+        try {
+            openCount++;
+            if (!spilled) {
+                memory.touch(this);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void close() throws IOException {
+        lock.lock();
+        try {
+            openCount--;
+            if (openCount <= 0 && channel != null) {
+                FileChannel ch = channel;
+                channel = null;
+                ch.close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return 读取的字节数，已到文件末尾时返回 -1
+     */
+    int read(byte[] buf, int off, int len, long pos) throws IOException {
+        lock.lock();
+        try {
+            if (spilled) {
+                memory.recordDiskRead();
+                return channel().read(ByteBuffer.wrap(buf, off, len), pos);
+            }
+            checkDeleted();
+            memory.recordMemoryRead();
+            if (pos >= size) {
+                return -1;
+            }
+            int total = (int) Math.min(len, size - pos);
+            int done = 0;
+            while (done < total) {
+                long at = pos + done;
+                int idx = (int) (at / ScratchMemory.PAGE_SIZE);
+                int pageOff = (int) (at % ScratchMemory.PAGE_SIZE);
+                int n = Math.min(total - done, ScratchMemory.PAGE_SIZE - pageOff);
+                ByteBuffer page = idx < pages.size() ? pages.get(idx) : null;
+                if (page == null) {
+                    // 未写入过的页面
+                    Arrays.fill(buf, off + done, off + done + n, (byte) 0);
+                } else {
+                    page.duplicate().position(pageOff).get(buf, off + done, n);
+                }
+                done += n;
+            }
+            return total;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void write(byte[] buf, int off, int len, long pos) throws IOException {
+        lock.lock();
+        try {
+            if (!spilled) {
+                checkDeleted();
+                if (pos + len > memory.getMaxFileBytes()) {
+                    spillLocked(true);
+                }
+            }
+            int done = 0;
+            if (!spilled) {
+                memory.recordMemoryWrite();
+                done = writeMemory(buf, off, len, pos);
+            }
+            if (done < len) {
+                // 已溢出或内存不足时自身溢出后写入磁盘
+                if (!spilled && !spillLocked(false)) {
+                    throw new IOException("内存临时文件无法写出到磁盘: " + path);
+                }
+                memory.recordDiskWrite();
+                ByteBuffer data = ByteBuffer.wrap(buf, off + done, len - done);
+                FileChannel ch = channel();
+                while (data.hasRemaining()) {
+                    ch.write(data, pos + data.position() - off);
+                }
+                size = Math.max(size, pos + len);
+                forget();
+            }
+            modified = System.currentTimeMillis();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void truncate(long newSize) throws IOException {
+        lock.lock();
+        try {
+            if (!spilled) {
+                checkDeleted();
+                if (newSize > memory.getMaxFileBytes()) {
+                    spillLocked(true);
+                }
+            }
+            if (spilled) {
+                FileChannel ch = channel();
+                if (newSize < ch.size()) {
+                    ch.truncate(newSize);
+                } else if (newSize > ch.size()) {
+                    ch.write(ByteBuffer.wrap(new byte[1]), newSize - 1);
+                }
+                forget();
+            } else if (newSize < size) {
+                int keep = (int) ((newSize + ScratchMemory.PAGE_SIZE - 1) / ScratchMemory.PAGE_SIZE);
+                List<ByteBuffer> freed = new ArrayList<>();
+                while (pages.size() > keep) {
+                    ByteBuffer page = pages.remove(pages.size() - 1);
+                    if (page != null) {
+                        freed.add(page);
+                    }
+                }
+                memory.release(freed);
+
+                // 保持页面中超出文件大小的部分为 0
+                int tail = (int) (newSize % ScratchMemory.PAGE_SIZE);
+                ByteBuffer last = tail > 0 && keep <= pages.size() ? pages.get(keep - 1) : null;
+                if (last != null) {
+                    ByteBuffer dup = last.duplicate();
+                    dup.position(tail);
+                    dup.put(new byte[ScratchMemory.PAGE_SIZE - tail]);
+                }
+            }
+            size = newSize;
+            modified = System.currentTimeMillis();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void flush() throws IOException {
+        lock.lock();
+        try {
+            if (spilled && channel != null) {
+                channel.force(false);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 写出到磁盘并释放页面
+     *
+     * @param oversize 是否因超过单文件大小上限而溢出
+     * @return 写出成功或已不在内存中时返回 true
+     */
+    boolean spill(boolean oversize) {
+        lock.lock();
+        try {
+            return spillLocked(oversize);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 文件被删除，释放页面，之后的读写失败
+     */
+    void delete() throws IOException {
+        lock.lock();
+        try {
+            deleted = true;
+            if (!spilled) {
+                releasePages();
+            }
+            if (channel != null) {
+                FileChannel ch = channel;
+                channel = null;
+                ch.close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 磁盘上的文件已删除，之后不再写出；不需要文件锁，页面由 delete 释放
+     */
+    void markDeleted() {
+        deleted = true;
+    }
+
+    boolean tryLock() {
+        return lock.tryLock();
+    }
+
+    void unlock() {
+        lock.unlock();
+    }
+
+    /**
+     * 调用方持有锁
+     */
+    boolean spillLocked(boolean oversize) {
+        if (spilled || deleted) {
+            return true;
+        }
+        Lock namespace = owner.namespaceLock();
+        namespace.lock();
+        try {
+            // 等待期间文件可能已被删除
+            return !deleted && writeOut(oversize);
+        } finally {
+            namespace.unlock();
+        }
+    }
+
+    private boolean writeOut(boolean oversize) {
+        long bytes = size;
+
+        // 只写入 NIO 驱动创建的文件，不存在时说明已在磁盘上被删除或改名，保留在内存中
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            ch.truncate(0);
+            for (int idx = 0; idx < pages.size(); idx++) {
+                ByteBuffer page = pages.get(idx);
+                long at = (long) idx * ScratchMemory.PAGE_SIZE;
+                if (page == null || at >= bytes) {
+                    continue;
+                }
+                ByteBuffer src = page.duplicate();
+                src.position(0).limit((int) Math.min(ScratchMemory.PAGE_SIZE, bytes - at));
+                while (src.hasRemaining()) {
+                    ch.write(src, at + src.position());
+                }
+            }
+            if (ch.size() < bytes) {
+                // 末尾未写入过的部分
+                ch.write(ByteBuffer.wrap(new byte[1]), bytes - 1);
+            }
+        } catch (IOException e) {
+            memory.recordSpillFailure();
+            log.warn("内存临时文件写出到磁盘失败: {}: {}", path, e.getMessage());
+            return false;
+        }
+        try {
+            Files.setLastModifiedTime(path, FileTime.fromMillis(modified));
+        } catch (IOException e) {
+            log.debug("设置文件修改时间失败: {}", path, e);
+        }
+
+        releasePages();
+        spilled = true;
+        forget();
+        owner.spilled(this);
+        memory.recordSpill(bytes, oversize);
+        log.debug("内存临时文件已写出到磁盘: {} ({} 字节)", path, bytes);
+        return true;
+    }
+
+    private int writeMemory(byte[] buf, int off, int len, long pos) {
+        int done = 0;
+        while (done < len) {
+            long at = pos + done;
+            int idx = (int) (at / ScratchMemory.PAGE_SIZE);
+            int pageOff = (int) (at % ScratchMemory.PAGE_SIZE);
+            int n = Math.min(len - done, ScratchMemory.PAGE_SIZE - pageOff);
+            while (pages.size() <= idx) {
+                pages.add(null);
+            }
+            ByteBuffer page = pages.get(idx);
+            if (page == null) {
+                page = memory.allocate(this);
+                if (page == null) {
+                    break;
+                }
+                pages.set(idx, page);
+            }
+            page.duplicate().position(pageOff).put(buf, off + done, n);
+            done += n;
+            size = Math.max(size, at + n);
+        }
+        return done;
+    }
+
+    private void releasePages() {
+        List<ByteBuffer> used = new ArrayList<>();
+        for (ByteBuffer page : pages) {
+            if (page != null) {
+                used.add(page);
+            }
+        }
+        pages.clear();
+        memory.release(used);
+        memory.unregister(this);
+    }
+
+    private FileChannel channel() throws IOException {
+        checkDeleted();
+        if (channel == null) {
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        return channel;
+    }
+
+    private void checkDeleted() throws IOException {
+        if (deleted) {
+            throw new IOException("文件已删除: " + key);
+        }
+    }
+
+    /**
+     * 磁盘上的文件已改变，丢弃块缓存中该文件的数据
+     */
+    private void forget() {
+        if (blockCache != null) {
+            blockCache.forget(path.toString());
+        }
+    }
+}
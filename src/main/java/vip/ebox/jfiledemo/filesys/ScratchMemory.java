@@ -0,0 +1,338 @@
+package vip.ebox.jfiledemo.filesys;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/20  14:10
+ * @Description: 内存临时共享的堆外页面池
+ *  所有内存临时共享共用一个内存预算，文件数据按固定大小的页面保存在 DirectByteBuffer 中：
+ *  - 释放的页面放回空闲列表直接复用，不反复申请堆外内存
+ *  - 预算用尽时按最近打开/写入的先后把最久未使用的文件写出到磁盘（溢出），正在读写的文件跳过
+ *  - 没有可溢出的文件时由申请页面的文件自己溢出，之后的写入直接写磁盘
+ */
+public class ScratchMemory {
+
+    /**
+     * 页面大小
+     */
+    public static final int PAGE_SIZE = 64 * 1024;
+
+    // 复用页面前用于清零
+    private static final ByteBuffer ZEROS = ByteBuffer.allocateDirect(PAGE_SIZE);
+
+    private final long budget;
+    private final long maxFileBytes;
+    private final int maxPages;
+
+    // 空闲页面
+    private final ArrayDeque<ByteBuffer> freePages = new ArrayDeque<>();
+
+    // 已申请的页面数（含空闲）与正在使用的页面数
+    private int allocatedPages;
+    private int usedPages;
+
+    // 驻留内存的文件，按访问顺序排列，最久未使用的在前
+    private final LinkedHashMap<ScratchFile, Boolean> resident = new LinkedHashMap<>(256, 0.75f, true);
+
+    private final LongAdder created = new LongAdder();
+    private final LongAdder memoryReads = new LongAdder();
+    private final LongAdder memoryWrites = new LongAdder();
+    private final LongAdder diskReads = new LongAdder();
+    private final LongAdder diskWrites = new LongAdder();
+    private final LongAdder spills = new LongAdder();
+    private final LongAdder spilledBytes = new LongAdder();
+    private final LongAdder oversizeSpills = new LongAdder();
+    private final LongAdder spillFailures = new LongAdder();
+
+    /**
+     * @param budget       所有内存临时共享合计的内存预算（字节）
+     * @param maxFileBytes 单个文件保留在内存中的最大大小（字节），超过后溢出到磁盘，0 表示只受预算限制
+     */
+    public ScratchMemory(long budget, long maxFileBytes) {
+        this.maxPages = (int) Math.min(Integer.MAX_VALUE, Math.max(1, budget / PAGE_SIZE));
+        this.budget = (long) maxPages * PAGE_SIZE;
+        this.maxFileBytes = maxFileBytes > 0 ? maxFileBytes : this.budget;
+    }
+
+    public long getMaxFileBytes() {
+        return maxFileBytes;
+    }
+
+    /**
+     * 为文件申请一个清零的页面，预算用尽时先溢出其它最久未使用的文件
+     *
+     * @param owner 申请页面的文件，调用方持有其锁
+     * @return 申请到的页面，没有可溢出的文件时返回 null
+     */
+    ByteBuffer allocate(ScratchFile owner) {
+        List<ScratchFile> tried = new ArrayList<>();
+        while (true) {
+            ScratchFile victim = null;
+            synchronized (this) {
+                resident.get(owner);
+                if (usedPages < maxPages) {
+                    usedPages++;
+                    ByteBuffer page = freePages.poll();
+                    if (page == null) {
+                        allocatedPages++;
+                        return ByteBuffer.allocateDirect(PAGE_SIZE);
+                    }
+                    page.clear();
+                    page.put(ZEROS.duplicate());
+                    page.clear();
+                    return page;
+                }
+                for (ScratchFile file : resident.keySet()) {
+                    if (file != owner && !tried.contains(file)) {
+                        victim = file;
+                        break;
+                    }
+                }
+            }
+            if (victim == null) {
+                return null;
+            }
+            tried.add(victim);
+
+            // 只尝试获取其它文件的锁，正在读写的文件跳过，避免两个文件互相等待
+            if (victim.tryLock()) {
+                try {
+                    victim.spillLocked(false);
+                } finally {
+                    victim.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * 归还文件不再使用的页面
+     */
+    synchronized void release(List<ByteBuffer> pages) {
+        usedPages -= pages.size();
+        freePages.addAll(pages);
+    }
+
+    synchronized void register(ScratchFile file) {
+        resident.put(file, Boolean.TRUE);
+        created.increment();
+    }
+
+    synchronized void unregister(ScratchFile file) {
+        resident.remove(file);
+    }
+
+    /**
+     * 记录打开文件，更新其在淘汰顺序中的位置
+     */
+    synchronized void touch(ScratchFile file) {
+        resident.get(file);
+    }
+
+    void recordMemoryRead() {
+        memoryReads.increment();
+    }
+
+    void recordMemoryWrite() {
+        memoryWrites.increment();
+    }
+
+    void recordDiskRead() {
+        diskReads.increment();
+    }
+
+    void recordDiskWrite() {
+        diskWrites.increment();
+    }
+
+    void recordSpill(long bytes, boolean oversize) {
+        spills.increment();
+        spilledBytes.add(bytes);
+        if (oversize) {
+            oversizeSpills.increment();
+        }
+    }
+
+    void recordSpillFailure() {
+        spillFailures.increment();
+    }
+
+    /**
+     * 释放空闲页面，所有共享关闭后调用
+     */
+    public synchronized void shutdown() {
+        allocatedPages -= freePages.size();
+        freePages.clear();
+    }
+
+    /**
+     * 获取内存临时共享的统计信息
+     */
+    public ScratchStats getStats() {
+        int used;
+        int allocated;
+        List<ScratchFile> snapshot;
+        synchronized (this) {
+            used = usedPages;
+            allocated = allocatedPages;
+            snapshot = new ArrayList<>(resident.keySet());
+        }
+        long bytes = 0;
+        for (ScratchFile file : snapshot) {
+            bytes += file.getSize();
+        }
+        return new ScratchStats(budget, (long) used * PAGE_SIZE, (long) allocated * PAGE_SIZE, maxFileBytes,
+                created.sum(), snapshot.size(), bytes, memoryReads.sum(), memoryWrites.sum(), diskReads.sum(),
+                diskWrites.sum(), spills.sum(), spilledBytes.sum(), oversizeSpills.sum(), spillFailures.sum());
+    }
+
+    /**
+     * 内存临时共享统计信息
+     */
+    public static class ScratchStats {
+        private final long memoryBudget;
+        private final long memoryUsed;
+        private final long memoryAllocated;
+        private final long maxFileBytes;
+        private final long createdFiles;
+        private final long residentFiles;
+        private final long residentBytes;
+        private final long memoryReads;
+        private final long memoryWrites;
+        private final long diskReads;
+        private final long diskWrites;
+        private final long spills;
+        private final long spilledBytes;
+        private final long oversizeSpills;
+        private final long spillFailures;
+
+        public ScratchStats(long memoryBudget, long memoryUsed, long memoryAllocated, long maxFileBytes,
+                            long createdFiles, long residentFiles, long residentBytes, long memoryReads,
+                            long memoryWrites, long diskReads, long diskWrites, long spills, long spilledBytes,
+                            long oversizeSpills, long spillFailures) {
+            this.memoryBudget = memoryBudget;
+            this.memoryUsed = memoryUsed;
+            this.memoryAllocated = memoryAllocated;
+            this.maxFileBytes = maxFileBytes;
+            this.createdFiles = createdFiles;
+            this.residentFiles = residentFiles;
+            this.residentBytes = residentBytes;
+            this.memoryReads = memoryReads;
+            this.memoryWrites = memoryWrites;
+            this.diskReads = diskReads;
+            this.diskWrites = diskWrites;
+            this.spills = spills;
+            this.spilledBytes = spilledBytes;
+            this.oversizeSpills = oversizeSpills;
+            this.spillFailures = spillFailures;
+        }
+
+        public long getMemoryBudget() {
+            return memoryBudget;
+        }
+
+        /**
+         * 文件数据占用的页面内存
+         */
+        public long getMemoryUsed() {
+            return memoryUsed;
+        }
+
+        /**
+         * 已申请的堆外内存（含空闲页面）
+         */
+        public long getMemoryAllocated() {
+            return memoryAllocated;
+        }
+
+        /**
+         * 内存使用率
+         */
+        public double getMemoryUsage() {
+            return memoryBudget == 0 ? 0 : (double) memoryUsed / memoryBudget;
+        }
+
+        public long getMaxFileBytes() {
+            return maxFileBytes;
+        }
+
+        /**
+         * 在内存中新建的文件数
+         */
+        public long getCreatedFiles() {
+            return createdFiles;
+        }
+
+        /**
+         * 驻留内存的文件数与文件大小合计
+         */
+        public long getResidentFiles() {
+            return residentFiles;
+        }
+
+        public long getResidentBytes() {
+            return residentBytes;
+        }
+
+        /**
+         * 由内存完成的读写次数
+         */
+        public long getMemoryReads() {
+            return memoryReads;
+        }
+
+        public long getMemoryWrites() {
+            return memoryWrites;
+        }
+
+        /**
+         * 文件溢出后，仍打开的句柄直接读写磁盘的次数
+         */
+        public long getDiskReads() {
+            return diskReads;
+        }
+
+        public long getDiskWrites() {
+            return diskWrites;
+        }
+
+        /**
+         * 溢出到磁盘的文件数与字节数
+         */
+        public long getSpills() {
+            return spills;
+        }
+
+        public long getSpilledBytes() {
+            return spilledBytes;
+        }
+
+        /**
+         * 其中因超过单文件大小上限而溢出的文件数
+         */
+        public long getOversizeSpills() {
+            return oversizeSpills;
+        }
+
+        /**
+         * 写出失败的次数，失败的文件仍保留在内存中
+         */
+        public long getSpillFailures() {
+            return spillFailures;
+        }
+
+        /**
+         * 新建的文件中溢出到磁盘的比例
+         */
+        public double getSpillRate() {
+            return createdFiles == 0 ? 0 : (double) spills / createdFiles;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package vip.ebox.jfiledemo.filesys;
+
+import org.filesys.server.filesys.NetworkFile;
+import org.filesys.server.filesys.cache.FileState;
+import org.filesys.server.filesys.cache.NetworkFileStateInterface;
+
+import java.io.IOException;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/20  15:05
+ * @Description: 内存临时文件的打开句柄
+ *  读写都交给 ScratchFile，同一文件的多个句柄共用其数据；文件溢出到磁盘后句柄继续可用
+ */
+public class ScratchNetworkFile extends NetworkFile implements NetworkFileStateInterface {
+
+    private final ScratchFile file;
+
+    // seekFile 设置的当前位置
+    private long position;
+
+    // 文件状态，由 FileStateDiskDriver 在打开时设置
+    private volatile FileState fileState;
+
+    ScratchNetworkFile(ScratchFile file, NetworkFile opened) {
+        super(opened.getName());
+        this.file = file;
+        setFullName(opened.getFullName());
+        setGrantedAccess(opened.getGrantedAccess());
+        setAccessMask(opened.getAccessMask());
+        setAttributes(opened.getFileAttributes());
+        setCreationDate(opened.getCreationDate());
+        setFileSize(file.getSize());
+        setModifyDate(file.getModified());
+        setClosed(false);
+        file.open();
+    }
+
+    ScratchFile getScratchFile() {
+        return file;
+    }
+
+    @Override
+    public FileState getFileState() {
+        return fileState;
+    }
+
+    public void setFileState(FileState fileState) {
+        this.fileState = fileState;
+    }
+
+    @Override
+    public void openFile(boolean createFlag) {
+        // 数据已在内存中
+    }
+
+    @Override
+    public int readFile(byte[] buf, int len, int pos, long fileOff) throws IOException {
+        int rdlen = file.read(buf, pos, len, fileOff);
+        incrementReadCount();
+        return rdlen;
+    }
+
+    @Override
+    public void writeFile(byte[] buf, int len, int pos, long fileOff) throws IOException {
+        file.write(buf, pos, len, fileOff);
+        incrementWriteCount();
+        setFileSize(file.getSize());
+        setModifyDate(file.getModified());
+    }
+
+    @Override
+    public long seekFile(long pos, int typ) {
+        switch (typ) {
+            case 0:
+                position = pos;
+                break;
+            case 1:
+                position += pos;
+                break;
+            case 2:
+                position = file.getSize() + pos;
+                break;
+            default:
+                break;
+        }
+        return position;
+    }
+
+    @Override
+    public void flushFile() throws IOException {
+        file.flush();
+    }
+
+    @Override
+    public void truncateFile(long siz) throws IOException {
+        file.truncate(siz);
+        setFileSize(siz);
+        setModifyDate(file.getModified());
+    }
+
+    @Override
+    public synchronized void closeFile() throws IOException {
+        if (isClosed()) {
+            return;
+        }
+        setClosed(true);
+        file.close();
+    }
+}
@@ -0,0 +1,185 @@
+package vip.ebox.jfiledemo.filesys;
+
+import org.filesys.server.SrvSession;
+import org.filesys.server.filesys.*;
+import vip.ebox.jfiledemo.scheduler.TrafficShaper;
+import vip.ebox.jfiledemo.session.SessionRegistry;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.EnumSet;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/20  19:50
+ * @Description: 限速记账驱动
+ *  每次磁盘操作结束后把操作数与实际读写的字节数记到会话的用量上（供会话查询接口使用），
+ *  启用限速时同时记到会话及其用户的令牌桶上，这里不做等待；
+ *  超出限速的会话由 TrafficShaper 在分发下一个请求前延后，工作线程不会阻塞在限速上
+ */
+public class ShapingDiskDriver extends FilterDiskDriver {
+
+    private final SessionRegistry sessions;
+    private final TrafficShaper shaper;
+
+    /**
+     * @param sessions 会话登记
+     * @param shaper   限速，未启用时为 null
+     */
+    public ShapingDiskDriver(DiskInterface driver, SessionRegistry sessions, TrafficShaper shaper) {
+        super(driver);
+        this.sessions = sessions;
+        this.shaper = shaper;
+    }
+
+    @Override
+    public NetworkFile openFile(SrvSession<?> sess, TreeConnection tree, FileOpenParams params) throws IOException {
+        try {
+            return driver.openFile(sess, tree, params);
+        } finally {
+            charge(sess, 0, 0);
+        }
+    }
+
+    @Override
+    public NetworkFile createFile(SrvSession<?> sess, TreeConnection tree, FileOpenParams params) throws IOException {
+        try {
+            return driver.createFile(sess, tree, params);
+        } finally {
+            charge(sess, 0, 0);
+        }
+    }
+
+    @Override
+    public void closeFile(SrvSession<?> sess, TreeConnection tree, NetworkFile file) throws IOException {
+        try {
+            driver.closeFile(sess, tree, file);
+        } finally {
+            charge(sess, 0, 0);
+        }
+    }
+
+    @Override
+    public void createDirectory(SrvSession<?> sess, TreeConnection tree, FileOpenParams params) throws IOException {
+        try {
+            driver.createDirectory(sess, tree, params);
+        } finally {
+            charge(sess, 0, 0);
+        }
+    }
+
+    @Override
+    public void deleteDirectory(SrvSession<?> sess, TreeConnection tree, String dir) throws IOException {
+        try {
+            driver.deleteDirectory(sess, tree, dir);
+        } finally {
+            charge(sess, 0, 0);
+        }
+    }
+
+    @Override
+    public void deleteFile(SrvSession<?> sess, TreeConnection tree, String name) throws IOException {
+        try {
+            driver.deleteFile(sess, tree, name);
+        } finally {
+            charge(sess, 0, 0);
+        }
+    }
+
+    @Override
+    public FileStatus fileExists(SrvSession<?> sess, TreeConnection tree, String name) {
+        try {
+            return driver.fileExists(sess, tree, name);
+        } finally {
+            charge(sess, 0, 0);
+        }
+    }
+
+    @Override
+    public void flushFile(SrvSession<?> sess, TreeConnection tree, NetworkFile file) throws IOException {
+        try {
+            driver.flushFile(sess, tree, file);
+        } finally {
+            charge(sess, 0, 0);
+        }
+    }
+
+    @Override
+    public FileInfo getFileInformation(SrvSession<?> sess, TreeConnection tree, String name) throws IOException {
+        try {
+            return driver.getFileInformation(sess, tree, name);
+        } finally {
+            charge(sess, 0, 0);
+        }
+    }
+
+    @Override
+    public int readFile(SrvSession<?> sess, TreeConnection tree, NetworkFile file,
+                        byte[] buf, int bufPos, int siz, long filePos) throws IOException {
+        int n = 0;
+        try {
+            n = driver.readFile(sess, tree, file, buf, bufPos, siz, filePos);
+            return n;
+        } finally {
+            charge(sess, Math.max(0, n), 0);
+        }
+    }
+
+    @Override
+    public void renameFile(SrvSession<?> sess, TreeConnection tree, String oldName, String newName,
+                           NetworkFile netFile) throws IOException {
+        try {
+            driver.renameFile(sess, tree, oldName, newName, netFile);
+        } finally {
+            charge(sess, 0, 0);
+        }
+    }
+
+    @Override
+    public void setFileInformation(SrvSession<?> sess, TreeConnection tree, String name, FileInfo info) throws IOException {
+        try {
+            driver.setFileInformation(sess, tree, name, info);
+        } finally {
+            charge(sess, 0, 0);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public SearchContext startSearch(SrvSession sess, TreeConnection tree, String searchPath, int attrib,
+                                     EnumSet<SearchFlags> flags) throws FileNotFoundException {
+        try {
+            return driver.startSearch(sess, tree, searchPath, attrib, flags);
+        } finally {
+            charge(sess, 0, 0);
+        }
+    }
+
+    @Override
+    public void truncateFile(SrvSession<?> sess, TreeConnection tree, NetworkFile file, long siz) throws IOException {
+        try {
+            driver.truncateFile(sess, tree, file, siz);
+        } finally {
+            charge(sess, 0, 0);
+        }
+    }
+
+    @Override
+    public int writeFile(SrvSession<?> sess, TreeConnection tree, NetworkFile file,
+                         byte[] buf, int bufoff, int siz, long fileoff) throws IOException {
+        try {
+            return driver.writeFile(sess, tree, file, buf, bufoff, siz, fileoff);
+        } finally {
+            // 数据已经从网络收到，写入失败同样计入
+            charge(sess, 0, siz);
+        }
+    }
+
+    private void charge(SrvSession<?> sess, long readBytes, long writeBytes) {
+        sessions.charge(sess, readBytes, writeBytes);
+        if (shaper != null) {
+            shaper.charge(sess, readBytes, writeBytes);
+        }
+    }
+}
@@ -0,0 +1,537 @@
+package vip.ebox.jfiledemo.filesys;
+
+import lombok.extern.slf4j.Slf4j;
+import org.filesys.server.filesys.DiskDeviceContext;
+import org.filesys.server.filesys.FileName;
+import org.filesys.server.filesys.NotifyAction;
+import org.filesys.smb.server.notify.NotifyChangeHandler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/19  23:20
+ * @Description: 监视共享目录的本地修改并转为 SMB 变更通知
+ *  通过 SMB 的修改由协议处理器直接通知 NotifyChangeHandler；直接写入共享目录的修改（如导入任务）
+ *  由 WatchService（Linux 下为 inotify）监视，经合并后交给同一个 NotifyChangeHandler：
+ *  - 同一路径在时间窗口内的多次修改合并为一次：新建后修改仍为新建，新建后删除不通知，删除后新建视为修改
+ *  - 窗口内没有新的修改时才发送，持续修改时最长延迟 4 个窗口，待发送路径过多时立即发送
+ *  - 按层级由浅到深注册目录，数量有上限，超出部分及注册失败（达到 inotify 上限）的目录不监视
+ *  - 新建的子目录自动注册，删除的目录随其 WatchKey 失效而移除
+ *  - 发送通知的同时失效元数据缓存中的对应条目，不必等待 TTL，并标记目录列表索引中变化的条目，
+ *    收到通知后重新列目录的客户端能看到新条目
+ *  事件队列溢出时无法得知具体路径，失效该目录下的全部缓存和索引并通知目录已修改
+ *  通过 SMB 的修改同样会产生本地事件，按 ChangeTrackingDiskDriver 的记录跳过，不重复通知也不重复失效
+ *
+ *  分层存储的共享同时监视两层的目录，修改按共享内路径合并；迁移在一层新建、在另一层删除，
+ *  合并后抵消，跨时间窗口时删除的路径仍存在于另一层、新建的路径两层都有（目录镜像）则不通知；
+ *  两层的暂存目录不监视
+ */
+@Slf4j
+public class ShareChangeWatcher {
+
+    /**
+     * 待发送的路径数达到该值时不再等待时间窗口
+     */
+    private static final int MAX_PENDING = 4096;
+
+    private final String shareName;
+    private final List<Path> roots;
+    private final DiskDeviceContext context;
+    private final CachingDiskDriver metadataCache;
+    private final IndexedDiskDriver listingIndex;
+    private final ChangeTrackingDiskDriver serverChanges;
+    private final long debounceNanos;
+    private final int maxWatches;
+
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> keys = new ConcurrentHashMap<>();
+    private final Map<Path, WatchKey> directories = new ConcurrentHashMap<>();
+    private final Thread thread;
+
+    // 仅由监视线程访问
+    private final LinkedHashMap<String, PendingChange> pending = new LinkedHashMap<>();
+    private long firstEventAt;
+    private long lastEventAt;
+    private boolean limitWarned;
+
+    private final LongAdder events = new LongAdder();
+    private final LongAdder ignored = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder notifications = new LongAdder();
+    private final LongAdder overflows = new LongAdder();
+    private final LongAdder unwatched = new LongAdder();
+
+    private volatile boolean running = true;
+
+    /**
+     * @param roots         共享的本地目录，分层存储时依次为热层与冷层
+     * @param metadataCache 共享的元数据缓存，未启用时为 null
+     * @param listingIndex  共享的目录列表索引，未启用时为 null
+     * @param serverChanges 记录通过 SMB 修改的路径，为 null 时所有本地事件都按外部修改处理
+     */
+    public ShareChangeWatcher(String shareName, List<Path> roots, DiskDeviceContext context,
+                              CachingDiskDriver metadataCache, IndexedDiskDriver listingIndex,
+                              ChangeTrackingDiskDriver serverChanges, long debounceMillis, int maxWatches)
+            throws IOException {
+        this.shareName = shareName;
+        this.roots = new ArrayList<>();
+        for (Path root : roots) {
+            this.roots.add(root.toAbsolutePath().normalize());
+        }
+        this.context = context;
+        this.metadataCache = metadataCache;
+        this.listingIndex = listingIndex;
+        this.serverChanges = serverChanges;
+        this.debounceNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, debounceMillis));
+        this.maxWatches = Math.max(1, maxWatches);
+        this.watchService = this.roots.get(0).getFileSystem().newWatchService();
+
+        for (Path root : this.roots) {
+            registerTree(root);
+        }
+
+        thread = new Thread(this::run, "jfs-notify-" + shareName);
+        thread.setDaemon(true);
+        thread.start();
+        log.info("共享 {} 的变更通知: 已监视 {} 个目录, 未监视 {} 个", shareName, directories.size(), unwatched.sum());
+    }
+
+    /**
+     * 停止监视，未发送的修改直接丢弃
+     */
+    public void shutdown() {
+        running = false;
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            log.warn("关闭共享 {} 的 WatchService 失败: {}", shareName, e.getMessage());
+        }
+        keys.clear();
+        directories.clear();
+    }
+
+    /**
+     * 获取变更通知统计信息
+     */
+    public ChangeNotifyStats getStats() {
+        return new ChangeNotifyStats(directories.size(), maxWatches, unwatched.sum(), events.sum(),
+                ignored.sum(), coalesced.sum(), notifications.sum(), overflows.sum());
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                WatchKey key;
+                if (pending.isEmpty()) {
+                    key = watchService.take();
+                } else {
+                    long wait = Math.min(lastEventAt + debounceNanos, firstEventAt + debounceNanos * 4)
+                            - System.nanoTime();
+                    key = wait > 0 ? watchService.poll(wait, TimeUnit.NANOSECONDS) : watchService.poll();
+                }
+                while (key != null) {
+                    handle(key);
+                    key = watchService.poll();
+                }
+                if (!pending.isEmpty() && readyToFlush()) {
+                    flush();
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // 已停止
+        } catch (RuntimeException e) {
+            log.error("共享 {} 的变更监视线程异常退出", shareName, e);
+        }
+    }
+
+    private boolean readyToFlush() {
+        long now = System.nanoTime();
+        return now - lastEventAt >= debounceNanos || now - firstEventAt >= debounceNanos * 4
+                || pending.size() >= MAX_PENDING;
+    }
+
+    private void handle(WatchKey key) {
+        Path dir = keys.get(key);
+        if (dir != null) {
+            for (WatchEvent<?> event : key.pollEvents()) {
+                events.increment();
+                WatchEvent.Kind<?> kind = event.kind();
+                if (kind == StandardWatchEventKinds.OVERFLOW) {
+                    overflows.increment();
+                    record(dir, Change.OVERFLOW, true);
+                    continue;
+                }
+                Path child = dir.resolve((Path) event.context());
+                boolean own = isServerChange(child);
+                if (own) {
+                    ignored.increment();
+                }
+                if (kind == StandardWatchEventKinds.ENTRY_CREATE) {
+                    boolean directory = Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS);
+                    if (!own) {
+                        record(child, Change.ADDED, directory);
+                    }
+                    // 通过 SMB 新建的目录同样需要监视，之后其中的本地修改才能通知
+                    if (directory) {
+                        registerTree(child);
+                    }
+                } else if (own) {
+                    continue;
+                } else if (kind == StandardWatchEventKinds.ENTRY_DELETE) {
+                    record(child, Change.REMOVED, directories.containsKey(child));
+                } else {
+                    record(child, Change.MODIFIED, Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS));
+                }
+            }
+        }
+        if (!key.reset()) {
+            Path removed = keys.remove(key);
+            if (removed != null) {
+                directories.remove(removed, key);
+            }
+        }
+    }
+
+    /**
+     * 本地事件是否由通过 SMB 的修改产生
+     */
+    private boolean isServerChange(Path local) {
+        if (serverChanges == null) {
+            return false;
+        }
+        String path = sharePath(local);
+        return path != null && !path.isEmpty() && serverChanges.isOwnChange(path);
+    }
+
+    /**
+     * 合并同一路径在时间窗口内的修改
+     */
+    private void record(Path local, Change change, boolean directory) {
+        String path = sharePath(local);
+        if (path == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (pending.isEmpty()) {
+            firstEventAt = now;
+        }
+        lastEventAt = now;
+
+        PendingChange cur = pending.get(path);
+        if (cur == null) {
+            pending.put(path, new PendingChange(change, directory));
+            return;
+        }
+        coalesced.increment();
+        Change merged = cur.change.merge(change);
+        if (merged == null) {
+            pending.remove(path);
+        } else {
+            cur.change = merged;
+            cur.directory |= directory;
+        }
+    }
+
+    private void flush() {
+        NotifyChangeHandler handler = context.getChangeHandler();
+        Iterator<Map.Entry<String, PendingChange>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, PendingChange> entry = it.next();
+            it.remove();
+            String path = entry.getKey();
+            PendingChange change = entry.getValue();
+
+            // 文件在层间迁移：从一层删除时另一层已有；目录在另一层镜像创建时两层都有
+            if (roots.size() > 1 && (change.change == Change.REMOVED && rootsContaining(path) > 0
+                    || change.change == Change.ADDED && rootsContaining(path) > 1)) {
+                continue;
+            }
+
+            boolean tree = change.directory && change.change != Change.MODIFIED;
+            if (metadataCache != null) {
+                if (path.isEmpty()) {
+                    metadataCache.clear();
+                } else {
+                    metadataCache.invalidateExternal(path, tree);
+                }
+            }
+            if (listingIndex != null) {
+                if (path.isEmpty()) {
+                    listingIndex.clear();
+                } else {
+                    listingIndex.invalidateExternal(path, tree);
+                }
+            }
+            // 共享根目录本身没有可通知的父目录
+            if (handler == null || path.isEmpty()) {
+                continue;
+            }
+            switch (change.change) {
+                case ADDED:
+                    notify(handler, NotifyAction.Added, path, change.directory);
+                    break;
+                case REMOVED:
+                    notify(handler, NotifyAction.Removed, path, change.directory);
+                    break;
+                case MODIFIED:
+                    handler.notifyLastWriteTimeChanged(path, change.directory);
+                    break;
+                default:
+                    notify(handler, NotifyAction.Modified, path, true);
+                    break;
+            }
+            notifications.increment();
+        }
+    }
+
+    private static void notify(NotifyChangeHandler handler, NotifyAction action, String path, boolean directory) {
+        if (directory) {
+            handler.notifyDirectoryChanged(action, path);
+        } else {
+            handler.notifyFileChanged(action, path);
+        }
+    }
+
+    /**
+     * 按层级由浅到深注册目录及其子目录，达到上限后只统计未监视的目录数
+     */
+    private void registerTree(Path start) {
+        ArrayDeque<Path> queue = new ArrayDeque<>();
+        queue.add(start);
+        while (!queue.isEmpty()) {
+            Path dir = queue.poll();
+            if (isStaging(dir)) {
+                continue;
+            }
+            if (!register(dir)) {
+                unwatched.increment();
+                continue;
+            }
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path child : stream) {
+                    if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                        queue.add(child);
+                    }
+                }
+            } catch (IOException e) {
+                log.debug("列出共享 {} 的目录失败: {}", shareName, dir, e);
+            }
+        }
+    }
+
+    private boolean register(Path dir) {
+        if (directories.containsKey(dir)) {
+            return true;
+        }
+        if (directories.size() >= maxWatches) {
+            warnLimit("已达到 change-notify-max-watches=" + maxWatches);
+            return false;
+        }
+        try {
+            WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            keys.put(key, dir);
+            directories.put(dir, key);
+            return true;
+        } catch (ClosedWatchServiceException e) {
+            return false;
+        } catch (IOException e) {
+            // 目录已被删除，或达到 fs.inotify.max_user_watches
+            if (Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS)) {
+                warnLimit(e.getMessage());
+            }
+            return false;
+        }
+    }
+
+    private void warnLimit(String reason) {
+        if (!limitWarned) {
+            limitWarned = true;
+            log.warn("共享 {} 监视的目录数已达上限（{}），更深层目录的本地修改不会通知客户端", shareName, reason);
+        }
+    }
+
+    /**
+     * 本地路径转为共享内的 SMB 路径，共享根目录为空字符串，暂存目录及其下的路径返回 null
+     */
+    private String sharePath(Path path) {
+        for (Path root : roots) {
+            if (!path.startsWith(root)) {
+                continue;
+            }
+            Path rel = root.relativize(path);
+            if (rel.toString().isEmpty()) {
+                return "";
+            }
+            if (rel.getName(0).toString().equals(TieredDiskDriver.STAGING_DIR)) {
+                return null;
+            }
+            StringBuilder sb = new StringBuilder();
+            for (Path name : rel) {
+                sb.append(FileName.DOS_SEPERATOR).append(name);
+            }
+            return sb.toString();
+        }
+        return null;
+    }
+
+    private boolean isStaging(Path dir) {
+        Path parent = dir.getParent();
+        return parent != null && roots.contains(parent)
+                && dir.getFileName().toString().equals(TieredDiskDriver.STAGING_DIR);
+    }
+
+    private int rootsContaining(String path) {
+        String rel = path.substring(1).replace(FileName.DOS_SEPERATOR, File.separatorChar);
+        int count = 0;
+        for (Path root : roots) {
+            if (Files.exists(root.resolve(rel), LinkOption.NOFOLLOW_LINKS)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 合并后的修改类型
+     */
+    private enum Change {
+        ADDED, REMOVED, MODIFIED, OVERFLOW;
+
+        /**
+         * 合并同一路径的后续修改，返回 null 表示前后抵消
+         */
+        Change merge(Change next) {
+            if (this == OVERFLOW || next == OVERFLOW) {
+                return OVERFLOW;
+            }
+            switch (this) {
+                case ADDED:
+                    return next == REMOVED ? null : ADDED;
+                case REMOVED:
+                    return next == ADDED ? MODIFIED : REMOVED;
+                default:
+                    return next == REMOVED ? REMOVED : MODIFIED;
+            }
+        }
+    }
+
+    private static final class PendingChange {
+        Change change;
+        boolean directory;
+
+        PendingChange(Change change, boolean directory) {
+            this.change = change;
+            this.directory = directory;
+        }
+    }
+
+    /**
+     * 变更通知统计信息
+     */
+    public static class ChangeNotifyStats {
+        private final int watchedDirectories;
+        private final int maxWatches;
+        private final long unwatchedDirectories;
+        private final long events;
+        private final long ignored;
+        private final long coalesced;
+        private final long notifications;
+        private final long overflows;
+
+        public ChangeNotifyStats(int watchedDirectories, int maxWatches, long unwatchedDirectories, long events,
+                                 long ignored, long coalesced, long notifications, long overflows) {
+            this.watchedDirectories = watchedDirectories;
+            this.maxWatches = maxWatches;
+            this.unwatchedDirectories = unwatchedDirectories;
+            this.events = events;
+            this.ignored = ignored;
+            this.coalesced = coalesced;
+            this.notifications = notifications;
+            this.overflows = overflows;
+        }
+
+        public int getWatchedDirectories() {
+            return watchedDirectories;
+        }
+
+        public int getMaxWatches() {
+            return maxWatches;
+        }
+
+        /**
+         * 因数量上限或注册失败未监视的目录数（累计）
+         */
+        public long getUnwatchedDirectories() {
+            return unwatchedDirectories;
+        }
+
+        /**
+         * WatchService 报告的本地修改事件数
+         */
+        public long getEvents() {
+            return events;
+        }
+
+        /**
+         * 由通过 SMB 的修改产生、已跳过的事件数
+         */
+        public long getIgnored() {
+            return ignored;
+        }
+
+        /**
+         * 与同一路径之前的修改合并的事件数
+         */
+        public long getCoalesced() {
+            return coalesced;
+        }
+
+        /**
+         * 发送给 NotifyChangeHandler 的通知数
+         */
+        public long getNotifications() {
+            return notifications;
+        }
+
+        /**
+         * 事件队列溢出次数
+         */
+        public long getOverflows() {
+            return overflows;
+        }
+
+        /**
+         * 合计多个共享的统计，a 为 null 时直接返回 b
+         */
+        public static ChangeNotifyStats combine(ChangeNotifyStats a, ChangeNotifyStats b) {
+            if (a == null) {
+                return b;
+            }
+            return new ChangeNotifyStats(a.watchedDirectories + b.watchedDirectories, a.maxWatches + b.maxWatches,
+                    a.unwatchedDirectories + b.unwatchedDirectories, a.events + b.events, a.ignored + b.ignored,
+                    a.coalesced + b.coalesced, a.notifications + b.notifications, a.overflows + b.overflows);
+        }
+    }
+}
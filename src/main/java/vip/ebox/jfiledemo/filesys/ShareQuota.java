@@ -0,0 +1,639 @@
+package vip.ebox.jfiledemo.filesys;
+
+import lombok.extern.slf4j.Slf4j;
+import org.filesys.server.SrvSession;
+import org.filesys.server.auth.ClientInfo;
+import org.filesys.server.filesys.DiskDeviceContext;
+import org.filesys.server.filesys.DiskFullException;
+import org.filesys.server.filesys.DiskInterface;
+import org.filesys.server.filesys.NetworkFile;
+import org.filesys.server.filesys.TreeConnection;
+import org.filesys.server.filesys.quota.QuotaManager;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/21  10:30
+ * @Description: 单个共享的配额管理器
+ *  共享与各用户的已用空间保存在内存计数器中，由 QuotaDiskDriver 在写入、截断、删除、重命名时增量更新，
+ *  配额检查与磁盘容量查询都只读计数器，不扫描目录：
+ *  - 文件的所有者（创建文件的用户）保存在文件的扩展属性 user.jfileserver.owner 中，
+ *    文件系统不支持扩展属性时只统计共享合计
+ *  - 计数器定期写入检查点文件，正常关闭时写入并标记为完整
+ *  - 启动时先加载检查点，再在后台扫描共享目录校正计数器；检查点不完整（进程异常退出）或不存在时总是扫描
+ *
+ *  扫描期间的修改照常计入计数器，扫描结束时按"扫描结果 - 扫描开始时的计数"校正，
+ *  扫描到之前已被修改的文件会重复计入这次修改，误差在下次启动扫描时消除
+ */
+@Slf4j
+public class ShareQuota implements QuotaManager {
+
+    /**
+     * 保存文件所有者的扩展属性名（不含 user. 前缀）
+     */
+    public static final String OWNER_ATTRIBUTE = "jfileserver.owner";
+
+    private static final String CHECKPOINT_SUFFIX = ".quota";
+    private static final String USER_PREFIX = "user.";
+
+    private final String shareName;
+    private final List<Path> roots;
+    private final Path checkpoint;
+    private final long limitBytes;
+    private final long userLimitBytes;
+    private final Map<String, Long> userLimits;
+    private final boolean trackOwners;
+
+    private final AtomicLong used = new AtomicLong();
+    private final Map<String, AtomicLong> userUsed = new ConcurrentHashMap<>();
+
+    // 每次修改计数器加一，检查点只在有修改时写入
+    private final AtomicLong version = new AtomicLong();
+    private volatile long savedVersion = -1;
+
+    private final ScheduledExecutorService executor;
+
+    private final LongAdder allocations = new LongAdder();
+    private final LongAdder denied = new LongAdder();
+    private final LongAdder checkpoints = new LongAdder();
+    private volatile boolean scanning;
+    private volatile long lastScan;
+    private volatile long lastScanMillis;
+    private volatile long lastScanFiles;
+    private volatile long lastDrift;
+
+    /**
+     * @param roots             共享的所有目录，分层存储时为热层与冷层
+     * @param checkpointDir     检查点文件所在目录
+     * @param limitBytes        共享的容量上限（字节），0 表示不限
+     * @param userLimitBytes    每个用户在该共享上的默认容量上限（字节），0 表示不限
+     * @param userLimits        按用户名（不区分大小写）覆盖的容量上限（字节）
+     * @param checkpointMillis  检查点写入周期
+     * @param scanOnStartup     检查点完整时是否仍在启动时扫描
+     */
+    public ShareQuota(String shareName, List<Path> roots, Path checkpointDir, long limitBytes, long userLimitBytes,
+                      Map<String, Long> userLimits, long checkpointMillis, boolean scanOnStartup) {
+        this.shareName = shareName;
+        this.roots = List.copyOf(roots);
+        this.checkpoint = checkpointDir.resolve(shareName.replaceAll("[^A-Za-z0-9._-]", "_") + CHECKPOINT_SUFFIX);
+        this.limitBytes = Math.max(0, limitBytes);
+        this.userLimitBytes = Math.max(0, userLimitBytes);
+        Map<String, Long> limits = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        if (userLimits != null) {
+            limits.putAll(userLimits);
+        }
+        this.userLimits = Collections.unmodifiableMap(limits);
+        this.trackOwners = supportsOwners(this.roots.get(0));
+        if (!trackOwners) {
+            log.warn("共享 {} 所在的文件系统不支持扩展属性，只统计共享合计的已用空间", shareName);
+        }
+
+        boolean clean = load();
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "jfs-quota-" + shareName);
+            t.setDaemon(true);
+            return t;
+        });
+
+        // 之后异常退出时检查点不完整，下次启动需要扫描
+        save(false);
+        if (!clean || scanOnStartup) {
+            scanning = true;
+            executor.execute(this::scan);
+        }
+        executor.scheduleWithFixedDelay(() -> {
+            if (version.get() != savedVersion) {
+                save(false);
+            }
+        }, checkpointMillis, checkpointMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 占用空间，超出共享或所有者的容量上限时不占用
+     *
+     * @param owner 文件所有者，null 时只计入共享合计
+     * @throws DiskFullException 超出容量上限
+     */
+    public void allocate(String owner, long bytes) throws DiskFullException {
+        if (bytes <= 0) {
+            return;
+        }
+        if (!reserve(used, bytes, limitBytes)) {
+            denied.increment();
+            throw new DiskFullException("共享 " + shareName + " 已超出配额");
+        }
+        AtomicLong user = userCounter(owner);
+        if (user != null && !reserve(user, bytes, limitFor(owner))) {
+            used.addAndGet(-bytes);
+            denied.increment();
+            throw new DiskFullException("用户 " + owner + " 在共享 " + shareName + " 上已超出配额");
+        }
+        allocations.increment();
+        version.incrementAndGet();
+    }
+
+    /**
+     * 释放空间
+     */
+    public void release(String owner, long bytes) {
+        if (bytes <= 0) {
+            return;
+        }
+        used.addAndGet(-bytes);
+        AtomicLong user = userCounter(owner);
+        if (user != null) {
+            user.addAndGet(-bytes);
+        }
+        version.incrementAndGet();
+    }
+
+    /**
+     * 会话的用户名（小写），匿名会话或未记录所有者时返回 null
+     */
+    public String ownerOf(SrvSession<?> sess) {
+        if (!trackOwners || sess == null) {
+            return null;
+        }
+        ClientInfo client = sess.getClientInformation();
+        if (client == null || client.isNullSession() || !client.hasUserName()) {
+            return null;
+        }
+        return client.getUserName().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 读取文件的所有者，没有记录时返回 null
+     */
+    public String readOwner(Path path) {
+        if (!trackOwners || path == null) {
+            return null;
+        }
+        try {
+            UserDefinedFileAttributeView view = Files.getFileAttributeView(path, UserDefinedFileAttributeView.class);
+            if (view == null) {
+                return null;
+            }
+            ByteBuffer buf = ByteBuffer.allocate(view.size(OWNER_ATTRIBUTE));
+            view.read(OWNER_ATTRIBUTE, buf);
+            buf.flip();
+            return StandardCharsets.UTF_8.decode(buf).toString();
+        } catch (IOException e) {
+            // 文件已删除或没有该属性
+            return null;
+        }
+    }
+
+    /**
+     * 记录新建文件的所有者
+     */
+    public void writeOwner(Path path, String owner) {
+        if (owner == null || path == null) {
+            return;
+        }
+        try {
+            UserDefinedFileAttributeView view = Files.getFileAttributeView(path, UserDefinedFileAttributeView.class);
+            if (view != null) {
+                view.write(OWNER_ATTRIBUTE, StandardCharsets.UTF_8.encode(owner));
+            }
+        } catch (IOException e) {
+            log.debug("记录文件所有者失败: {}: {}", path, e.getMessage());
+        }
+    }
+
+    public String getShareName() {
+        return shareName;
+    }
+
+    /**
+     * 共享的容量上限（字节），0 表示不限
+     */
+    public long getLimit() {
+        return limitBytes;
+    }
+
+    public long getUsed() {
+        return Math.max(0, used.get());
+    }
+
+    /**
+     * 共享的所有目录，第一个为共享设备上下文的目录
+     */
+    List<Path> getRoots() {
+        return roots;
+    }
+
+    @Override
+    public void startManager(DiskInterface disk, DiskDeviceContext ctx) {
+        // 计数器在创建时加载，关闭共享时由 shutdown 写入检查点
+    }
+
+    @Override
+    public void stopManager(DiskInterface disk, DiskDeviceContext ctx) {
+        // 同 startManager
+    }
+
+    @Override
+    public long allocateSpace(SrvSession sess, TreeConnection tree, NetworkFile file, long alloc) throws IOException {
+        allocate(ownerOf(sess), alloc);
+        return alloc;
+    }
+
+    @Override
+    public void releaseSpace(SrvSession sess, TreeConnection tree, int fid, String path, long alloc) {
+        release(ownerOf(sess), alloc);
+    }
+
+    @Override
+    public long getAvailableFreeSpace() {
+        return limitBytes > 0 ? Math.max(0, limitBytes - used.get()) : -1;
+    }
+
+    @Override
+    public long getUserFreeSpace(SrvSession sess, TreeConnection tree) {
+        long free = getAvailableFreeSpace();
+        String owner = ownerOf(sess);
+        long limit = limitFor(owner);
+        if (owner != null && limit > 0) {
+            AtomicLong user = userUsed.get(owner);
+            long userFree = Math.max(0, limit - (user != null ? user.get() : 0));
+            free = free < 0 ? userFree : Math.min(free, userFree);
+        }
+        return free;
+    }
+
+    @Override
+    public long getUserTotalSpace(SrvSession sess, TreeConnection tree) {
+        String owner = ownerOf(sess);
+        long limit = owner != null ? limitFor(owner) : 0;
+        if (limit > 0 && (limitBytes == 0 || limit < limitBytes)) {
+            return limit;
+        }
+        return limitBytes > 0 ? limitBytes : -1;
+    }
+
+    /**
+     * 停止后台任务并写入完整的检查点，移除共享或关闭服务器时调用
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 扫描被中断时计数器不可信，下次启动重新扫描
+        save(!scanning);
+    }
+
+    /**
+     * 获取配额与已用空间
+     */
+    public QuotaStats getStats() {
+        Map<String, Long> users = new TreeMap<>();
+        for (Map.Entry<String, AtomicLong> e : userUsed.entrySet()) {
+            long bytes = e.getValue().get();
+            if (bytes > 0) {
+                users.put(e.getKey(), bytes);
+            }
+        }
+        return new QuotaStats(shareName, limitBytes, getUsed(), userLimitBytes, userLimits, users, trackOwners,
+                allocations.sum(), denied.sum(), checkpoints.sum(), scanning, lastScan, lastScanMillis,
+                lastScanFiles, lastDrift);
+    }
+
+    private long limitFor(String owner) {
+        if (owner == null) {
+            return 0;
+        }
+        Long limit = userLimits.get(owner);
+        return limit != null ? Math.max(0, limit) : userLimitBytes;
+    }
+
+    private AtomicLong userCounter(String owner) {
+        return owner != null ? userUsed.computeIfAbsent(owner, k -> new AtomicLong()) : null;
+    }
+
+    private static boolean reserve(AtomicLong counter, long bytes, long limit) {
+        if (limit <= 0) {
+            counter.addAndGet(bytes);
+            return true;
+        }
+        while (true) {
+            long cur = counter.get();
+            if (cur + bytes > limit) {
+                return false;
+            }
+            if (counter.compareAndSet(cur, cur + bytes)) {
+                return true;
+            }
+        }
+    }
+
+    private static boolean supportsOwners(Path root) {
+        try {
+            return Files.getFileStore(root).supportsFileAttributeView(UserDefinedFileAttributeView.class);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 加载检查点
+     *
+     * @return 检查点存在且是正常关闭时写入的
+     */
+    private boolean load() {
+        if (!Files.exists(checkpoint)) {
+            log.info("共享 {} 没有配额检查点，启动后扫描共享目录", shareName);
+            return false;
+        }
+        Properties props = new Properties();
+        try (Reader reader = Files.newBufferedReader(checkpoint, StandardCharsets.UTF_8)) {
+            props.load(reader);
+            used.set(Long.parseLong(props.getProperty("used", "0")));
+            for (String name : props.stringPropertyNames()) {
+                if (name.startsWith(USER_PREFIX) && trackOwners) {
+                    userCounter(name.substring(USER_PREFIX.length()))
+                            .set(Long.parseLong(props.getProperty(name)));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            log.warn("读取共享 {} 的配额检查点失败，重新扫描: {}", shareName, e.getMessage());
+            used.set(0);
+            userUsed.clear();
+            return false;
+        }
+        boolean clean = Boolean.parseBoolean(props.getProperty("clean"));
+        log.info("共享 {} 已加载配额检查点: 已用={} 字节, 用户数={}, 正常关闭={}", shareName, used.get(),
+                userUsed.size(), clean);
+        return clean;
+    }
+
+    /**
+     * 先写入临时文件再替换，写入中途退出不会留下不完整的检查点
+     */
+    private synchronized void save(boolean clean) {
+        long saving = version.get();
+        Properties props = new Properties();
+        props.setProperty("share", shareName);
+        props.setProperty("saved", Long.toString(System.currentTimeMillis()));
+        props.setProperty("clean", Boolean.toString(clean));
+        props.setProperty("used", Long.toString(used.get()));
+        for (Map.Entry<String, AtomicLong> e : userUsed.entrySet()) {
+            long bytes = e.getValue().get();
+            if (bytes != 0) {
+                props.setProperty(USER_PREFIX + e.getKey(), Long.toString(bytes));
+            }
+        }
+        try {
+            Files.createDirectories(checkpoint.getParent());
+            Path tmp = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+            try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                props.store(writer, "jFileServer quota checkpoint");
+            }
+            try {
+                Files.move(tmp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, checkpoint, StandardCopyOption.REPLACE_EXISTING);
+            }
+            savedVersion = saving;
+            checkpoints.increment();
+        } catch (IOException e) {
+            log.warn("写入共享 {} 的配额检查点失败: {}", shareName, e.getMessage());
+        }
+    }
+
+    /**
+     * 扫描所有目录，按扫描结果校正计数器；扫描期间的增量修改保留在计数器中
+     */
+    private void scan() {
+        long begin = System.nanoTime();
+        long base = used.get();
+        Map<String, Long> userBase = new HashMap<>();
+        for (Map.Entry<String, AtomicLong> e : userUsed.entrySet()) {
+            userBase.put(e.getKey(), e.getValue().get());
+        }
+
+        long[] totals = new long[2];
+        Map<String, Long> owners = new HashMap<>();
+        try {
+            for (Path root : roots) {
+                Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                        if (Thread.currentThread().isInterrupted()) {
+                            return FileVisitResult.TERMINATE;
+                        }
+                        boolean skip = root.equals(dir.getParent()) && (dir.endsWith(TieredDiskDriver.STAGING_DIR)
+                                || dir.endsWith(TieredDiskDriver.TRASH_DIR));
+                        return skip ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        if (attrs.isRegularFile()) {
+                            totals[0] += attrs.size();
+                            totals[1]++;
+                            String owner = readOwner(file);
+                            if (owner != null) {
+                                owners.merge(owner, attrs.size(), Long::sum);
+                            }
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException e) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            }
+        } catch (IOException e) {
+            log.warn("扫描共享 {} 的已用空间失败，保留当前计数: {}", shareName, e.getMessage());
+            scanning = false;
+            return;
+        }
+        if (Thread.currentThread().isInterrupted()) {
+            // 关闭时中断，计数器保持不变，检查点标记为不完整
+            return;
+        }
+
+        long drift = totals[0] - base;
+        used.addAndGet(drift);
+        if (trackOwners) {
+            for (Map.Entry<String, Long> e : owners.entrySet()) {
+                userCounter(e.getKey()).addAndGet(e.getValue() - userBase.getOrDefault(e.getKey(), 0L));
+            }
+            for (Map.Entry<String, Long> e : userBase.entrySet()) {
+                if (!owners.containsKey(e.getKey())) {
+                    userCounter(e.getKey()).addAndGet(-e.getValue());
+                }
+            }
+        }
+        version.incrementAndGet();
+        lastScan = System.currentTimeMillis();
+        lastScanMillis = (System.nanoTime() - begin) / 1_000_000;
+        lastScanFiles = totals[1];
+        lastDrift = drift;
+        scanning = false;
+        log.info("共享 {} 已用空间扫描完成: 文件数={}, 已用={} 字节, 校正={} 字节, 耗时 {}ms", shareName, totals[1],
+                totals[0], drift, lastScanMillis);
+    }
+
+    /**
+     * 单个共享的配额统计信息
+     */
+    public static class QuotaStats {
+        private final String share;
+        private final long limit;
+        private final long used;
+        private final long userLimit;
+        private final Map<String, Long> userLimits;
+        private final Map<String, Long> userUsed;
+        private final boolean ownersTracked;
+        private final long allocations;
+        private final long denied;
+        private final long checkpoints;
+        private final boolean scanning;
+        private final long lastScan;
+        private final long lastScanMillis;
+        private final long lastScanFiles;
+        private final long lastDrift;
+
+        public QuotaStats(String share, long limit, long used, long userLimit, Map<String, Long> userLimits,
+                          Map<String, Long> userUsed, boolean ownersTracked, long allocations, long denied,
+                          long checkpoints, boolean scanning, long lastScan, long lastScanMillis,
+                          long lastScanFiles, long lastDrift) {
+            this.share = share;
+            this.limit = limit;
+            this.used = used;
+            this.userLimit = userLimit;
+            this.userLimits = userLimits;
+            this.userUsed = userUsed;
+            this.ownersTracked = ownersTracked;
+            this.allocations = allocations;
+            this.denied = denied;
+            this.checkpoints = checkpoints;
+            this.scanning = scanning;
+            this.lastScan = lastScan;
+            this.lastScanMillis = lastScanMillis;
+            this.lastScanFiles = lastScanFiles;
+            this.lastDrift = lastDrift;
+        }
+
+        public String getShare() {
+            return share;
+        }
+
+        /**
+         * 共享的容量上限（字节），0 表示不限
+         */
+        public long getLimit() {
+            return limit;
+        }
+
+        public long getUsed() {
+            return used;
+        }
+
+        /**
+         * 已用空间占容量上限的比例，不限时为 0
+         */
+        public double getUsage() {
+            return limit == 0 ? 0 : (double) used / limit;
+        }
+
+        /**
+         * 每个用户的默认容量上限与按用户覆盖的上限（字节）
+         */
+        public long getUserLimit() {
+            return userLimit;
+        }
+
+        public Map<String, Long> getUserLimits() {
+            return userLimits;
+        }
+
+        /**
+         * 各用户的已用空间（字节）
+         */
+        public Map<String, Long> getUserUsed() {
+            return userUsed;
+        }
+
+        /**
+         * 是否记录文件所有者，文件系统不支持扩展属性时为 false
+         */
+        public boolean isOwnersTracked() {
+            return ownersTracked;
+        }
+
+        /**
+         * 占用空间的次数与因超出配额被拒绝的次数
+         */
+        public long getAllocations() {
+            return allocations;
+        }
+
+        public long getDenied() {
+            return denied;
+        }
+
+        public long getCheckpoints() {
+            return checkpoints;
+        }
+
+        /**
+         * 启动扫描是否仍在进行，扫描完成前的已用空间可能不准确
+         */
+        public boolean isScanning() {
+            return scanning;
+        }
+
+        /**
+         * 最近一次扫描的完成时间、耗时、文件数以及对计数器的校正量（字节）
+         */
+        public long getLastScan() {
+            return lastScan;
+        }
+
+        public long getLastScanMillis() {
+            return lastScanMillis;
+        }
+
+        public long getLastScanFiles() {
+            return lastScanFiles;
+        }
+
+        public long getLastDrift() {
+            return lastDrift;
+        }
+    }
+}
@@ -0,0 +1,786 @@
+package vip.ebox.jfiledemo.filesys;
+
+import lombok.extern.slf4j.Slf4j;
+import org.filesys.server.SrvSession;
+import org.filesys.server.filesys.*;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/20  09:10
+ * @Description: 热层/冷层分层存储的磁盘驱动
+ *  共享的设备上下文指向热层，另为冷层创建一个上下文与 TreeConnection，所有操作仍由同一个 NIO 驱动完成：
+ *  - 文件只存在于一层，查询、打开、删除时先找热层再找冷层；目录在两层中按需镜像，列目录时合并两层的结果
+ *  - 新建的文件与目录总是写入热层，所在父目录只在冷层存在时先在热层创建
+ *  - 已打开的文件记住所在的层，后续读写、关闭都交给该层
+ *
+ *  后台迁移线程每个周期：
+ *  - 冷层文件的打开次数达到 promoteAccesses 时迁往热层（不超过热层容量上限）
+ *  - 热层文件超过 demoteAfter 未访问（取修改时间、访问时间与本驱动记录的最后打开时间中最晚的）时迁往冷层，
+ *    热层超过容量上限时按最久未访问的顺序继续迁出，直到降到上限的 90%
+ *  - 打开次数减半，长时间未访问的记录被移除
+ *  迁移先复制到目标层根目录下的暂存目录，再在路径锁内确认文件未被打开、未被修改后原子移动到位并删除源文件，
+ *  客户端看到的路径、属性不变；暂存目录不出现在目录列表中
+ */
+@Slf4j
+public class TieredDiskDriver extends FilterDiskDriver {
+
+    /**
+     * 迁移使用的暂存目录，位于两层的根目录下
+     */
+    public static final String STAGING_DIR = ".jfs-tiering";
+
+    /**
+     * JavaNIODeviceContext 在每层根目录下创建的回收站目录，不参与迁移
+     */
+    static final String TRASH_DIR = ".Trashcan";
+
+    private static final int LOCK_STRIPES = 64;
+
+    // 最多记录的文件访问数，超出后新文件不再记录（不会被迁往热层）
+    private static final int MAX_TRACKED = 100_000;
+
+    private final NIODiskDriver nio;
+    private final String shareName;
+    private final Path hotRoot;
+    private final Path coldRoot;
+    private final String coldDevice;
+    private final TreeConnection coldTree;
+    private final long hotMaxBytes;
+    private final int promoteAccesses;
+    private final long demoteAfterMillis;
+
+    // 打开、删除、重命名与迁移的最后一步按路径互斥
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    // 规范化路径 -> 访问记录
+    private final Map<String, Access> accesses = new ConcurrentHashMap<>();
+
+    // 规范化路径 -> 打开的文件数，迁移跳过已打开的文件
+    private final Map<String, Integer> openCounts = new ConcurrentHashMap<>();
+
+    // 打开的文件 -> 计入 openCounts 的路径，重命名后随之更新，关闭时按它减少计数
+    private final Map<NetworkFile, String> openKeys = new ConcurrentHashMap<>();
+
+    // 从冷层打开的文件
+    private final Set<NetworkFile> coldFiles = ConcurrentHashMap.newKeySet();
+
+    private final ScheduledExecutorService mover;
+
+    private final LongAdder hotHits = new LongAdder();
+    private final LongAdder coldHits = new LongAdder();
+    private final LongAdder promotions = new LongAdder();
+    private final LongAdder demotions = new LongAdder();
+    private final LongAdder promotedBytes = new LongAdder();
+    private final LongAdder demotedBytes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder moverCycles = new LongAdder();
+    private volatile long hotFiles;
+    private volatile long hotBytes;
+
+    /**
+     * @param driver            共享的 NIO 驱动
+     * @param hotRoot           热层目录，即共享设备上下文的目录
+     * @param coldContext       由 NIO 驱动为冷层目录创建的上下文
+     * @param hotMaxBytes       热层容量上限（字节），0 表示不限
+     * @param promoteAccesses   迁往热层所需的打开次数
+     * @param demoteAfterMillis 热层文件迁往冷层的未访问时间
+     * @param moverIntervalMillis 迁移周期
+     */
+    public TieredDiskDriver(NIODiskDriver driver, String shareName, Path hotRoot, DiskDeviceContext coldContext,
+                            long hotMaxBytes, int promoteAccesses, long demoteAfterMillis, long moverIntervalMillis) {
+        super(driver);
+        this.nio = driver;
+        this.shareName = shareName;
+        this.hotRoot = hotRoot.toAbsolutePath().normalize();
+        this.coldDevice = coldContext.getDeviceName();
+        this.coldRoot = Paths.get(coldDevice).toAbsolutePath().normalize();
+        this.coldTree = new TreeConnection(new DiskSharedDevice(shareName, driver, coldContext));
+        this.hotMaxBytes = Math.max(0, hotMaxBytes);
+        this.promoteAccesses = Math.max(1, promoteAccesses);
+        this.demoteAfterMillis = demoteAfterMillis;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+
+        mover = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "jfs-tier-mover-" + shareName);
+            t.setDaemon(true);
+            return t;
+        });
+        mover.scheduleWithFixedDelay(this::runMover, moverIntervalMillis, moverIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public FileStatus fileExists(SrvSession<?> sess, TreeConnection tree, String name) {
+        FileStatus status = driver.fileExists(sess, tree, name);
+        return status != FileStatus.NotExist ? status : driver.fileExists(sess, coldTree, name);
+    }
+
+    @Override
+    public FileInfo getFileInformation(SrvSession<?> sess, TreeConnection tree, String name) throws IOException {
+        return driver.getFileInformation(sess, treeFor(tree, name), name);
+    }
+
+    @Override
+    public void setFileInformation(SrvSession<?> sess, TreeConnection tree, String name, FileInfo info) throws IOException {
+        driver.setFileInformation(sess, treeFor(tree, name), name, info);
+    }
+
+    @Override
+    public NetworkFile openFile(SrvSession<?> sess, TreeConnection tree, FileOpenParams params) throws IOException {
+        String key = normalizePath(params.getPath());
+        synchronized (lockFor(key)) {
+            boolean cold = inCold(tree, params.getPath());
+            NetworkFile file = driver.openFile(sess, cold ? coldTree : tree, params);
+            opened(key, params.getPath(), file, cold);
+            return file;
+        }
+    }
+
+    @Override
+    public NetworkFile createFile(SrvSession<?> sess, TreeConnection tree, FileOpenParams params) throws IOException {
+        String key = normalizePath(params.getPath());
+        synchronized (lockFor(key)) {
+            ensureParent(false, params.getPath());
+            NetworkFile file = driver.createFile(sess, tree, params);
+
+            // 覆盖创建时冷层可能还留有同名的旧文件
+            Path old = nio.resolvePath(coldDevice, params.getPath());
+            if (Files.isRegularFile(old, LinkOption.NOFOLLOW_LINKS)) {
+                Files.deleteIfExists(old);
+                forget(old);
+            }
+            opened(key, params.getPath(), file, false);
+            return file;
+        }
+    }
+
+    @Override
+    public void createDirectory(SrvSession<?> sess, TreeConnection tree, FileOpenParams params) throws IOException {
+        ensureParent(false, params.getPath());
+        driver.createDirectory(sess, tree, params);
+    }
+
+    @Override
+    public void deleteFile(SrvSession<?> sess, TreeConnection tree, String name) throws IOException {
+        String key = normalizePath(name);
+        synchronized (lockFor(key)) {
+            driver.deleteFile(sess, treeFor(tree, name), name);
+            accesses.remove(key);
+        }
+    }
+
+    @Override
+    public void deleteDirectory(SrvSession<?> sess, TreeConnection tree, String dir) throws IOException {
+        Path hotDir = nio.resolvePath(tree.getContext().getDeviceName(), dir);
+        Path coldDir = nio.resolvePath(coldDevice, dir);
+        boolean inHot = Files.isDirectory(hotDir, LinkOption.NOFOLLOW_LINKS);
+        boolean inCold = Files.isDirectory(coldDir, LinkOption.NOFOLLOW_LINKS);
+
+        // 两层都有时需要合并后为空才能删除
+        if (inHot && inCold && (!isEmpty(hotDir) || !isEmpty(coldDir))) {
+            throw new DirectoryNotEmptyException(dir);
+        }
+        if (inCold) {
+            driver.deleteDirectory(sess, coldTree, dir);
+        }
+        if (inHot || !inCold) {
+            driver.deleteDirectory(sess, tree, dir);
+        }
+    }
+
+    @Override
+    public void renameFile(SrvSession<?> sess, TreeConnection tree, String oldName, String newName,
+                           NetworkFile netFile) throws IOException {
+        String oldKey = normalizePath(oldName);
+        String newKey = normalizePath(newName);
+        Object first = lockFor(oldKey);
+        Object second = lockFor(newKey);
+        if (System.identityHashCode(first) > System.identityHashCode(second)) {
+            Object t = first;
+            first = second;
+            second = t;
+        }
+        synchronized (first) {
+            synchronized (second) {
+                Path hotPath = nio.resolvePath(tree.getContext().getDeviceName(), oldName);
+                Path coldPath = nio.resolvePath(coldDevice, oldName);
+                boolean inHot = Files.exists(hotPath, LinkOption.NOFOLLOW_LINKS);
+                boolean inCold = Files.exists(coldPath, LinkOption.NOFOLLOW_LINKS);
+
+                if (inHot && inCold && Files.isDirectory(hotPath, LinkOption.NOFOLLOW_LINKS)) {
+                    // 目录在两层中都要重命名
+                    ensureParent(true, newName);
+                    driver.renameFile(sess, coldTree, oldName, newName, netFile);
+                    ensureParent(false, newName);
+                    driver.renameFile(sess, tree, oldName, newName, netFile);
+                } else if (!inHot && inCold) {
+                    ensureParent(true, newName);
+                    driver.renameFile(sess, coldTree, oldName, newName, netFile);
+                } else {
+                    ensureParent(false, newName);
+                    driver.renameFile(sess, tree, oldName, newName, netFile);
+                }
+
+                // 文件本身，或重命名的目录下的文件，否则迁移线程会按旧路径判断打开状态
+                String prefix = oldKey + FileName.DOS_SEPERATOR;
+                for (Map.Entry<String, Access> entry : accesses.entrySet()) {
+                    String key = entry.getKey();
+                    if ((key.equals(oldKey) || key.startsWith(prefix)) && accesses.remove(key, entry.getValue())) {
+                        Access access = entry.getValue();
+                        access.path = newName + access.path.substring(Math.min(oldKey.length(), access.path.length()));
+                        accesses.put(newKey + key.substring(oldKey.length()), access);
+                    }
+                }
+                for (String key : new ArrayList<>(openCounts.keySet())) {
+                    if (key.equals(oldKey) || key.startsWith(prefix)) {
+                        Integer open = openCounts.remove(key);
+                        if (open != null) {
+                            openCounts.merge(newKey + key.substring(oldKey.length()), open, Integer::sum);
+                        }
+                    }
+                }
+                openKeys.replaceAll((file, key) -> key.equals(oldKey) || key.startsWith(prefix)
+                        ? newKey + key.substring(oldKey.length()) : key);
+            }
+        }
+    }
+
+    @Override
+    public void closeFile(SrvSession<?> sess, TreeConnection tree, NetworkFile file) throws IOException {
+        boolean cold = coldFiles.remove(file);
+        try {
+            driver.closeFile(sess, cold ? coldTree : tree, file);
+        } finally {
+            String key = openKeys.remove(file);
+            if (key != null) {
+                openCounts.computeIfPresent(key, (k, n) -> n > 1 ? n - 1 : null);
+            }
+        }
+    }
+
+    @Override
+    public int readFile(SrvSession<?> sess, TreeConnection tree, NetworkFile file,
+                        byte[] buf, int bufPos, int siz, long filePos) throws IOException {
+        return driver.readFile(sess, treeOf(tree, file), file, buf, bufPos, siz, filePos);
+    }
+
+    @Override
+    public int writeFile(SrvSession<?> sess, TreeConnection tree, NetworkFile file,
+                         byte[] buf, int bufoff, int siz, long fileoff) throws IOException {
+        return driver.writeFile(sess, treeOf(tree, file), file, buf, bufoff, siz, fileoff);
+    }
+
+    @Override
+    public long seekFile(SrvSession<?> sess, TreeConnection tree, NetworkFile file, long pos, int typ) throws IOException {
+        return driver.seekFile(sess, treeOf(tree, file), file, pos, typ);
+    }
+
+    @Override
+    public void truncateFile(SrvSession<?> sess, TreeConnection tree, NetworkFile file, long siz) throws IOException {
+        driver.truncateFile(sess, treeOf(tree, file), file, siz);
+    }
+
+    @Override
+    public void flushFile(SrvSession<?> sess, TreeConnection tree, NetworkFile file) throws IOException {
+        driver.flushFile(sess, treeOf(tree, file), file);
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public SearchContext startSearch(SrvSession sess, TreeConnection tree, String searchPath, int attrib,
+                                     EnumSet<SearchFlags> flags) throws FileNotFoundException {
+        SearchContext hot = null;
+        SearchContext cold = null;
+        try {
+            hot = driver.startSearch(sess, tree, searchPath, attrib, flags);
+        } catch (FileNotFoundException e) {
+            // 热层没有该目录
+        }
+        try {
+            cold = driver.startSearch(sess, coldTree, searchPath, attrib, flags);
+        } catch (FileNotFoundException e) {
+            // 冷层没有该目录
+        }
+        if (hot == null && cold == null) {
+            throw new FileNotFoundException(searchPath);
+        }
+
+        // 根目录下需要隐藏暂存目录
+        String[] paths = FileName.splitPath(searchPath);
+        boolean root = paths[0] == null || paths[0].isEmpty() || paths[0].equals(FileName.DOS_SEPERATOR_STR);
+        if (cold == null && !root) {
+            return hot;
+        }
+        if (hot == null && !root) {
+            return cold;
+        }
+        return TieredSearchContext.merge(hot, cold, searchPath, root ? STAGING_DIR : null);
+    }
+
+    /**
+     * 停止迁移线程，正在进行的迁移完成后退出
+     */
+    public void shutdown() {
+        mover.shutdownNow();
+    }
+
+    /**
+     * 获取分层存储统计信息
+     */
+    public TierStats getStats() {
+        return new TierStats(hotHits.sum(), coldHits.sum(), promotions.sum(), demotions.sum(), promotedBytes.sum(),
+                demotedBytes.sum(), failures.sum(), moverCycles.sum(), hotFiles, hotBytes, hotMaxBytes,
+                accesses.size());
+    }
+
+    /**
+     * 立即执行一次迁移周期
+     */
+    public void runMover() {
+        try {
+            promote();
+            demote();
+            decay();
+            moverCycles.increment();
+        } catch (RuntimeException e) {
+            log.error("共享 {} 的分层迁移出错", shareName, e);
+        }
+    }
+
+    private void opened(String key, String path, NetworkFile file, boolean cold) {
+        if (cold) {
+            coldFiles.add(file);
+        }
+        if (file.isDirectory()) {
+            return;
+        }
+        openCounts.merge(key, 1, Integer::sum);
+        openKeys.put(file, key);
+        if (cold) {
+            coldHits.increment();
+        } else {
+            hotHits.increment();
+        }
+
+        Access access = accesses.get(key);
+        if (access == null) {
+            if (accesses.size() >= MAX_TRACKED) {
+                return;
+            }
+            access = accesses.computeIfAbsent(key, k -> new Access(path));
+        }
+        access.count.incrementAndGet();
+        access.lastAccess = System.currentTimeMillis();
+    }
+
+    /**
+     * 文件不在热层而在冷层时返回 true
+     */
+    private boolean inCold(TreeConnection tree, String name) {
+        return !Files.exists(nio.resolvePath(tree.getContext().getDeviceName(), name), LinkOption.NOFOLLOW_LINKS)
+                && Files.exists(nio.resolvePath(coldDevice, name), LinkOption.NOFOLLOW_LINKS);
+    }
+
+    private TreeConnection treeFor(TreeConnection tree, String name) {
+        return inCold(tree, name) ? coldTree : tree;
+    }
+
+    private TreeConnection treeOf(TreeConnection tree, NetworkFile file) {
+        return coldFiles.contains(file) ? coldTree : tree;
+    }
+
+    private Object lockFor(String key) {
+        return locks[(key.hashCode() & 0x7fffffff) % LOCK_STRIPES];
+    }
+
+    /**
+     * 目标层中缺少父目录而另一层有时，按另一层的目录名创建
+     */
+    private void ensureParent(boolean cold, String path) throws IOException {
+        String parent = FileName.splitPath(path)[0];
+        if (parent == null || parent.isEmpty() || parent.equals(FileName.DOS_SEPERATOR_STR)) {
+            return;
+        }
+        Path targetRoot = cold ? coldRoot : hotRoot;
+        Path otherRoot = cold ? hotRoot : coldRoot;
+        if (Files.isDirectory(nio.resolvePath(targetRoot.toString(), parent), LinkOption.NOFOLLOW_LINKS)) {
+            return;
+        }
+        Path other = nio.resolvePath(otherRoot.toString(), parent);
+        if (Files.isDirectory(other, LinkOption.NOFOLLOW_LINKS)) {
+            Files.createDirectories(targetRoot.resolve(otherRoot.relativize(other)));
+        }
+    }
+
+    private void promote() {
+        if (hotMaxBytes > 0 && hotBytes >= hotMaxBytes) {
+            return;
+        }
+        for (Map.Entry<String, Access> entry : accesses.entrySet()) {
+            Access access = entry.getValue();
+            if (access.count.get() < promoteAccesses) {
+                continue;
+            }
+            Path src = nio.resolvePath(coldDevice, access.path);
+            if (!Files.isRegularFile(src, LinkOption.NOFOLLOW_LINKS)
+                    || Files.exists(nio.resolvePath(hotRoot.toString(), access.path), LinkOption.NOFOLLOW_LINKS)) {
+                continue;
+            }
+            long size = sizeOf(src);
+            if (hotMaxBytes > 0 && hotBytes + size > hotMaxBytes) {
+                continue;
+            }
+            if (migrate(entry.getKey(), src, hotRoot, hotRoot.resolve(coldRoot.relativize(src)))) {
+                promotions.increment();
+                promotedBytes.add(size);
+                hotBytes += size;
+                hotFiles++;
+                log.debug("共享 {} 的文件迁往热层: {}", shareName, access.path);
+            }
+        }
+    }
+
+    private void demote() {
+        List<Candidate> files = new ArrayList<>();
+        try {
+            Files.walkFileTree(hotRoot, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    boolean skip = hotRoot.equals(dir.getParent())
+                            && (dir.endsWith(STAGING_DIR) || dir.endsWith(TRASH_DIR));
+                    return skip ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile()) {
+                        String key = normalizePath(sharePath(hotRoot.relativize(file)));
+                        long lastUse = Math.max(attrs.lastModifiedTime().toMillis(), attrs.lastAccessTime().toMillis());
+                        Access access = accesses.get(key);
+                        if (access != null) {
+                            lastUse = Math.max(lastUse, access.lastAccess);
+                        }
+                        files.add(new Candidate(file, key, attrs.size(), lastUse));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            log.warn("扫描共享 {} 的热层失败: {}", shareName, e.getMessage());
+            return;
+        }
+
+        long bytes = 0;
+        for (Candidate c : files) {
+            bytes += c.size;
+        }
+        long count = files.size();
+        long cutoff = System.currentTimeMillis() - demoteAfterMillis;
+        long target = hotMaxBytes > 0 && bytes > hotMaxBytes ? hotMaxBytes * 9 / 10 : Long.MAX_VALUE;
+
+        files.sort(Comparator.comparingLong(c -> c.lastUse));
+        for (Candidate c : files) {
+            if (c.lastUse >= cutoff && bytes <= target) {
+                break;
+            }
+            if (migrate(c.key, c.path, coldRoot, coldRoot.resolve(hotRoot.relativize(c.path)))) {
+                demotions.increment();
+                demotedBytes.add(c.size);
+                bytes -= c.size;
+                count--;
+                accesses.remove(c.key);
+                log.debug("共享 {} 的文件迁往冷层: {}", shareName, c.path);
+            }
+        }
+        hotBytes = bytes;
+        hotFiles = count;
+    }
+
+    private void decay() {
+        long idle = System.currentTimeMillis() - demoteAfterMillis;
+        accesses.entrySet().removeIf(entry -> {
+            Access access = entry.getValue();
+            return access.count.updateAndGet(n -> n / 2) == 0 && access.lastAccess < idle;
+        });
+    }
+
+    /**
+     * 把文件移动到另一层，文件已打开、复制期间被修改或目标已存在时放弃
+     */
+    private boolean migrate(String key, Path src, Path targetRoot, Path dst) {
+        if (openCounts.containsKey(key)) {
+            return false;
+        }
+        Path staging = null;
+        try {
+            WriteBehindManager writeBehind = nio.getWriteBehind();
+            if (writeBehind != null) {
+                writeBehind.flushPath(src.toString());
+            }
+            BasicFileAttributes before = attributes(src);
+            Path stagingDir = Files.createDirectories(targetRoot.resolve(STAGING_DIR));
+            staging = Files.createTempFile(stagingDir, "move-", ".tmp");
+            Files.copy(src, staging, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+
+            synchronized (lockFor(key)) {
+                if (openCounts.containsKey(key) || Files.exists(dst, LinkOption.NOFOLLOW_LINKS)) {
+                    return false;
+                }
+                BasicFileAttributes now = attributes(src);
+                if (now.size() != before.size() || !now.lastModifiedTime().equals(before.lastModifiedTime())) {
+                    return false;
+                }
+                Files.createDirectories(dst.getParent());
+                Files.move(staging, dst, StandardCopyOption.ATOMIC_MOVE);
+                staging = null;
+                try {
+                    Files.delete(src);
+                } catch (IOException e) {
+                    // 源文件删除失败时撤销，避免两层各有一份
+                    Files.deleteIfExists(dst);
+                    throw e;
+                }
+                forget(src);
+                return true;
+            }
+        } catch (NoSuchFileException e) {
+            // 迁移期间被删除或重命名
+            return false;
+        } catch (AtomicMoveNotSupportedException e) {
+            failures.increment();
+            log.warn("共享 {} 的暂存目录与目标不在同一文件系统，无法迁移: {}", shareName, dst);
+            return false;
+        } catch (IOException e) {
+            failures.increment();
+            log.warn("共享 {} 迁移文件失败: {} -> {}: {}", shareName, src, dst, e.getMessage());
+            return false;
+        } finally {
+            if (staging != null) {
+                try {
+                    Files.deleteIfExists(staging);
+                } catch (IOException e) {
+                    log.debug("删除暂存文件失败: {}", staging, e);
+                }
+            }
+        }
+    }
+
+    private void forget(Path path) {
+        BlockCache blockCache = nio.getBlockCache();
+        if (blockCache != null) {
+            blockCache.forget(path.toString());
+        }
+    }
+
+    private static BasicFileAttributes attributes(Path path) throws IOException {
+        return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+    }
+
+    private static boolean isEmpty(Path dir) throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            return !stream.iterator().hasNext();
+        }
+    }
+
+    private static long sizeOf(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static String sharePath(Path rel) {
+        StringBuilder sb = new StringBuilder();
+        for (Path name : rel) {
+            sb.append(FileName.DOS_SEPERATOR).append(name);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 文件的访问记录
+     */
+    private static final class Access {
+        // 最近一次打开时使用的路径
+        volatile String path;
+        final AtomicInteger count = new AtomicInteger();
+        volatile long lastAccess;
+
+        Access(String path) {
+            this.path = path;
+        }
+    }
+
+    /**
+     * 热层中待检查是否迁出的文件
+     */
+    private static final class Candidate {
+        final Path path;
+        final String key;
+        final long size;
+        final long lastUse;
+
+        Candidate(Path path, String key, long size, long lastUse) {
+            this.path = path;
+            this.key = key;
+            this.size = size;
+            this.lastUse = lastUse;
+        }
+    }
+
+    /**
+     * 分层存储统计信息
+     */
+    public static class TierStats {
+        private final long hotHits;
+        private final long coldHits;
+        private final long promotions;
+        private final long demotions;
+        private final long promotedBytes;
+        private final long demotedBytes;
+        private final long failures;
+        private final long moverCycles;
+        private final long hotFiles;
+        private final long hotBytes;
+        private final long hotMaxBytes;
+        private final long trackedFiles;
+
+        public TierStats(long hotHits, long coldHits, long promotions, long demotions, long promotedBytes,
+                         long demotedBytes, long failures, long moverCycles, long hotFiles, long hotBytes,
+                         long hotMaxBytes, long trackedFiles) {
+            this.hotHits = hotHits;
+            this.coldHits = coldHits;
+            this.promotions = promotions;
+            this.demotions = demotions;
+            this.promotedBytes = promotedBytes;
+            this.demotedBytes = demotedBytes;
+            this.failures = failures;
+            this.moverCycles = moverCycles;
+            this.hotFiles = hotFiles;
+            this.hotBytes = hotBytes;
+            this.hotMaxBytes = hotMaxBytes;
+            this.trackedFiles = trackedFiles;
+        }
+
+        /**
+         * 从热层打开文件的次数
+         */
+        public long getHotHits() {
+            return hotHits;
+        }
+
+        /**
+         * 从冷层打开文件的次数
+         */
+        public long getColdHits() {
+            return coldHits;
+        }
+
+        /**
+         * 打开文件中由热层提供的比例
+         */
+        public double getHotHitRate() {
+            long total = hotHits + coldHits;
+            return total == 0 ? 0 : (double) hotHits / total;
+        }
+
+        public long getPromotions() {
+            return promotions;
+        }
+
+        public long getDemotions() {
+            return demotions;
+        }
+
+        public long getPromotedBytes() {
+            return promotedBytes;
+        }
+
+        public long getDemotedBytes() {
+            return demotedBytes;
+        }
+
+        /**
+         * 因 I/O 错误失败的迁移数（文件已打开、被修改而放弃的不计入）
+         */
+        public long getFailures() {
+            return failures;
+        }
+
+        public long getMoverCycles() {
+            return moverCycles;
+        }
+
+        /**
+         * 热层文件数与占用，在每个迁移周期扫描热层时更新
+         */
+        public long getHotFiles() {
+            return hotFiles;
+        }
+
+        public long getHotBytes() {
+            return hotBytes;
+        }
+
+        /**
+         * 热层容量上限（字节），0 表示不限
+         */
+        public long getHotMaxBytes() {
+            return hotMaxBytes;
+        }
+
+        /**
+         * 记录了访问次数的文件数
+         */
+        public long getTrackedFiles() {
+            return trackedFiles;
+        }
+
+        /**
+         * 合计多个共享的统计，a 为 null 时直接返回 b
+         */
+        public static TierStats combine(TierStats a, TierStats b) {
+            if (a == null) {
+                return b;
+            }
+            return new TierStats(a.hotHits + b.hotHits, a.coldHits + b.coldHits, a.promotions + b.promotions,
+                    a.demotions + b.demotions, a.promotedBytes + b.promotedBytes, a.demotedBytes + b.demotedBytes,
+                    a.failures + b.failures, a.moverCycles + b.moverCycles, a.hotFiles + b.hotFiles,
+                    a.hotBytes + b.hotBytes, a.hotMaxBytes + b.hotMaxBytes, a.trackedFiles + b.trackedFiles);
+        }
+    }
+}
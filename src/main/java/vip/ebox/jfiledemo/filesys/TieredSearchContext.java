@@ -0,0 +1,115 @@
+package vip.ebox.jfiledemo.filesys;
+
+import org.filesys.server.filesys.FileInfo;
+import org.filesys.server.filesys.SearchContext;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/20  09:40
+ * @Description: 合并热层与冷层目录列表的搜索上下文
+ *  搜索开始时读出两层的全部结果，同名条目（两层都存在的目录）只保留热层的一份，
+ *  分页、恢复搜索都在合并后的列表上移动游标
+ */
+public class TieredSearchContext extends SearchContext {
+
+    private final List<FileInfo> files;
+
+    // 当前游标
+    private int idx;
+
+    private TieredSearchContext(List<FileInfo> files, String searchStr) {
+        this.files = files;
+        setSearchString(searchStr);
+    }
+
+    /**
+     * 读出两层的搜索结果并合并，任一层的上下文可为 null（该层不存在此目录）
+     *
+     * @param hidden 不返回给客户端的文件名（如迁移使用的暂存目录），可为 null
+     */
+    public static TieredSearchContext merge(SearchContext hot, SearchContext cold, String searchStr, String hidden) {
+        List<FileInfo> files = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        drain(hot, files, names, hidden);
+        drain(cold, files, names, hidden);
+        return new TieredSearchContext(files, searchStr);
+    }
+
+    private static void drain(SearchContext ctx, List<FileInfo> files, Set<String> names, String hidden) {
+        if (ctx == null) {
+            return;
+        }
+        try {
+            FileInfo info = new FileInfo();
+            while (ctx.nextFileInfo(info)) {
+                String name = info.getFileName();
+                if (!name.equalsIgnoreCase(hidden) && names.add(name.toUpperCase(Locale.ROOT))) {
+                    files.add(info);
+                    info = new FileInfo();
+                }
+            }
+        } finally {
+            ctx.closeSearch();
+        }
+    }
+
+    @Override
+    public int getResumeId() {
+        return idx;
+    }
+
+    @Override
+    public boolean hasMoreFiles() {
+        return idx < files.size();
+    }
+
+    @Override
+    public boolean nextFileInfo(FileInfo info) {
+        if (!hasMoreFiles()) {
+            return false;
+        }
+        info.copyFrom(files.get(idx++));
+        return true;
+    }
+
+    @Override
+    public String nextFileName() {
+        if (!hasMoreFiles()) {
+            return null;
+        }
+        return files.get(idx++).getFileName();
+    }
+
+    @Override
+    public int numberOfEntries() {
+        return files.size();
+    }
+
+    @Override
+    public boolean restartAt(int resumeId) {
+        if (resumeId < 0 || resumeId > files.size()) {
+            return false;
+        }
+        idx = resumeId;
+        return true;
+    }
+
+    @Override
+    public boolean restartAt(FileInfo info) {
+        for (int pos = 0; pos < files.size(); pos++) {
+            if (files.get(pos).getFileName().equalsIgnoreCase(info.getFileName())) {
+                // 从该条目之后继续
+                idx = pos + 1;
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,207 @@
+package vip.ebox.jfiledemo.filesys;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/18  19:00
+ * @Description: 单个打开文件的写缓冲
+ *  缓冲区内始终只保存一段连续区间 [start, start + length)，相邻或重叠的写入直接合并进该区间，
+ *  无法合并、缓冲区写满、超过延迟上限或有重叠读取时整段一次性写出
+ *
+ *  缓冲数组在首次写入时向 WriteBehindManager 申请，总内存达到上限时直接写入；
+ *  写出成功后才清空缓冲区，写出失败时数据保留，下一次写出（包括关闭时）重试
+ */
+@Slf4j
+public class WriteBehindBuffer {
+
+    /**
+     * 写出原因：缓冲区已满、写入不连续、超过延迟上限、重叠读取、刷新/关闭/截断
+     */
+    public enum FlushReason {
+        SIZE, GAP, TIME, READ, EXPLICIT
+    }
+
+    private final NIONetworkFile file;
+    private final WriteBehindManager manager;
+    private final int capacity;
+
+    private byte[] data;
+    private long start;
+    private int length;
+
+    // 缓冲区中第一次写入的时间（纳秒）
+    private long firstWriteAt;
+
+    // 后台写出失败的异常，在下一次写入时抛给客户端；之后写出成功则数据未丢失，清除该异常
+    private IOException error;
+
+    WriteBehindBuffer(NIONetworkFile file, WriteBehindManager manager, int capacity) {
+        this.file = file;
+        this.manager = manager;
+        this.capacity = capacity;
+    }
+
+    NIONetworkFile getFile() {
+        return file;
+    }
+
+    /**
+     * 写入数据，能合并时只拷贝进缓冲区
+     */
+    public synchronized void write(byte[] buf, int off, int len, long pos) throws IOException {
+        checkError();
+        if (len <= 0) {
+            return;
+        }
+
+        // 大块写入不经过缓冲区
+        if (len >= capacity) {
+            flush(FlushReason.GAP);
+            file.writeThrough(buf, off, len, pos);
+            return;
+        }
+
+        if (length == 0) {
+            if (!begin(buf, off, len, pos)) {
+                // 缓冲总内存已达上限
+                manager.recordDirect(len);
+                file.writeThrough(buf, off, len, pos);
+                return;
+            }
+        } else {
+            long end = start + length;
+            if (pos >= start && pos <= end && pos + len - start <= capacity) {
+                // 追加或覆盖缓冲区内的数据
+                int at = (int) (pos - start);
+                System.arraycopy(buf, off, data, at, len);
+                length = Math.max(length, at + len);
+            } else if (pos < start && pos + len >= start && Math.max(end, pos + len) - pos <= capacity) {
+                // 写入位置在缓冲区之前且与之相邻或重叠，整体后移
+                int shift = (int) (start - pos);
+                System.arraycopy(data, 0, data, shift, length);
+                System.arraycopy(buf, off, data, 0, len);
+                length = (int) (Math.max(end, pos + len) - pos);
+                start = pos;
+            } else {
+                flush(FlushReason.GAP);
+                begin(buf, off, len, pos);
+            }
+        }
+        manager.recordBuffered(len);
+
+        if (length >= capacity) {
+            flush(FlushReason.SIZE);
+        }
+    }
+
+    /**
+     * 写出缓冲区中的全部数据
+     */
+    public synchronized void flush(FlushReason reason) throws IOException {
+        if (length == 0) {
+            return;
+        }
+        int len = length;
+        try {
+            file.writeThrough(data, 0, len, start);
+        } catch (IOException e) {
+            manager.recordError();
+            throw e;
+        }
+        length = 0;
+        error = null;
+        manager.recordFlush(reason, len);
+    }
+
+    /**
+     * 读取 [pos, pos + len) 前调用：与缓冲数据重叠，或缓冲数据会扩展文件而读取范围超出当前文件末尾时写出缓冲区
+     */
+    public synchronized void flushIfOverlaps(long pos, long len) throws IOException {
+        if (length == 0) {
+            return;
+        }
+        long end = start + length;
+        if (pos < end && pos + len > start) {
+            flush(FlushReason.READ);
+            return;
+        }
+        long diskSize = file.channelSize();
+        if (end > diskSize && pos + len > diskSize) {
+            flush(FlushReason.READ);
+        }
+    }
+
+    /**
+     * 超过延迟上限时写出并归还缓冲数组，由后台线程调用，失败时记录异常
+     */
+    synchronized void flushIfExpired(long now, long maxDelayNanos) {
+        if (length > 0 && now - firstWriteAt >= maxDelayNanos) {
+            try {
+                flush(FlushReason.TIME);
+                release();
+            } catch (IOException e) {
+                if (error == null) {
+                    log.warn("延迟写入失败，数据保留在缓冲区中等待重试: {}: {}", file.getPath(), e.getMessage());
+                }
+                error = e;
+            }
+        }
+    }
+
+    /**
+     * 写出剩余数据并释放缓冲区，写出失败时抛出异常，未写出的数据丢弃
+     */
+    public synchronized void close() throws IOException {
+        try {
+            flush(FlushReason.EXPLICIT);
+        } finally {
+            if (length > 0) {
+                log.error("关闭文件时延迟写入失败，丢弃 {} 字节: {}", length, file.getPath());
+                length = 0;
+            }
+            release();
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        return length == 0;
+    }
+
+    /**
+     * 以一次写入开始新的缓冲区间
+     *
+     * @return 缓冲总内存已达上限、无法分配缓冲数组时返回 false
+     */
+    private boolean begin(byte[] buf, int off, int len, long pos) {
+        if (data == null) {
+            if (!manager.reserve(capacity)) {
+                return false;
+            }
+            data = new byte[capacity];
+        }
+        System.arraycopy(buf, off, data, 0, len);
+        start = pos;
+        length = len;
+        firstWriteAt = System.nanoTime();
+        return true;
+    }
+
+    private void release() {
+        if (data != null) {
+            data = null;
+            manager.release(capacity);
+        }
+    }
+
+    private void checkError() throws IOException {
+        IOException e = error;
+        if (e != null) {
+            error = null;
+            throw new IOException("延迟写入失败: " + e.getMessage(), e);
+        }
+    }
+}
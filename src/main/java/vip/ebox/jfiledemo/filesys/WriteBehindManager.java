@@ -0,0 +1,327 @@
+package vip.ebox.jfiledemo.filesys;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/18  19:20
+ * @Description: 延迟写入（write-behind）管理
+ *  为以写权限打开的文件分配 WriteBehindBuffer，把 SMB1 客户端的大量 4~16KB 小写入合并为少量大块顺序写入；
+ *  按本地路径登记所有缓冲区，任何句柄读取、查询文件信息前先写出与之相关的数据，客户端看到的内容与直接写入一致
+ *
+ *  后台线程定期写出超过延迟上限的缓冲区并归还其缓冲数组；所有缓冲数组的总大小有上限，
+ *  达到上限后新的写入直接写盘，大量打开的句柄不会耗尽堆内存
+ */
+@Slf4j
+public class WriteBehindManager {
+
+    private final int bufferSize;
+    private final long maxDelayNanos;
+    private final long maxMemory;
+
+    // 已分配的缓冲数组总大小（字节）
+    private final AtomicLong allocated = new AtomicLong();
+
+    // 本地路径 -> 该文件所有打开句柄的写缓冲
+    private final Map<String, List<WriteBehindBuffer>> buffers = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService flusher;
+
+    // 统计计数
+    private final LongAdder bufferedWrites = new LongAdder();
+    private final LongAdder bufferedBytes = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder flushedBytes = new LongAdder();
+    private final LongAdder sizeFlushes = new LongAdder();
+    private final LongAdder gapFlushes = new LongAdder();
+    private final LongAdder timeFlushes = new LongAdder();
+    private final LongAdder readFlushes = new LongAdder();
+    private final LongAdder explicitFlushes = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder directWrites = new LongAdder();
+
+    /**
+     * @param bufferSize     每个打开文件的缓冲区大小（字节）
+     * @param maxDelayMillis 数据在缓冲区中的最长停留时间（毫秒）
+     * @param maxMemory      所有缓冲区的总大小上限（字节），至少可容纳一个缓冲区
+     */
+    public WriteBehindManager(int bufferSize, long maxDelayMillis, long maxMemory) {
+        this.bufferSize = Math.max(65536, bufferSize);
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, maxDelayMillis));
+        this.maxMemory = Math.max(this.bufferSize, maxMemory);
+
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "jfs-write-behind");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(5, maxDelayMillis / 2);
+        flusher.scheduleWithFixedDelay(this::flushExpired, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 为打开的文件创建并登记写缓冲
+     */
+    public WriteBehindBuffer register(NIONetworkFile file) {
+        WriteBehindBuffer buffer = new WriteBehindBuffer(file, this, bufferSize);
+        buffers.computeIfAbsent(file.getPath().toString(), k -> new CopyOnWriteArrayList<>()).add(buffer);
+        return buffer;
+    }
+
+    /**
+     * 文件关闭后注销写缓冲
+     */
+    public void unregister(WriteBehindBuffer buffer) {
+        buffers.computeIfPresent(buffer.getFile().getPath().toString(), (k, list) -> {
+            list.remove(buffer);
+            return list.isEmpty() ? null : list;
+        });
+    }
+
+    /**
+     * 写出指定文件中与 [pos, pos + len) 重叠的缓冲数据
+     */
+    public void flushOverlapping(String path, long pos, long len) throws IOException {
+        List<WriteBehindBuffer> list = buffers.get(path);
+        if (list != null) {
+            for (WriteBehindBuffer buffer : list) {
+                buffer.flushIfOverlaps(pos, len);
+            }
+        }
+    }
+
+    /**
+     * 写出指定文件的全部缓冲数据
+     */
+    public void flushPath(String path) throws IOException {
+        List<WriteBehindBuffer> list = buffers.get(path);
+        if (list != null) {
+            for (WriteBehindBuffer buffer : list) {
+                buffer.flush(WriteBehindBuffer.FlushReason.EXPLICIT);
+            }
+        }
+    }
+
+    /**
+     * 停止后台线程并写出全部缓冲数据
+     */
+    public void shutdown() {
+        flusher.shutdown();
+        for (List<WriteBehindBuffer> list : buffers.values()) {
+            for (WriteBehindBuffer buffer : list) {
+                try {
+                    buffer.flush(WriteBehindBuffer.FlushReason.EXPLICIT);
+                } catch (IOException e) {
+                    log.warn("写出缓冲数据失败: {}: {}", buffer.getFile().getPath(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void flushExpired() {
+        long now = System.nanoTime();
+        for (List<WriteBehindBuffer> list : buffers.values()) {
+            for (WriteBehindBuffer buffer : list) {
+                buffer.flushIfExpired(now, maxDelayNanos);
+            }
+        }
+    }
+
+    /**
+     * 申请一个缓冲数组的内存额度，超出总上限时返回 false
+     */
+    boolean reserve(int size) {
+        while (true) {
+            long cur = allocated.get();
+            if (cur + size > maxMemory) {
+                return false;
+            }
+            if (allocated.compareAndSet(cur, cur + size)) {
+                return true;
+            }
+        }
+    }
+
+    void release(int size) {
+        allocated.addAndGet(-size);
+    }
+
+    void recordDirect(int len) {
+        directWrites.increment();
+    }
+
+    void recordBuffered(int len) {
+        bufferedWrites.increment();
+        bufferedBytes.add(len);
+    }
+
+    void recordFlush(WriteBehindBuffer.FlushReason reason, int len) {
+        flushes.increment();
+        flushedBytes.add(len);
+        switch (reason) {
+            case SIZE:
+                sizeFlushes.increment();
+                break;
+            case GAP:
+                gapFlushes.increment();
+                break;
+            case TIME:
+                timeFlushes.increment();
+                break;
+            case READ:
+                readFlushes.increment();
+                break;
+            default:
+                explicitFlushes.increment();
+                break;
+        }
+    }
+
+    void recordError() {
+        errors.increment();
+    }
+
+    /**
+     * 获取延迟写入统计信息
+     */
+    public WriteBehindStats getStats() {
+        int files = 0;
+        for (List<WriteBehindBuffer> list : buffers.values()) {
+            files += list.size();
+        }
+        return new WriteBehindStats(bufferSize, TimeUnit.NANOSECONDS.toMillis(maxDelayNanos), maxMemory,
+                allocated.get(), files, bufferedWrites.sum(), bufferedBytes.sum(), flushes.sum(), flushedBytes.sum(),
+                sizeFlushes.sum(), gapFlushes.sum(), timeFlushes.sum(), readFlushes.sum(), explicitFlushes.sum(),
+                errors.sum(), directWrites.sum());
+    }
+
+    /**
+     * 延迟写入统计信息
+     */
+    public static class WriteBehindStats {
+        private final int bufferSize;
+        private final long maxDelay;
+        private final long maxMemory;
+        private final long allocatedBytes;
+        private final int openFiles;
+        private final long bufferedWrites;
+        private final long bufferedBytes;
+        private final long flushes;
+        private final long flushedBytes;
+        private final long sizeFlushes;
+        private final long gapFlushes;
+        private final long timeFlushes;
+        private final long readFlushes;
+        private final long explicitFlushes;
+        private final long errors;
+        private final long directWrites;
+
+        public WriteBehindStats(int bufferSize, long maxDelay, long maxMemory, long allocatedBytes, int openFiles,
+                                long bufferedWrites, long bufferedBytes, long flushes, long flushedBytes,
+                                long sizeFlushes, long gapFlushes, long timeFlushes, long readFlushes,
+                                long explicitFlushes, long errors, long directWrites) {
+            this.bufferSize = bufferSize;
+            this.maxDelay = maxDelay;
+            this.maxMemory = maxMemory;
+            this.allocatedBytes = allocatedBytes;
+            this.openFiles = openFiles;
+            this.bufferedWrites = bufferedWrites;
+            this.bufferedBytes = bufferedBytes;
+            this.flushes = flushes;
+            this.flushedBytes = flushedBytes;
+            this.sizeFlushes = sizeFlushes;
+            this.gapFlushes = gapFlushes;
+            this.timeFlushes = timeFlushes;
+            this.readFlushes = readFlushes;
+            this.explicitFlushes = explicitFlushes;
+            this.errors = errors;
+            this.directWrites = directWrites;
+        }
+
+        public int getBufferSize() {
+            return bufferSize;
+        }
+
+        public long getMaxDelay() {
+            return maxDelay;
+        }
+
+        public long getMaxMemory() {
+            return maxMemory;
+        }
+
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        public int getOpenFiles() {
+            return openFiles;
+        }
+
+        public long getBufferedWrites() {
+            return bufferedWrites;
+        }
+
+        public long getBufferedBytes() {
+            return bufferedBytes;
+        }
+
+        public long getFlushes() {
+            return flushes;
+        }
+
+        public long getFlushedBytes() {
+            return flushedBytes;
+        }
+
+        public long getSizeFlushes() {
+            return sizeFlushes;
+        }
+
+        public long getGapFlushes() {
+            return gapFlushes;
+        }
+
+        public long getTimeFlushes() {
+            return timeFlushes;
+        }
+
+        public long getReadFlushes() {
+            return readFlushes;
+        }
+
+        public long getExplicitFlushes() {
+            return explicitFlushes;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        /**
+         * 缓冲总内存达到上限而直接写入的次数
+         */
+        public long getDirectWrites() {
+            return directWrites;
+        }
+
+        /**
+         * 平均每次写出合并的写入次数
+         */
+        public double getWritesPerFlush() {
+            return flushes == 0 ? 0.0 : (double) bufferedWrites / flushes;
+        }
+    }
+}
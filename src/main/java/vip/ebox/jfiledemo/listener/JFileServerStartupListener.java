@@ -40,8 +40,10 @@ public class JFileServerStartupListener implements ApplicationRunner {
             log.info("应用启动完成，准备自动启动jFileServer...");
             log.info("========================================");
 
-            // 延迟1秒启动，确保Spring容器完全初始化
-            Thread.sleep(1000);
+            // ApplicationRunner 在容器刷新完成后执行，按需额外延迟
+            if (properties.getStartupDelay() > 0) {
+                Thread.sleep(properties.getStartupDelay());
+            }
 
             jFileServerService.start();
 
@@ -0,0 +1,95 @@
+package vip.ebox.jfiledemo.listener;
+
+import lombok.extern.slf4j.Slf4j;
+import org.filesys.server.NetworkServer;
+import org.filesys.server.ServerListener;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/19  21:10
+ * @Description: 根据 SMB 服务器自身的状态事件判断就绪与关闭完成
+ *  SMBServer 的服务器线程启动后立即 setActive(true)，此时端口尚未绑定，isActive 不能说明已可连接：
+ *  - ServerActive：连接处理器已绑定端口并开始接受连接
+ *  - ServerError：启动或运行中出错（如端口被占用），异常可通过 getException 获取
+ *  - ServerShutdown：连接处理器已停止、端口已释放，可以立即重新启动
+ */
+@Slf4j
+public class ServerLifecycleListener implements ServerListener {
+
+    private final CountDownLatch active = new CountDownLatch(1);
+    private final CountDownLatch shutdown = new CountDownLatch(1);
+    private volatile Exception error;
+
+    @Override
+    public void serverStatusEvent(NetworkServer server, int event) {
+        switch (event) {
+            case ServerListener.ServerActive:
+                active.countDown();
+                break;
+            case ServerListener.ServerError:
+                error = server.getException();
+                active.countDown();
+                break;
+            case ServerListener.ServerShutdown:
+                shutdown.countDown();
+                active.countDown();
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * 等待服务器开始接受连接
+     *
+     * @throws TimeoutException 超时仍未就绪
+     * @throws IOException      服务器启动出错或启动后立即关闭
+     */
+    public void awaitActive(long timeoutMillis) throws InterruptedException, TimeoutException, IOException {
+        if (!active.await(timeoutMillis, TimeUnit.MILLISECONDS)) {
+            throw new TimeoutException("等待 SMB 服务器就绪超时: " + timeoutMillis + "ms");
+        }
+        Exception e = error;
+        if (e != null) {
+            throw new IOException("SMB 服务器启动出错: " + e.getMessage(), e);
+        }
+        if (shutdown.getCount() == 0) {
+            throw new IOException("SMB 服务器启动后立即关闭，没有可用的会话处理器");
+        }
+    }
+
+    /**
+     * 等待服务器关闭完成
+     *
+     * @return 超时前是否已关闭
+     */
+    public boolean awaitShutdown(long timeoutMillis) throws InterruptedException {
+        return shutdown.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 已开始接受连接且未出错、未关闭
+     */
+    public boolean isReady() {
+        return active.getCount() == 0 && shutdown.getCount() > 0 && error == null;
+    }
+
+    /**
+     * 连接本机端口，确认服务器已在接受连接
+     */
+    public static void probe(int port, long timeoutMillis) throws IOException {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+                    (int) Math.max(1, Math.min(Integer.MAX_VALUE, timeoutMillis)));
+        }
+    }
+}
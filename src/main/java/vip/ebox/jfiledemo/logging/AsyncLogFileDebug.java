@@ -0,0 +1,287 @@
+package vip.ebox.jfiledemo.logging;
+
+import lombok.extern.slf4j.Slf4j;
+import org.filesys.debug.DebugInterfaceBase;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/19  20:30
+ * @Description: 异步写文件的 jFileServer 日志输出
+ *  替代 LogFileDebug：协议线程只把日志文本放入无锁环形缓冲区（多生产者、单消费者，每个槽位带序号），
+ *  由一个后台线程批量写入带缓冲的文件流，缓冲区清空或距上次刷新超过 flushIntervalMillis 时才刷新到磁盘。
+ *  缓冲区满时按策略处理：
+ *  - DROP：丢弃该条日志并计数，协议线程不等待
+ *  - BLOCK：等待写线程腾出空间，日志不丢失
+ *  写线程平时按刷新周期休眠，缓冲区使用超过一半时才由生产者唤醒，写日志的线程不做额外的系统调用
+ */
+@Slf4j
+public class AsyncLogFileDebug extends DebugInterfaceBase {
+
+    /**
+     * 缓冲区满时的处理策略
+     */
+    public enum FullPolicy {
+        DROP, BLOCK
+    }
+
+    // 后台线程单次写入的最大条数
+    private static final int BATCH_SIZE = 256;
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<String> slots;
+    // 槽位序号：等于写入位置时可写，等于写入位置 + 1 时可读
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    // 只由写线程修改
+    private volatile long head;
+
+    private final FullPolicy policy;
+    private final long flushIntervalNanos;
+    private final Writer out;
+    private final Thread writer;
+    private volatile boolean closed;
+
+    // 统计
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder blocked = new LongAdder();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+
+    /**
+     * @param fileName            日志文件路径
+     * @param append              是否追加
+     * @param capacity            缓冲区条数，向上取 2 的幂
+     * @param policy              缓冲区满时的处理策略
+     * @param flushIntervalMillis 最长刷新间隔（毫秒）
+     */
+    public AsyncLogFileDebug(String fileName, boolean append, int capacity, FullPolicy policy,
+                             long flushIntervalMillis) throws IOException {
+        int size = Integer.highestOneBit(Math.max(16, capacity) - 1) << 1;
+        this.capacity = size;
+        this.mask = size - 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.policy = policy;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, flushIntervalMillis));
+        this.out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(fileName, append),
+                StandardCharsets.UTF_8), 64 * 1024);
+
+        this.writer = new Thread(this::writeLoop, "jfs-debug-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public void debugPrint(String str, int level) {
+        if (level <= getLogLevel()) {
+            offer(str);
+        }
+    }
+
+    @Override
+    public void debugPrintln(String str, int level) {
+        if (level <= getLogLevel()) {
+            offer(str + System.lineSeparator());
+        }
+    }
+
+    /**
+     * 停止写线程，写出缓冲区中剩余的日志后关闭文件
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            log.warn("关闭 jFileServer 日志文件失败: {}", e.getMessage());
+        }
+    }
+
+    public LogStats getStats() {
+        return new LogStats(capacity, policy.name(), (int) (tail.get() - head), written.get(), dropped.sum(),
+                blocked.sum(), flushes.get());
+    }
+
+    private void offer(String line) {
+        if (closed) {
+            return;
+        }
+        boolean waited = false;
+        while (true) {
+            long pos = tail.get();
+            int idx = (int) (pos & mask);
+            long seq = sequences.get(idx);
+            if (seq == pos) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    slots.set(idx, line);
+                    sequences.set(idx, pos + 1);
+                    // 使用超过一半时唤醒写线程，否则等待其按周期处理
+                    if (pos + 1 - head > capacity / 2) {
+                        LockSupport.unpark(writer);
+                    }
+                    return;
+                }
+            } else if (seq < pos) {
+                // 缓冲区已满
+                if (policy == FullPolicy.DROP || closed) {
+                    dropped.increment();
+                    return;
+                }
+                if (!waited) {
+                    blocked.increment();
+                    waited = true;
+                }
+                LockSupport.unpark(writer);
+                LockSupport.parkNanos(50_000);
+            }
+            // seq > pos：其他生产者已占用该位置，重新读取 tail
+        }
+    }
+
+    private void writeLoop() {
+        long lastFlush = System.nanoTime();
+        boolean dirty = false;
+        while (true) {
+            int count = drain();
+            if (count > 0) {
+                dirty = true;
+            }
+            long now = System.nanoTime();
+            if (dirty && (count == 0 || now - lastFlush >= flushIntervalNanos)) {
+                flush();
+                dirty = false;
+                lastFlush = now;
+            }
+            if (count == 0) {
+                if (closed) {
+                    // 关闭前再检查一次，写出关闭过程中进入的日志
+                    if (drain() == 0) {
+                        flush();
+                        return;
+                    }
+                    dirty = true;
+                    continue;
+                }
+                LockSupport.parkNanos(flushIntervalNanos);
+            }
+        }
+    }
+
+    /**
+     * 写出最多 BATCH_SIZE 条已发布的日志，返回写出的条数
+     */
+    private int drain() {
+        int count = 0;
+        long pos = head;
+        while (count < BATCH_SIZE) {
+            int idx = (int) (pos & mask);
+            if (sequences.get(idx) != pos + 1) {
+                break;
+            }
+            String line = slots.getAndSet(idx, null);
+            sequences.set(idx, pos + capacity);
+            pos++;
+            count++;
+            try {
+                out.write(line);
+            } catch (IOException e) {
+                dropped.increment();
+            }
+        }
+        head = pos;
+        written.addAndGet(count);
+        return count;
+    }
+
+    private void flush() {
+        try {
+            out.flush();
+            flushes.incrementAndGet();
+        } catch (IOException e) {
+            log.warn("写入 jFileServer 日志失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 日志缓冲区统计
+     */
+    public static class LogStats {
+        private final int capacity;
+        private final String policy;
+        private final int pending;
+        private final long written;
+        private final long dropped;
+        private final long blocked;
+        private final long flushes;
+
+        public LogStats(int capacity, String policy, int pending, long written, long dropped, long blocked,
+                        long flushes) {
+            this.capacity = capacity;
+            this.policy = policy;
+            this.pending = pending;
+            this.written = written;
+            this.dropped = dropped;
+            this.blocked = blocked;
+            this.flushes = flushes;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public String getPolicy() {
+            return policy;
+        }
+
+        public int getPending() {
+            return pending;
+        }
+
+        public long getWritten() {
+            return written;
+        }
+
+        public long getDropped() {
+            return dropped;
+        }
+
+        /**
+         * BLOCK 策略下因缓冲区满而等待的次数
+         */
+        public long getBlocked() {
+            return blocked;
+        }
+
+        public long getFlushes() {
+            return flushes;
+        }
+    }
+}
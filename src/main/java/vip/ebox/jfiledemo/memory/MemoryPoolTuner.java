@@ -0,0 +1,499 @@
+package vip.ebox.jfiledemo.memory;
+
+import lombok.extern.slf4j.Slf4j;
+import org.filesys.server.memory.ByteBufferList;
+import org.filesys.server.memory.ByteBufferPool;
+
+import java.lang.reflect.Field;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/19  09:30
+ * @Description: SMB 数据包内存池统计与自适应调整
+ *  - 从 ByteBufferPool 的各个桶读取分配次数、等待次数、超时次数及当前占用，提供给 REST 接口
+ *  - 记录读写请求的数据大小，统计超出最大桶、只能由 SMBPacketPool 临时分配的超大包
+ *  - 自适应模式下按周期内各桶的分配次数（即按桶划分的请求大小直方图）与等待情况调整各桶的最大缓冲区数：
+ *    出现等待的桶扩容，长期空闲的桶收缩回初始值，总量不超过内存预算
+ *
+ *  ByteBufferList 没有提供修改上限的接口，调整通过反射修改 m_maxAlloc，并在其锁上唤醒等待的线程
+ */
+@Slf4j
+public class MemoryPoolTuner {
+
+    // SMB 头及 NetBIOS 头的大致开销，读写数据加上该值超过最大桶时视为超大包
+    private static final int PACKET_OVERHEAD = 128;
+
+    // 保留的调整记录条数
+    private static final int MAX_ADJUSTMENTS = 50;
+
+    // 连续空闲多少个周期后才收缩
+    private static final int IDLE_PERIODS = 3;
+
+    private final ByteBufferPool pool;
+    private final ByteBufferList[] lists;
+    private final boolean adaptive;
+    private final long intervalMillis;
+    private final long maxMemory;
+
+    // 上一周期的计数，用于计算增量
+    private final long[] lastAllocs;
+    private final long[] lastWaits;
+    private final int[] idlePeriods;
+
+    // 读写数据大小统计
+    private final int[] sizes;
+    private final LongAdder[] transfers;
+    private final LongAdder oversized = new LongAdder();
+
+    // 最近的调整记录
+    private final Deque<Adjustment> adjustments = new ArrayDeque<>();
+    private long adjustmentCount;
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param pool           jFileServer 的内存池
+     * @param adaptive       是否启用自适应调整
+     * @param intervalMillis 自适应调整周期（毫秒）
+     * @param maxMemory      自适应调整时所有桶最大占用之和的上限（字节），0 表示按初始配置的两倍
+     */
+    public MemoryPoolTuner(ByteBufferPool pool, boolean adaptive, long intervalMillis, long maxMemory) {
+        this.pool = pool;
+        this.lists = pool.getBufferList();
+        this.adaptive = adaptive;
+        this.intervalMillis = Math.max(1000, intervalMillis);
+
+        long configured = 0;
+        this.sizes = new int[lists.length];
+        this.transfers = new LongAdder[lists.length];
+        this.lastAllocs = new long[lists.length];
+        this.lastWaits = new long[lists.length];
+        this.idlePeriods = new int[lists.length];
+        for (int i = 0; i < lists.length; i++) {
+            sizes[i] = lists[i].getBufferSize();
+            transfers[i] = new LongAdder();
+            lastAllocs[i] = lists[i].getStatAllocationCounter();
+            lastWaits[i] = lists[i].getStatAllocationWaits();
+            configured += (long) lists[i].getMaximumAllocation() * sizes[i];
+        }
+        this.maxMemory = maxMemory > 0 ? maxMemory : configured * 2;
+    }
+
+    /**
+     * 启动自适应调整
+     */
+    public void start() {
+        if (!adaptive || scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "jfs-mempool-tuner");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::tune, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        log.info("内存池自适应调整已启动: 周期={}ms, 内存预算={}KB", intervalMillis, maxMemory / 1024);
+    }
+
+    /**
+     * 停止自适应调整
+     */
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * 修改各桶的最大缓冲区数，与配置的桶一一对应；调小时空闲缓冲区随即释放，已借出的缓冲区归还后释放。
+     * 启用自适应调整时，后续周期仍会在内存预算内继续调整
+     *
+     * @return 实际修改的桶数
+     * @throws IllegalArgumentException 数量与桶数不一致，或小于桶的初始缓冲区数
+     */
+    public synchronized int resize(int[] maxAlloc) {
+        if (maxAlloc.length != lists.length) {
+            throw new IllegalArgumentException("最大缓冲区数需与内存池桶数一致: " + lists.length);
+        }
+        for (int i = 0; i < lists.length; i++) {
+            if (maxAlloc[i] < lists[i].getInitialAllocation()) {
+                throw new IllegalArgumentException("桶 " + sizes[i] + " 字节的最大缓冲区数不能小于初始值 "
+                        + lists[i].getInitialAllocation());
+            }
+        }
+        int changed = 0;
+        boolean shrunk = false;
+        for (int i = 0; i < lists.length; i++) {
+            int max = lists[i].getMaximumAllocation();
+            if (maxAlloc[i] != max && setMaximumAllocation(lists[i], maxAlloc[i])) {
+                shrunk |= maxAlloc[i] < max;
+                changed++;
+                recordAdjustment(new Adjustment(System.currentTimeMillis(), sizes[i], max, maxAlloc[i], 0, 0));
+                log.info("内存池手动调整: 桶={}字节, 最大缓冲区数 {} -> {}", sizes[i], max, maxAlloc[i]);
+            }
+        }
+        if (shrunk) {
+            pool.shrinkLists();
+        }
+        return changed;
+    }
+
+    /**
+     * 记录一次读写请求的数据大小
+     */
+    public void recordTransfer(int bytes) {
+        int size = bytes + PACKET_OVERHEAD;
+        for (int i = 0; i < sizes.length; i++) {
+            if (size <= sizes[i]) {
+                transfers[i].increment();
+                return;
+            }
+        }
+        oversized.increment();
+    }
+
+    /**
+     * 执行一次调整，由调度线程周期调用
+     */
+    synchronized void tune() {
+        int n = lists.length;
+        long[] allocs = new long[n];
+        long[] waits = new long[n];
+        long totalAllocs = 0;
+        for (int i = 0; i < n; i++) {
+            long a = lists[i].getStatAllocationCounter();
+            long w = lists[i].getStatAllocationWaits();
+            allocs[i] = a - lastAllocs[i];
+            waits[i] = w - lastWaits[i];
+            lastAllocs[i] = a;
+            lastWaits[i] = w;
+            totalAllocs += allocs[i];
+        }
+
+        int[] target = new int[n];
+        for (int i = 0; i < n; i++) {
+            ByteBufferList list = lists[i];
+            int max = list.getMaximumAllocation();
+            int init = list.getInitialAllocation();
+            int inUse = list.getAllocatedCount();
+            idlePeriods[i] = allocs[i] == 0 ? idlePeriods[i] + 1 : 0;
+
+            if (waits[i] > 0) {
+                // 有请求等待缓冲区，扩容 50%
+                target[i] = Math.max(max + init, max + max / 2);
+            } else if (idlePeriods[i] >= IDLE_PERIODS && max > init) {
+                // 连续多个周期没有分配，上限减半，但不低于当前占用与初始值
+                target[i] = Math.max(Math.max(init, inUse), max / 2);
+                idlePeriods[i] = 0;
+            } else {
+                target[i] = max;
+            }
+        }
+
+        // 超出预算时先从分配占比最低的桶收回
+        long total = 0;
+        for (int i = 0; i < n; i++) {
+            total += (long) target[i] * sizes[i];
+        }
+        while (total > maxMemory) {
+            int victim = -1;
+            double lowest = Double.MAX_VALUE;
+            for (int i = 0; i < n; i++) {
+                double share = totalAllocs == 0 ? 0.0 : (double) allocs[i] / totalAllocs;
+                if (target[i] > lists[i].getInitialAllocation() && share < lowest) {
+                    lowest = share;
+                    victim = i;
+                }
+            }
+            if (victim < 0) {
+                break;
+            }
+            int cut = (int) Math.min(target[victim] - lists[victim].getInitialAllocation(),
+                    (total - maxMemory + sizes[victim] - 1) / sizes[victim]);
+            target[victim] -= cut;
+            total -= (long) cut * sizes[victim];
+        }
+
+        boolean shrunk = false;
+        for (int i = 0; i < n; i++) {
+            int max = lists[i].getMaximumAllocation();
+            if (target[i] != max && setMaximumAllocation(lists[i], target[i])) {
+                shrunk |= target[i] < max;
+                recordAdjustment(new Adjustment(System.currentTimeMillis(), sizes[i], max, target[i],
+                        allocs[i], waits[i]));
+                log.info("内存池调整: 桶={}字节, 最大缓冲区数 {} -> {} (周期内分配={}, 等待={})",
+                        sizes[i], max, target[i], allocs[i], waits[i]);
+            }
+        }
+        if (shrunk) {
+            pool.shrinkLists();
+        }
+    }
+
+    private void recordAdjustment(Adjustment adjustment) {
+        synchronized (adjustments) {
+            adjustments.addFirst(adjustment);
+            if (adjustments.size() > MAX_ADJUSTMENTS) {
+                adjustments.removeLast();
+            }
+            adjustmentCount++;
+        }
+    }
+
+    /**
+     * 获取内存池统计信息
+     */
+    public PoolStats getStats() {
+        List<BucketStats> buckets = new ArrayList<>(lists.length);
+        long allocatedBytes = 0;
+        for (int i = 0; i < lists.length; i++) {
+            ByteBufferList list = lists[i];
+            // getAllocatedCount 为已借出的缓冲区数，getAvailableCount 为池中空闲的缓冲区数
+            int inUse = list.getAllocatedCount();
+            int available = list.getAvailableCount();
+            long allocs = list.getStatAllocationCounter();
+            long waits = list.getStatAllocationWaits();
+            allocatedBytes += (long) (inUse + available) * sizes[i];
+            buckets.add(new BucketStats(sizes[i], list.getInitialAllocation(), list.getMaximumAllocation(),
+                    inUse + available, available, inUse, allocs, allocs - waits, waits,
+                    list.getStatAllocationWaitsExpired(), transfers[i].sum()));
+        }
+        List<Adjustment> recent;
+        long count;
+        synchronized (adjustments) {
+            recent = new ArrayList<>(adjustments);
+            count = adjustmentCount;
+        }
+        return new PoolStats(adaptive, maxMemory, allocatedBytes, oversized.sum(), count, buckets, recent);
+    }
+
+    // ---- 反射修改 ByteBufferList 的上限 ----
+
+    private static final Field MAX_ALLOC;
+    private static final Field BUF_LIST;
+
+    static {
+        Field maxAlloc = null;
+        Field bufList = null;
+        try {
+            maxAlloc = ByteBufferList.class.getDeclaredField("m_maxAlloc");
+            maxAlloc.setAccessible(true);
+            bufList = ByteBufferList.class.getDeclaredField("m_bufList");
+            bufList.setAccessible(true);
+        } catch (Exception e) {
+            log.warn("当前 jFileServer 版本不支持调整内存池上限，自适应模式仅输出统计: {}", e.getMessage());
+        }
+        MAX_ALLOC = maxAlloc;
+        BUF_LIST = bufList;
+    }
+
+    private static boolean setMaximumAllocation(ByteBufferList list, int max) {
+        if (MAX_ALLOC == null || BUF_LIST == null) {
+            return false;
+        }
+        try {
+            Object lock = BUF_LIST.get(list);
+            synchronized (lock) {
+                MAX_ALLOC.setInt(list, max);
+                // 唤醒等待缓冲区的线程重新检查上限
+                lock.notifyAll();
+            }
+            return true;
+        } catch (IllegalAccessException e) {
+            log.warn("调整内存池上限失败: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 单个桶的统计信息
+     */
+    public static class BucketStats {
+        private final int bufferSize;
+        private final int initialAllocation;
+        private final int maximumAllocation;
+        private final int allocated;
+        private final int available;
+        private final int inUse;
+        private final long allocations;
+        private final long hits;
+        private final long waits;
+        private final long waitsExpired;
+        private final long transfers;
+
+        public BucketStats(int bufferSize, int initialAllocation, int maximumAllocation, int allocated, int available,
+                           int inUse, long allocations, long hits, long waits, long waitsExpired, long transfers) {
+            this.bufferSize = bufferSize;
+            this.initialAllocation = initialAllocation;
+            this.maximumAllocation = maximumAllocation;
+            this.allocated = allocated;
+            this.available = available;
+            this.inUse = inUse;
+            this.allocations = allocations;
+            this.hits = hits;
+            this.waits = waits;
+            this.waitsExpired = waitsExpired;
+            this.transfers = transfers;
+        }
+
+        public int getBufferSize() {
+            return bufferSize;
+        }
+
+        public int getInitialAllocation() {
+            return initialAllocation;
+        }
+
+        public int getMaximumAllocation() {
+            return maximumAllocation;
+        }
+
+        public int getAllocated() {
+            return allocated;
+        }
+
+        public int getAvailable() {
+            return available;
+        }
+
+        public int getInUse() {
+            return inUse;
+        }
+
+        public long getAllocations() {
+            return allocations;
+        }
+
+        /**
+         * 无需等待即获得缓冲区的次数
+         */
+        public long getHits() {
+            return hits;
+        }
+
+        public long getWaits() {
+            return waits;
+        }
+
+        public long getWaitsExpired() {
+            return waitsExpired;
+        }
+
+        /**
+         * 数据大小落在该桶的读写请求数
+         */
+        public long getTransfers() {
+            return transfers;
+        }
+    }
+
+    /**
+     * 一次自适应调整记录
+     */
+    public static class Adjustment {
+        private final long time;
+        private final int bufferSize;
+        private final int oldMaximum;
+        private final int newMaximum;
+        private final long allocations;
+        private final long waits;
+
+        public Adjustment(long time, int bufferSize, int oldMaximum, int newMaximum, long allocations, long waits) {
+            this.time = time;
+            this.bufferSize = bufferSize;
+            this.oldMaximum = oldMaximum;
+            this.newMaximum = newMaximum;
+            this.allocations = allocations;
+            this.waits = waits;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public int getBufferSize() {
+            return bufferSize;
+        }
+
+        public int getOldMaximum() {
+            return oldMaximum;
+        }
+
+        public int getNewMaximum() {
+            return newMaximum;
+        }
+
+        public long getAllocations() {
+            return allocations;
+        }
+
+        public long getWaits() {
+            return waits;
+        }
+    }
+
+    /**
+     * 内存池统计信息
+     */
+    public static class PoolStats {
+        private final boolean adaptive;
+        private final long maxMemory;
+        private final long allocatedBytes;
+        private final long oversized;
+        private final long adjustmentCount;
+        private final List<BucketStats> buckets;
+        private final List<Adjustment> recentAdjustments;
+
+        public PoolStats(boolean adaptive, long maxMemory, long allocatedBytes, long oversized, long adjustmentCount,
+                         List<BucketStats> buckets, List<Adjustment> recentAdjustments) {
+            this.adaptive = adaptive;
+            this.maxMemory = maxMemory;
+            this.allocatedBytes = allocatedBytes;
+            this.oversized = oversized;
+            this.adjustmentCount = adjustmentCount;
+            this.buckets = buckets;
+            this.recentAdjustments = recentAdjustments;
+        }
+
+        public boolean isAdaptive() {
+            return adaptive;
+        }
+
+        public long getMaxMemory() {
+            return maxMemory;
+        }
+
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        /**
+         * 超出最大桶、由 SMBPacketPool 临时分配的读写请求数
+         */
+        public long getOversized() {
+            return oversized;
+        }
+
+        public long getAdjustmentCount() {
+            return adjustmentCount;
+        }
+
+        public List<BucketStats> getBuckets() {
+            return buckets;
+        }
+
+        public List<Adjustment> getRecentAdjustments() {
+            return recentAdjustments;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package vip.ebox.jfiledemo.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/19  10:30
+ * @Description: 单类操作的次数、错误数、字节数与耗时直方图
+ *  直方图按 2 的幂划分为固定桶（1μs ~ 16.7s），记录时只做移位与 LongAdder 累加，不分配对象，
+ *  高并发下各线程累加到不同的 cell，不会在同一个计数器上竞争
+ */
+public class LatencyRecorder {
+
+    /**
+     * 有上界的桶数，第 i 个桶的上界为 2^i 微秒，另有一个溢出桶
+     */
+    public static final int BOUNDED_BUCKETS = 25;
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder[] buckets = new LongAdder[BOUNDED_BUCKETS + 1];
+
+    public LatencyRecorder() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * 记录一次操作
+     *
+     * @param nanos 耗时（纳秒）
+     * @param ok    是否成功完成
+     */
+    public void record(long nanos, boolean ok) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        count.increment();
+        if (!ok) {
+            errors.increment();
+        }
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+        buckets[bucketIndex(nanos)].increment();
+    }
+
+    /**
+     * 记录读写的数据量
+     */
+    public void addBytes(long n) {
+        if (n > 0) {
+            bytes.add(n);
+        }
+    }
+
+    /**
+     * 获取当前统计快照
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[buckets.length];
+        for (int i = 0; i < buckets.length; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        return new Snapshot(count.sum(), errors.sum(), bytes.sum(), totalNanos.sum(), maxNanos.get(), counts);
+    }
+
+    /**
+     * 第 i 个桶的上界（纳秒）
+     */
+    public static long bucketUpperBoundNanos(int i) {
+        return (1L << i) * 1000L;
+    }
+
+    private static int bucketIndex(long nanos) {
+        long micros = nanos / 1000;
+        if (micros <= 1) {
+            return 0;
+        }
+        // 落在 (2^(i-1), 2^i] 微秒的耗时计入第 i 个桶
+        int i = 64 - Long.numberOfLeadingZeros(micros - 1);
+        return Math.min(i, BOUNDED_BUCKETS);
+    }
+
+    /**
+     * 统计快照
+     */
+    public static class Snapshot {
+        private final long count;
+        private final long errors;
+        private final long bytes;
+        private final long totalNanos;
+        private final long maxNanos;
+        private final long[] buckets;
+
+        public Snapshot(long count, long errors, long bytes, long totalNanos, long maxNanos, long[] buckets) {
+            this.count = count;
+            this.errors = errors;
+            this.bytes = bytes;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            this.buckets = buckets;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        /**
+         * 合并两个快照，用于汇总多个共享的同类操作
+         */
+        public Snapshot merge(Snapshot other) {
+            long[] merged = buckets.clone();
+            for (int i = 0; i < merged.length; i++) {
+                merged[i] += other.buckets[i];
+            }
+            return new Snapshot(count + other.count, errors + other.errors, bytes + other.bytes,
+                    totalNanos + other.totalNanos, Math.max(maxNanos, other.maxNanos), merged);
+        }
+
+        /**
+         * 与较早的快照相减，得到这段时间内的分布；最大值无法相减，保留当前值
+         */
+        public Snapshot since(Snapshot earlier) {
+            long[] delta = buckets.clone();
+            for (int i = 0; i < delta.length; i++) {
+                delta[i] -= earlier.buckets[i];
+            }
+            return new Snapshot(count - earlier.count, errors - earlier.errors, bytes - earlier.bytes,
+                    totalNanos - earlier.totalNanos, maxNanos, delta);
+        }
+
+        /**
+         * 各桶（非累计）计数，最后一个为溢出桶
+         */
+        public long[] getBuckets() {
+            return buckets.clone();
+        }
+
+        public double getMeanMicros() {
+            return count == 0 ? 0.0 : totalNanos / 1000.0 / count;
+        }
+
+        public double getP50Micros() {
+            return percentileMicros(0.50);
+        }
+
+        public double getP95Micros() {
+            return percentileMicros(0.95);
+        }
+
+        public double getP99Micros() {
+            return percentileMicros(0.99);
+        }
+
+        /**
+         * 按直方图估算分位数，返回所在桶的上界（微秒），溢出桶返回最大值
+         */
+        public double percentileMicros(double q) {
+            long total = 0;
+            for (long c : buckets) {
+                total += c;
+            }
+            if (total == 0) {
+                return 0.0;
+            }
+            long rank = (long) Math.ceil(q * total);
+            long seen = 0;
+            for (int i = 0; i < BOUNDED_BUCKETS; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return Math.min(bucketUpperBoundNanos(i), maxNanos) / 1000.0;
+                }
+            }
+            return maxNanos / 1000.0;
+        }
+    }
+}
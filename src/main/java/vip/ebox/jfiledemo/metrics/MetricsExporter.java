@@ -0,0 +1,692 @@
+package vip.ebox.jfiledemo.metrics;
+
+import vip.ebox.jfiledemo.cluster.ClusterStats;
+import vip.ebox.jfiledemo.filesys.FileStateDiskDriver;
+import vip.ebox.jfiledemo.filesys.ShareQuota;
+import vip.ebox.jfiledemo.scheduler.TrafficShaper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/19  11:20
+ * @Description: 指标输出格式
+ *  - 与 Spring Boot Actuator /actuator/metrics 相同的 JSON 结构（指标名列表、单个指标的 measurements / availableTags，支持 tag 过滤）
+ *  - Prometheus 文本格式（与 Micrometer PrometheusMeterRegistry 的命名一致），可直接被 Prometheus 抓取
+ *  不引入 Micrometer 依赖，已有的 Actuator 看板与 Prometheus 抓取配置只需修改地址即可使用
+ */
+public final class MetricsExporter {
+
+    public static final String OPERATIONS = "jfileserver.disk.operations";
+    public static final String ERRORS = "jfileserver.disk.errors";
+    public static final String BYTES = "jfileserver.disk.bytes";
+    public static final String OPEN_FILES = "jfileserver.files.open";
+    public static final String SESSIONS = "jfileserver.sessions.active";
+    public static final String QUEUED = "jfileserver.threadpool.queued";
+    public static final String THREADS = "jfileserver.threadpool.threads";
+    public static final String ACTIVE_THREADS = "jfileserver.threadpool.active";
+    public static final String SHARE_QUEUE_DEPTH = "jfileserver.share.queue.depth";
+    public static final String SHARE_WAIT = "jfileserver.share.wait";
+    public static final String FILE_STATES = "jfileserver.filestate.states";
+    public static final String FILE_STATE_HITS = "jfileserver.filestate.hits";
+    public static final String FILE_STATE_MISSES = "jfileserver.filestate.misses";
+    public static final String FILE_STATE_REAPER_CYCLES = "jfileserver.filestate.reaper.cycles";
+    public static final String FILE_STATE_EXPIRED = "jfileserver.filestate.expired";
+    public static final String FILE_STATE_LOCK_LATENCY = "jfileserver.filestate.lock.latency";
+    public static final String OPLOCK_GRANTS = "jfileserver.oplock.grants";
+    public static final String OPLOCK_BREAKS = "jfileserver.oplock.breaks";
+    public static final String OPLOCK_BREAK_TIMEOUTS = "jfileserver.oplock.break.timeouts";
+    public static final String OPLOCK_BREAK_LATENCY = "jfileserver.oplock.break.latency";
+    public static final String SHAPING_THROTTLED = "jfileserver.shaping.throttled";
+    public static final String SHAPING_DELAY = "jfileserver.shaping.delay";
+    public static final String QUOTA_USED = "jfileserver.quota.used";
+    public static final String CLUSTER_MEMBERS = "jfileserver.cluster.members";
+    public static final String CLUSTER_MESSAGES = "jfileserver.cluster.messages";
+
+    private static final String TAG = "operation";
+    private static final String SHARE_TAG = "share";
+
+    private MetricsExporter() {
+    }
+
+    /**
+     * 所有指标名，对应 GET /actuator/metrics
+     */
+    public static Map<String, Object> names() {
+        List<String> names = new ArrayList<>(List.of(OPERATIONS, ERRORS, BYTES, OPEN_FILES, SESSIONS,
+                QUEUED, THREADS, ACTIVE_THREADS, SHARE_QUEUE_DEPTH, SHARE_WAIT, FILE_STATES, FILE_STATE_HITS,
+                FILE_STATE_MISSES, FILE_STATE_REAPER_CYCLES, FILE_STATE_EXPIRED, OPLOCK_GRANTS, OPLOCK_BREAKS,
+                OPLOCK_BREAK_TIMEOUTS, OPLOCK_BREAK_LATENCY, SHAPING_THROTTLED, SHAPING_DELAY, QUOTA_USED,
+                FILE_STATE_LOCK_LATENCY, CLUSTER_MEMBERS, CLUSTER_MESSAGES));
+        Collections.sort(names);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("names", names);
+        return result;
+    }
+
+    /**
+     * 单个指标，对应 GET /actuator/metrics/{name}?tag=operation:read
+     *
+     * @param tags 形如 operation:read 的过滤条件，可为 null
+     * @return 指标不存在或过滤条件无效时返回 null
+     */
+    public static Map<String, Object> meter(ServerMetrics metrics, String name, List<String> tags) {
+        switch (name) {
+            case OPERATIONS:
+                return operationMeter(metrics, tags);
+            case ERRORS:
+                return counterMeter(metrics, ERRORS, "失败的磁盘操作次数", null, tags,
+                        LatencyRecorder.Snapshot::getErrors, false);
+            case BYTES:
+                return counterMeter(metrics, BYTES, "读写的数据量", "bytes", tags,
+                        LatencyRecorder.Snapshot::getBytes, true);
+            case OPEN_FILES:
+                return gaugeMeter(OPEN_FILES, "当前打开的文件数", "files", metrics.getOpenFiles(), tags);
+            case SESSIONS:
+                return gaugeMeter(SESSIONS, "当前 SMB 会话数", "sessions", metrics.getActiveSessions(), tags);
+            case QUEUED:
+                return gaugeMeter(QUEUED, "请求线程池中排队的请求数", "requests", metrics.getQueuedRequests(), tags);
+            case THREADS:
+                return gaugeMeter(THREADS, "请求线程池的工作线程数", "threads", metrics.getWorkerThreads(), tags);
+            case ACTIVE_THREADS:
+                return gaugeMeter(ACTIVE_THREADS, "正在处理请求的工作线程数", "threads", metrics.getActiveThreads(), tags);
+            case SHARE_QUEUE_DEPTH:
+                return shareQueueMeter(metrics, tags);
+            case SHARE_WAIT:
+                return shareWaitMeter(metrics, tags);
+            case FILE_STATES:
+                return metrics.getFileStates() == null ? null : gaugeMeter(FILE_STATES, "缓存的文件状态数", "states",
+                        metrics.getFileStates().getStates(), tags);
+            case FILE_STATE_HITS:
+                return metrics.getFileStates() == null ? null : totalMeter(FILE_STATE_HITS,
+                        "复用已有文件状态的打开与存在性查询次数", metrics.getFileStates().getHits(), tags);
+            case FILE_STATE_MISSES:
+                return metrics.getFileStates() == null ? null : totalMeter(FILE_STATE_MISSES,
+                        "新建文件状态或交给下层驱动的查询次数", metrics.getFileStates().getMisses(), tags);
+            case FILE_STATE_REAPER_CYCLES:
+                return metrics.getFileStates() == null ? null : totalMeter(FILE_STATE_REAPER_CYCLES,
+                        "过期文件状态的清理次数", metrics.getFileStates().getReaperCycles(), tags);
+            case FILE_STATE_EXPIRED:
+                return metrics.getFileStates() == null ? null : totalMeter(FILE_STATE_EXPIRED,
+                        "已清理的过期文件状态数", metrics.getFileStates().getExpired(), tags);
+            case FILE_STATE_LOCK_LATENCY:
+                return metrics.getFileStates() == null ? null : latencyMeter(FILE_STATE_LOCK_LATENCY,
+                        "字节范围锁的加锁耗时", metrics.getFileStates().getLockLatency(), tags);
+            case OPLOCK_GRANTS:
+                return oplockGrantMeter(metrics, tags);
+            case OPLOCK_BREAKS:
+                return metrics.getOplocks() == null ? null : totalMeter(OPLOCK_BREAKS,
+                        "向机会锁持有者发出中断的次数", metrics.getOplocks().getBreaks(), tags);
+            case OPLOCK_BREAK_TIMEOUTS:
+                return metrics.getOplocks() == null ? null : totalMeter(OPLOCK_BREAK_TIMEOUTS,
+                        "超时未得到确认的机会锁中断数", metrics.getOplocks().getBreakTimeouts(), tags);
+            case OPLOCK_BREAK_LATENCY:
+                return metrics.getOplocks() == null ? null : latencyMeter(OPLOCK_BREAK_LATENCY,
+                        "从发出机会锁中断到持有者确认的耗时", metrics.getOplocks().getBreakLatency(), tags);
+            case SHAPING_THROTTLED:
+                return metrics.getShaping() == null ? null : totalMeter(SHAPING_THROTTLED,
+                        "超出限速被延后分发的请求数", metrics.getShaping().getThrottled(), tags);
+            case SHAPING_DELAY:
+                return metrics.getShaping() == null || hasTag(tags) ? null : meterBody(SHAPING_DELAY,
+                        "超出限速的请求累计延后时间", "seconds",
+                        List.of(measurement("TOTAL_TIME", metrics.getShaping().getDelayMillis() / 1e3)),
+                        Collections.emptyList());
+            case QUOTA_USED:
+                return quotaMeter(metrics, tags);
+            case CLUSTER_MEMBERS:
+                return metrics.getCluster() == null ? null : gaugeMeter(CLUSTER_MEMBERS, "集群中的成员数（含本实例）",
+                        "members", metrics.getCluster().getMembers().size(), tags);
+            case CLUSTER_MESSAGES:
+                return clusterMessageMeter(metrics, tags);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Prometheus 文本格式（text/plain; version=0.0.4）
+     */
+    public static String prometheus(ServerMetrics metrics) {
+        StringBuilder sb = new StringBuilder(8192);
+        Map<String, LatencyRecorder.Snapshot> ops = metrics.getOperations();
+
+        String hist = "jfileserver_disk_operations_seconds";
+        header(sb, hist, "磁盘操作耗时", "histogram");
+        for (Map.Entry<String, LatencyRecorder.Snapshot> e : ops.entrySet()) {
+            LatencyRecorder.Snapshot s = e.getValue();
+            long[] buckets = s.getBuckets();
+            long cumulative = 0;
+            for (int i = 0; i < LatencyRecorder.BOUNDED_BUCKETS; i++) {
+                cumulative += buckets[i];
+                sb.append(hist).append("_bucket{operation=\"").append(e.getKey()).append("\",le=\"")
+                        .append(seconds(LatencyRecorder.bucketUpperBoundNanos(i))).append("\"} ")
+                        .append(cumulative).append('\n');
+            }
+            sb.append(hist).append("_bucket{operation=\"").append(e.getKey()).append("\",le=\"+Inf\"} ")
+                    .append(s.getCount()).append('\n');
+            sb.append(hist).append("_count{operation=\"").append(e.getKey()).append("\"} ")
+                    .append(s.getCount()).append('\n');
+            sb.append(hist).append("_sum{operation=\"").append(e.getKey()).append("\"} ")
+                    .append(seconds(s.getTotalNanos())).append('\n');
+        }
+
+        header(sb, hist + "_max", "磁盘操作最大耗时", "gauge");
+        for (Map.Entry<String, LatencyRecorder.Snapshot> e : ops.entrySet()) {
+            sample(sb, hist + "_max", e.getKey(), seconds(e.getValue().getMaxNanos()));
+        }
+
+        header(sb, "jfileserver_disk_errors_total", "失败的磁盘操作次数", "counter");
+        for (Map.Entry<String, LatencyRecorder.Snapshot> e : ops.entrySet()) {
+            sample(sb, "jfileserver_disk_errors_total", e.getKey(), Long.toString(e.getValue().getErrors()));
+        }
+
+        header(sb, "jfileserver_disk_bytes_total", "读写的数据量", "counter");
+        for (Map.Entry<String, LatencyRecorder.Snapshot> e : ops.entrySet()) {
+            if (e.getValue().getBytes() > 0) {
+                sample(sb, "jfileserver_disk_bytes_total", e.getKey(), Long.toString(e.getValue().getBytes()));
+            }
+        }
+
+        gauge(sb, "jfileserver_files_open", "当前打开的文件数", metrics.getOpenFiles());
+        gauge(sb, "jfileserver_sessions_active", "当前 SMB 会话数", metrics.getActiveSessions());
+        gauge(sb, "jfileserver_threadpool_queued", "请求线程池中排队的请求数", metrics.getQueuedRequests());
+        gauge(sb, "jfileserver_threadpool_threads", "请求线程池的工作线程数", metrics.getWorkerThreads());
+        gauge(sb, "jfileserver_threadpool_active", "正在处理请求的工作线程数", metrics.getActiveThreads());
+
+        if (!metrics.getShareQueueDepths().isEmpty()) {
+            header(sb, "jfileserver_share_queue_depth", "排队等待 I/O 槽位的请求数", "gauge");
+            for (Map.Entry<String, Integer> e : metrics.getShareQueueDepths().entrySet()) {
+                sb.append("jfileserver_share_queue_depth{share=\"").append(e.getKey()).append("\"} ")
+                        .append(e.getValue()).append('\n');
+            }
+        }
+
+        FileStateDiskDriver.FileStateStats fileStates = metrics.getFileStates();
+        if (fileStates != null) {
+            gauge(sb, "jfileserver_filestate_states", "缓存的文件状态数", fileStates.getStates());
+            counter(sb, "jfileserver_filestate_hits_total", "复用已有文件状态的打开与存在性查询次数",
+                    fileStates.getHits());
+            counter(sb, "jfileserver_filestate_misses_total", "新建文件状态或交给下层驱动的查询次数",
+                    fileStates.getMisses());
+            counter(sb, "jfileserver_filestate_reaper_cycles_total", "过期文件状态的清理次数",
+                    fileStates.getReaperCycles());
+            counter(sb, "jfileserver_filestate_expired_total", "已清理的过期文件状态数", fileStates.getExpired());
+            histogram(sb, "jfileserver_filestate_lock_latency_seconds", "字节范围锁的加锁耗时",
+                    fileStates.getLockLatency());
+        }
+
+        FileStateDiskDriver.OpLockStats oplocks = metrics.getOplocks();
+        if (oplocks != null) {
+            String grants = "jfileserver_oplock_grants_total";
+            header(sb, grants, "授予的机会锁数", "counter");
+            sb.append(grants).append("{type=\"batch\"} ").append(oplocks.getBatchGrants()).append('\n');
+            sb.append(grants).append("{type=\"exclusive\"} ").append(oplocks.getExclusiveGrants()).append('\n');
+            sb.append(grants).append("{type=\"level_ii\"} ").append(oplocks.getLevelIIGrants()).append('\n');
+            counter(sb, "jfileserver_oplock_breaks_total", "向机会锁持有者发出中断的次数", oplocks.getBreaks());
+            counter(sb, "jfileserver_oplock_break_timeouts_total", "超时未得到确认的机会锁中断数",
+                    oplocks.getBreakTimeouts());
+
+            histogram(sb, "jfileserver_oplock_break_latency_seconds", "从发出机会锁中断到持有者确认的耗时",
+                    oplocks.getBreakLatency());
+        }
+
+        TrafficShaper.ShapingStats shaping = metrics.getShaping();
+        if (shaping != null) {
+            counter(sb, "jfileserver_shaping_throttled_total", "超出限速被延后分发的请求数", shaping.getThrottled());
+            header(sb, "jfileserver_shaping_delay_seconds_total", "超出限速的请求累计延后时间", "counter");
+            sb.append("jfileserver_shaping_delay_seconds_total ")
+                    .append(seconds(shaping.getDelayMillis() * 1_000_000)).append('\n');
+            if (!shaping.getUsers().isEmpty()) {
+                userCounter(sb, shaping, "jfileserver_user_read_bytes_total", "各用户读取的数据量",
+                        TrafficShaper.UserStats::getReadBytes);
+                userCounter(sb, shaping, "jfileserver_user_write_bytes_total", "各用户写入的数据量",
+                        TrafficShaper.UserStats::getWriteBytes);
+                userCounter(sb, shaping, "jfileserver_user_operations_total", "各用户的磁盘操作次数",
+                        TrafficShaper.UserStats::getOperations);
+                userCounter(sb, shaping, "jfileserver_user_throttled_total", "各用户超出限速被延后分发的请求数",
+                        TrafficShaper.UserStats::getThrottled);
+            }
+        }
+
+        if (!metrics.getQuotas().isEmpty()) {
+            quotaMetric(sb, metrics, "jfileserver_quota_used_bytes", "共享的已用空间", "gauge",
+                    ShareQuota.QuotaStats::getUsed);
+            quotaMetric(sb, metrics, "jfileserver_quota_limit_bytes", "共享的容量上限，0 表示不限", "gauge",
+                    ShareQuota.QuotaStats::getLimit);
+            quotaMetric(sb, metrics, "jfileserver_quota_denied_total", "超出配额被拒绝的写入次数", "counter",
+                    ShareQuota.QuotaStats::getDenied);
+        }
+
+        ClusterStats cluster = metrics.getCluster();
+        if (cluster != null) {
+            gauge(sb, "jfileserver_cluster_members", "集群中的成员数（含本实例）", cluster.getMembers().size());
+            String events = "jfileserver_cluster_member_events_total";
+            header(sb, events, "集群成员加入与离开的次数", "counter");
+            sb.append(events).append("{event=\"added\"} ").append(cluster.getMembersAdded()).append('\n');
+            sb.append(events).append("{event=\"removed\"} ").append(cluster.getMembersRemoved()).append('\n');
+            String messages = "jfileserver_cluster_messages_total";
+            header(sb, messages, "本实例发布与收到的集群消息数", "counter");
+            clusterMessages(sb, messages, "sent", cluster.getMessagesSent());
+            clusterMessages(sb, messages, "received", cluster.getMessagesReceived());
+        }
+
+        String wait = "jfileserver_share_wait_seconds";
+        if (!metrics.getShareWaits().isEmpty()) {
+            header(sb, wait, "等待 I/O 槽位的耗时", "histogram");
+            for (Map.Entry<String, LatencyRecorder.Snapshot> e : metrics.getShareWaits().entrySet()) {
+                LatencyRecorder.Snapshot s = e.getValue();
+                long[] buckets = s.getBuckets();
+                long cumulative = 0;
+                for (int i = 0; i < LatencyRecorder.BOUNDED_BUCKETS; i++) {
+                    cumulative += buckets[i];
+                    sb.append(wait).append("_bucket{share=\"").append(e.getKey()).append("\",le=\"")
+                            .append(seconds(LatencyRecorder.bucketUpperBoundNanos(i))).append("\"} ")
+                            .append(cumulative).append('\n');
+                }
+                sb.append(wait).append("_bucket{share=\"").append(e.getKey()).append("\",le=\"+Inf\"} ")
+                        .append(s.getCount()).append('\n');
+                sb.append(wait).append("_count{share=\"").append(e.getKey()).append("\"} ")
+                        .append(s.getCount()).append('\n');
+                sb.append(wait).append("_sum{share=\"").append(e.getKey()).append("\"} ")
+                        .append(seconds(s.getTotalNanos())).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    private static Map<String, Object> shareQueueMeter(ServerMetrics metrics, List<String> tags) {
+        Map<String, Integer> depths = filterShares(metrics.getShareQueueDepths(), tags);
+        if (depths == null) {
+            return null;
+        }
+        long sum = 0;
+        for (int depth : depths.values()) {
+            sum += depth;
+        }
+        return shareMeterBody(SHARE_QUEUE_DEPTH, "排队等待 I/O 槽位的请求数", "requests",
+                List.of(measurement("VALUE", sum)),
+                hasTag(tags) ? Collections.emptyList() : List.copyOf(metrics.getShareQueueDepths().keySet()));
+    }
+
+    private static Map<String, Object> quotaMeter(ServerMetrics metrics, List<String> tags) {
+        Map<String, ShareQuota.QuotaStats> quotas = filterShares(metrics.getQuotas(), tags);
+        if (quotas == null || metrics.getQuotas().isEmpty()) {
+            return null;
+        }
+        long used = 0;
+        for (ShareQuota.QuotaStats quota : quotas.values()) {
+            used += quota.getUsed();
+        }
+        return shareMeterBody(QUOTA_USED, "共享的已用空间", "bytes", List.of(measurement("VALUE", used)),
+                hasTag(tags) ? Collections.emptyList() : List.copyOf(metrics.getQuotas().keySet()));
+    }
+
+    private static Map<String, Object> shareWaitMeter(ServerMetrics metrics, List<String> tags) {
+        Map<String, LatencyRecorder.Snapshot> waits = filterShares(metrics.getShareWaits(), tags);
+        if (waits == null) {
+            return null;
+        }
+        long count = 0;
+        long total = 0;
+        long max = 0;
+        for (LatencyRecorder.Snapshot s : waits.values()) {
+            count += s.getCount();
+            total += s.getTotalNanos();
+            max = Math.max(max, s.getMaxNanos());
+        }
+        List<Map<String, Object>> measurements = new ArrayList<>();
+        measurements.add(measurement("COUNT", count));
+        measurements.add(measurement("TOTAL_TIME", total / 1e9));
+        measurements.add(measurement("MAX", max / 1e9));
+        return shareMeterBody(SHARE_WAIT, "等待 I/O 槽位的耗时", "seconds", measurements,
+                hasTag(tags) ? Collections.emptyList() : List.copyOf(metrics.getShareWaits().keySet()));
+    }
+
+    /**
+     * 按 share:xxx 过滤共享，出现未知的 tag 或共享时返回 null
+     */
+    private static <T> Map<String, T> filterShares(Map<String, T> values, List<String> tags) {
+        if (!hasTag(tags)) {
+            return values;
+        }
+        Map<String, T> result = new LinkedHashMap<>();
+        for (String tag : tags) {
+            int pos = tag.indexOf(':');
+            if (pos < 0 || !SHARE_TAG.equals(tag.substring(0, pos))) {
+                return null;
+            }
+            String share = tag.substring(pos + 1);
+            T value = values.get(share);
+            if (value == null) {
+                return null;
+            }
+            result.put(share, value);
+        }
+        return result;
+    }
+
+    private static Map<String, Object> shareMeterBody(String name, String description, String baseUnit,
+                                                      List<Map<String, Object>> measurements, List<String> shares) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("name", name);
+        body.put("description", description);
+        body.put("baseUnit", baseUnit);
+        body.put("measurements", measurements);
+        if (shares.isEmpty()) {
+            body.put("availableTags", Collections.emptyList());
+        } else {
+            Map<String, Object> tag = new LinkedHashMap<>();
+            tag.put("tag", SHARE_TAG);
+            tag.put("values", shares);
+            body.put("availableTags", List.of(tag));
+        }
+        return body;
+    }
+
+    private static Map<String, Object> operationMeter(ServerMetrics metrics, List<String> tags) {
+        Map<String, LatencyRecorder.Snapshot> ops = filter(metrics, tags);
+        if (ops == null) {
+            return null;
+        }
+        long count = 0;
+        long total = 0;
+        long max = 0;
+        for (LatencyRecorder.Snapshot s : ops.values()) {
+            count += s.getCount();
+            total += s.getTotalNanos();
+            max = Math.max(max, s.getMaxNanos());
+        }
+        List<Map<String, Object>> measurements = new ArrayList<>();
+        measurements.add(measurement("COUNT", count));
+        measurements.add(measurement("TOTAL_TIME", total / 1e9));
+        measurements.add(measurement("MAX", max / 1e9));
+        return meterBody(OPERATIONS, "磁盘操作耗时", "seconds", measurements,
+                hasTag(tags) ? Collections.emptyList() : List.copyOf(metrics.getOperations().keySet()));
+    }
+
+    private static Map<String, Object> counterMeter(ServerMetrics metrics, String name, String description,
+                                                    String baseUnit, List<String> tags,
+                                                    ToLongFunction<LatencyRecorder.Snapshot> value,
+                                                    boolean skipZero) {
+        Map<String, LatencyRecorder.Snapshot> ops = filter(metrics, tags);
+        if (ops == null) {
+            return null;
+        }
+        long sum = 0;
+        for (LatencyRecorder.Snapshot s : ops.values()) {
+            sum += value.applyAsLong(s);
+        }
+        List<String> tagValues = new ArrayList<>();
+        if (!hasTag(tags)) {
+            for (Map.Entry<String, LatencyRecorder.Snapshot> e : metrics.getOperations().entrySet()) {
+                if (!skipZero || value.applyAsLong(e.getValue()) > 0) {
+                    tagValues.add(e.getKey());
+                }
+            }
+        }
+        return meterBody(name, description, baseUnit, List.of(measurement("COUNT", sum)), tagValues);
+    }
+
+    private static Map<String, Object> gaugeMeter(String name, String description, String baseUnit, long value,
+                                                  List<String> tags) {
+        if (hasTag(tags)) {
+            return null;
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("name", name);
+        body.put("description", description);
+        body.put("baseUnit", baseUnit);
+        body.put("measurements", List.of(measurement("VALUE", value)));
+        body.put("availableTags", Collections.emptyList());
+        return body;
+    }
+
+    private static Map<String, Object> oplockGrantMeter(ServerMetrics metrics, List<String> tags) {
+        FileStateDiskDriver.OpLockStats oplocks = metrics.getOplocks();
+        if (oplocks == null) {
+            return null;
+        }
+        Map<String, Long> grants = new LinkedHashMap<>();
+        grants.put("batch", oplocks.getBatchGrants());
+        grants.put("exclusive", oplocks.getExclusiveGrants());
+        grants.put("level_ii", oplocks.getLevelIIGrants());
+
+        long sum = 0;
+        if (hasTag(tags)) {
+            for (String tag : tags) {
+                int pos = tag.indexOf(':');
+                Long value = pos < 0 || !"type".equals(tag.substring(0, pos)) ? null : grants.get(tag.substring(pos + 1));
+                if (value == null) {
+                    return null;
+                }
+                sum += value;
+            }
+        } else {
+            for (long value : grants.values()) {
+                sum += value;
+            }
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("name", OPLOCK_GRANTS);
+        body.put("description", "授予的机会锁数");
+        body.put("baseUnit", null);
+        body.put("measurements", List.of(measurement("COUNT", sum)));
+        if (hasTag(tags)) {
+            body.put("availableTags", Collections.emptyList());
+        } else {
+            Map<String, Object> tag = new LinkedHashMap<>();
+            tag.put("tag", "type");
+            tag.put("values", List.copyOf(grants.keySet()));
+            body.put("availableTags", List.of(tag));
+        }
+        return body;
+    }
+
+    /**
+     * 集群消息数，可按 direction:sent|received 与 type:消息类型 过滤
+     */
+    private static Map<String, Object> clusterMessageMeter(ServerMetrics metrics, List<String> tags) {
+        ClusterStats cluster = metrics.getCluster();
+        if (cluster == null) {
+            return null;
+        }
+        Map<String, Map<String, Long>> directions = new LinkedHashMap<>();
+        directions.put("sent", cluster.getMessagesSent());
+        directions.put("received", cluster.getMessagesReceived());
+
+        String direction = null;
+        String type = null;
+        if (hasTag(tags)) {
+            for (String tag : tags) {
+                int pos = tag.indexOf(':');
+                String key = pos < 0 ? "" : tag.substring(0, pos);
+                String value = pos < 0 ? null : tag.substring(pos + 1);
+                if ("direction".equals(key) && directions.containsKey(value)) {
+                    direction = value;
+                } else if ("type".equals(key) && cluster.getMessagesSent().containsKey(value)) {
+                    type = value;
+                } else {
+                    return null;
+                }
+            }
+        }
+        long sum = 0;
+        for (Map.Entry<String, Map<String, Long>> d : directions.entrySet()) {
+            if (direction != null && !direction.equals(d.getKey())) {
+                continue;
+            }
+            for (Map.Entry<String, Long> t : d.getValue().entrySet()) {
+                if (type == null || type.equals(t.getKey())) {
+                    sum += t.getValue();
+                }
+            }
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("name", CLUSTER_MESSAGES);
+        body.put("description", "本实例发布与收到的集群消息数");
+        body.put("baseUnit", null);
+        body.put("measurements", List.of(measurement("COUNT", sum)));
+        if (hasTag(tags)) {
+            body.put("availableTags", Collections.emptyList());
+        } else {
+            Map<String, Object> directionTag = new LinkedHashMap<>();
+            directionTag.put("tag", "direction");
+            directionTag.put("values", List.copyOf(directions.keySet()));
+            Map<String, Object> typeTag = new LinkedHashMap<>();
+            typeTag.put("tag", "type");
+            typeTag.put("values", List.copyOf(cluster.getMessagesSent().keySet()));
+            body.put("availableTags", List.of(directionTag, typeTag));
+        }
+        return body;
+    }
+
+    private static Map<String, Object> latencyMeter(String name, String description, LatencyRecorder.Snapshot s,
+                                                    List<String> tags) {
+        if (hasTag(tags)) {
+            return null;
+        }
+        List<Map<String, Object>> measurements = new ArrayList<>();
+        measurements.add(measurement("COUNT", s.getCount()));
+        measurements.add(measurement("TOTAL_TIME", s.getTotalNanos() / 1e9));
+        measurements.add(measurement("MAX", s.getMaxNanos() / 1e9));
+        return meterBody(name, description, "seconds", measurements, Collections.emptyList());
+    }
+
+    private static Map<String, Object> totalMeter(String name, String description, long value, List<String> tags) {
+        if (hasTag(tags)) {
+            return null;
+        }
+        return meterBody(name, description, null, List.of(measurement("COUNT", value)), Collections.emptyList());
+    }
+
+    /**
+     * 按 operation:xxx 过滤操作，出现未知的 tag 或操作时返回 null
+     */
+    private static Map<String, LatencyRecorder.Snapshot> filter(ServerMetrics metrics, List<String> tags) {
+        if (!hasTag(tags)) {
+            return metrics.getOperations();
+        }
+        Map<String, LatencyRecorder.Snapshot> result = new LinkedHashMap<>();
+        for (String tag : tags) {
+            int pos = tag.indexOf(':');
+            if (pos < 0 || !TAG.equals(tag.substring(0, pos))) {
+                return null;
+            }
+            String op = tag.substring(pos + 1);
+            LatencyRecorder.Snapshot s = metrics.getOperations().get(op);
+            if (s == null) {
+                return null;
+            }
+            result.put(op, s);
+        }
+        return result;
+    }
+
+    private static boolean hasTag(List<String> tags) {
+        return tags != null && !tags.isEmpty();
+    }
+
+    private static Map<String, Object> meterBody(String name, String description, String baseUnit,
+                                                 List<Map<String, Object>> measurements, List<String> tagValues) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("name", name);
+        body.put("description", description);
+        body.put("baseUnit", baseUnit);
+        body.put("measurements", measurements);
+        if (tagValues.isEmpty()) {
+            body.put("availableTags", Collections.emptyList());
+        } else {
+            Map<String, Object> tag = new LinkedHashMap<>();
+            tag.put("tag", TAG);
+            tag.put("values", tagValues);
+            body.put("availableTags", List.of(tag));
+        }
+        return body;
+    }
+
+    private static Map<String, Object> measurement(String statistic, Number value) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("statistic", statistic);
+        m.put("value", value);
+        return m;
+    }
+
+    private static void header(StringBuilder sb, String name, String help, String type) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder sb, String name, String operation, String value) {
+        sb.append(name).append("{operation=\"").append(operation).append("\"} ").append(value).append('\n');
+    }
+
+    private static void gauge(StringBuilder sb, String name, String help, long value) {
+        header(sb, name, help, "gauge");
+        sb.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void counter(StringBuilder sb, String name, String help, long value) {
+        header(sb, name, help, "counter");
+        sb.append(name).append(' ').append(value).append('\n');
+    }
+
+    /**
+     * 不带标签的耗时直方图
+     */
+    private static void histogram(StringBuilder sb, String name, String help, LatencyRecorder.Snapshot s) {
+        header(sb, name, help, "histogram");
+        long[] buckets = s.getBuckets();
+        long cumulative = 0;
+        for (int i = 0; i < LatencyRecorder.BOUNDED_BUCKETS; i++) {
+            cumulative += buckets[i];
+            sb.append(name).append("_bucket{le=\"").append(seconds(LatencyRecorder.bucketUpperBoundNanos(i)))
+                    .append("\"} ").append(cumulative).append('\n');
+        }
+        sb.append(name).append("_bucket{le=\"+Inf\"} ").append(s.getCount()).append('\n');
+        sb.append(name).append("_count ").append(s.getCount()).append('\n');
+        sb.append(name).append("_sum ").append(seconds(s.getTotalNanos())).append('\n');
+    }
+
+    private static void clusterMessages(StringBuilder sb, String name, String direction, Map<String, Long> counts) {
+        for (Map.Entry<String, Long> e : counts.entrySet()) {
+            sb.append(name).append("{direction=\"").append(direction).append("\",type=\"").append(e.getKey())
+                    .append("\"} ").append(e.getValue()).append('\n');
+        }
+    }
+
+    private static void userCounter(StringBuilder sb, TrafficShaper.ShapingStats shaping, String name, String help,
+                                    ToLongFunction<TrafficShaper.UserStats> value) {
+        header(sb, name, help, "counter");
+        for (TrafficShaper.UserStats user : shaping.getUsers()) {
+            sb.append(name).append("{user=\"").append(escape(user.getUser())).append("\"} ")
+                    .append(value.applyAsLong(user)).append('\n');
+        }
+    }
+
+    private static void quotaMetric(StringBuilder sb, ServerMetrics metrics, String name, String help, String type,
+                                   ToLongFunction<ShareQuota.QuotaStats> value) {
+        header(sb, name, help, type);
+        for (Map.Entry<String, ShareQuota.QuotaStats> e : metrics.getQuotas().entrySet()) {
+            sb.append(name).append("{share=\"").append(escape(e.getKey())).append("\"} ")
+                    .append(value.applyAsLong(e.getValue())).append('\n');
+        }
+    }
+
+    /**
+     * 转义标签值中的反斜杠、双引号与换行
+     */
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.6f", nanos / 1e9);
+    }
+}
@@ -0,0 +1,127 @@
+package vip.ebox.jfiledemo.metrics;
+
+import vip.ebox.jfiledemo.cluster.ClusterStats;
+import vip.ebox.jfiledemo.filesys.FileStateDiskDriver;
+import vip.ebox.jfiledemo.filesys.ShareQuota;
+import vip.ebox.jfiledemo.scheduler.TrafficShaper;
+
+import java.util.Map;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/19  11:10
+ * @Description: 服务器运行指标快照
+ *  磁盘操作统计（按操作名称，如 read、get_file_information）以及会话数、打开文件数、请求线程池队列长度等瞬时值；
+ *  启用 I/O 调度时另有各共享的排队数与等待耗时，启用文件状态缓存时另有状态数、命中与清理统计以及机会锁统计，
+ *  启用限速时另有各用户的用量与延后分发统计，启用配额时另有各共享的已用空间
+ */
+public class ServerMetrics {
+    private final Map<String, LatencyRecorder.Snapshot> operations;
+    private final long openFiles;
+    private final int activeSessions;
+    private final int queuedRequests;
+    private final int workerThreads;
+    private final int activeThreads;
+    private final Map<String, Integer> shareQueueDepths;
+    private final Map<String, LatencyRecorder.Snapshot> shareWaits;
+    private final FileStateDiskDriver.FileStateStats fileStates;
+    private final FileStateDiskDriver.OpLockStats oplocks;
+    private final TrafficShaper.ShapingStats shaping;
+    private final Map<String, ShareQuota.QuotaStats> quotas;
+    private final ClusterStats cluster;
+
+    public ServerMetrics(Map<String, LatencyRecorder.Snapshot> operations, long openFiles, int activeSessions,
+                         int queuedRequests, int workerThreads, int activeThreads,
+                         Map<String, Integer> shareQueueDepths, Map<String, LatencyRecorder.Snapshot> shareWaits,
+                         FileStateDiskDriver.FileStateStats fileStates, FileStateDiskDriver.OpLockStats oplocks,
+                         TrafficShaper.ShapingStats shaping, Map<String, ShareQuota.QuotaStats> quotas,
+                         ClusterStats cluster) {
+        this.operations = operations;
+        this.openFiles = openFiles;
+        this.activeSessions = activeSessions;
+        this.queuedRequests = queuedRequests;
+        this.workerThreads = workerThreads;
+        this.activeThreads = activeThreads;
+        this.shareQueueDepths = shareQueueDepths;
+        this.shareWaits = shareWaits;
+        this.fileStates = fileStates;
+        this.oplocks = oplocks;
+        this.shaping = shaping;
+        this.quotas = quotas;
+        this.cluster = cluster;
+    }
+
+    public Map<String, LatencyRecorder.Snapshot> getOperations() {
+        return operations;
+    }
+
+    public long getOpenFiles() {
+        return openFiles;
+    }
+
+    public int getActiveSessions() {
+        return activeSessions;
+    }
+
+    public int getQueuedRequests() {
+        return queuedRequests;
+    }
+
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    public int getActiveThreads() {
+        return activeThreads;
+    }
+
+    /**
+     * 各共享当前排队等待 I/O 槽位的请求数，未启用调度时为空
+     */
+    public Map<String, Integer> getShareQueueDepths() {
+        return shareQueueDepths;
+    }
+
+    /**
+     * 各共享等待 I/O 槽位的耗时分布，未启用调度时为空
+     */
+    public Map<String, LatencyRecorder.Snapshot> getShareWaits() {
+        return shareWaits;
+    }
+
+    /**
+     * 文件状态缓存统计（所有共享合计），未启用时为 null
+     */
+    public FileStateDiskDriver.FileStateStats getFileStates() {
+        return fileStates;
+    }
+
+    /**
+     * 机会锁统计（所有共享合计），未启用文件状态缓存时为 null
+     */
+    public FileStateDiskDriver.OpLockStats getOplocks() {
+        return oplocks;
+    }
+
+    /**
+     * 限速统计，未启用时为 null
+     */
+    public TrafficShaper.ShapingStats getShaping() {
+        return shaping;
+    }
+
+    /**
+     * 各共享的配额与已用空间，未启用配额时为空
+     */
+    public Map<String, ShareQuota.QuotaStats> getQuotas() {
+        return quotas;
+    }
+
+    /**
+     * 集群统计，未启用集群时为 null
+     */
+    public ClusterStats getCluster() {
+        return cluster;
+    }
+}
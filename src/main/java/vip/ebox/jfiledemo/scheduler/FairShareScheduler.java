@@ -0,0 +1,495 @@
+package vip.ebox.jfiledemo.scheduler;
+
+import org.filesys.server.filesys.TreeConnection;
+import vip.ebox.jfiledemo.metrics.LatencyRecorder;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntSupplier;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/19  17:00
+ * @Description: 共享间的磁盘 I/O 公平调度
+ *  jFileServer 所有会话共用一个 ThreadRequestPool，一个共享上的大量慢 I/O 会占满全部工作线程。
+ *  这里把磁盘操作的并发数限制为执行槽位，总槽位默认取实际的工作线程数，每个共享另有自己的并发上限与排队上限：
+ *  - 槽位空闲且该共享没有排队请求时直接执行，不做线程切换
+ *  - SharePacketRequest 读出数据包后按包头的 TID 找到请求访问的共享并调用 defer：该共享或总槽位已满时数据包留在共享的队列中，
+ *    不占用工作线程，槽位释放后重新分发；请求按自己的 TID 判断，与会话之前访问过的共享无关，找不到共享的请求不留下。
+ *    数据包被留下期间该会话暂停读取，客户端因此放慢，而不是收到错误
+ *  - 已在工作线程上执行的操作槽位不足时（重新分发与新请求之间的竞争）在该共享的队列中等待，
+ *    槽位释放后按加权公平（虚拟时间）选择下一个共享：
+ *    每次执行使共享的虚拟时间增加 cost / weight，虚拟时间最小的共享优先，权重高的共享获得更多槽位
+ *  - 只有打开、创建在排队已满时直接拒绝（ShareBusyException），协议处理器会向客户端返回打开失败；
+ *    读写等操作始终排队，拒绝会使客户端的复制直接失败
+ */
+public class FairShareScheduler {
+
+    private final IntSupplier totalSlots;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final List<ShareQueue> order = new ArrayList<>();
+
+    // 共享名（大写）-> 队列，不含已注销的共享
+    private final Map<String, ShareQueue> shares = new ConcurrentHashMap<>();
+
+    // 所有共享留在队列中的请求数
+    private volatile int heldTotal;
+
+    // 正在执行的操作数（含已分配槽位、尚未被唤醒的等待者）
+    private int running;
+
+    // 全局虚拟时间，等于最近一次分配槽位时的起始虚拟时间
+    private double virtualTime;
+
+    /**
+     * @param totalSlots 所有共享合计的磁盘操作并发数，每次分配槽位时读取，随工作线程数调整
+     */
+    public FairShareScheduler(IntSupplier totalSlots) {
+        this.totalSlots = totalSlots;
+    }
+
+    /**
+     * 登记共享
+     *
+     * @param weight        权重，竞争时按权重比例分配槽位
+     * @param maxConcurrent 该共享的并发上限，0 表示只受总槽位限制
+     * @param maxQueued     该共享的排队上限，0 表示不限
+     */
+    public ShareQueue register(String shareName, int weight, int maxConcurrent, int maxQueued) {
+        ShareQueue queue = new ShareQueue(shareName, Math.max(1, weight), Math.max(0, maxConcurrent),
+                Math.max(0, maxQueued));
+        lock.lock();
+        try {
+            order.add(queue);
+        } finally {
+            lock.unlock();
+        }
+        shares.put(shareName.toUpperCase(Locale.ROOT), queue);
+        return queue;
+    }
+
+    /**
+     * 注销共享，之后不再出现在统计中
+     * 已连接到该共享的会话仍可继续操作，队列在其请求全部完成后移除，留在队列中的请求立即重新分发
+     */
+    public void unregister(ShareQueue queue) {
+        shares.remove(queue.shareName.toUpperCase(Locale.ROOT), queue);
+        List<Runnable> resumed;
+        lock.lock();
+        try {
+            queue.removed = true;
+            resumed = new ArrayList<>(queue.held);
+            heldTotal -= queue.held.size();
+            queue.held.clear();
+            if (queue.isIdle()) {
+                order.remove(queue);
+            }
+        } finally {
+            lock.unlock();
+        }
+        resumed.forEach(Runnable::run);
+    }
+
+    public int getTotalSlots() {
+        return Math.max(1, totalSlots.getAsInt());
+    }
+
+    /**
+     * 获取树连接所在共享的队列，未登记或已注销时返回 null
+     */
+    public ShareQueue find(TreeConnection tree) {
+        if (tree == null || tree.getSharedDevice() == null) {
+            return null;
+        }
+        return shares.get(tree.getSharedDevice().getName().toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * 请求访问的共享没有空闲槽位时，把请求留在该共享的队列中
+     *
+     * @param resume 槽位释放后重新分发请求，此时会再次检查
+     * @return 请求已被留下时返回 true，调用方不再处理该请求
+     */
+    public boolean defer(ShareQueue queue, Runnable resume) {
+        List<Runnable> resumed;
+        lock.lock();
+        try {
+            if (!queue.removed && !queue.hasCapacity(getTotalSlots())) {
+                queue.held.addLast(resume);
+                heldTotal++;
+                queue.deferred.increment();
+                return true;
+            }
+            resumed = resumable();
+        } finally {
+            lock.unlock();
+        }
+        resumed.forEach(Runnable::run);
+        return false;
+    }
+
+    /**
+     * 请求执行结束后调用，重新分发的请求没有访问磁盘（如关闭文件）时不会释放槽位，由这里补上留在队列中的请求
+     */
+    public void completed() {
+        if (heldTotal == 0) {
+            return;
+        }
+        List<Runnable> resumed;
+        lock.lock();
+        try {
+            resumed = resumable();
+        } finally {
+            lock.unlock();
+        }
+        resumed.forEach(Runnable::run);
+    }
+
+    /**
+     * 获取各共享的队列统计
+     */
+    public List<QueueStats> getStats() {
+        List<QueueStats> stats = new ArrayList<>();
+        lock.lock();
+        try {
+            for (ShareQueue queue : order) {
+                if (!queue.removed) {
+                    stats.add(queue.snapshot());
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return stats;
+    }
+
+    /**
+     * 获取各共享等待槽位的耗时分布（共享名 -> 快照），直接执行的请求按 0 计入
+     */
+    public Map<String, LatencyRecorder.Snapshot> getWaitSnapshots() {
+        Map<String, LatencyRecorder.Snapshot> snapshots = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            for (ShareQueue queue : order) {
+                if (!queue.removed) {
+                    snapshots.put(queue.shareName, queue.waitTime.snapshot());
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return snapshots;
+    }
+
+    /**
+     * 有空闲槽位时按虚拟时间把槽位分给在工作线程上等待的请求，调用方需持有锁
+     */
+    private void dispatch() {
+        int slots = getTotalSlots();
+        while (running < slots) {
+            ShareQueue next = null;
+            for (ShareQueue queue : order) {
+                if (!queue.waiters.isEmpty() && queue.running < queue.limit(slots)
+                        && (next == null || queue.pass < next.pass)) {
+                    next = queue;
+                }
+            }
+            if (next == null) {
+                return;
+            }
+            Waiter waiter = next.waiters.pollFirst();
+            waiter.granted = true;
+            next.running++;
+            running++;
+            next.advance(waiter.cost);
+            next.ready.signalAll();
+        }
+    }
+
+    /**
+     * 等待的请求都已分到槽位后，按虚拟时间从留在队列中的请求里取出不超过空闲槽位数的请求重新分发，调用方需持有锁
+     * 重新分发的请求执行时再获取槽位，槽位仍不足时会再次留在队列中
+     */
+    private List<Runnable> resumable() {
+        int slots = getTotalSlots();
+        List<Runnable> resumed = new ArrayList<>();
+        Map<ShareQueue, Integer> taken = new LinkedHashMap<>();
+        while (running + resumed.size() < slots) {
+            ShareQueue next = null;
+            for (ShareQueue queue : order) {
+                if (!queue.held.isEmpty() && queue.waiters.isEmpty()
+                        && queue.running + taken.getOrDefault(queue, 0) < queue.limit(slots)
+                        && (next == null || queue.pass < next.pass)) {
+                    next = queue;
+                }
+            }
+            if (next == null) {
+                break;
+            }
+            resumed.add(next.held.pollFirst());
+            heldTotal--;
+            taken.merge(next, 1, Integer::sum);
+        }
+        return resumed;
+    }
+
+    /**
+     * 排队中的请求
+     */
+    private static final class Waiter {
+        private final int cost;
+        private boolean granted;
+
+        private Waiter(int cost) {
+            this.cost = cost;
+        }
+    }
+
+    /**
+     * 单个共享的队列
+     */
+    public class ShareQueue {
+        private final String shareName;
+        private final int weight;
+        private final int maxConcurrent;
+        private final int maxQueued;
+        private final Condition ready = lock.newCondition();
+
+        // 以下字段由 lock 保护
+        private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+        private final ArrayDeque<Runnable> held = new ArrayDeque<>();
+        private int running;
+        private double pass;
+        private boolean removed;
+
+        // 统计
+        private final LongAdder executed = new LongAdder();
+        private final LongAdder queued = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder deferred = new LongAdder();
+        private final LatencyRecorder waitTime = new LatencyRecorder();
+
+        ShareQueue(String shareName, int weight, int maxConcurrent, int maxQueued) {
+            this.shareName = shareName;
+            this.weight = weight;
+            this.maxConcurrent = maxConcurrent;
+            this.maxQueued = maxQueued;
+        }
+
+        public String getShareName() {
+            return shareName;
+        }
+
+        /**
+         * 获取执行槽位，返回后必须调用 release
+         *
+         * @param cost       操作开销，元数据操作为 1，读写按数据量折算
+         * @param rejectable 排队已满时是否拒绝；只有打开、创建传 true，其余操作始终排队
+         */
+        public void acquire(int cost, boolean rejectable) throws IOException {
+            lock.lock();
+            try {
+                int slots = getTotalSlots();
+                if (waiters.isEmpty() && running < limit(slots) && FairShareScheduler.this.running < slots) {
+                    running++;
+                    FairShareScheduler.this.running++;
+                    advance(cost);
+                    executed.increment();
+                    waitTime.record(0, true);
+                    return;
+                }
+                int depth = waiters.size() + held.size();
+                if (rejectable && maxQueued > 0 && depth >= maxQueued) {
+                    rejected.increment();
+                    throw new ShareBusyException(shareName, depth);
+                }
+
+                if (removed && !order.contains(this)) {
+                    // 已注销的共享仍有会话在使用，排队期间需要参与调度
+                    order.add(this);
+                }
+                long start = System.nanoTime();
+                Waiter waiter = new Waiter(cost);
+                waiters.addLast(waiter);
+                queued.increment();
+                try {
+                    while (!waiter.granted) {
+                        ready.await();
+                    }
+                } catch (InterruptedException e) {
+                    if (waiter.granted) {
+                        // 已分配到槽位，归还给其他请求
+                        running--;
+                        FairShareScheduler.this.running--;
+                        dispatch();
+                    } else {
+                        waiters.remove(waiter);
+                    }
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("等待共享 " + shareName + " 的 I/O 槽位时被中断");
+                }
+                executed.increment();
+                waitTime.record(System.nanoTime() - start, true);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 释放执行槽位
+         */
+        public void release() {
+            List<Runnable> resumed;
+            lock.lock();
+            try {
+                running--;
+                FairShareScheduler.this.running--;
+                dispatch();
+                resumed = resumable();
+                if (removed && isIdle()) {
+                    order.remove(this);
+                }
+            } finally {
+                lock.unlock();
+            }
+            resumed.forEach(Runnable::run);
+        }
+
+        /**
+         * 该共享的并发上限，不超过总槽位
+         */
+        private int limit(int slots) {
+            return maxConcurrent > 0 ? Math.min(maxConcurrent, slots) : slots;
+        }
+
+        /**
+         * 新请求能否立即获得槽位，调用方需持有锁
+         */
+        private boolean hasCapacity(int slots) {
+            return waiters.isEmpty() && running < limit(slots) && FairShareScheduler.this.running < slots;
+        }
+
+        private boolean isIdle() {
+            return running == 0 && waiters.isEmpty() && held.isEmpty();
+        }
+
+        /**
+         * 分配槽位时推进虚拟时间，空闲后重新活跃的共享从当前全局虚拟时间开始，不能累积空闲期间的份额
+         */
+        private void advance(int cost) {
+            double begin = Math.max(pass, virtualTime);
+            virtualTime = begin;
+            pass = begin + (double) Math.max(1, cost) / weight;
+        }
+
+        QueueStats snapshot() {
+            LatencyRecorder.Snapshot wait = waitTime.snapshot();
+            return new QueueStats(shareName, weight, limit(getTotalSlots()), maxQueued, running,
+                    waiters.size() + held.size(), executed.sum(), queued.sum(), rejected.sum(), deferred.sum(),
+                    wait.getMeanMicros(), wait.getP99Micros(), wait.getMaxNanos() / 1000.0);
+        }
+    }
+
+    /**
+     * 单个共享的队列统计
+     */
+    public static class QueueStats {
+        private final String shareName;
+        private final int weight;
+        private final int maxConcurrent;
+        private final int maxQueued;
+        private final int running;
+        private final int queueDepth;
+        private final long executed;
+        private final long queued;
+        private final long rejected;
+        private final long deferred;
+        private final double meanWaitMicros;
+        private final double p99WaitMicros;
+        private final double maxWaitMicros;
+
+        public QueueStats(String shareName, int weight, int maxConcurrent, int maxQueued, int running,
+                          int queueDepth, long executed, long queued, long rejected, long deferred,
+                          double meanWaitMicros, double p99WaitMicros, double maxWaitMicros) {
+            this.shareName = shareName;
+            this.weight = weight;
+            this.maxConcurrent = maxConcurrent;
+            this.maxQueued = maxQueued;
+            this.running = running;
+            this.queueDepth = queueDepth;
+            this.executed = executed;
+            this.queued = queued;
+            this.rejected = rejected;
+            this.deferred = deferred;
+            this.meanWaitMicros = meanWaitMicros;
+            this.p99WaitMicros = p99WaitMicros;
+            this.maxWaitMicros = maxWaitMicros;
+        }
+
+        public String getShareName() {
+            return shareName;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        public int getMaxConcurrent() {
+            return maxConcurrent;
+        }
+
+        public int getMaxQueued() {
+            return maxQueued;
+        }
+
+        public int getRunning() {
+            return running;
+        }
+
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        public long getExecuted() {
+            return executed;
+        }
+
+        public long getQueued() {
+            return queued;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        /**
+         * 分发前留在队列中、未占用工作线程的请求数（累计）
+         */
+        public long getDeferred() {
+            return deferred;
+        }
+
+        public double getMeanWaitMicros() {
+            return meanWaitMicros;
+        }
+
+        public double getP99WaitMicros() {
+            return p99WaitMicros;
+        }
+
+        public double getMaxWaitMicros() {
+            return maxWaitMicros;
+        }
+    }
+}
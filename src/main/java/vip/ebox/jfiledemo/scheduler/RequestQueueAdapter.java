@@ -0,0 +1,155 @@
+package vip.ebox.jfiledemo.scheduler;
+
+import org.filesys.server.SrvSession;
+import org.filesys.server.thread.ThreadRequest;
+import org.filesys.server.thread.ThreadRequestPool;
+import org.filesys.server.thread.ThreadRequestQueue;
+
+import java.lang.reflect.Field;
+import java.util.AbstractQueue;
+import java.util.Collections;
+import java.util.Iterator;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/19  19:10
+ * @Description: 接管 ThreadRequestPool 的请求分发
+ *  ThreadRequestPool 的 queueRequest、ThreadRequestQueue 的方法均为 final，工作线程数在创建时固定
+ *  （CoreServerConfigSection.setThreadPool 只使用最小线程数）。请求最终通过 java.util.Queue.add 进入
+ *  ThreadRequestQueue 内部的队列，这里把该队列替换为子类，由子类在 offer 中把请求交给自己的执行器；
+ *  size 恒为 0、poll 恒返回 null，线程池原有的工作线程始终处于等待状态，不会取到请求。
+ *  设置了 TrafficShaper 时，子类在分发前调用 deferred，超出限速的会话的请求延后分发；
+ *  设置了 FairShareScheduler 时，NIO 会话的请求转为 SharePacketRequest，由它按数据包的 TID 把访问已满共享的请求留在该共享的队列中
+ */
+public abstract class RequestQueueAdapter extends AbstractQueue<ThreadRequest> {
+
+    // 各类 SMB 线程请求中的会话字段（NIOSMBThreadRequest、SMBThreadRequest 均为 m_sess），没有时为 null
+    private static final ClassValue<Field> SESSION_FIELD = new ClassValue<>() {
+        @Override
+        protected Field computeValue(Class<?> type) {
+            try {
+                Field field = type.getDeclaredField("m_sess");
+                if (!SrvSession.class.isAssignableFrom(field.getType())) {
+                    return null;
+                }
+                field.setAccessible(true);
+                return field;
+            } catch (NoSuchFieldException | RuntimeException e) {
+                return null;
+            }
+        }
+    };
+
+    private volatile TrafficShaper shaper;
+    private volatile FairShareScheduler scheduler;
+
+    /**
+     * 把线程池的请求队列替换为 adapter，需在服务器启动前调用
+     */
+    protected static <T extends RequestQueueAdapter> T attach(ThreadRequestPool pool, T adapter)
+            throws ReflectiveOperationException {
+        Field poolQueue = ThreadRequestPool.class.getDeclaredField("m_queue");
+        poolQueue.setAccessible(true);
+        ThreadRequestQueue requestQueue = (ThreadRequestQueue) poolQueue.get(pool);
+
+        Field innerQueue = ThreadRequestQueue.class.getDeclaredField("m_queue");
+        innerQueue.setAccessible(true);
+        innerQueue.set(requestQueue, adapter);
+        return adapter;
+    }
+
+    /**
+     * 设置分发前检查的限速器，为 null 时不限速
+     */
+    public void setTrafficShaper(TrafficShaper shaper) {
+        this.shaper = shaper;
+    }
+
+    /**
+     * 设置分发前检查的磁盘 I/O 调度，为 null 时不检查
+     */
+    public void setScheduler(FairShareScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * 子类接收请求时首先调用，设置了磁盘 I/O 调度时把 NIO 会话的请求转为按共享分发的请求
+     */
+    protected ThreadRequest prepare(ThreadRequest request) {
+        FairShareScheduler fs = scheduler;
+        return fs != null ? SharePacketRequest.wrap(request, fs, this) : request;
+    }
+
+    /**
+     * 请求所属会话超出限速时交给限速器延后分发
+     *
+     * @return 请求已被延后时返回 true，子类不再处理该请求
+     */
+    protected boolean deferred(ThreadRequest request) {
+        TrafficShaper s = shaper;
+        return s != null && s.defer(request, this);
+    }
+
+    /**
+     * 请求执行结束后由子类调用
+     */
+    protected void completed() {
+        FairShareScheduler fs = scheduler;
+        if (fs != null) {
+            fs.completed();
+        }
+    }
+
+    /**
+     * 获取请求所属的会话，请求中没有会话字段时返回 null
+     */
+    static SrvSession<?> sessionOf(ThreadRequest request) {
+        if (request instanceof SharePacketRequest) {
+            return ((SharePacketRequest) request).getSession();
+        }
+        Field field = SESSION_FIELD.get(request.getClass());
+        if (field == null) {
+            return null;
+        }
+        try {
+            return (SrvSession<?>) field.get(request);
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 接收请求，始终返回 true
+     */
+    @Override
+    public abstract boolean offer(ThreadRequest request);
+
+    /**
+     * 停止接收新请求，等待执行中的请求结束
+     */
+    public abstract void shutdown();
+
+    /**
+     * 工作线程不从这里取请求
+     */
+    @Override
+    public ThreadRequest poll() {
+        return null;
+    }
+
+    @Override
+    public ThreadRequest peek() {
+        return null;
+    }
+
+    @Override
+    public int size() {
+        return 0;
+    }
+
+    @Override
+    public Iterator<ThreadRequest> iterator() {
+        return Collections.emptyIterator();
+    }
+}
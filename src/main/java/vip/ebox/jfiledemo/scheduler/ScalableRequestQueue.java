@@ -0,0 +1,139 @@
+package vip.ebox.jfiledemo.scheduler;
+
+import lombok.extern.slf4j.Slf4j;
+import org.filesys.server.thread.ThreadRequest;
+import org.filesys.server.thread.ThreadRequestPool;
+import vip.ebox.jfiledemo.metrics.LatencyRecorder;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/19  19:20
+ * @Description: 可在运行时调整工作线程数的请求执行
+ *  通过 RequestQueueAdapter 接管 ThreadRequestPool 的请求分发，交给 ThreadPoolExecutor 执行，
+ *  由 ThreadPoolAutoscaler 或在线修改配置时调用 resize 增减工作线程，减少时空闲线程自行退出，不会中断执行中的请求。
+ *  记录每个请求的排队耗时与执行耗时，作为扩缩容的依据
+ */
+@Slf4j
+public class ScalableRequestQueue extends RequestQueueAdapter {
+
+    private final ThreadPoolExecutor executor;
+
+    // 统计
+    private final LatencyRecorder waitTime = new LatencyRecorder();
+    private final LongAdder busyNanos = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    private ScalableRequestQueue(int threads) {
+        AtomicInteger ids = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread t = new Thread(r, "FileSrvWorker" + ids.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    /**
+     * 把线程池的请求队列替换为可调整大小的执行器，需在服务器启动前调用
+     *
+     * @param threads 初始工作线程数
+     */
+    public static ScalableRequestQueue install(ThreadRequestPool pool, int threads)
+            throws ReflectiveOperationException {
+        return attach(pool, new ScalableRequestQueue(Math.max(1, threads)));
+    }
+
+    @Override
+    public boolean offer(ThreadRequest received) {
+        ThreadRequest request = prepare(received);
+        if (deferred(request)) {
+            return true;
+        }
+        long queuedAt = System.nanoTime();
+        try {
+            executor.execute(() -> run(request, queuedAt));
+        } catch (RejectedExecutionException e) {
+            // 服务器已停止
+        }
+        return true;
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 调整工作线程数
+     */
+    public synchronized void resize(int threads) {
+        threads = Math.max(1, threads);
+        if (threads > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(threads);
+            executor.setCorePoolSize(threads);
+        } else {
+            executor.setCorePoolSize(threads);
+            executor.setMaximumPoolSize(threads);
+        }
+    }
+
+    public int getThreads() {
+        return executor.getCorePoolSize();
+    }
+
+    public int getActiveThreads() {
+        return executor.getActiveCount();
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * 请求从到达到开始执行的耗时分布（累计）
+     */
+    public LatencyRecorder.Snapshot getWaitSnapshot() {
+        return waitTime.snapshot();
+    }
+
+    /**
+     * 工作线程执行请求的累计耗时
+     */
+    public long getBusyNanos() {
+        return busyNanos.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    private void run(ThreadRequest request, long queuedAt) {
+        long start = System.nanoTime();
+        waitTime.record(start - queuedAt, true);
+        try {
+            request.runRequest();
+        } catch (Throwable e) {
+            failed.increment();
+            log.error("处理请求异常", e);
+        } finally {
+            busyNanos.add(System.nanoTime() - start);
+            completed();
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package vip.ebox.jfiledemo.scheduler;
+
+import java.io.IOException;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/19  17:05
+ * @Description: 共享的 I/O 排队数已达上限，请求被拒绝
+ */
+public class ShareBusyException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ShareBusyException(String shareName, int queueDepth) {
+        super("共享 " + shareName + " 繁忙，排队请求数已达上限: " + queueDepth);
+    }
+}
@@ -0,0 +1,209 @@
+package vip.ebox.jfiledemo.scheduler;
+
+import lombok.extern.slf4j.Slf4j;
+import org.filesys.server.filesys.TreeConnection;
+import org.filesys.server.filesys.postprocess.PostRequestProcessor;
+import org.filesys.server.thread.ThreadRequest;
+import org.filesys.smb.server.PacketHandler;
+import org.filesys.smb.server.SMBSrvPacket;
+import org.filesys.smb.server.SMBSrvSession;
+import org.filesys.smb.server.nio.NIOSMBThreadRequest;
+
+import java.lang.reflect.Field;
+import java.nio.channels.SelectionKey;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/24  10:30
+ * @Description: 按数据包访问的共享分发的 NIO 会话请求
+ *  NIOSMBThreadRequest 在工作线程上逐个读取并处理会话的数据包，分发时无法知道请求访问哪个共享。
+ *  这里按相同的流程读取数据包，处理前按包头的 TID 通过 findTreeConnection 找到请求访问的共享，
+ *  该共享没有空闲槽位时把数据包留在共享的队列中并结束本次执行，工作线程立即返回；
+ *  槽位释放后请求重新分发，先处理留下的数据包再继续读取。
+ *  会话的读取在数据包被留下期间保持暂停，同一会话的数据包仍按到达顺序处理。
+ *  找不到树连接的数据包（协商、会话建立、SMB2 等）直接处理，不会被留下
+ */
+@Slf4j
+public class SharePacketRequest implements ThreadRequest {
+
+    private static final Field SESSION_FIELD;
+    private static final Field KEY_FIELD;
+    private static final Field MAX_PACKETS_FIELD;
+
+    static {
+        Field sess = null;
+        Field key = null;
+        Field maxPackets = null;
+        try {
+            sess = NIOSMBThreadRequest.class.getDeclaredField("m_sess");
+            key = NIOSMBThreadRequest.class.getDeclaredField("m_selectionKey");
+            maxPackets = NIOSMBThreadRequest.class.getDeclaredField("m_maxPktsPerRun");
+            sess.setAccessible(true);
+            key.setAccessible(true);
+            maxPackets.setAccessible(true);
+        } catch (NoSuchFieldException | RuntimeException e) {
+            log.warn("无法读取 NIOSMBThreadRequest 的字段，请求不按共享分发: {}", e.getMessage());
+            sess = null;
+        }
+        SESSION_FIELD = sess;
+        KEY_FIELD = key;
+        MAX_PACKETS_FIELD = maxPackets;
+    }
+
+    private final SMBSrvSession sess;
+    private final SelectionKey key;
+    private final int maxPackets;
+    private final FairShareScheduler scheduler;
+    private final RequestQueueAdapter queue;
+
+    // 被留在共享队列中的数据包，重新分发时先处理
+    private volatile SMBSrvPacket pending;
+
+    private SharePacketRequest(SMBSrvSession sess, SelectionKey key, int maxPackets,
+                               FairShareScheduler scheduler, RequestQueueAdapter queue) {
+        this.sess = sess;
+        this.key = key;
+        this.maxPackets = Math.max(1, maxPackets);
+        this.scheduler = scheduler;
+        this.queue = queue;
+    }
+
+    /**
+     * 把 NIOSMBThreadRequest 转为按共享分发的请求，其它请求或无法读取字段时原样返回
+     */
+    static ThreadRequest wrap(ThreadRequest request, FairShareScheduler scheduler, RequestQueueAdapter queue) {
+        if (SESSION_FIELD == null || request.getClass() != NIOSMBThreadRequest.class) {
+            return request;
+        }
+        try {
+            return new SharePacketRequest((SMBSrvSession) SESSION_FIELD.get(request),
+                    (SelectionKey) KEY_FIELD.get(request), MAX_PACKETS_FIELD.getInt(request), scheduler, queue);
+        } catch (IllegalAccessException e) {
+            return request;
+        }
+    }
+
+    public SMBSrvSession getSession() {
+        return sess;
+    }
+
+    @Override
+    public void runRequest() {
+        SMBSrvPacket pkt = pending;
+        pending = null;
+        if (sess.isShutdown()) {
+            if (pkt != null) {
+                sess.getPacketPool().releasePacket(pkt);
+            }
+            return;
+        }
+
+        int count = 0;
+        boolean async = false;
+        boolean closed = false;
+        boolean held = false;
+        PostRequestProcessor postProcessor = null;
+
+        while (count < maxPackets && postProcessor == null && !closed && !held) {
+            try {
+                if (pkt == null) {
+                    PacketHandler handler = sess.getPacketHandler();
+                    pkt = handler != null ? handler.readPacket() : null;
+                    if (pkt == null) {
+                        if (count == 0) {
+                            hangup();
+                            closed = true;
+                        }
+                        break;
+                    }
+                }
+
+                FairShareScheduler.ShareQueue share = shareOf(pkt);
+                if (share != null) {
+                    if (async) {
+                        // 留下数据包前先发出已处理请求的异步响应，重新分发后不再由本次执行处理
+                        sess.sendQueuedAsyncResponses();
+                        async = false;
+                    }
+                    pending = pkt;
+                    if (scheduler.defer(share, () -> queue.offer(this))) {
+                        pkt = null;
+                        held = true;
+                        continue;
+                    }
+                    pending = null;
+                }
+
+                count++;
+                if (!async && sess.hasAsyncResponseQueued()) {
+                    async = true;
+                } else if (count == maxPackets && !async) {
+                    resumeReading();
+                }
+
+                SMBSrvPacket processing = pkt;
+                pkt = null;
+                sess.processPacket(processing);
+                postProcessor = processing.getPostProcessor();
+            } catch (Throwable ex) {
+                log.debug("会话 {} 处理数据包失败: {}", sess.getUniqueId(), ex.getMessage());
+                hangup();
+                closed = true;
+            } finally {
+                if (pkt != null) {
+                    sess.getPacketPool().releasePacket(pkt);
+                    pkt = null;
+                }
+            }
+        }
+
+        if (async) {
+            sess.sendQueuedAsyncResponses();
+        }
+        if (!closed && !held && (count < maxPackets || async)) {
+            resumeReading();
+        }
+
+        if (postProcessor != null) {
+            try {
+                postProcessor.runPostProcessor();
+            } catch (Throwable ex) {
+                log.debug("会话 {} 的后处理失败: {}", sess.getUniqueId(), ex.getMessage());
+            } finally {
+                if (sess.hasTransaction()) {
+                    sess.endTransaction();
+                }
+            }
+        }
+    }
+
+    /**
+     * 数据包访问的共享的队列，找不到时返回 null
+     */
+    private FairShareScheduler.ShareQueue shareOf(SMBSrvPacket pkt) {
+        try {
+            TreeConnection tree = sess.findTreeConnection(pkt);
+            return scheduler.find(tree);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private void resumeReading() {
+        key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+        key.selector().wakeup();
+    }
+
+    private void hangup() {
+        sess.hangupSession("Client closed socket");
+        sess.processPacket(null);
+        key.cancel();
+        key.selector().wakeup();
+    }
+
+    @Override
+    public String toString() {
+        return "[Share SMB Sess=" + sess.getUniqueId() + "]";
+    }
+}
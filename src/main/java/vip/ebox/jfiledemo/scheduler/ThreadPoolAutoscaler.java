@@ -0,0 +1,407 @@
+package vip.ebox.jfiledemo.scheduler;
+
+import lombok.extern.slf4j.Slf4j;
+import org.filesys.smb.server.SMBConfigSection;
+import org.filesys.smb.server.SMBServer;
+import vip.ebox.jfiledemo.metrics.LatencyRecorder;
+
+import java.lang.reflect.Field;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/19  19:40
+ * @Description: 请求线程池自动扩缩容
+ *  每个周期读取 ScalableRequestQueue 的排队数、周期内请求排队耗时 p99 与工作线程利用率（执行耗时 / 周期 / 线程数）：
+ *  - 排队耗时超过目标且仍有排队，或利用率超过 85%：线程数增加 50%，不超过 maxThreads
+ *  - 连续 IDLE_PERIODS 个周期利用率低于 30% 且排队耗时低于目标的一半：线程数减少 25%，不低于 minThreads
+ *  - 线程数已到上限仍然排队时，提高每次调度处理的数据包数（setMaximumPacketsPerThreadRun），减少繁忙会话的调度往返；
+ *    负载回落后逐步恢复到初始值，保证会话间的公平
+ *  NIOSMBConnectionsHandler 和已创建的 SMBRequestHandler 在初始化时复制了每次调度的数据包数，通过反射一并修改
+ */
+@Slf4j
+public class ThreadPoolAutoscaler {
+
+    // 保留的调整记录条数
+    private static final int MAX_DECISIONS = 50;
+
+    // 连续空闲多少个周期后才缩容
+    private static final int IDLE_PERIODS = 3;
+
+    private static final double HIGH_UTILIZATION = 0.85;
+    private static final double LOW_UTILIZATION = 0.30;
+
+    private final ScalableRequestQueue queue;
+    private volatile int minThreads;
+    private volatile int maxThreads;
+    private final long intervalMillis;
+    private final long targetWaitMicros;
+
+    // 上一周期的计数，用于计算增量
+    private LatencyRecorder.Snapshot lastWait;
+    private long lastBusyNanos;
+    private long lastTickNanos;
+    private int idlePeriods;
+
+    // 最近一个周期的观测值
+    private volatile double utilization;
+    private volatile double p99WaitMillis;
+
+    // 每次调度处理的数据包数，attach 后有效
+    private SMBServer server;
+    private int basePacketsPerRun;
+    private volatile int packetsPerRun;
+
+    // 最近的调整记录
+    private final Deque<Decision> decisions = new ArrayDeque<>();
+    private long decisionCount;
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param intervalMillis   调整周期（毫秒）
+     * @param targetWaitMillis 请求排队耗时 p99 的目标值（毫秒）
+     */
+    public ThreadPoolAutoscaler(ScalableRequestQueue queue, int minThreads, int maxThreads, long intervalMillis,
+                                long targetWaitMillis) {
+        this.queue = queue;
+        this.minThreads = Math.max(1, minThreads);
+        this.maxThreads = Math.max(this.minThreads, maxThreads);
+        this.intervalMillis = Math.max(500, intervalMillis);
+        this.targetWaitMicros = Math.max(1, targetWaitMillis) * 1000;
+    }
+
+    /**
+     * 启动自动调整，server 用于调整每次调度处理的数据包数
+     */
+    public synchronized void start(SMBServer server) {
+        if (scheduler != null) {
+            return;
+        }
+        this.server = server;
+        this.basePacketsPerRun = server.getSMBConfiguration().getMaximumPacketsPerThreadRun();
+        this.packetsPerRun = basePacketsPerRun;
+        this.lastWait = queue.getWaitSnapshot();
+        this.lastBusyNanos = queue.getBusyNanos();
+        this.lastTickNanos = System.nanoTime();
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "jfs-thread-autoscaler");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::tune, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        log.info("线程池自动调整已启动: 线程数 {} ~ {}, 周期={}ms, 排队耗时目标={}ms", minThreads, maxThreads,
+                intervalMillis, targetWaitMicros / 1000);
+    }
+
+    /**
+     * 停止自动调整
+     */
+    public synchronized void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * 修改线程数范围，当前线程数超出新范围时立即调整到边界
+     */
+    public synchronized void setBounds(int minThreads, int maxThreads) {
+        this.minThreads = Math.max(1, minThreads);
+        this.maxThreads = Math.max(this.minThreads, maxThreads);
+        int threads = queue.getThreads();
+        int target = Math.min(this.maxThreads, Math.max(this.minThreads, threads));
+        if (target != threads) {
+            queue.resize(target);
+            // 手动调整不对应统计周期，请求数与排队耗时记为 0
+            LatencyRecorder.Snapshot now = queue.getWaitSnapshot();
+            record(Decision.THREADS, threads, target, "线程数范围修改为 " + this.minThreads + " ~ " + this.maxThreads,
+                    queue.getQueueDepth(), utilization, now.since(now));
+        }
+    }
+
+    /**
+     * 执行一次调整，由调度线程周期调用
+     */
+    synchronized void tune() {
+        long now = System.nanoTime();
+        LatencyRecorder.Snapshot wait = queue.getWaitSnapshot();
+        long busy = queue.getBusyNanos();
+        LatencyRecorder.Snapshot periodWait = wait.since(lastWait);
+        long periodBusy = busy - lastBusyNanos;
+        long elapsed = Math.max(1, now - lastTickNanos);
+        lastWait = wait;
+        lastBusyNanos = busy;
+        lastTickNanos = now;
+
+        int threads = queue.getThreads();
+        int depth = queue.getQueueDepth();
+        double util = Math.min(1.0, (double) periodBusy / elapsed / threads);
+        double p99Micros = periodWait.percentileMicros(0.99);
+        utilization = util;
+        p99WaitMillis = p99Micros / 1000.0;
+
+        boolean overloaded = (p99Micros > targetWaitMicros && depth > 0) || util >= HIGH_UTILIZATION;
+        boolean idle = util < LOW_UTILIZATION && p99Micros <= targetWaitMicros / 2.0;
+        idlePeriods = idle ? idlePeriods + 1 : 0;
+
+        if (overloaded && threads < maxThreads) {
+            int target = Math.min(maxThreads, threads + Math.max(1, threads / 2));
+            queue.resize(target);
+            record(Decision.THREADS, threads, target, "排队耗时或利用率过高", depth, util, periodWait);
+        } else if (overloaded && packetsPerRun < SMBConfigSection.MaxPacketsPerRun) {
+            // 线程数已到上限，让每次调度处理更多数据包
+            int target = Math.min(SMBConfigSection.MaxPacketsPerRun, Math.max(packetsPerRun + 1, packetsPerRun * 2));
+            if (setPacketsPerRun(target)) {
+                record(Decision.PACKETS_PER_RUN, packetsPerRun, target, "线程数已达上限仍在排队", depth, util,
+                        periodWait);
+                packetsPerRun = target;
+            }
+        } else if (idlePeriods >= IDLE_PERIODS) {
+            idlePeriods = 0;
+            if (packetsPerRun > basePacketsPerRun) {
+                int target = Math.max(basePacketsPerRun, packetsPerRun / 2);
+                if (setPacketsPerRun(target)) {
+                    record(Decision.PACKETS_PER_RUN, packetsPerRun, target, "负载回落", depth, util, periodWait);
+                    packetsPerRun = target;
+                }
+            } else if (threads > minThreads) {
+                int target = Math.max(minThreads, threads - Math.max(1, threads / 4));
+                queue.resize(target);
+                record(Decision.THREADS, threads, target, "利用率持续偏低", depth, util, periodWait);
+            }
+        }
+    }
+
+    private void record(String type, int from, int to, String reason, int depth, double util,
+                        LatencyRecorder.Snapshot periodWait) {
+        Decision decision = new Decision(System.currentTimeMillis(), type, from, to, reason, depth, util,
+                periodWait.getCount(), periodWait.percentileMicros(0.99) / 1000.0);
+        synchronized (decisions) {
+            decisions.addFirst(decision);
+            if (decisions.size() > MAX_DECISIONS) {
+                decisions.removeLast();
+            }
+            decisionCount++;
+        }
+        log.info("线程池调整: {} {} -> {}（{}：排队={}, 利用率={}%, 请求数={}, 排队耗时p99={}ms）", type, from, to, reason,
+                depth, Math.round(util * 100), periodWait.getCount(),
+                String.format("%.2f", periodWait.percentileMicros(0.99) / 1000.0));
+    }
+
+    /**
+     * 获取线程池及自动调整统计信息
+     */
+    public AutoscalerStats getStats() {
+        List<Decision> recent;
+        long count;
+        synchronized (decisions) {
+            recent = new ArrayList<>(decisions);
+            count = decisionCount;
+        }
+        return new AutoscalerStats(minThreads, maxThreads, queue.getThreads(), queue.getActiveThreads(),
+                queue.getQueueDepth(), packetsPerRun, utilization, p99WaitMillis, targetWaitMicros / 1000,
+                count, recent);
+    }
+
+    // ---- 反射修改连接处理器中的每次调度数据包数 ----
+
+    private boolean setPacketsPerRun(int packets) {
+        try {
+            server.getSMBConfiguration().setMaximumPacketsPerThreadRun(packets);
+
+            Field handlerField = SMBServer.class.getDeclaredField("m_connectionsHandler");
+            handlerField.setAccessible(true);
+            Object handler = handlerField.get(server);
+            if (handler == null) {
+                return true;
+            }
+            setIntField(handler, "m_maxPacketsPerRun", packets);
+
+            Field listField = handler.getClass().getDeclaredField("m_requestHandlers");
+            listField.setAccessible(true);
+            List<?> requestHandlers = (List<?>) listField.get(handler);
+            synchronized (requestHandlers) {
+                for (Object requestHandler : requestHandlers) {
+                    setIntField(requestHandler, "m_maxPacketsPerRun", packets);
+                }
+            }
+            return true;
+        } catch (Exception e) {
+            // 非 NIO 连接处理器或版本不兼容时仅调整线程数
+            log.warn("调整每次调度数据包数失败: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private static void setIntField(Object target, String name, int value) throws ReflectiveOperationException {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.setInt(target, value);
+    }
+
+    /**
+     * 一次调整记录
+     */
+    public static class Decision {
+        public static final String THREADS = "threads";
+        public static final String PACKETS_PER_RUN = "packets-per-run";
+
+        private final long time;
+        private final String type;
+        private final int oldValue;
+        private final int newValue;
+        private final String reason;
+        private final int queueDepth;
+        private final double utilization;
+        private final long requests;
+        private final double p99WaitMillis;
+
+        public Decision(long time, String type, int oldValue, int newValue, String reason, int queueDepth,
+                        double utilization, long requests, double p99WaitMillis) {
+            this.time = time;
+            this.type = type;
+            this.oldValue = oldValue;
+            this.newValue = newValue;
+            this.reason = reason;
+            this.queueDepth = queueDepth;
+            this.utilization = utilization;
+            this.requests = requests;
+            this.p99WaitMillis = p99WaitMillis;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public int getOldValue() {
+            return oldValue;
+        }
+
+        public int getNewValue() {
+            return newValue;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        public double getUtilization() {
+            return utilization;
+        }
+
+        /**
+         * 周期内开始执行的请求数
+         */
+        public long getRequests() {
+            return requests;
+        }
+
+        public double getP99WaitMillis() {
+            return p99WaitMillis;
+        }
+    }
+
+    /**
+     * 线程池及自动调整统计信息
+     */
+    public static class AutoscalerStats {
+        private final int minThreads;
+        private final int maxThreads;
+        private final int threads;
+        private final int activeThreads;
+        private final int queueDepth;
+        private final int packetsPerRun;
+        private final double utilization;
+        private final double p99WaitMillis;
+        private final long targetWaitMillis;
+        private final long decisionCount;
+        private final List<Decision> decisions;
+
+        public AutoscalerStats(int minThreads, int maxThreads, int threads, int activeThreads, int queueDepth,
+                               int packetsPerRun, double utilization, double p99WaitMillis, long targetWaitMillis,
+                               long decisionCount, List<Decision> decisions) {
+            this.minThreads = minThreads;
+            this.maxThreads = maxThreads;
+            this.threads = threads;
+            this.activeThreads = activeThreads;
+            this.queueDepth = queueDepth;
+            this.packetsPerRun = packetsPerRun;
+            this.utilization = utilization;
+            this.p99WaitMillis = p99WaitMillis;
+            this.targetWaitMillis = targetWaitMillis;
+            this.decisionCount = decisionCount;
+            this.decisions = decisions;
+        }
+
+        public int getMinThreads() {
+            return minThreads;
+        }
+
+        public int getMaxThreads() {
+            return maxThreads;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public int getActiveThreads() {
+            return activeThreads;
+        }
+
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        public int getPacketsPerRun() {
+            return packetsPerRun;
+        }
+
+        /**
+         * 最近一个周期的工作线程利用率（0 ~ 1）
+         */
+        public double getUtilization() {
+            return utilization;
+        }
+
+        /**
+         * 最近一个周期的请求排队耗时 p99（毫秒）
+         */
+        public double getP99WaitMillis() {
+            return p99WaitMillis;
+        }
+
+        public long getTargetWaitMillis() {
+            return targetWaitMillis;
+        }
+
+        public long getDecisionCount() {
+            return decisionCount;
+        }
+
+        /**
+         * 最近的调整记录，最新的在前
+         */
+        public List<Decision> getDecisions() {
+            return decisions;
+        }
+    }
+}
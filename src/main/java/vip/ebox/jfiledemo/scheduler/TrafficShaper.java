@@ -0,0 +1,645 @@
+package vip.ebox.jfiledemo.scheduler;
+
+import org.filesys.server.SessionListener;
+import org.filesys.server.SrvSession;
+import org.filesys.server.auth.ClientInfo;
+import org.filesys.server.thread.ThreadRequest;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/20  19:30
+ * @Description: 按会话与用户限制带宽和 IOPS
+ *  每个会话、每个用户（同一用户的所有会话合计）各有读字节、写字节、操作数三个令牌桶，桶容量为 burst 时间内的速率：
+ *  - ShapingDiskDriver 在每次磁盘操作结束后按实际读写的字节数扣减令牌，允许扣成负数（欠账），欠账上限为 maxDelay 内的速率
+ *  - RequestQueueAdapter 分发请求前检查请求所属会话，会话或其用户的任一令牌桶欠账时，请求交给定时线程在欠账还清后重新分发，
+ *    等待期间不占用工作线程；NIO 模式下会话的下一批数据包要等本次请求执行后才会读取，客户端因此自然放慢
+ *  - 限速值可在运行时修改，已有的令牌桶在下次补充令牌时使用新值
+ */
+public class TrafficShaper implements SessionListener {
+
+    private final ScheduledExecutorService timer;
+    private final Map<SrvSession<?>, SessionAccount> sessions = new ConcurrentHashMap<>();
+    private final Map<String, UserAccount> users = new ConcurrentHashMap<>();
+
+    private volatile Limits sessionLimits;
+    private volatile Limits userLimits;
+    private volatile Map<String, Limits> userOverrides;
+    private volatile long maxDelayNanos;
+
+    // 统计
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder delayNanos = new LongAdder();
+
+    /**
+     * @param sessionLimits 每个会话的限速
+     * @param userLimits    每个用户的默认限速
+     * @param userOverrides 按用户名（不区分大小写）覆盖的限速
+     * @param maxDelay      单次等待的最长时间（毫秒），即欠账上限
+     */
+    public TrafficShaper(Limits sessionLimits, Limits userLimits, Map<String, Limits> userOverrides, long maxDelay) {
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "FileSrvShaper");
+            t.setDaemon(true);
+            return t;
+        });
+        setLimits(sessionLimits, userLimits, userOverrides, maxDelay);
+    }
+
+    /**
+     * 修改限速，立即作用于已连接的会话
+     */
+    public void setLimits(Limits sessionLimits, Limits userLimits, Map<String, Limits> userOverrides, long maxDelay) {
+        Map<String, Limits> overrides = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        if (userOverrides != null) {
+            overrides.putAll(userOverrides);
+        }
+        this.sessionLimits = sessionLimits != null ? sessionLimits : Limits.UNLIMITED;
+        this.userLimits = userLimits != null ? userLimits : Limits.UNLIMITED;
+        this.userOverrides = Collections.unmodifiableMap(overrides);
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, maxDelay));
+    }
+
+    /**
+     * 记录一次磁盘操作，由 ShapingDiskDriver 在操作结束后调用
+     *
+     * @param readBytes  实际读取的字节数
+     * @param writeBytes 写入的字节数
+     */
+    public void charge(SrvSession<?> sess, long readBytes, long writeBytes) {
+        if (sess == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        long maxDelay = maxDelayNanos;
+        SessionAccount session = sessionAccount(sess);
+        session.charge(sessionLimits, readBytes, writeBytes, maxDelay, now);
+        UserAccount user = userAccount(session);
+        if (user != null) {
+            user.charge(limitsFor(user.name), readBytes, writeBytes, maxDelay, now);
+        }
+    }
+
+    /**
+     * 请求所属会话或其用户欠账时，把请求交给定时线程延后分发
+     *
+     * @param queue 到期后重新分发请求的队列，此时会再次检查
+     * @return 请求已被延后时返回 true，调用方不再处理该请求
+     */
+    boolean defer(ThreadRequest request, RequestQueueAdapter queue) {
+        SrvSession<?> sess = RequestQueueAdapter.sessionOf(request);
+        if (sess == null) {
+            return false;
+        }
+        SessionAccount session = sessions.get(sess);
+        if (session == null) {
+            // 尚未进行过磁盘操作的会话
+            return false;
+        }
+
+        long now = System.nanoTime();
+        long wait = session.waitNanos(sessionLimits, now);
+        UserAccount user = userAccount(session);
+        if (user != null) {
+            wait = Math.max(wait, user.waitNanos(limitsFor(user.name), now));
+        }
+        if (wait <= 0) {
+            return false;
+        }
+        wait = Math.min(wait, maxDelayNanos);
+        try {
+            timer.schedule(() -> queue.offer(request), wait, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // 已关闭，直接分发
+            return false;
+        }
+        session.recordThrottle(wait);
+        if (user != null) {
+            user.recordThrottle(wait);
+        }
+        throttled.increment();
+        delayNanos.add(wait);
+        return true;
+    }
+
+    /**
+     * 停止定时线程，尚未到期的请求不再分发
+     */
+    public void shutdown() {
+        timer.shutdownNow();
+        sessions.clear();
+    }
+
+    @Override
+    public void sessionClosed(SrvSession sess) {
+        sessions.remove(sess);
+    }
+
+    @Override
+    public void sessionCreated(SrvSession sess) {
+        // 首次磁盘操作时创建令牌桶
+    }
+
+    @Override
+    public void sessionLoggedOn(SrvSession sess) {
+        SessionAccount session = sessions.get(sess);
+        if (session != null) {
+            session.user = userName(sess);
+        }
+    }
+
+    /**
+     * 获取限速配置与各会话、各用户的用量
+     */
+    public ShapingStats getStats() {
+        long now = System.nanoTime();
+        Limits session = sessionLimits;
+        List<ClientStats> clients = new ArrayList<>();
+        Map<String, Integer> sessionCounts = new TreeMap<>();
+        for (SessionAccount account : sessions.values()) {
+            clients.add(account.stats(session, now));
+            if (account.user != null) {
+                sessionCounts.merge(account.user.toLowerCase(Locale.ROOT), 1, Integer::sum);
+            }
+        }
+        clients.sort(Comparator.comparingInt(ClientStats::getSessionId));
+
+        List<UserStats> userStats = new ArrayList<>();
+        for (UserAccount account : users.values()) {
+            userStats.add(account.stats(limitsFor(account.name), now,
+                    sessionCounts.getOrDefault(account.name.toLowerCase(Locale.ROOT), 0)));
+        }
+        userStats.sort(Comparator.comparing(UserStats::getUser, String.CASE_INSENSITIVE_ORDER));
+        return new ShapingStats(session, userLimits, userOverrides, maxDelayNanos / 1_000_000, throttled.sum(),
+                delayNanos.sum() / 1_000_000, clients, userStats);
+    }
+
+    private SessionAccount sessionAccount(SrvSession<?> sess) {
+        SessionAccount account = sessions.get(sess);
+        if (account == null) {
+            InetAddress address = sess.getRemoteAddress();
+            account = sessions.computeIfAbsent(sess, s -> new SessionAccount(s.getSessionId(),
+                    address != null ? address.getHostAddress() : null));
+        }
+        if (account.user == null) {
+            account.user = userName(sess);
+        }
+        return account;
+    }
+
+    private UserAccount userAccount(SessionAccount session) {
+        String name = session.user;
+        if (name == null) {
+            return null;
+        }
+        return users.computeIfAbsent(name.toLowerCase(Locale.ROOT), k -> new UserAccount(name));
+    }
+
+    private Limits limitsFor(String user) {
+        Limits limits = userOverrides.get(user);
+        return limits != null ? limits : userLimits;
+    }
+
+    /**
+     * 会话登录的用户名，未登录或匿名会话返回 null
+     */
+    private static String userName(SrvSession<?> sess) {
+        ClientInfo client = sess.getClientInformation();
+        if (client == null || client.isNullSession() || !client.hasUserName()) {
+            return null;
+        }
+        String name = client.getUserName();
+        return name.isEmpty() ? null : name;
+    }
+
+    /**
+     * 一组限速值，各项为 0 表示不限制
+     */
+    public static final class Limits {
+
+        public static final Limits UNLIMITED = new Limits(0, 0, 0, 0);
+
+        private final long readRate;
+        private final long writeRate;
+        private final long opsRate;
+        private final long burst;
+
+        /**
+         * @param readRate  读取速率（字节/秒）
+         * @param writeRate 写入速率（字节/秒）
+         * @param opsRate   磁盘操作数（次/秒）
+         * @param burst     令牌桶容量，按该时间（毫秒）内的速率计算，允许空闲后短时突发
+         */
+        public Limits(long readRate, long writeRate, long opsRate, long burst) {
+            this.readRate = Math.max(0, readRate);
+            this.writeRate = Math.max(0, writeRate);
+            this.opsRate = Math.max(0, opsRate);
+            this.burst = Math.max(0, burst);
+        }
+
+        public long getReadRate() {
+            return readRate;
+        }
+
+        public long getWriteRate() {
+            return writeRate;
+        }
+
+        public long getOpsRate() {
+            return opsRate;
+        }
+
+        public long getBurst() {
+            return burst;
+        }
+
+        public boolean isUnlimited() {
+            return readRate == 0 && writeRate == 0 && opsRate == 0;
+        }
+    }
+
+    /**
+     * 单个令牌桶，由所属账户的锁保护
+     */
+    private static final class Bucket {
+
+        private double tokens;
+        private long updated;
+        private boolean started;
+
+        /**
+         * 按经过的时间补充令牌，容量随限速修改而变化
+         */
+        void refill(long rate, long burst, long now) {
+            if (rate <= 0) {
+                tokens = 0;
+                started = false;
+                return;
+            }
+            double capacity = Math.max(1, rate * burst / 1000.0);
+            if (!started) {
+                // 新建或刚启用限速的桶从满桶开始
+                tokens = capacity;
+                started = true;
+            } else {
+                tokens = Math.min(capacity, tokens + (now - updated) * rate / 1e9);
+            }
+            updated = now;
+        }
+
+        void take(long amount, long rate, long maxDelayNanos) {
+            if (rate > 0 && amount > 0) {
+                tokens = Math.max(tokens - amount, -rate * (maxDelayNanos / 1e9));
+            }
+        }
+
+        long waitNanos(long rate) {
+            return rate <= 0 || tokens >= 0 ? 0 : (long) Math.ceil(-tokens * 1e9 / rate);
+        }
+
+        long available(long rate) {
+            return rate <= 0 ? 0 : (long) tokens;
+        }
+    }
+
+    /**
+     * 一个会话或用户的令牌桶与累计用量
+     */
+    private static class Account {
+
+        private final Bucket read = new Bucket();
+        private final Bucket write = new Bucket();
+        private final Bucket ops = new Bucket();
+
+        final LongAdder readBytes = new LongAdder();
+        final LongAdder writeBytes = new LongAdder();
+        final LongAdder operations = new LongAdder();
+        final LongAdder throttled = new LongAdder();
+        final LongAdder delayNanos = new LongAdder();
+
+        void charge(Limits limits, long readCount, long writeCount, long maxDelayNanos, long now) {
+            readBytes.add(readCount);
+            writeBytes.add(writeCount);
+            operations.increment();
+            if (limits.isUnlimited()) {
+                return;
+            }
+            synchronized (this) {
+                refill(limits, now);
+                read.take(readCount, limits.getReadRate(), maxDelayNanos);
+                write.take(writeCount, limits.getWriteRate(), maxDelayNanos);
+                ops.take(1, limits.getOpsRate(), maxDelayNanos);
+            }
+        }
+
+        long waitNanos(Limits limits, long now) {
+            if (limits.isUnlimited()) {
+                return 0;
+            }
+            synchronized (this) {
+                refill(limits, now);
+                return Math.max(read.waitNanos(limits.getReadRate()),
+                        Math.max(write.waitNanos(limits.getWriteRate()), ops.waitNanos(limits.getOpsRate())));
+            }
+        }
+
+        void recordThrottle(long wait) {
+            throttled.increment();
+            delayNanos.add(wait);
+        }
+
+        synchronized long[] available(Limits limits, long now) {
+            refill(limits, now);
+            return new long[]{read.available(limits.getReadRate()), write.available(limits.getWriteRate()),
+                    ops.available(limits.getOpsRate())};
+        }
+
+        private void refill(Limits limits, long now) {
+            read.refill(limits.getReadRate(), limits.getBurst(), now);
+            write.refill(limits.getWriteRate(), limits.getBurst(), now);
+            ops.refill(limits.getOpsRate(), limits.getBurst(), now);
+        }
+    }
+
+    private static final class SessionAccount extends Account {
+
+        private final int sessionId;
+        private final String clientAddress;
+        private volatile String user;
+
+        SessionAccount(int sessionId, String clientAddress) {
+            this.sessionId = sessionId;
+            this.clientAddress = clientAddress;
+        }
+
+        ClientStats stats(Limits limits, long now) {
+            long[] available = available(limits, now);
+            return new ClientStats(sessionId, user, clientAddress, readBytes.sum(), writeBytes.sum(),
+                    operations.sum(), throttled.sum(), delayNanos.sum() / 1_000_000,
+                    available[0], available[1], available[2]);
+        }
+    }
+
+    private static final class UserAccount extends Account {
+
+        private final String name;
+
+        UserAccount(String name) {
+            this.name = name;
+        }
+
+        UserStats stats(Limits limits, long now, int activeSessions) {
+            long[] available = available(limits, now);
+            return new UserStats(name, activeSessions, limits, readBytes.sum(), writeBytes.sum(),
+                    operations.sum(), throttled.sum(), delayNanos.sum() / 1_000_000,
+                    available[0], available[1], available[2]);
+        }
+    }
+
+    /**
+     * 限速配置与用量统计
+     */
+    public static class ShapingStats {
+        private final Limits sessionLimits;
+        private final Limits userLimits;
+        private final Map<String, Limits> userOverrides;
+        private final long maxDelay;
+        private final long throttled;
+        private final long delayMillis;
+        private final List<ClientStats> clients;
+        private final List<UserStats> users;
+
+        public ShapingStats(Limits sessionLimits, Limits userLimits, Map<String, Limits> userOverrides, long maxDelay,
+                            long throttled, long delayMillis, List<ClientStats> clients, List<UserStats> users) {
+            this.sessionLimits = sessionLimits;
+            this.userLimits = userLimits;
+            this.userOverrides = userOverrides;
+            this.maxDelay = maxDelay;
+            this.throttled = throttled;
+            this.delayMillis = delayMillis;
+            this.clients = clients;
+            this.users = users;
+        }
+
+        public Limits getSessionLimits() {
+            return sessionLimits;
+        }
+
+        public Limits getUserLimits() {
+            return userLimits;
+        }
+
+        public Map<String, Limits> getUserOverrides() {
+            return userOverrides;
+        }
+
+        public long getMaxDelay() {
+            return maxDelay;
+        }
+
+        /**
+         * 被延后分发的请求数与累计延后时间
+         */
+        public long getThrottled() {
+            return throttled;
+        }
+
+        public long getDelayMillis() {
+            return delayMillis;
+        }
+
+        /**
+         * 已连接且进行过磁盘操作的会话
+         */
+        public List<ClientStats> getClients() {
+            return clients;
+        }
+
+        /**
+         * 进行过磁盘操作的用户，用量含已断开的会话
+         */
+        public List<UserStats> getUsers() {
+            return users;
+        }
+    }
+
+    /**
+     * 单个会话的用量
+     */
+    public static class ClientStats {
+        private final int sessionId;
+        private final String user;
+        private final String clientAddress;
+        private final long readBytes;
+        private final long writeBytes;
+        private final long operations;
+        private final long throttled;
+        private final long delayMillis;
+        private final long readTokens;
+        private final long writeTokens;
+        private final long opsTokens;
+
+        public ClientStats(int sessionId, String user, String clientAddress, long readBytes, long writeBytes,
+                           long operations, long throttled, long delayMillis, long readTokens, long writeTokens,
+                           long opsTokens) {
+            this.sessionId = sessionId;
+            this.user = user;
+            this.clientAddress = clientAddress;
+            this.readBytes = readBytes;
+            this.writeBytes = writeBytes;
+            this.operations = operations;
+            this.throttled = throttled;
+            this.delayMillis = delayMillis;
+            this.readTokens = readTokens;
+            this.writeTokens = writeTokens;
+            this.opsTokens = opsTokens;
+        }
+
+        public int getSessionId() {
+            return sessionId;
+        }
+
+        /**
+         * 登录的用户名，匿名会话为 null
+         */
+        public String getUser() {
+            return user;
+        }
+
+        public String getClientAddress() {
+            return clientAddress;
+        }
+
+        public long getReadBytes() {
+            return readBytes;
+        }
+
+        public long getWriteBytes() {
+            return writeBytes;
+        }
+
+        public long getOperations() {
+            return operations;
+        }
+
+        public long getThrottled() {
+            return throttled;
+        }
+
+        public long getDelayMillis() {
+            return delayMillis;
+        }
+
+        /**
+         * 当前剩余的令牌，负数为欠账，未限速的项为 0
+         */
+        public long getReadTokens() {
+            return readTokens;
+        }
+
+        public long getWriteTokens() {
+            return writeTokens;
+        }
+
+        public long getOpsTokens() {
+            return opsTokens;
+        }
+    }
+
+    /**
+     * 单个用户的用量
+     */
+    public static class UserStats {
+        private final String user;
+        private final int sessions;
+        private final Limits limits;
+        private final long readBytes;
+        private final long writeBytes;
+        private final long operations;
+        private final long throttled;
+        private final long delayMillis;
+        private final long readTokens;
+        private final long writeTokens;
+        private final long opsTokens;
+
+        public UserStats(String user, int sessions, Limits limits, long readBytes, long writeBytes, long operations,
+                         long throttled, long delayMillis, long readTokens, long writeTokens, long opsTokens) {
+            this.user = user;
+            this.sessions = sessions;
+            this.limits = limits;
+            this.readBytes = readBytes;
+            this.writeBytes = writeBytes;
+            this.operations = operations;
+            this.throttled = throttled;
+            this.delayMillis = delayMillis;
+            this.readTokens = readTokens;
+            this.writeTokens = writeTokens;
+            this.opsTokens = opsTokens;
+        }
+
+        public String getUser() {
+            return user;
+        }
+
+        /**
+         * 当前已连接的会话数
+         */
+        public int getSessions() {
+            return sessions;
+        }
+
+        /**
+         * 该用户生效的限速
+         */
+        public Limits getLimits() {
+            return limits;
+        }
+
+        public long getReadBytes() {
+            return readBytes;
+        }
+
+        public long getWriteBytes() {
+            return writeBytes;
+        }
+
+        public long getOperations() {
+            return operations;
+        }
+
+        public long getThrottled() {
+            return throttled;
+        }
+
+        public long getDelayMillis() {
+            return delayMillis;
+        }
+
+        public long getReadTokens() {
+            return readTokens;
+        }
+
+        public long getWriteTokens() {
+            return writeTokens;
+        }
+
+        public long getOpsTokens() {
+            return opsTokens;
+        }
+    }
+}
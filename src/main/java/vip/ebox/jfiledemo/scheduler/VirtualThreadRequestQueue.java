@@ -0,0 +1,222 @@
+package vip.ebox.jfiledemo.scheduler;
+
+import lombok.extern.slf4j.Slf4j;
+import org.filesys.server.thread.ThreadRequest;
+import org.filesys.server.thread.ThreadRequestPool;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/19  18:10
+ * @Description: 在虚拟线程上执行 SMB 请求
+ *  通过 RequestQueueAdapter 接管 ThreadRequestPool 的请求分发，为每个请求启动一个虚拟线程，
+ *  请求处理及其中的磁盘操作都在虚拟线程上执行，并发数不再受工作线程数限制。
+ *  同时执行的请求数不超过 maxInFlight，超出的请求按到达顺序等待，执行中的请求结束后依次补上，
+ *  每个请求持有的网络缓冲区数量因此有上限，内存占用可预期。
+ *  需要 JDK 21 及以上，通过反射获取虚拟线程执行器，项目仍按 Java 17 编译
+ */
+@Slf4j
+public class VirtualThreadRequestQueue extends RequestQueueAdapter {
+
+    private final ExecutorService executor;
+    private volatile int maxInFlight;
+    private final ConcurrentLinkedQueue<ThreadRequest> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    // 统计
+    private final LongAdder dispatched = new LongAdder();
+    private final LongAdder deferred = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAccumulator peakInFlight = new LongAccumulator(Math::max, 0);
+
+    private VirtualThreadRequestQueue(ExecutorService executor, int maxInFlight) {
+        this.executor = executor;
+        this.maxInFlight = Math.max(1, maxInFlight);
+    }
+
+    /**
+     * 当前 JDK 是否支持虚拟线程
+     */
+    public static boolean isSupported() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 把线程池的请求队列替换为虚拟线程执行，需在服务器启动前调用
+     *
+     * @param maxInFlight 同时执行的请求数上限
+     */
+    public static VirtualThreadRequestQueue install(ThreadRequestPool pool, int maxInFlight)
+            throws ReflectiveOperationException {
+        ExecutorService executor = (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        return attach(pool, new VirtualThreadRequestQueue(executor, maxInFlight));
+    }
+
+    @Override
+    public boolean offer(ThreadRequest received) {
+        ThreadRequest request = prepare(received);
+        if (deferred(request)) {
+            return true;
+        }
+        if (tryAcquire()) {
+            submit(request);
+        } else {
+            pending.add(request);
+            pendingCount.incrementAndGet();
+            deferred.increment();
+            // 加入等待队列前执行中的请求可能已全部结束，重新检查一次
+            drain();
+        }
+        return true;
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        pending.clear();
+        pendingCount.set(0);
+    }
+
+    /**
+     * 修改同时执行的请求数上限，调大时立即启动等待中的请求，调小时执行中的请求不受影响
+     */
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = Math.max(1, maxInFlight);
+        drain();
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public Stats getStats() {
+        return new Stats(maxInFlight, inFlight.get(), pendingCount.get(), peakInFlight.get(),
+                dispatched.sum(), deferred.sum(), failed.sum());
+    }
+
+    private boolean tryAcquire() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= maxInFlight) {
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        peakInFlight.accumulate(current + 1);
+        return true;
+    }
+
+    private void submit(ThreadRequest request) {
+        try {
+            executor.execute(() -> run(request));
+            dispatched.increment();
+        } catch (RejectedExecutionException e) {
+            // 服务器已停止
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private void run(ThreadRequest request) {
+        try {
+            request.runRequest();
+        } catch (Throwable e) {
+            failed.increment();
+            log.error("处理请求异常", e);
+        } finally {
+            inFlight.decrementAndGet();
+            completed();
+            drain();
+        }
+    }
+
+    /**
+     * 有空闲名额时按到达顺序启动等待中的请求
+     */
+    private void drain() {
+        while (!pending.isEmpty() && tryAcquire()) {
+            ThreadRequest next = pending.poll();
+            if (next == null) {
+                inFlight.decrementAndGet();
+                return;
+            }
+            pendingCount.decrementAndGet();
+            submit(next);
+        }
+    }
+
+    /**
+     * 虚拟线程执行统计
+     */
+    public static class Stats {
+        private final int maxInFlight;
+        private final int inFlight;
+        private final int pending;
+        private final long peakInFlight;
+        private final long dispatched;
+        private final long deferred;
+        private final long failed;
+
+        public Stats(int maxInFlight, int inFlight, int pending, long peakInFlight, long dispatched,
+                     long deferred, long failed) {
+            this.maxInFlight = maxInFlight;
+            this.inFlight = inFlight;
+            this.pending = pending;
+            this.peakInFlight = peakInFlight;
+            this.dispatched = dispatched;
+            this.deferred = deferred;
+            this.failed = failed;
+        }
+
+        public int getMaxInFlight() {
+            return maxInFlight;
+        }
+
+        public int getInFlight() {
+            return inFlight;
+        }
+
+        public int getPending() {
+            return pending;
+        }
+
+        public long getPeakInFlight() {
+            return peakInFlight;
+        }
+
+        public long getDispatched() {
+            return dispatched;
+        }
+
+        public long getDeferred() {
+            return deferred;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+    }
+}
@@ -1,33 +1,90 @@
 package vip.ebox.jfiledemo.service;
 
+import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.filesys.debug.Debug;
+import org.filesys.debug.DebugInterface;
 import org.filesys.debug.LogFileDebug;
+import org.filesys.server.NetworkServer;
+import org.filesys.server.SrvSession;
 import org.filesys.server.auth.*;
 import org.filesys.server.config.GlobalConfigSection;
+import org.filesys.server.config.InvalidConfigurationException;
 import org.filesys.server.config.ServerConfiguration;
 import org.filesys.server.config.CoreServerConfigSection;
 import org.filesys.server.config.SecurityConfigSection;
+import org.filesys.server.core.DeviceContextException;
 import org.filesys.smb.DialectSelector;
 import org.filesys.smb.server.SMBConfigSection;
 import org.filesys.smb.server.SMBServer;
 import org.filesys.server.filesys.DiskDeviceContext;
+import org.filesys.server.filesys.DiskInterface;
 import org.filesys.server.filesys.DiskSharedDevice;
 import org.filesys.server.filesys.FilesystemsConfigSection;
+import org.filesys.server.thread.ThreadRequestPool;
 import org.filesys.smb.server.SMBSrvSession;
-import org.filesys.smb.server.disk.JavaNIODiskDriver;
+import org.filesys.smb.server.nio.SMBRequestHandler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.extensions.config.element.GenericConfigElement;
+import vip.ebox.jfiledemo.cluster.ClusterStats;
+import vip.ebox.jfiledemo.cluster.StateCluster;
+import vip.ebox.jfiledemo.config.JFileServerProperties;
+import vip.ebox.jfiledemo.filesys.BlockCache;
+import vip.ebox.jfiledemo.filesys.CachingDiskDriver;
+import vip.ebox.jfiledemo.filesys.ChangeTrackingDiskDriver;
+import vip.ebox.jfiledemo.filesys.FileStateDiskDriver;
+import vip.ebox.jfiledemo.filesys.IndexedDiskDriver;
+import vip.ebox.jfiledemo.filesys.MappedFileManager;
+import vip.ebox.jfiledemo.filesys.MetricsDiskDriver;
+import vip.ebox.jfiledemo.filesys.NIODiskDriver;
+import vip.ebox.jfiledemo.filesys.QuotaDiskDriver;
+import vip.ebox.jfiledemo.filesys.SchedulingDiskDriver;
+import vip.ebox.jfiledemo.filesys.ScratchDiskDriver;
+import vip.ebox.jfiledemo.filesys.ScratchMemory;
+import vip.ebox.jfiledemo.filesys.ShapingDiskDriver;
+import vip.ebox.jfiledemo.filesys.ShareChangeWatcher;
+import vip.ebox.jfiledemo.filesys.ShareQuota;
+import vip.ebox.jfiledemo.filesys.TieredDiskDriver;
+import vip.ebox.jfiledemo.filesys.WriteBehindManager;
+import vip.ebox.jfiledemo.listener.ServerLifecycleListener;
+import vip.ebox.jfiledemo.logging.AsyncLogFileDebug;
+import vip.ebox.jfiledemo.memory.MemoryPoolTuner;
+import vip.ebox.jfiledemo.metrics.LatencyRecorder;
+import vip.ebox.jfiledemo.metrics.ServerMetrics;
+import vip.ebox.jfiledemo.scheduler.FairShareScheduler;
+import vip.ebox.jfiledemo.scheduler.ScalableRequestQueue;
+import vip.ebox.jfiledemo.scheduler.ThreadPoolAutoscaler;
+import vip.ebox.jfiledemo.scheduler.TrafficShaper;
+import vip.ebox.jfiledemo.scheduler.VirtualThreadRequestQueue;
+import vip.ebox.jfiledemo.session.SessionRegistry;
 
 import jakarta.annotation.PreDestroy;
 import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.security.Security;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import java.util.stream.Collectors;
 
 /**
  * @Author: Yunnuo
@@ -39,8 +96,11 @@ import java.util.concurrent.locks.ReentrantLock;
 @Service
 public class JFileServerService {
 
+    // 会话列表每页最多条数
+    private static final int MAX_SESSION_PAGE = 1000;
+
     @Autowired
-    private vip.ebox.jfiledemo.config.JFileServerProperties properties;
+    private JFileServerProperties properties;
 
     // jFileServer配置和服务器实例
     private ServerConfiguration serverConfig;
@@ -48,7 +108,53 @@ public class JFileServerService {
     private final ReentrantLock lock = new ReentrantLock();
 
     // jFileServer 日志接口
-    private LogFileDebug jFileServerLogger;
+    private DebugInterface jFileServerLogger;
+
+    // 内存池统计与自适应调整
+    private volatile MemoryPoolTuner memoryPool;
+
+    // 文件块缓存（未启用时为 null）
+    private volatile BlockCache blockCache;
+
+    // 大文件内存映射读取（未启用时为 null）
+    private volatile MappedFileManager mappedFiles;
+
+    // 小写入合并（未启用时为 null）
+    private volatile WriteBehindManager writeBehind;
+
+    // 内存临时共享共用的页面池，添加第一个内存临时共享时创建
+    private volatile ScratchMemory scratchMemory;
+
+    // 所有共享共用的 NIO 驱动，运行中添加共享时使用
+    private volatile NIODiskDriver nioDriver;
+
+    // 各共享的驱动链（共享名 -> 驱动），用于汇总统计和运行中移除共享
+    private final Map<String, ShareDrivers> shareDrivers = new ConcurrentSkipListMap<>(String.CASE_INSENSITIVE_ORDER);
+
+    // 共享间的磁盘 I/O 调度（未启用时为 null）
+    private volatile FairShareScheduler ioScheduler;
+
+    // 虚拟线程请求执行（未启用或 JDK 不支持时为 null）
+    private volatile VirtualThreadRequestQueue virtualThreads;
+
+    // 可调整大小的请求线程池（虚拟线程模式下为 null）及其自动调整（未启用时为 null）
+    private volatile ScalableRequestQueue scalableRequests;
+    private volatile ThreadPoolAutoscaler autoscaler;
+
+    // 按会话与用户限速，未启用时为 null
+    private volatile TrafficShaper trafficShaper;
+
+    // 活动会话与各会话的用量，服务器未运行时为 null
+    private volatile SessionRegistry sessionRegistry;
+
+    // 服务器就绪与关闭事件
+    private volatile ServerLifecycleListener lifecycle;
+
+    // 多个实例间共享的文件状态，未启用时为 null
+    private volatile StateCluster cluster;
+
+    // 最近一次启动的各阶段耗时
+    private volatile StartupTiming startupTiming;
 
     // 服务器状态
     private volatile boolean running = false;
@@ -73,9 +179,11 @@ public class JFileServerService {
             log.info("  - 域名/工作组: {}", properties.getDomain());
             log.info("  - 用户名: {}", properties.getUsername());
 
+            StartupTiming timing = new StartupTiming();
             try {
                 // 0. 配置 jFileServer 日志输出
                 configureJFileServerLogging();
+                timing.mark("logging");
                 // 1. 创建服务器配置
                 serverConfig = new ServerConfiguration(properties.getServerName());
 
@@ -88,52 +196,81 @@ public class JFileServerService {
                 CoreServerConfigSection coreConfig = new CoreServerConfigSection(serverConfig);
 
                 // 配置内存池
-                int[] pktSizes = {256, 4096, 16384, 66000};
-                int[] initAlloc = {20, 20, 5, 5};
-                int[] maxAlloc = {100, 50, 50, 50};
-                coreConfig.setMemoryPool(pktSizes, initAlloc, maxAlloc);
+                coreConfig.setMemoryPool(properties.getMemoryPoolSizes(), properties.getMemoryPoolInitAlloc(),
+                        properties.getMemoryPoolMaxAlloc());
+                memoryPool = new MemoryPoolTuner(coreConfig.getMemoryPool(), properties.isMemoryPoolAdaptive(),
+                        properties.getMemoryPoolAdaptiveInterval(), (long) properties.getMemoryPoolMaxMemory() * 1024 * 1024);
+                log.info("配置内存池: 大小={}, 初始={}, 最大={}, 自适应={}",
+                        Arrays.toString(properties.getMemoryPoolSizes()), Arrays.toString(properties.getMemoryPoolInitAlloc()),
+                        Arrays.toString(properties.getMemoryPoolMaxAlloc()), properties.isMemoryPoolAdaptive());
 
                 // 配置线程池
                 coreConfig.setThreadPool(properties.getMinThreads(), properties.getMaxThreads());
                 log.info("配置线程池: 最小={}, 最大={}", properties.getMinThreads(), properties.getMaxThreads());
 
+                // 在虚拟线程上执行请求
+                if (properties.isVirtualThreadsEnabled()) {
+                    if (VirtualThreadRequestQueue.isSupported()) {
+                        virtualThreads = VirtualThreadRequestQueue.install(coreConfig.getThreadPool(),
+                                properties.getVirtualThreadsMaxRequests());
+                        log.info("已启用虚拟线程请求执行: 并发请求上限={}", properties.getVirtualThreadsMaxRequests());
+                    } else {
+                        log.warn("当前 JDK {} 不支持虚拟线程，继续使用固定线程池", System.getProperty("java.version"));
+                    }
+                }
+
+                // 自动调整线程数、I/O 调度与限速需要接管请求分发，替换线程池内部的队列；
+                // 都未启用时保留 jFileServer 原有的线程池，修改线程数需要重启
+                if (virtualThreads == null && (properties.isAutoscaleEnabled() || properties.isIoSchedulerEnabled()
+                        || properties.isShapingEnabled())) {
+                    scalableRequests = ScalableRequestQueue.install(coreConfig.getThreadPool(),
+                            properties.getMinThreads());
+                    if (properties.isAutoscaleEnabled()) {
+                        autoscaler = new ThreadPoolAutoscaler(scalableRequests, properties.getMinThreads(),
+                                properties.getMaxThreads(), properties.getAutoscaleInterval(),
+                                properties.getAutoscaleTargetWait());
+                    }
+                } else if (virtualThreads != null && properties.isAutoscaleEnabled()) {
+                    log.warn("已启用虚拟线程，忽略线程池自动调整");
+                }
+
+                // 按会话与用户限速：磁盘驱动记账，请求分发前检查
+                if (properties.isShapingEnabled()) {
+                    trafficShaper = new TrafficShaper(toLimits(properties.getShapingSession()),
+                            toLimits(properties.getShapingUser()), toLimits(properties.getShapingUsers()),
+                            properties.getShapingMaxDelay());
+                    if (virtualThreads != null) {
+                        virtualThreads.setTrafficShaper(trafficShaper);
+                    } else {
+                        scalableRequests.setTrafficShaper(trafficShaper);
+                    }
+                    log.info("已启用会话与用户限速: 最长延后={}ms", properties.getShapingMaxDelay());
+                }
+                sessionRegistry = new SessionRegistry();
+
                 serverConfig.addConfigSection(coreConfig);
+                timing.mark("core");
+
+                // 集群文件状态使用核心配置中的线程池，需在创建共享之前加入集群
+                if (properties.isClusterEnabled() && properties.isFileStateCacheEnabled()) {
+                    cluster = StateCluster.create(serverConfig, properties.getClusterName(),
+                            properties.getClusterPort(), properties.getClusterPortCount(),
+                            properties.getClusterMembers());
+                    log.info("已加入集群 {}: 成员={}", properties.getClusterName(), properties.getClusterMembers());
+                    timing.mark("cluster");
+                } else if (properties.isClusterEnabled()) {
+                    log.warn("未启用文件状态缓存，不在实例间共享文件状态");
+                }
 
                 // 3. 创建安全配置并添加用户
                 SecurityConfigSection securityConfig = new SecurityConfigSection(serverConfig);
 
                 // 创建用户账户列表并添加用户
-                UserAccountList userAccounts = new UserAccountList();
-                UserAccount userAccount = new UserAccount(
-                    properties.getUsername(),
-                    properties.getPassword()
-                );
-                userAccount.setAdministrator(true);
-
-                // 关键：为NTLM认证生成MD4密码哈希
-                try {
-                    // 注册BouncyCastle安全提供者以支持MD4
-                    Security.addProvider(new BouncyCastleProvider());
-
-                    PasswordEncryptor encryptor = new PasswordEncryptor();
-                    byte[] md4Hash = encryptor.generateEncryptedPassword(
-                        properties.getPassword(),
-                        null,
-                        org.filesys.server.auth.PasswordEncryptor.MD4,
-                        null,
-                        null
-                    );
-                    userAccount.setMD4Password(md4Hash);
-                    log.info("已为用户 {} 生成MD4密码哈希", properties.getUsername());
-                } catch (Exception e) {
-                    log.warn("生成MD4密码哈希失败: {}", e.getMessage());
-                }
-
-                userAccounts.addUser(userAccount);
-                securityConfig.setUserAccounts(userAccounts);
+                securityConfig.setUserAccounts(buildUserAccounts());
 
                 serverConfig.addConfigSection(securityConfig);
                 log.info("已配置用户认证: {}", properties.getUsername());
+                timing.mark("security");
 
                 // 4. 创建SMB配置
                 SMBConfigSection smbConfig = new SMBConfigSection(serverConfig);
@@ -171,11 +308,8 @@ public class JFileServerService {
                 smbConfig.setAuthenticator(authenticator);
                 log.info("已使用EnterpriseSMBAuthenticator，支持NTLMv1和NTLMv2认证");
 
-                // 启用调试日志以便排查问题
-                smbConfig.setSessionDebugFlags(EnumSet.of(
-                        SMBSrvSession.Dbg.NEGOTIATE,
-                        SMBSrvSession.Dbg.STATE,
-                        SMBSrvSession.Dbg.SOCKET));
+                // 会话调试类别，未启用的类别只做一次 EnumSet 判断
+                smbConfig.setSessionDebugFlags(parseDebugFlags(properties.getSessionDebugFlags()));
 
                 // 设置端口和协议
                 smbConfig.setTcpipSMB(true);
@@ -195,67 +329,92 @@ public class JFileServerService {
 
 
                 serverConfig.addConfigSection(smbConfig);
+                timing.mark("smb");
 
                 // 5. 创建文件系统配置
                 FilesystemsConfigSection filesystemsConfig = new FilesystemsConfigSection(serverConfig);
                 serverConfig.addConfigSection(filesystemsConfig);
 
-                // 处理共享目录路径
-                File sharedDir;
-                String sharePath = properties.getSharePath();
-                if (new File(sharePath).isAbsolute()) {
-                    sharedDir = new File(sharePath);
-                } else {
-                    // 相对路径，相对于项目根目录
-                    sharedDir = new File(System.getProperty("user.dir"), sharePath);
+                // 文件数据块缓存与顺序预读
+                if (properties.isBlockCacheEnabled()) {
+                    blockCache = new BlockCache((long) properties.getBlockCacheSize() * 1024 * 1024,
+                            properties.getBlockCacheBlockSize(), properties.getReadAheadBlocks(),
+                            properties.getReadAheadThreads());
+                    log.info("已启用块缓存: 容量={}MB, 块大小={}, 预读块数={}", properties.getBlockCacheSize(),
+                            properties.getBlockCacheBlockSize(), properties.getReadAheadBlocks());
                 }
 
-                // 确保共享目录存在
-                if (!sharedDir.exists()) {
-                    log.info("共享目录不存在，正在创建: {}", sharedDir.getAbsolutePath());
-                    if (sharedDir.mkdirs()) {
-                        log.info("共享目录创建成功: {}", sharedDir.getAbsolutePath());
-                    } else {
-                        log.error("共享目录创建失败: {}", sharedDir.getAbsolutePath());
-                        throw new RuntimeException("无法创建共享目录: " + sharedDir.getAbsolutePath());
-                    }
+                // 只读大文件使用内存映射读取
+                if (properties.isMmapEnabled()) {
+                    mappedFiles = new MappedFileManager(properties.getMmapThreshold(), properties.getMmapChunkSize(),
+                            (long) properties.getMmapMaxMapped() * 1024 * 1024);
+                    log.info("已启用内存映射读取: 阈值={}, 分段大小={}, 最大映射={}MB", properties.getMmapThreshold(),
+                            properties.getMmapChunkSize(), properties.getMmapMaxMapped());
                 }
 
-                log.info("共享目录: {}", sharedDir.getAbsolutePath());
-
-                // 创建磁盘设备接口和上下文
-                JavaNIODiskDriver diskDriver = new JavaNIODiskDriver();
-                DiskDeviceContext diskContext = new DiskDeviceContext(
-                    sharedDir.getAbsolutePath(),
-                    properties.getShareName()
-                );
+                // 合并小写入
+                if (properties.isWriteBehindEnabled()) {
+                    writeBehind = new WriteBehindManager(properties.getWriteBehindBufferSize(),
+                            properties.getWriteBehindMaxDelay(),
+                            (long) properties.getWriteBehindMaxMemory() * 1024 * 1024);
+                    log.info("已启用延迟写入: 缓冲区={}, 最长延迟={}ms, 总内存上限={}MB",
+                            properties.getWriteBehindBufferSize(), properties.getWriteBehindMaxDelay(),
+                            properties.getWriteBehindMaxMemory());
+                }
 
-                // 创建磁盘共享设备
-                DiskSharedDevice diskShare = new DiskSharedDevice(
-                    properties.getShareName(),
-                    diskDriver,
-                    diskContext
-                );
+                // 块缓存、内存映射、延迟写入均按本地路径区分文件，所有共享共用一个 NIO 驱动
+                nioDriver = new NIODiskDriver(blockCache, mappedFiles, writeBehind);
+                nioDriver.setTransferListener(memoryPool::recordTransfer);
+
+                // 共享间的磁盘 I/O 公平调度
+                // 未配置总槽位时取实际的工作线程数（随自动调整变化），虚拟线程模式下为同时执行的请求数上限
+                if (properties.isIoSchedulerEnabled()) {
+                    int configured = properties.getIoSchedulerSlots();
+                    VirtualThreadRequestQueue vt = virtualThreads;
+                    ScalableRequestQueue requests = scalableRequests;
+                    IntSupplier slots = configured > 0 ? () -> configured
+                            : vt != null ? vt::getMaxInFlight : requests::getThreads;
+                    ioScheduler = new FairShareScheduler(slots);
+                    if (vt != null) {
+                        vt.setScheduler(ioScheduler);
+                    } else {
+                        requests.setScheduler(ioScheduler);
+                    }
+                    log.info("已启用磁盘 I/O 公平调度: 总槽位={}", configured > 0 ? configured : "跟随工作线程数");
+                }
 
-                // 添加共享到文件系统配置
-                filesystemsConfig.addShare(diskShare);
-                log.info("已添加共享: {} -> {}", properties.getShareName(), sharedDir.getAbsolutePath());
+                for (JFileServerProperties.ShareConfig share : resolveShares()) {
+                    addShare(filesystemsConfig, share);
+                }
+                timing.mark("shares");
 
-                // 6. 创建并启动SMB服务器
+                // 6. 创建并启动SMB服务器，等待绑定端口后发出的就绪事件
                 smbServer = new SMBServer(serverConfig);
+                lifecycle = new ServerLifecycleListener();
+                smbServer.addServerListener(lifecycle);
+                if (trafficShaper != null) {
+                    smbServer.addSessionListener(trafficShaper);
+                }
+                smbServer.addSessionListener(sessionRegistry);
                 log.info("正在启动SMB服务器...");
                 smbServer.startServer();
+                lifecycle.awaitActive(properties.getStartupTimeout());
+                timing.mark("listen");
 
-                // 等待服务器启动
-                Thread.sleep(1000);
+                if (properties.isReadinessProbe()) {
+                    ServerLifecycleListener.probe(properties.getPort(),
+                            Math.max(1, properties.getStartupTimeout() - timing.getTotalMillis()));
+                    timing.mark("probe");
+                }
 
-                if (smbServer.isActive()) {
-                    running = true;
-                    log.info("========== jFileServer启动成功 ==========");
-                } else {
-                    log.error("jFileServer启动失败，服务器未处于活动状态");
-                    throw new RuntimeException("SMB服务器启动失败");
+                memoryPool.start();
+                if (autoscaler != null) {
+                    autoscaler.start(smbServer);
                 }
+                running = true;
+                startupTiming = timing;
+                log.info("========== jFileServer启动成功，耗时 {}ms {} ==========", timing.getTotalMillis(),
+                        timing.getPhases());
 
             } catch (InterruptedException e) {
                 log.error("启动jFileServer时被中断", e);
@@ -304,182 +463,1484 @@ public class JFileServerService {
 
     /**
      * 重启jFileServer
+     * stop 在收到关闭事件（端口已释放）后才返回，可以立即重新启动
      */
     public void restart() {
         log.info("========== 开始重启jFileServer ==========");
         stop();
-        try {
-            Thread.sleep(2000); // 等待2秒确保完全停止
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
         start();
         log.info("========== jFileServer重启完成 ==========");
     }
 
     /**
-     * 获取服务器状态
+     * 在运行中的服务器上应用配置修改，不重新绑定端口、不断开已连接的会话。
+     * 共享增删、用户、线程数、内存池上限、socket 超时直接生效；端口、服务器名称、域名等只能在启动时设置的项
+     * 保存到配置后在结果中列为需要重启，由调用方决定何时重启。服务器未运行时修改全部保存，下次启动时生效
+     *
+     * @throws IllegalArgumentException 修改内容无效，此时不应用任何修改
      */
-    public ServerStatus getStatus() {
-        boolean isActive = smbServer != null && smbServer.isActive();
-        return new ServerStatus(running, isActive, properties.getPort(),
-                properties.getShareName(), properties.getServerName());
+    public ReconfigureResult reconfigure(Reconfiguration changes) {
+        lock.lock();
+        try {
+            validate(changes);
+            ReconfigureResult result = new ReconfigureResult(running);
+            if (changes.getShares() != null) {
+                reconfigureShares(changes.getShares(), result);
+            }
+            if (changes.getUsername() != null || changes.getPassword() != null) {
+                reconfigureUser(changes, result);
+            }
+            if (changes.getMinThreads() != null || changes.getMaxThreads() != null) {
+                reconfigureThreads(changes, result);
+            }
+            if (changes.getVirtualThreadsMaxRequests() != null) {
+                reconfigureVirtualThreads(changes.getVirtualThreadsMaxRequests(), result);
+            }
+            if (changes.getMemoryPoolMaxAlloc() != null) {
+                reconfigureMemoryPool(changes.getMemoryPoolMaxAlloc(), result);
+            }
+            if (changes.getSocketTimeout() != null) {
+                reconfigureSocketTimeout(changes.getSocketTimeout(), result);
+            }
+
+            // 以下配置在启动时绑定到监听端口或协议协商中，只能重启后生效
+            if (changes.getPort() != null && changes.getPort() != properties.getPort()) {
+                properties.setPort(changes.getPort());
+                result.restartRequired("port", "监听端口需要重新绑定");
+            }
+            if (changes.getServerName() != null && !changes.getServerName().equals(properties.getServerName())) {
+                properties.setServerName(changes.getServerName());
+                result.restartRequired("serverName", "服务器名称在启动时写入协议协商信息");
+            }
+            if (changes.getDomain() != null && !changes.getDomain().equals(properties.getDomain())) {
+                properties.setDomain(changes.getDomain());
+                result.restartRequired("domain", "域名在启动时写入协议协商信息");
+            }
+            log.info("配置已修改: 已生效={}, 需要重启={}", result.getApplied().size(), result.getRestartRequired().size());
+            return result;
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("修改配置时发生错误", e);
+            throw new IllegalStateException("修改配置失败: " + e.getMessage(), e);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
-     * 检查服务器是否正在运行
+     * 在应用前检查全部修改，避免只应用了一部分
      */
-    public boolean isRunning() {
-        return running;
+    private void validate(Reconfiguration changes) {
+        if (changes.getShares() != null) {
+            if (changes.getShares().isEmpty()) {
+                throw new IllegalArgumentException("至少需要保留一个共享");
+            }
+            Map<String, Boolean> names = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            for (JFileServerProperties.ShareConfig share : changes.getShares()) {
+                if (share.getName() == null || share.getName().isBlank()
+                        || share.getPath() == null || share.getPath().isBlank()) {
+                    throw new IllegalArgumentException("共享名称和目录不能为空");
+                }
+                if (names.put(share.getName(), Boolean.TRUE) != null) {
+                    throw new IllegalArgumentException("共享名称重复: " + share.getName());
+                }
+            }
+        }
+        if (changes.getUsername() != null && changes.getUsername().isBlank()) {
+            throw new IllegalArgumentException("用户名不能为空");
+        }
+        int minThreads = changes.getMinThreads() != null ? changes.getMinThreads() : properties.getMinThreads();
+        int maxThreads = changes.getMaxThreads() != null ? changes.getMaxThreads() : properties.getMaxThreads();
+        if (minThreads < 1 || maxThreads < minThreads) {
+            throw new IllegalArgumentException("线程数范围无效: " + minThreads + " ~ " + maxThreads);
+        }
+        int[] maxAlloc = changes.getMemoryPoolMaxAlloc();
+        if (maxAlloc != null) {
+            int[] initAlloc = properties.getMemoryPoolInitAlloc();
+            if (maxAlloc.length != initAlloc.length) {
+                throw new IllegalArgumentException("最大缓冲区数需与内存池桶数一致: " + initAlloc.length);
+            }
+            for (int i = 0; i < maxAlloc.length; i++) {
+                if (maxAlloc[i] < initAlloc[i]) {
+                    throw new IllegalArgumentException("最大缓冲区数不能小于初始值: " + Arrays.toString(initAlloc));
+                }
+            }
+        }
+        if (changes.getVirtualThreadsMaxRequests() != null && changes.getVirtualThreadsMaxRequests() < 1) {
+            throw new IllegalArgumentException("并发请求上限必须大于 0");
+        }
+        if (changes.getPort() != null && (changes.getPort() < 1 || changes.getPort() > 65535)) {
+            throw new IllegalArgumentException("端口无效: " + changes.getPort());
+        }
     }
 
     /**
-     * 清理资源
+     * 按共享名称比较新旧共享列表：移除不再需要的共享，添加新共享，目录或调度参数变化的共享先移除再添加
      */
-    private void cleanup() {
-        try {
-            if (smbServer != null) {
-                log.info("正在关闭SMB服务器...");
-                smbServer.shutdownServer(false);
+    private void reconfigureShares(List<JFileServerProperties.ShareConfig> shares, ReconfigureResult result)
+            throws Exception {
+        Map<String, JFileServerProperties.ShareConfig> current = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (JFileServerProperties.ShareConfig share : resolveShares()) {
+            current.put(share.getName(), share);
+        }
+        Map<String, JFileServerProperties.ShareConfig> desired = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        List<JFileServerProperties.ShareConfig> withScratch = new ArrayList<>(shares);
+        addScratchShare(withScratch);
+        for (JFileServerProperties.ShareConfig share : withScratch) {
+            desired.put(share.getName(), share);
+        }
 
-                // 等待 SMB 服务器完全关闭，避免后台线程继续写日志
-                int waitCount = 0;
-                while (smbServer.isActive() && waitCount < 50) {
-                    Thread.sleep(100);
-                    waitCount++;
+        FilesystemsConfigSection filesystemsConfig = running
+                ? (FilesystemsConfigSection) serverConfig.getConfigSection(FilesystemsConfigSection.SectionName)
+                : null;
+        for (JFileServerProperties.ShareConfig share : current.values()) {
+            JFileServerProperties.ShareConfig replacement = desired.get(share.getName());
+            if (replacement == null || !replacement.equals(share)) {
+                if (filesystemsConfig != null) {
+                    removeShare(filesystemsConfig, share.getName());
                 }
-
-                if (waitCount >= 50) {
-                    log.warn("SMB 服务器关闭超时，强制继续清理");
-                } else {
-                    log.info("SMB 服务器已完全关闭");
+                if (replacement == null) {
+                    result.applied("shares", "移除共享 " + share.getName() + "，已连接的会话在断开前仍可访问");
                 }
-
-                smbServer = null;
             }
-
-            if (serverConfig != null) {
-                log.info("正在关闭服务器配置...");
-                serverConfig.closeConfiguration();
-                serverConfig = null;
+        }
+        for (JFileServerProperties.ShareConfig share : desired.values()) {
+            JFileServerProperties.ShareConfig previous = current.get(share.getName());
+            if (previous == null || !previous.equals(share)) {
+                if (filesystemsConfig != null) {
+                    addShare(filesystemsConfig, share);
+                }
+                result.applied("shares", (previous == null ? "添加共享 " : "更新共享 ") + share.getName() + " -> "
+                        + share.getPath());
             }
+        }
+        properties.setShares(new ArrayList<>(shares));
+    }
 
-            // 关闭 jFileServer 日志文件
-            // 注意：必须在 SMB 服务器和配置完全关闭后再关闭日志
-            // 否则 SMB 关闭过程中的日志写入会因 m_out=null 而抛出 NullPointerException
-            if (jFileServerLogger != null) {
-                log.info("正在关闭 jFileServer 日志文件...");
-                jFileServerLogger.close();
-                jFileServerLogger = null;
-
-                // 重置 Debug 接口为 null，后续日志将输出到控制台
-                Debug.setDebugInterface(null);
-            }
+    /**
+     * 替换用户账户，已登录的会话保持不变，之后的登录使用新账户
+     */
+    private void reconfigureUser(Reconfiguration changes, ReconfigureResult result) throws Exception {
+        String username = changes.getUsername() != null ? changes.getUsername() : properties.getUsername();
+        String password = changes.getPassword() != null ? changes.getPassword() : properties.getPassword();
+        if (username.equals(properties.getUsername()) && Objects.equals(password, properties.getPassword())) {
+            return;
+        }
+        properties.setUsername(username);
+        properties.setPassword(password);
+        if (running) {
+            SecurityConfigSection securityConfig =
+                    (SecurityConfigSection) serverConfig.getConfigSection(SecurityConfigSection.SectionName);
+            securityConfig.setUserAccounts(buildUserAccounts());
+        }
+        result.applied("user", "用户 " + username + " 用于之后的登录，已登录的会话不受影响");
+    }
 
-        } catch (Exception e) {
-            log.error("清理资源时发生错误", e);
+    /**
+     * 修改工作线程数，启用自动调整时修改其调整范围；未接管请求分发时只保存到配置，重启后生效
+     */
+    private void reconfigureThreads(Reconfiguration changes, ReconfigureResult result) {
+        int minThreads = changes.getMinThreads() != null ? changes.getMinThreads() : properties.getMinThreads();
+        int maxThreads = changes.getMaxThreads() != null ? changes.getMaxThreads() : properties.getMaxThreads();
+        if (minThreads == properties.getMinThreads() && maxThreads == properties.getMaxThreads()) {
+            return;
+        }
+        properties.setMinThreads(minThreads);
+        properties.setMaxThreads(maxThreads);
+        if (!running) {
+            result.applied("threads", "线程数 " + minThreads + " ~ " + maxThreads);
+        } else if (virtualThreads != null) {
+            result.applied("threads", "虚拟线程模式下请求不使用工作线程，线程数仅保存到配置");
+        } else if (autoscaler != null) {
+            autoscaler.setBounds(minThreads, maxThreads);
+            result.applied("threads", "自动调整范围 " + minThreads + " ~ " + maxThreads);
+        } else if (scalableRequests != null) {
+            scalableRequests.resize(minThreads);
+            result.applied("threads", "工作线程数 " + minThreads);
+        } else {
+            result.restartRequired("threads", "jFileServer 的工作线程在启动时创建，修改线程数需要重启");
         }
     }
 
     /**
-     * 配置 jFileServer 日志输出
+     * 修改虚拟线程模式下同时执行的请求数上限
      */
-    private void configureJFileServerLogging() throws IOException {
-        String logPath = properties.getLogFilePath();
+    private void reconfigureVirtualThreads(int maxRequests, ReconfigureResult result) {
+        if (maxRequests == properties.getVirtualThreadsMaxRequests()) {
+            return;
+        }
+        properties.setVirtualThreadsMaxRequests(maxRequests);
+        VirtualThreadRequestQueue vt = virtualThreads;
+        if (vt != null) {
+            vt.setMaxInFlight(maxRequests);
+        }
+        result.applied("virtualThreads", "同时执行的请求数上限 " + maxRequests);
+    }
 
-        // 如果日志路径为空，则输出到控制台（不配置日志文件）
-        if (logPath == null || logPath.trim().isEmpty()) {
-            log.info("jFileServer 日志将输出到控制台");
+    /**
+     * 修改内存池各桶的最大缓冲区数，桶大小与初始缓冲区数在启动时分配，只能重启后修改
+     */
+    private void reconfigureMemoryPool(int[] maxAlloc, ReconfigureResult result) {
+        if (Arrays.equals(maxAlloc, properties.getMemoryPoolMaxAlloc())) {
             return;
         }
+        properties.setMemoryPoolMaxAlloc(maxAlloc.clone());
+        MemoryPoolTuner tuner = memoryPool;
+        if (running && tuner != null) {
+            tuner.resize(maxAlloc);
+        }
+        result.applied("memoryPool", "最大缓冲区数 " + Arrays.toString(maxAlloc)
+                + (properties.isMemoryPoolAdaptive() ? "，自适应调整仍会在内存预算内继续调整" : ""));
+    }
 
-        // 确定日志文件路径
-        File logFile;
-        if (new File(logPath).isAbsolute()) {
-            // 绝对路径
-            logFile = new File(logPath);
-        } else {
-            // 相对路径，相对于项目根目录
-            String projectRoot = System.getProperty("user.dir");
-            logFile = new File(projectRoot, logPath);
+    /**
+     * 修改 socket 超时并同步到连接处理器和已创建的请求处理器
+     * 空闲会话清理线程只在启动时按超时是否大于 0 创建，检查周期固定为启动时超时的一半，
+     * 因此在启用与禁用之间切换需要重启
+     */
+    private void reconfigureSocketTimeout(int socketTimeout, ReconfigureResult result) throws Exception {
+        int previous = properties.getSocketTimeout();
+        if (socketTimeout == previous) {
+            return;
+        }
+        properties.setSocketTimeout(socketTimeout);
+        if (!running) {
+            result.applied("socketTimeout", socketTimeout + " 毫秒");
+        } else if ((previous > 0) != (socketTimeout > 0)) {
+            result.restartRequired("socketTimeout", "空闲会话清理线程只在启动时创建，启用或禁用超时需要重启");
+        } else if (socketTimeout > 0) {
+            smbServer.getSMBConfiguration().setSocketTimeout(socketTimeout);
+            applySocketTimeout(smbServer, socketTimeout);
+            result.applied("socketTimeout", socketTimeout + " 毫秒，检查周期仍为 " + previous / 2 + " 毫秒");
         }
+    }
 
-        // 确保日志目录存在
-        File logDir = logFile.getParentFile();
-        if (logDir != null && !logDir.exists()) {
-            if (logDir.mkdirs()) {
-                log.info("创建jFileServer日志目录: {}", logDir.getAbsolutePath());
+    /**
+     * NIOSMBConnectionsHandler 和 SMBRequestHandler 在初始化时复制了 socket 超时，通过反射一并修改
+     */
+    private static void applySocketTimeout(SMBServer server, int socketTimeout) throws ReflectiveOperationException {
+        Field handlerField = SMBServer.class.getDeclaredField("m_connectionsHandler");
+        handlerField.setAccessible(true);
+        Object handler = handlerField.get(server);
+        if (handler == null) {
+            return;
+        }
+        Field timeoutField = handler.getClass().getDeclaredField("m_clientSocketTimeout");
+        timeoutField.setAccessible(true);
+        timeoutField.setInt(handler, socketTimeout);
+
+        Field listField = handler.getClass().getDeclaredField("m_requestHandlers");
+        listField.setAccessible(true);
+        List<?> requestHandlers = (List<?>) listField.get(handler);
+        synchronized (requestHandlers) {
+            for (Object requestHandler : requestHandlers) {
+                ((SMBRequestHandler) requestHandler).setSocketTimeout(socketTimeout);
             }
         }
+    }
 
-        // 创建日志文件输出器（第二个参数 true 表示追加模式）
-        jFileServerLogger = new LogFileDebug(logFile.getAbsolutePath(), properties.isLogAppend());
+    /**
+     * 获取服务器状态
+     */
+    public ServerStatus getStatus() {
+        ServerLifecycleListener listener = lifecycle;
+        boolean isActive = smbServer != null && listener != null && listener.isReady();
+        return new ServerStatus(running, isActive, properties.getPort(),
+                properties.getShareName(), properties.getServerName(), startupTiming);
+    }
 
-        // 设置为 jFileServer 的全局日志输出
-        Debug.setDebugInterface(jFileServerLogger);
+    /**
+     * 获取元数据缓存统计信息（所有共享合计），未启用缓存时返回 null
+     */
+    public CachingDiskDriver.CacheStats getMetadataCacheStats() {
+        CachingDiskDriver.CacheStats total = null;
+        for (ShareDrivers drivers : shareDrivers.values()) {
+            if (drivers.metadataCache != null) {
+                total = CachingDiskDriver.CacheStats.combine(total, drivers.metadataCache.getStats());
+            }
+        }
+        return total;
+    }
 
-        log.info("已配置 jFileServer 日志输出到: {}", logFile.getAbsolutePath());
+    /**
+     * 获取目录列表索引统计信息（所有共享合计），未启用索引时返回 null
+     */
+    public IndexedDiskDriver.IndexStats getListingIndexStats() {
+        IndexedDiskDriver.IndexStats total = null;
+        for (ShareDrivers drivers : shareDrivers.values()) {
+            if (drivers.listingIndex != null) {
+                total = IndexedDiskDriver.IndexStats.combine(total, drivers.listingIndex.getStats());
+            }
+        }
+        return total;
     }
 
     /**
-     * 应用关闭时的清理方法
+     * 获取文件状态缓存统计信息（所有共享合计），未启用时返回 null
      */
-    @PreDestroy
-    public void onDestroy() {
-        if (running) {
-            log.info("应用正在关闭，自动停止jFileServer...");
-            stop();
+    public FileStateDiskDriver.FileStateStats getFileStateStats() {
+        FileStateDiskDriver.FileStateStats total = null;
+        for (ShareDrivers drivers : shareDrivers.values()) {
+            if (drivers.fileState != null) {
+                total = FileStateDiskDriver.FileStateStats.combine(total, drivers.fileState.getStats());
+            }
         }
+        return total;
     }
 
     /**
-     * 服务器状态信息类
+     * 获取集群统计信息，未启用集群时返回 null
      */
-    public static class ServerStatus {
-        private final boolean running;
-        private final boolean active;
-        private final int port;
-        private final String shareName;
-        private final String serverName;
+    public ClusterStats getClusterStats() {
+        StateCluster stateCluster = cluster;
+        return stateCluster != null ? stateCluster.getStats() : null;
+    }
 
-        public ServerStatus(boolean running, boolean active, int port,
-                           String shareName, String serverName) {
-            this.running = running;
-            this.active = active;
-            this.port = port;
-            this.shareName = shareName;
-            this.serverName = serverName;
+    /**
+     * 获取机会锁统计信息（所有共享合计），未启用文件状态缓存时返回 null
+     */
+    public FileStateDiskDriver.OpLockStats getOpLockStats() {
+        FileStateDiskDriver.OpLockStats total = null;
+        for (ShareDrivers drivers : shareDrivers.values()) {
+            if (drivers.fileState != null) {
+                total = FileStateDiskDriver.OpLockStats.combine(total, drivers.fileState.getOpLockStats());
+            }
         }
+        return total;
+    }
 
-        public boolean isRunning() {
-            return running;
+    /**
+     * 获取变更通知统计信息（所有共享合计），未启用时返回 null
+     */
+    public ShareChangeWatcher.ChangeNotifyStats getChangeNotifyStats() {
+        ShareChangeWatcher.ChangeNotifyStats total = null;
+        for (ShareDrivers drivers : shareDrivers.values()) {
+            if (drivers.changeWatcher != null) {
+                total = ShareChangeWatcher.ChangeNotifyStats.combine(total, drivers.changeWatcher.getStats());
+            }
         }
+        return total;
+    }
 
-        public boolean isActive() {
-            return active;
+    /**
+     * 获取分层存储统计信息（所有共享合计），没有分层存储的共享时返回 null
+     */
+    public TieredDiskDriver.TierStats getTierStats() {
+        TieredDiskDriver.TierStats total = null;
+        for (ShareDrivers drivers : shareDrivers.values()) {
+            if (drivers.tiering != null) {
+                total = TieredDiskDriver.TierStats.combine(total, drivers.tiering.getStats());
+            }
         }
+        return total;
+    }
 
-        public int getPort() {
-            return port;
+    /**
+     * 获取各共享的配额与已用空间，未启用配额时为空
+     */
+    public Map<String, ShareQuota.QuotaStats> getQuotaStats() {
+        Map<String, ShareQuota.QuotaStats> stats = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (Map.Entry<String, ShareDrivers> e : shareDrivers.entrySet()) {
+            if (e.getValue().quota != null) {
+                stats.put(e.getKey(), e.getValue().quota.getQuota().getStats());
+            }
         }
+        return stats;
+    }
 
-        public String getShareName() {
-            return shareName;
+    /**
+     * 获取内存临时共享统计信息（所有内存临时共享共用一个内存预算），没有内存临时共享时返回 null
+     */
+    public ScratchMemory.ScratchStats getScratchStats() {
+        ScratchMemory memory = scratchMemory;
+        return memory != null ? memory.getStats() : null;
+    }
+
+    /**
+     * 获取限速配置与各会话、各用户的用量，未启用限速时返回 null
+     */
+    public TrafficShaper.ShapingStats getShapingStats() {
+        TrafficShaper shaper = trafficShaper;
+        return shaper != null ? shaper.getStats() : null;
+    }
+
+    /**
+     * 分页列出活动会话，服务器未运行时返回 null
+     *
+     * @param sort id、bytes、operations 或 idle
+     * @throws IllegalArgumentException 分页参数或排序字段无效
+     */
+    public SessionRegistry.SessionPage getSessions(int offset, int limit, String sort) {
+        if (offset < 0 || limit < 1 || limit > MAX_SESSION_PAGE) {
+            throw new IllegalArgumentException("offset 不能为负数，limit 需在 1 到 " + MAX_SESSION_PAGE + " 之间");
         }
+        SessionRegistry sessions = sessionRegistry;
+        return sessions != null ? sessions.list(offset, limit, sort) : null;
+    }
 
-        public String getServerName() {
-            return serverName;
+    /**
+     * 查询会话的树连接与打开的文件，会话不存在或服务器未运行时返回 null
+     */
+    public SessionRegistry.SessionInfo getSession(int sessionId) {
+        SessionRegistry sessions = sessionRegistry;
+        return sessions != null ? sessions.find(sessionId) : null;
+    }
+
+    /**
+     * 逐个输出所有会话的详情，服务器未运行时不输出
+     */
+    public void forEachSession(Consumer<SessionRegistry.SessionInfo> consumer) {
+        SessionRegistry sessions = sessionRegistry;
+        if (sessions != null) {
+            sessions.forEach(consumer);
         }
+    }
 
-        @Override
-        public String toString() {
-            return "ServerStatus{" +
-                    "running=" + running +
-                    ", active=" + active +
-                    ", port=" + port +
-                    ", shareName='" + shareName + '\'' +
+    /**
+     * 关闭会话，不影响其它会话
+     *
+     * @return 会话不存在或服务器未运行时返回 false
+     */
+    public boolean closeSession(int sessionId) {
+        SessionRegistry sessions = sessionRegistry;
+        return sessions != null && sessions.close(sessionId);
+    }
+
+    /**
+     * 关闭会话打开的一个文件句柄
+     *
+     * @return 会话、树连接或文件不存在时返回 false
+     */
+    public boolean closeFile(int sessionId, int treeId, int fileId) throws IOException {
+        SessionRegistry sessions = sessionRegistry;
+        return sessions != null && sessions.closeFile(sessionId, treeId, fileId);
+    }
+
+    /**
+     * 修改限速，为 null 的项保持不变，立即作用于已连接的会话；未启用限速时只保存到配置
+     *
+     * @throws IllegalArgumentException 限速值无效，此时不应用任何修改
+     */
+    public TrafficShaper.ShapingStats updateShaping(ShapingUpdate changes) {
+        validateLimit(changes.getSession());
+        validateLimit(changes.getUser());
+        if (changes.getUsers() != null) {
+            for (Map.Entry<String, JFileServerProperties.RateLimitConfig> e : changes.getUsers().entrySet()) {
+                if (e.getKey() == null || e.getKey().isBlank() || e.getValue() == null) {
+                    throw new IllegalArgumentException("用户名与限速不能为空");
+                }
+                validateLimit(e.getValue());
+            }
+        }
+        if (changes.getMaxDelay() != null && changes.getMaxDelay() < 1) {
+            throw new IllegalArgumentException("最长延后时间必须大于 0");
+        }
+
+        lock.lock();
+        try {
+            if (changes.getSession() != null) {
+                properties.setShapingSession(changes.getSession());
+            }
+            if (changes.getUser() != null) {
+                properties.setShapingUser(changes.getUser());
+            }
+            if (changes.getUsers() != null) {
+                properties.setShapingUsers(new LinkedHashMap<>(changes.getUsers()));
+            }
+            if (changes.getMaxDelay() != null) {
+                properties.setShapingMaxDelay(changes.getMaxDelay());
+            }
+            TrafficShaper shaper = trafficShaper;
+            if (shaper != null) {
+                shaper.setLimits(toLimits(properties.getShapingSession()), toLimits(properties.getShapingUser()),
+                        toLimits(properties.getShapingUsers()), properties.getShapingMaxDelay());
+            }
+            log.info("限速已修改: 会话={}, 用户={}, 按用户覆盖={}", properties.getShapingSession(),
+                    properties.getShapingUser(), properties.getShapingUsers().keySet());
+        } finally {
+            lock.unlock();
+        }
+        return getShapingStats();
+    }
+
+    private static void validateLimit(JFileServerProperties.RateLimitConfig limit) {
+        if (limit != null && (limit.getReadRate() < 0 || limit.getWriteRate() < 0 || limit.getOpsRate() < 0
+                || limit.getBurst() < 0)) {
+            throw new IllegalArgumentException("限速值不能为负数: " + limit);
+        }
+    }
+
+    /**
+     * 配置中的 KB/s 转换为字节/秒
+     */
+    private static TrafficShaper.Limits toLimits(JFileServerProperties.RateLimitConfig limit) {
+        if (limit == null) {
+            return TrafficShaper.Limits.UNLIMITED;
+        }
+        return new TrafficShaper.Limits(limit.getReadRate() * 1024, limit.getWriteRate() * 1024, limit.getOpsRate(),
+                limit.getBurst());
+    }
+
+    private static Map<String, TrafficShaper.Limits> toLimits(
+            Map<String, JFileServerProperties.RateLimitConfig> limits) {
+        Map<String, TrafficShaper.Limits> result = new LinkedHashMap<>();
+        if (limits != null) {
+            for (Map.Entry<String, JFileServerProperties.RateLimitConfig> e : limits.entrySet()) {
+                result.put(e.getKey(), toLimits(e.getValue()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 获取异步日志缓冲区统计信息，未使用异步日志时返回 null
+     */
+    public AsyncLogFileDebug.LogStats getDebugLogStats() {
+        DebugInterface logger = jFileServerLogger;
+        return logger instanceof AsyncLogFileDebug ? ((AsyncLogFileDebug) logger).getStats() : null;
+    }
+
+    /**
+     * 获取当前启用的会话调试类别
+     */
+    public List<String> getSessionDebugFlags() {
+        return parseDebugFlags(properties.getSessionDebugFlags()).stream().map(Enum::name)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 修改会话调试类别，立即作用于新会话和已连接的会话，不需要重启
+     *
+     * @throws IllegalArgumentException 类别名称无效
+     */
+    public List<String> updateSessionDebugFlags(List<String> flags) {
+        EnumSet<SMBSrvSession.Dbg> debug = parseDebugFlags(flags);
+        lock.lock();
+        try {
+            properties.setSessionDebugFlags(debug.stream().map(Enum::name).collect(Collectors.toList()));
+            SMBServer server = smbServer;
+            if (server != null) {
+                server.getSMBConfiguration().setSessionDebugFlags(debug);
+                // SMBServer 只在调试开启时把类别复制给新会话，该开关为 protected，没有对应的配置变更处理
+                Method setDebug = NetworkServer.class.getDeclaredMethod("setDebug", boolean.class);
+                setDebug.setAccessible(true);
+                setDebug.invoke(server, !debug.isEmpty());
+
+                Enumeration<SrvSession> sessions = server.getSessions().enumerateSessions();
+                while (sessions.hasMoreElements()) {
+                    SrvSession session = sessions.nextElement();
+                    if (session instanceof SMBSrvSession) {
+                        ((SMBSrvSession) session).setDebug(EnumSet.copyOf(debug));
+                    }
+                }
+            }
+            log.info("会话调试类别已修改为: {}", debug);
+        } catch (ReflectiveOperationException | InvalidConfigurationException e) {
+            log.warn("修改会话调试类别失败: {}", e.getMessage());
+            throw new IllegalStateException("修改会话调试类别失败: " + e.getMessage(), e);
+        } finally {
+            lock.unlock();
+        }
+        return getSessionDebugFlags();
+    }
+
+    /**
+     * 解析会话调试类别名称（不区分大小写）
+     */
+    private static EnumSet<SMBSrvSession.Dbg> parseDebugFlags(List<String> flags) {
+        EnumSet<SMBSrvSession.Dbg> debug = EnumSet.noneOf(SMBSrvSession.Dbg.class);
+        if (flags != null) {
+            for (String flag : flags) {
+                if (flag != null && !flag.isBlank()) {
+                    try {
+                        debug.add(SMBSrvSession.Dbg.valueOf(flag.trim().toUpperCase(Locale.ROOT)));
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("未知的会话调试类别: " + flag + "，可选值: "
+                                + Arrays.toString(SMBSrvSession.Dbg.values()));
+                    }
+                }
+            }
+        }
+        return debug;
+    }
+
+    /**
+     * 获取线程池自动调整统计信息，未启用时返回 null
+     */
+    public ThreadPoolAutoscaler.AutoscalerStats getAutoscalerStats() {
+        ThreadPoolAutoscaler scaler = autoscaler;
+        return scaler != null ? scaler.getStats() : null;
+    }
+
+    /**
+     * 获取虚拟线程请求执行统计信息，未启用时返回 null
+     */
+    public VirtualThreadRequestQueue.Stats getVirtualThreadStats() {
+        VirtualThreadRequestQueue vt = virtualThreads;
+        return vt != null ? vt.getStats() : null;
+    }
+
+    /**
+     * 获取各共享的 I/O 调度统计信息，未启用调度时返回 null
+     */
+    public List<FairShareScheduler.QueueStats> getIoSchedulerStats() {
+        FairShareScheduler scheduler = ioScheduler;
+        return scheduler != null ? scheduler.getStats() : null;
+    }
+
+    /**
+     * 获取内存池统计信息，服务器未配置时返回 null
+     */
+    public MemoryPoolTuner.PoolStats getMemoryPoolStats() {
+        MemoryPoolTuner tuner = memoryPool;
+        return tuner != null ? tuner.getStats() : null;
+    }
+
+    /**
+     * 获取块缓存统计信息，未启用缓存时返回 null
+     */
+    public BlockCache.CacheStats getBlockCacheStats() {
+        BlockCache cache = blockCache;
+        return cache != null ? cache.getStats() : null;
+    }
+
+    /**
+     * 获取内存映射读取统计信息，未启用时返回 null
+     */
+    public MappedFileManager.MappedStats getMappedStats() {
+        MappedFileManager mapped = mappedFiles;
+        return mapped != null ? mapped.getStats() : null;
+    }
+
+    /**
+     * 获取延迟写入统计信息，未启用时返回 null
+     */
+    public WriteBehindManager.WriteBehindStats getWriteBehindStats() {
+        WriteBehindManager manager = writeBehind;
+        return manager != null ? manager.getStats() : null;
+    }
+
+    /**
+     * 获取服务器运行指标，未启用磁盘操作统计时只包含会话数、线程池等瞬时值
+     */
+    public ServerMetrics getServerMetrics() {
+        Map<String, LatencyRecorder.Snapshot> operations = new LinkedHashMap<>();
+        long openFiles = 0;
+        for (ShareDrivers drivers : shareDrivers.values()) {
+            MetricsDiskDriver metrics = drivers.metrics;
+            if (metrics == null) {
+                continue;
+            }
+            for (Map.Entry<MetricsDiskDriver.Operation, LatencyRecorder.Snapshot> e : metrics.getSnapshots().entrySet()) {
+                operations.merge(e.getKey().tagValue(), e.getValue(), LatencyRecorder.Snapshot::merge);
+            }
+            openFiles += metrics.getOpenFiles();
+        }
+
+        int sessions = 0;
+        int queued = 0;
+        int threads = 0;
+        int active = 0;
+        SMBServer server = smbServer;
+        if (server != null) {
+            sessions = server.getCurrentSessionCount();
+            ThreadRequestPool pool = server.getThreadPool();
+            VirtualThreadRequestQueue vt = virtualThreads;
+            if (vt != null) {
+                // 虚拟线程模式下线程池的工作线程始终空闲，改为输出虚拟线程的排队与执行数
+                VirtualThreadRequestQueue.Stats stats = vt.getStats();
+                queued = stats.getPending();
+                threads = stats.getInFlight();
+                active = stats.getInFlight();
+            } else if (scalableRequests != null) {
+                ScalableRequestQueue requests = scalableRequests;
+                queued = requests.getQueueDepth();
+                threads = requests.getThreads();
+                active = requests.getActiveThreads();
+            } else if (pool != null) {
+                queued = pool.numberOfRequests();
+                threads = pool.numberOfWorkerThreads();
+                active = pool.numberOfActiveThreads();
+            }
+        }
+
+        Map<String, Integer> queueDepths = new LinkedHashMap<>();
+        Map<String, LatencyRecorder.Snapshot> waits = new LinkedHashMap<>();
+        FairShareScheduler scheduler = ioScheduler;
+        if (scheduler != null) {
+            for (FairShareScheduler.QueueStats stats : scheduler.getStats()) {
+                queueDepths.put(stats.getShareName(), stats.getQueueDepth());
+            }
+            waits = scheduler.getWaitSnapshots();
+        }
+        return new ServerMetrics(operations, openFiles, sessions, queued, threads, active, queueDepths, waits,
+                getFileStateStats(), getOpLockStats(), getShapingStats(), getQuotaStats(),
+                getClusterStats());
+    }
+
+    /**
+     * 检查服务器是否正在运行
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * 清理资源
+     */
+    private void cleanup() {
+        try {
+            if (smbServer != null) {
+                log.info("正在关闭SMB服务器...");
+                long begin = System.nanoTime();
+                smbServer.shutdownServer(false);
+
+                // 等待 SMB 服务器的关闭事件，避免后台线程继续写日志
+                ServerLifecycleListener listener = lifecycle;
+                if (listener == null || listener.awaitShutdown(properties.getShutdownTimeout())) {
+                    log.info("SMB 服务器已完全关闭，耗时 {}ms", (System.nanoTime() - begin) / 1_000_000);
+                } else {
+                    log.warn("SMB 服务器关闭超时，强制继续清理");
+                }
+
+                smbServer = null;
+                lifecycle = null;
+            }
+
+            if (sessionRegistry != null) {
+                sessionRegistry.clear();
+                sessionRegistry = null;
+            }
+
+            if (virtualThreads != null) {
+                virtualThreads.shutdown();
+                virtualThreads = null;
+            }
+
+            if (autoscaler != null) {
+                autoscaler.shutdown();
+                autoscaler = null;
+            }
+
+            if (scalableRequests != null) {
+                scalableRequests.shutdown();
+                scalableRequests = null;
+            }
+
+            if (trafficShaper != null) {
+                trafficShaper.shutdown();
+                trafficShaper = null;
+            }
+
+            if (memoryPool != null) {
+                memoryPool.shutdown();
+                memoryPool = null;
+            }
+
+            for (ShareDrivers drivers : shareDrivers.values()) {
+                if (drivers.fileState != null) {
+                    drivers.fileState.shutdown();
+                }
+                if (drivers.changeWatcher != null) {
+                    drivers.changeWatcher.shutdown();
+                }
+                if (drivers.tiering != null) {
+                    drivers.tiering.shutdown();
+                }
+                if (drivers.scratch != null) {
+                    drivers.scratch.shutdown();
+                }
+                if (drivers.quota != null) {
+                    drivers.quota.getQuota().shutdown();
+                }
+            }
+            shareDrivers.clear();
+            // 各共享的集群文件状态缓存停止后才能关闭集群成员
+            if (cluster != null) {
+                cluster.shutdown();
+                cluster = null;
+            }
+            if (scratchMemory != null) {
+                scratchMemory.shutdown();
+                scratchMemory = null;
+            }
+            nioDriver = null;
+            ioScheduler = null;
+            mappedFiles = null;
+
+            // 写出仍在缓冲区中的数据
+            if (writeBehind != null) {
+                writeBehind.shutdown();
+                writeBehind = null;
+            }
+
+            // 释放堆外缓存
+            if (blockCache != null) {
+                blockCache.shutdown();
+                blockCache = null;
+            }
+
+            if (serverConfig != null) {
+                log.info("正在关闭服务器配置...");
+                serverConfig.closeConfiguration();
+                serverConfig = null;
+            }
+
+            // 关闭 jFileServer 日志文件
+            // 注意：必须在 SMB 服务器和配置完全关闭后再关闭日志
+            // 否则 SMB 关闭过程中的日志写入会因 m_out=null 而抛出 NullPointerException
+            if (jFileServerLogger != null) {
+                log.info("正在关闭 jFileServer 日志文件...");
+                jFileServerLogger.close();
+                jFileServerLogger = null;
+
+                // 重置 Debug 接口为 null，后续日志将输出到控制台
+                Debug.setDebugInterface(null);
+            }
+
+        } catch (Exception e) {
+            log.error("清理资源时发生错误", e);
+        }
+    }
+
+    /**
+     * 获取要发布的共享，未配置 shares 时使用 sharePath / shareName 描述的单个共享
+     */
+    private List<JFileServerProperties.ShareConfig> resolveShares() {
+        List<JFileServerProperties.ShareConfig> shares = new ArrayList<>();
+        if (properties.getShares() != null && !properties.getShares().isEmpty()) {
+            shares.addAll(properties.getShares());
+        } else {
+            JFileServerProperties.ShareConfig share = new JFileServerProperties.ShareConfig();
+            share.setName(properties.getShareName());
+            share.setPath(properties.getSharePath());
+            share.setTier(properties.getShareTier());
+            shares.add(share);
+        }
+        addScratchShare(shares);
+        return shares;
+    }
+
+    /**
+     * 配置了 scratch-share-name 且列表中没有同名共享时，添加内存临时共享
+     */
+    private void addScratchShare(List<JFileServerProperties.ShareConfig> shares) {
+        String name = properties.getScratchShareName();
+        if (name == null || name.trim().isEmpty()) {
+            return;
+        }
+        for (JFileServerProperties.ShareConfig share : shares) {
+            if (name.equalsIgnoreCase(share.getName())) {
+                return;
+            }
+        }
+        JFileServerProperties.ShareConfig scratch = new JFileServerProperties.ShareConfig();
+        scratch.setName(name);
+        scratch.setPath(properties.getScratchSharePath());
+        scratch.setScratch(true);
+        shares.add(scratch);
+    }
+
+    /**
+     * 创建共享目录及其驱动链并添加到文件系统配置
+     * 驱动链由外到内：文件状态 -> 修改记录 -> 限速记账 -> 操作统计 -> 元数据缓存 -> 配额 -> 目录列表索引 -> 内存临时文件 -> I/O 调度
+     * -> 分层存储 -> NIO 驱动，缓存命中与内存临时文件的读写不占用 I/O 槽位，统计的是客户端看到的耗时（含排队）
+     */
+    private void addShare(FilesystemsConfigSection filesystemsConfig, JFileServerProperties.ShareConfig share)
+            throws Exception {
+        File sharedDir = resolveShareDirectory(share.getPath());
+        log.info("共享目录: {}", sharedDir.getAbsolutePath());
+
+        // 创建磁盘设备接口和上下文
+        DiskInterface diskDriver = nioDriver;
+        ShareDrivers drivers = new ShareDrivers();
+
+        // 分层存储：共享目录为热层，冷层使用单独的设备上下文，同一个 NIO 驱动访问两层
+        JFileServerProperties.TierConfig tier = share.getTier();
+        File coldDir = null;
+        if (share.isScratch() && tier != null) {
+            log.warn("共享 {} 是内存临时共享，忽略分层存储配置", share.getName());
+        } else if (tier != null && tier.getColdPath() != null && !tier.getColdPath().trim().isEmpty()) {
+            coldDir = resolveShareDirectory(tier.getColdPath());
+            TieredDiskDriver tiering = new TieredDiskDriver(nioDriver, share.getName(), sharedDir.toPath(),
+                    createDiskContext(share.getName(), coldDir), tier.getHotMaxSize() * 1024 * 1024,
+                    tier.getPromoteAccesses(), tier.getDemoteAfter(), tier.getMoverInterval());
+            drivers.tiering = tiering;
+            diskDriver = tiering;
+            log.info("共享 {} 已启用分层存储: 冷层={}, 热层上限={}MB, 迁移周期={}ms", share.getName(),
+                    coldDir.getAbsolutePath(), tier.getHotMaxSize(), tier.getMoverInterval());
+        }
+
+        FairShareScheduler scheduler = ioScheduler;
+        if (scheduler != null) {
+            FairShareScheduler.ShareQueue queue = scheduler.register(share.getName(), share.getWeight(),
+                    share.getMaxConcurrent(), share.getMaxQueued());
+            drivers.queue = queue;
+            diskDriver = new SchedulingDiskDriver(diskDriver, queue);
+            log.info("共享 {} 的 I/O 调度: 权重={}, 并发上限={}, 排队上限={}", share.getName(),
+                    share.getWeight(), share.getMaxConcurrent(), share.getMaxQueued());
+        }
+
+        // 内存临时共享：新建文件的数据保存在内存中，页面池在添加第一个内存临时共享时创建
+        if (share.isScratch()) {
+            if (scratchMemory == null) {
+                scratchMemory = new ScratchMemory((long) properties.getScratchMemorySize() * 1024 * 1024,
+                        (long) properties.getScratchMaxFileSize() * 1024 * 1024);
+                log.info("已创建内存临时共享页面池: 预算={}MB, 单文件上限={}MB", properties.getScratchMemorySize(),
+                        properties.getScratchMaxFileSize());
+            }
+            ScratchDiskDriver scratch = new ScratchDiskDriver(diskDriver, nioDriver, scratchMemory, share.getName());
+            drivers.scratch = scratch;
+            diskDriver = scratch;
+            log.info("共享 {} 为内存临时共享", share.getName());
+        }
+
+        // 大目录的通配符搜索使用目录列表索引，索引直接读取共享目录，分层存储与内存临时共享不使用
+        if (properties.isListingIndexEnabled() && drivers.tiering == null && drivers.scratch == null) {
+            IndexedDiskDriver listingIndex = new IndexedDiskDriver(diskDriver, properties.getListingIndexMinEntries(),
+                    properties.getListingIndexMaxDirectories(), properties.getListingIndexMaxAge());
+            drivers.listingIndex = listingIndex;
+            diskDriver = listingIndex;
+            log.info("已启用目录列表索引: 最小条目数={}, 最大目录数={}",
+                    properties.getListingIndexMinEntries(), properties.getListingIndexMaxDirectories());
+        }
+
+        // 配额在元数据缓存之内，删除、覆盖文件时查询到的大小不是缓存中过期的值
+        if (properties.isQuotaEnabled()) {
+            long limit = share.getQuota() != null ? share.getQuota() : properties.getQuotaShareLimit();
+            List<Path> roots = coldDir != null ? List.of(sharedDir.toPath(), coldDir.toPath())
+                    : List.of(sharedDir.toPath());
+            ShareQuota quota = new ShareQuota(share.getName(), roots, resolveQuotaCheckpointDir(),
+                    limit * 1024 * 1024, properties.getQuotaUserLimit() * 1024 * 1024,
+                    toBytes(properties.getQuotaUsers()), properties.getQuotaCheckpointInterval(),
+                    properties.isQuotaScanOnStartup());
+            QuotaDiskDriver quotaDriver = new QuotaDiskDriver(diskDriver, nioDriver, quota);
+            drivers.quota = quotaDriver;
+            diskDriver = quotaDriver;
+            log.info("共享 {} 已启用配额: 容量上限={}MB, 每用户上限={}MB", share.getName(), limit,
+                    properties.getQuotaUserLimit());
+        }
+
+        // 在 NIO 驱动前包装元数据缓存
+        if (properties.isMetadataCacheEnabled()) {
+            CachingDiskDriver metadataCache = new CachingDiskDriver(diskDriver,
+                    properties.getMetadataCacheSize(), properties.getMetadataCacheTtl());
+            drivers.metadataCache = metadataCache;
+            diskDriver = metadataCache;
+            log.info("已启用元数据缓存: 容量={}, 有效期={}ms",
+                    properties.getMetadataCacheSize(), properties.getMetadataCacheTtl());
+        }
+
+        // 记录客户端看到的各类操作耗时
+        if (properties.isMetricsEnabled()) {
+            MetricsDiskDriver metrics = new MetricsDiskDriver(diskDriver);
+            drivers.metrics = metrics;
+            diskDriver = metrics;
+        }
+
+        // 按会话（启用限速时同时按用户）记录操作数和读写字节数，缓存命中同样计入
+        SessionRegistry sessions = sessionRegistry;
+        if (sessions != null) {
+            diskDriver = new ShapingDiskDriver(diskDriver, sessions, trafficShaper);
+        }
+
+        // 记录通过 SMB 修改的路径，监视本地修改时跳过这些路径产生的事件；延迟写入定时写出的数据同样在窗口内
+        if (properties.isChangeNotifyEnabled()) {
+            long window = properties.getChangeNotifyDebounce()
+                    + (writeBehind != null ? properties.getWriteBehindMaxDelay() : 0);
+            ChangeTrackingDiskDriver changeTracking = new ChangeTrackingDiskDriver(diskDriver, window);
+            drivers.changeTracking = changeTracking;
+            diskDriver = changeTracking;
+        }
+
+        // 文件状态缓存需要在最外层，协议处理器只在共享的驱动上查找锁管理器与机会锁管理器
+        boolean oplocks = share.getOplocks() != null ? share.getOplocks() : properties.isOplocksEnabled();
+        if (properties.isFileStateCacheEnabled()) {
+            FileStateDiskDriver fileState = new FileStateDiskDriver(diskDriver, share.getName(), cluster,
+                    properties.getFileStateExpiry(), properties.getFileStateReaperInterval(), oplocks);
+            drivers.fileState = fileState;
+            diskDriver = fileState;
+            log.info("共享 {} 已启用文件状态缓存: 保留时间={}ms, 清理间隔={}ms, 机会锁={}, 集群={}", share.getName(),
+                    properties.getFileStateExpiry(), properties.getFileStateReaperInterval(), oplocks,
+                    fileState.isClustered());
+        } else if (oplocks) {
+            log.warn("共享 {} 未启用文件状态缓存，不授予机会锁", share.getName());
+        }
+
+        DiskDeviceContext diskContext = createDiskContext(share.getName(), sharedDir);
+        if (drivers.fileState != null) {
+            diskContext.setStateCache(drivers.fileState.getStateCache());
+        }
+        if (drivers.quota != null) {
+            diskContext.setQuotaManager(drivers.quota.getQuota());
+        }
+
+        // 变更通知：SMB 修改由协议处理器通知，本地修改由 WatchService 监视后通知
+        if (properties.isChangeNotifyEnabled()) {
+            diskContext.enableChangeHandler(true);
+            if (drivers.fileState != null) {
+                // 其它实例上通过 SMB 的修改同样通知本实例的客户端
+                drivers.fileState.setNotifyChangeHandler(diskContext.getChangeHandler());
+            }
+            try {
+                List<Path> roots = coldDir != null ? List.of(sharedDir.toPath(), coldDir.toPath())
+                        : List.of(sharedDir.toPath());
+                drivers.changeWatcher = new ShareChangeWatcher(share.getName(), roots, diskContext,
+                        drivers.metadataCache, drivers.listingIndex, drivers.changeTracking,
+                        properties.getChangeNotifyDebounce(), properties.getChangeNotifyMaxWatches());
+            } catch (IOException e) {
+                log.warn("共享 {} 无法监视本地修改，只通知通过 SMB 的修改: {}", share.getName(), e.getMessage());
+            }
+        }
+
+        // 创建磁盘共享设备
+        DiskSharedDevice diskShare = new DiskSharedDevice(
+            share.getName(),
+            diskDriver,
+            diskContext
+        );
+
+        // 添加共享到文件系统配置
+        if (!filesystemsConfig.addShare(diskShare)) {
+            if (drivers.queue != null) {
+                scheduler.unregister(drivers.queue);
+            }
+            if (drivers.fileState != null) {
+                drivers.fileState.shutdown();
+                if (cluster != null) {
+                    cluster.removeShare(share.getName());
+                }
+            }
+            if (drivers.changeWatcher != null) {
+                drivers.changeWatcher.shutdown();
+            }
+            if (drivers.tiering != null) {
+                drivers.tiering.shutdown();
+            }
+            if (drivers.scratch != null) {
+                drivers.scratch.shutdown();
+            }
+            if (drivers.quota != null) {
+                drivers.quota.getQuota().shutdown();
+            }
+            throw new IllegalArgumentException("共享名称重复: " + share.getName());
+        }
+        shareDrivers.put(share.getName(), drivers);
+        log.info("已添加共享: {} -> {}", share.getName(), sharedDir.getAbsolutePath());
+    }
+
+    /**
+     * 解析共享目录路径（相对路径相对于项目根目录），不存在时创建
+     */
+    private File resolveShareDirectory(String path) {
+        File dir;
+        if (new File(path).isAbsolute()) {
+            dir = new File(path);
+        } else {
+            // 相对路径，相对于项目根目录
+            dir = new File(System.getProperty("user.dir"), path);
+        }
+
+        // 确保共享目录存在
+        if (!dir.exists()) {
+            log.info("共享目录不存在，正在创建: {}", dir.getAbsolutePath());
+            if (dir.mkdirs()) {
+                log.info("共享目录创建成功: {}", dir.getAbsolutePath());
+            } else {
+                log.error("共享目录创建失败: {}", dir.getAbsolutePath());
+                throw new RuntimeException("无法创建共享目录: " + dir.getAbsolutePath());
+            }
+        }
+        return dir;
+    }
+
+    /**
+     * 配额检查点目录，相对路径相对于项目根目录
+     */
+    private Path resolveQuotaCheckpointDir() {
+        Path dir = Paths.get(properties.getQuotaCheckpointDir());
+        return dir.isAbsolute() ? dir : Paths.get(System.getProperty("user.dir")).resolve(dir);
+    }
+
+    /**
+     * 配置中的 MB 转换为字节
+     */
+    private static Map<String, Long> toBytes(Map<String, Long> limits) {
+        Map<String, Long> result = new LinkedHashMap<>();
+        if (limits != null) {
+            for (Map.Entry<String, Long> e : limits.entrySet()) {
+                result.put(e.getKey(), e.getValue() * 1024 * 1024);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 由 NIO 驱动创建上下文，删除、截断等操作需要 JavaNIODeviceContext
+     */
+    private DiskDeviceContext createDiskContext(String shareName, File dir) throws DeviceContextException {
+        GenericConfigElement args = new GenericConfigElement("disk");
+        GenericConfigElement localPath = new GenericConfigElement("LocalPath");
+        localPath.setValue(dir.getAbsolutePath());
+        args.addChild(localPath);
+        return (DiskDeviceContext) nioDriver.createContext(shareName, args);
+    }
+
+    /**
+     * 从文件系统配置中移除共享，新的连接无法再访问该共享
+     * 已连接的会话持有共享设备的引用，在断开前仍可继续访问，因此不关闭设备上下文
+     */
+    private void removeShare(FilesystemsConfigSection filesystemsConfig, String shareName) {
+        filesystemsConfig.getShares().deleteShare(shareName);
+        ShareDrivers drivers = shareDrivers.remove(shareName);
+        FairShareScheduler scheduler = ioScheduler;
+        if (drivers != null && drivers.queue != null && scheduler != null) {
+            scheduler.unregister(drivers.queue);
+        }
+        if (drivers != null && drivers.fileState != null) {
+            drivers.fileState.shutdown();
+            StateCluster stateCluster = cluster;
+            if (stateCluster != null) {
+                stateCluster.removeShare(shareName);
+            }
+        }
+        if (drivers != null && drivers.changeWatcher != null) {
+            drivers.changeWatcher.shutdown();
+        }
+        if (drivers != null && drivers.tiering != null) {
+            drivers.tiering.shutdown();
+        }
+        // 写出内存中的文件，已连接的会话之后直接访问磁盘上的文件
+        if (drivers != null && drivers.scratch != null) {
+            drivers.scratch.shutdown();
+        }
+        // 写入完整的检查点，已连接的会话之后的修改不再写入检查点
+        if (drivers != null && drivers.quota != null) {
+            drivers.quota.getQuota().shutdown();
+        }
+        log.info("已移除共享: {}", shareName);
+    }
+
+    /**
+     * 根据配置创建用户账户列表
+     */
+    private UserAccountList buildUserAccounts() {
+        UserAccountList userAccounts = new UserAccountList();
+        UserAccount userAccount = new UserAccount(
+            properties.getUsername(),
+            properties.getPassword()
+        );
+        userAccount.setAdministrator(true);
+
+        // 关键：为NTLM认证生成MD4密码哈希
+        try {
+            // 注册BouncyCastle安全提供者以支持MD4
+            Security.addProvider(new BouncyCastleProvider());
+
+            PasswordEncryptor encryptor = new PasswordEncryptor();
+            byte[] md4Hash = encryptor.generateEncryptedPassword(
+                properties.getPassword(),
+                null,
+                org.filesys.server.auth.PasswordEncryptor.MD4,
+                null,
+                null
+            );
+            userAccount.setMD4Password(md4Hash);
+            log.info("已为用户 {} 生成MD4密码哈希", properties.getUsername());
+        } catch (Exception e) {
+            log.warn("生成MD4密码哈希失败: {}", e.getMessage());
+        }
+
+        userAccounts.addUser(userAccount);
+        return userAccounts;
+    }
+
+    /**
+     * 配置 jFileServer 日志输出
+     */
+    private void configureJFileServerLogging() throws IOException {
+        String logPath = properties.getLogFilePath();
+
+        // 如果日志路径为空，则输出到控制台（不配置日志文件）
+        if (logPath == null || logPath.trim().isEmpty()) {
+            log.info("jFileServer 日志将输出到控制台");
+            return;
+        }
+
+        // 确定日志文件路径
+        File logFile;
+        if (new File(logPath).isAbsolute()) {
+            // 绝对路径
+            logFile = new File(logPath);
+        } else {
+            // 相对路径，相对于项目根目录
+            String projectRoot = System.getProperty("user.dir");
+            logFile = new File(projectRoot, logPath);
+        }
+
+        // 确保日志目录存在
+        File logDir = logFile.getParentFile();
+        if (logDir != null && !logDir.exists()) {
+            if (logDir.mkdirs()) {
+                log.info("创建jFileServer日志目录: {}", logDir.getAbsolutePath());
+            }
+        }
+
+        // 创建日志文件输出器（第二个参数 true 表示追加模式）
+        if (properties.isLogAsync()) {
+            AsyncLogFileDebug.FullPolicy policy = AsyncLogFileDebug.FullPolicy.valueOf(
+                    properties.getLogBufferPolicy().trim().toUpperCase(Locale.ROOT));
+            jFileServerLogger = new AsyncLogFileDebug(logFile.getAbsolutePath(), properties.isLogAppend(),
+                    properties.getLogBufferSize(), policy, properties.getLogFlushInterval());
+            log.info("jFileServer 日志异步写入: 缓冲区={}条, 满时={}, 刷新间隔={}ms", properties.getLogBufferSize(),
+                    policy, properties.getLogFlushInterval());
+        } else {
+            jFileServerLogger = new LogFileDebug(logFile.getAbsolutePath(), properties.isLogAppend());
+        }
+
+        // 设置为 jFileServer 的全局日志输出
+        Debug.setDebugInterface(jFileServerLogger);
+
+        log.info("已配置 jFileServer 日志输出到: {}", logFile.getAbsolutePath());
+    }
+
+    /**
+     * 应用关闭时的清理方法
+     */
+    @PreDestroy
+    public void onDestroy() {
+        if (running) {
+            log.info("应用正在关闭，自动停止jFileServer...");
+            stop();
+        }
+    }
+
+    /**
+     * 服务器状态信息类
+     */
+    public static class ServerStatus {
+        private final boolean running;
+        private final boolean active;
+        private final int port;
+        private final String shareName;
+        private final String serverName;
+        private final StartupTiming startup;
+
+        public ServerStatus(boolean running, boolean active, int port,
+                           String shareName, String serverName, StartupTiming startup) {
+            this.running = running;
+            this.active = active;
+            this.port = port;
+            this.shareName = shareName;
+            this.serverName = serverName;
+            this.startup = startup;
+        }
+
+        public boolean isRunning() {
+            return running;
+        }
+
+        public boolean isActive() {
+            return active;
+        }
+
+        public int getPort() {
+            return port;
+        }
+
+        public String getShareName() {
+            return shareName;
+        }
+
+        public String getServerName() {
+            return serverName;
+        }
+
+        /**
+         * 最近一次成功启动的各阶段耗时，从未启动成功时为 null
+         */
+        public StartupTiming getStartup() {
+            return startup;
+        }
+
+        @Override
+        public String toString() {
+            return "ServerStatus{" +
+                    "running=" + running +
+                    ", active=" + active +
+                    ", port=" + port +
+                    ", shareName='" + shareName + '\'' +
                     ", serverName='" + serverName + '\'' +
                     '}';
         }
     }
+
+    /**
+     * 启动各阶段耗时（毫秒）：
+     * logging 日志、core 内存池与线程池、security 用户、smb 协议配置、shares 共享与驱动链、
+     * listen 启动服务器线程到绑定端口、probe 本机连接确认（启用时）
+     */
+    public static class StartupTiming {
+        private final long startedAt = System.currentTimeMillis();
+        private final long begin = System.nanoTime();
+        private long last = begin;
+        private final Map<String, Double> phases = new LinkedHashMap<>();
+
+        void mark(String phase) {
+            long now = System.nanoTime();
+            phases.put(phase, Math.round((now - last) / 10_000.0) / 100.0);
+            last = now;
+        }
+
+        /**
+         * 开始启动的时间（毫秒时间戳）
+         */
+        public long getStartedAt() {
+            return startedAt;
+        }
+
+        public long getTotalMillis() {
+            return (last - begin) / 1_000_000;
+        }
+
+        public Map<String, Double> getPhases() {
+            return phases;
+        }
+    }
+
+    /**
+     * 单个共享的驱动链中需要汇总统计或在移除共享时注销的部分，未启用的为 null
+     */
+    private static class ShareDrivers {
+        private FairShareScheduler.ShareQueue queue;
+        private IndexedDiskDriver listingIndex;
+        private CachingDiskDriver metadataCache;
+        private MetricsDiskDriver metrics;
+        private FileStateDiskDriver fileState;
+        private ChangeTrackingDiskDriver changeTracking;
+        private ShareChangeWatcher changeWatcher;
+        private TieredDiskDriver tiering;
+        private ScratchDiskDriver scratch;
+        private QuotaDiskDriver quota;
+    }
+
+    /**
+     * 在线修改的配置项，为 null 的项保持不变
+     */
+    @Data
+    public static class Reconfiguration {
+
+        /**
+         * 修改后的完整共享列表
+         */
+        private List<JFileServerProperties.ShareConfig> shares;
+
+        private String username;
+
+        private String password;
+
+        private Integer minThreads;
+
+        private Integer maxThreads;
+
+        private Integer virtualThreadsMaxRequests;
+
+        /**
+         * 内存池各桶的最大缓冲区数，与 memory-pool-sizes 一一对应
+         */
+        private int[] memoryPoolMaxAlloc;
+
+        private Integer socketTimeout;
+
+        /**
+         * 以下配置需要重启才能生效
+         */
+        private Integer port;
+
+        private String serverName;
+
+        private String domain;
+    }
+
+    /**
+     * 在线修改的限速，为 null 的项保持不变
+     */
+    @Data
+    public static class ShapingUpdate {
+
+        private JFileServerProperties.RateLimitConfig session;
+
+        private JFileServerProperties.RateLimitConfig user;
+
+        /**
+         * 修改后完整的按用户覆盖列表
+         */
+        private Map<String, JFileServerProperties.RateLimitConfig> users;
+
+        private Long maxDelay;
+    }
+
+    /**
+     * 在线修改配置的结果
+     */
+    public static class ReconfigureResult {
+        private final boolean running;
+        private final List<Change> applied = new ArrayList<>();
+        private final List<Change> restartRequired = new ArrayList<>();
+
+        public ReconfigureResult(boolean running) {
+            this.running = running;
+        }
+
+        void applied(String item, String detail) {
+            applied.add(new Change(item, detail));
+        }
+
+        /**
+         * 服务器未运行时下次启动即生效，记为已生效
+         */
+        void restartRequired(String item, String detail) {
+            (running ? restartRequired : applied).add(new Change(item, detail));
+        }
+
+        /**
+         * 修改时服务器是否在运行，未运行时所有修改在下次启动时生效
+         */
+        public boolean isRunning() {
+            return running;
+        }
+
+        public List<Change> getApplied() {
+            return applied;
+        }
+
+        /**
+         * 已保存到配置、需要重启才能生效的修改
+         */
+        public List<Change> getRestartRequired() {
+            return restartRequired;
+        }
+    }
+
+    /**
+     * 一项配置修改
+     */
+    public static class Change {
+        private final String item;
+        private final String detail;
+
+        public Change(String item, String detail) {
+            this.item = item;
+            this.detail = detail;
+        }
+
+        public String getItem() {
+            return item;
+        }
+
+        public String getDetail() {
+            return detail;
+        }
+    }
 }
@@ -0,0 +1,613 @@
+package vip.ebox.jfiledemo.session;
+
+import lombok.extern.slf4j.Slf4j;
+import org.filesys.server.SessionListener;
+import org.filesys.server.SrvSession;
+import org.filesys.server.auth.ClientInfo;
+import org.filesys.server.core.DeviceInterface;
+import org.filesys.server.filesys.DiskInterface;
+import org.filesys.server.filesys.NetworkFile;
+import org.filesys.server.filesys.TreeConnection;
+import org.filesys.smb.server.SMBSrvSession;
+import org.filesys.smb.server.VirtualCircuit;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/22  10:30
+ * @Description: 会话登记
+ *  作为 SMB 服务器的会话监听器记录所有活动会话，ShapingDiskDriver 在每次磁盘操作后把读写字节数与操作数记到会话上；
+ *  查询时遍历会话的虚拟电路与树连接，列出打开的文件：
+ *  - 列表只包含会话摘要，按会话号、I/O 量或空闲时间排序后分页，不遍历打开的文件
+ *  - 详情与流式输出包含树连接与打开的文件，流式输出逐个会话生成，不在内存中汇总
+ *  关闭会话与文件句柄的方式与 jFileServer 清理空闲会话时相同，会话上正在处理的请求之后返回错误
+ */
+@Slf4j
+public class SessionRegistry implements SessionListener {
+
+    // 遍历会话的树连接时与协议线程并发修改，重试次数
+    private static final int SNAPSHOT_ATTEMPTS = 3;
+
+    private final Map<SrvSession<?>, Counters> sessions = new ConcurrentHashMap<>();
+    private final LongAdder closedByAdmin = new LongAdder();
+    private final LongAdder filesClosedByAdmin = new LongAdder();
+
+    /**
+     * 记录一次磁盘操作，由 ShapingDiskDriver 在操作结束后调用
+     */
+    public void charge(SrvSession<?> sess, long readBytes, long writeBytes) {
+        if (sess == null) {
+            return;
+        }
+        Counters counters = sessions.get(sess);
+        if (counters == null) {
+            // 会话已关闭，关闭过程中的操作不再计入
+            return;
+        }
+        counters.readBytes.add(readBytes);
+        counters.writeBytes.add(writeBytes);
+        counters.operations.increment();
+    }
+
+    @Override
+    public void sessionCreated(SrvSession sess) {
+        sessions.putIfAbsent(sess, new Counters());
+    }
+
+    @Override
+    public void sessionLoggedOn(SrvSession sess) {
+        // 用户名在查询时从会话读取
+    }
+
+    @Override
+    public void sessionClosed(SrvSession sess) {
+        sessions.remove(sess);
+    }
+
+    /**
+     * 活动会话数
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * 分页列出会话摘要
+     *
+     * @param sort id（默认）、bytes、operations 或 idle，除 id 外均从大到小
+     * @throws IllegalArgumentException 排序字段无效
+     */
+    public SessionPage list(int offset, int limit, String sort) {
+        Comparator<SessionInfo> order = comparator(sort);
+        List<SessionInfo> all = new ArrayList<>(sessions.size());
+        long now = System.currentTimeMillis();
+        for (Map.Entry<SrvSession<?>, Counters> e : sessions.entrySet()) {
+            all.add(describe(e.getKey(), e.getValue(), now, false));
+        }
+        all.sort(order);
+        int from = Math.min(Math.max(0, offset), all.size());
+        int to = Math.min(all.size(), from + Math.max(0, limit));
+        return new SessionPage(all.size(), from, limit, new ArrayList<>(all.subList(from, to)));
+    }
+
+    /**
+     * 查询单个会话，包含树连接与打开的文件，会话不存在时返回 null
+     */
+    public SessionInfo find(int sessionId) {
+        SrvSession<?> sess = lookup(sessionId);
+        if (sess == null) {
+            return null;
+        }
+        Counters counters = sessions.get(sess);
+        return counters != null ? describe(sess, counters, System.currentTimeMillis(), true) : null;
+    }
+
+    /**
+     * 按会话号顺序逐个输出会话详情，供流式输出使用
+     */
+    public void forEach(Consumer<SessionInfo> consumer) {
+        List<SrvSession<?>> snapshot = new ArrayList<>(sessions.keySet());
+        snapshot.sort(Comparator.comparingInt(SrvSession::getSessionId));
+        for (SrvSession<?> sess : snapshot) {
+            Counters counters = sessions.get(sess);
+            if (counters != null) {
+                consumer.accept(describe(sess, counters, System.currentTimeMillis(), true));
+            }
+        }
+    }
+
+    /**
+     * 关闭会话：关闭其打开的文件与树连接并断开连接，客户端之后需要重新连接
+     * 启用持久句柄的会话与 jFileServer 的处理相同，转为断开状态等待客户端重连
+     *
+     * @return 会话不存在时返回 false
+     */
+    public boolean close(int sessionId) {
+        SrvSession<?> sess = lookup(sessionId);
+        if (!(sess instanceof SMBSrvSession)) {
+            return false;
+        }
+        SMBSrvSession smbSess = (SMBSrvSession) sess;
+        log.info("关闭会话 {}: 用户={}, 客户端={}", sessionId, userName(sess), address(sess));
+        smbSess.closeSession();
+        // 与空闲会话清理相同，结束会话上未完成的事务
+        smbSess.processPacket(null);
+        sessions.remove(sess);
+        closedByAdmin.increment();
+        return true;
+    }
+
+    /**
+     * 关闭会话在某个树连接上打开的文件句柄，客户端之后使用该句柄的请求返回无效句柄
+     *
+     * @return 会话、树连接或文件不存在时返回 false
+     * @throws IOException 下层驱动关闭文件失败，此时句柄仍保留
+     */
+    public boolean closeFile(int sessionId, int treeId, int fileId) throws IOException {
+        SrvSession<?> sess = lookup(sessionId);
+        if (!(sess instanceof SMBSrvSession)) {
+            return false;
+        }
+        TreeConnection tree = findTree((SMBSrvSession) sess, treeId);
+        if (tree == null) {
+            return false;
+        }
+        NetworkFile file = tree.findFile(fileId);
+        DeviceInterface device = tree.getInterface();
+        if (file == null || !(device instanceof DiskInterface)) {
+            return false;
+        }
+        log.info("关闭会话 {} 的文件句柄 {}: {}", sessionId, fileId, file.getFullName());
+        // 与 TreeConnection.closeConnection 相同：经过共享的驱动链关闭，释放文件状态、机会锁与配额记录
+        file.setForce(true);
+        ((DiskInterface) device).closeFile(sess, tree, file);
+        file.setClosed(true);
+        tree.removeFile(fileId, sess);
+        filesClosedByAdmin.increment();
+        return true;
+    }
+
+    /**
+     * 通过管理接口关闭的会话数与文件句柄数
+     */
+    public long getClosedByAdmin() {
+        return closedByAdmin.sum();
+    }
+
+    public long getFilesClosedByAdmin() {
+        return filesClosedByAdmin.sum();
+    }
+
+    /**
+     * 服务器停止后清空
+     */
+    public void clear() {
+        sessions.clear();
+    }
+
+    private SrvSession<?> lookup(int sessionId) {
+        for (SrvSession<?> sess : sessions.keySet()) {
+            if (sess.getSessionId() == sessionId) {
+                return sess;
+            }
+        }
+        return null;
+    }
+
+    private static TreeConnection findTree(SMBSrvSession sess, int treeId) {
+        for (int attempt = 0; attempt < SNAPSHOT_ATTEMPTS; attempt++) {
+            try {
+                Iterator<VirtualCircuit> circuits = sess.getVirtualCircuitList().iterator();
+                while (circuits.hasNext()) {
+                    TreeConnection tree = circuits.next().findConnection(treeId);
+                    if (tree != null) {
+                        return tree;
+                    }
+                }
+                return null;
+            } catch (ConcurrentModificationException e) {
+                // 协议线程同时建立或断开了虚拟电路
+            }
+        }
+        return null;
+    }
+
+    private static SessionInfo describe(SrvSession<?> sess, Counters counters, long now, boolean detail) {
+        List<TreeInfo> trees = new ArrayList<>();
+        int openFiles = 0;
+        if (sess instanceof SMBSrvSession && ((SMBSrvSession) sess).getVirtualCircuitList() != null) {
+            trees = trees((SMBSrvSession) sess, detail);
+            for (TreeInfo tree : trees) {
+                openFiles += tree.getOpenFileCount();
+            }
+        }
+        long lastIO = sess.getLastIOTime();
+        return new SessionInfo(sess.getSessionId(), userName(sess), address(sess), sess.getRemoteName(),
+                sess.getProtocolName(), sess.isLoggedOn(), counters.createdAt, lastIO,
+                lastIO > 0 ? Math.max(0, now - lastIO) : 0, counters.readBytes.sum(), counters.writeBytes.sum(),
+                counters.operations.sum(), trees.size(), openFiles, detail ? trees : null);
+    }
+
+    private static List<TreeInfo> trees(SMBSrvSession sess, boolean detail) {
+        for (int attempt = 0; attempt < SNAPSHOT_ATTEMPTS; attempt++) {
+            try {
+                List<TreeInfo> trees = new ArrayList<>();
+                Iterator<VirtualCircuit> circuits = sess.getVirtualCircuitList().iterator();
+                while (circuits.hasNext()) {
+                    VirtualCircuit vc = circuits.next();
+                    List<Integer> ids = new ArrayList<>();
+                    synchronized (vc) {
+                        vc.iterateConnections().forEachRemaining(ids::add);
+                    }
+                    for (int id : ids) {
+                        TreeConnection tree = vc.findConnection(id);
+                        if (tree != null) {
+                            trees.add(tree(vc, tree, detail));
+                        }
+                    }
+                }
+                return trees;
+            } catch (ConcurrentModificationException e) {
+                // 协议线程同时建立或断开了虚拟电路
+            }
+        }
+        return new ArrayList<>();
+    }
+
+    private static TreeInfo tree(VirtualCircuit vc, TreeConnection tree, boolean detail) {
+        List<FileInfo> files = detail ? new ArrayList<>() : null;
+        int count;
+        synchronized (tree) {
+            count = tree.openFileCount();
+            if (detail) {
+                Iterator<Integer> handles = tree.iterateOpenFileHandles();
+                while (handles != null && handles.hasNext()) {
+                    int fileId = handles.next();
+                    NetworkFile file = tree.findFile(fileId);
+                    if (file != null) {
+                        files.add(file(fileId, file));
+                    }
+                }
+            }
+        }
+        return new TreeInfo(tree.getId(), vc.getId(), tree.getSharedDevice().getName(), count, files);
+    }
+
+    private static FileInfo file(int fileId, NetworkFile file) {
+        NetworkFile.Access access = file.getGrantedAccess();
+        int locks = file.hasLocks() && file.getLockList() != null ? file.getLockList().numberOfLocks() : 0;
+        return new FileInfo(fileId, file.getFullName(), file.isDirectory(), file.getFileSize(),
+                access != null ? access.name() : null, file.getReadCount(), file.getWriteCount(), locks,
+                file.hasOpLock() ? file.hasOplockType().name() : null);
+    }
+
+    private static Comparator<SessionInfo> comparator(String sort) {
+        Comparator<SessionInfo> byId = Comparator.comparingInt(SessionInfo::getSessionId);
+        String key = sort == null ? "id" : sort.trim().toLowerCase(Locale.ROOT);
+        switch (key) {
+            case "":
+            case "id":
+                return byId;
+            case "bytes":
+                return Comparator.comparingLong((SessionInfo s) -> s.getReadBytes() + s.getWriteBytes())
+                        .reversed().thenComparing(byId);
+            case "operations":
+                return Comparator.comparingLong(SessionInfo::getOperations).reversed().thenComparing(byId);
+            case "idle":
+                return Comparator.comparingLong(SessionInfo::getIdleMillis).reversed().thenComparing(byId);
+            default:
+                throw new IllegalArgumentException("无效的排序字段: " + sort + "，可用: id, bytes, operations, idle");
+        }
+    }
+
+    /**
+     * 会话登录的用户名，未登录或匿名会话返回 null
+     */
+    private static String userName(SrvSession<?> sess) {
+        ClientInfo client = sess.getClientInformation();
+        if (client == null || client.isNullSession() || !client.hasUserName()) {
+            return null;
+        }
+        String name = client.getUserName();
+        return name.isEmpty() ? null : name;
+    }
+
+    private static String address(SrvSession<?> sess) {
+        InetAddress address = sess.getRemoteAddress();
+        return address != null ? address.getHostAddress() : null;
+    }
+
+    /**
+     * 一个会话的累计用量
+     */
+    private static final class Counters {
+        private final long createdAt = System.currentTimeMillis();
+        private final LongAdder readBytes = new LongAdder();
+        private final LongAdder writeBytes = new LongAdder();
+        private final LongAdder operations = new LongAdder();
+    }
+
+    /**
+     * 一页会话摘要
+     */
+    public static class SessionPage {
+        private final int total;
+        private final int offset;
+        private final int limit;
+        private final List<SessionInfo> sessions;
+
+        public SessionPage(int total, int offset, int limit, List<SessionInfo> sessions) {
+            this.total = total;
+            this.offset = offset;
+            this.limit = limit;
+            this.sessions = sessions;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        public int getOffset() {
+            return offset;
+        }
+
+        public int getLimit() {
+            return limit;
+        }
+
+        public List<SessionInfo> getSessions() {
+            return sessions;
+        }
+    }
+
+    /**
+     * 会话信息
+     */
+    public static class SessionInfo {
+        private final int sessionId;
+        private final String user;
+        private final String clientAddress;
+        private final String clientName;
+        private final String protocol;
+        private final boolean loggedOn;
+        private final long connectedAt;
+        private final long lastIOTime;
+        private final long idleMillis;
+        private final long readBytes;
+        private final long writeBytes;
+        private final long operations;
+        private final int treeConnections;
+        private final int openFiles;
+        private final List<TreeInfo> trees;
+
+        public SessionInfo(int sessionId, String user, String clientAddress, String clientName, String protocol,
+                           boolean loggedOn, long connectedAt, long lastIOTime, long idleMillis, long readBytes,
+                           long writeBytes, long operations, int treeConnections, int openFiles,
+                           List<TreeInfo> trees) {
+            this.sessionId = sessionId;
+            this.user = user;
+            this.clientAddress = clientAddress;
+            this.clientName = clientName;
+            this.protocol = protocol;
+            this.loggedOn = loggedOn;
+            this.connectedAt = connectedAt;
+            this.lastIOTime = lastIOTime;
+            this.idleMillis = idleMillis;
+            this.readBytes = readBytes;
+            this.writeBytes = writeBytes;
+            this.operations = operations;
+            this.treeConnections = treeConnections;
+            this.openFiles = openFiles;
+            this.trees = trees;
+        }
+
+        public int getSessionId() {
+            return sessionId;
+        }
+
+        /**
+         * 登录的用户名，未登录或匿名会话为 null
+         */
+        public String getUser() {
+            return user;
+        }
+
+        public String getClientAddress() {
+            return clientAddress;
+        }
+
+        /**
+         * 客户端的 NetBIOS 名称，直接通过 TCP 445 连接时通常为 null
+         */
+        public String getClientName() {
+            return clientName;
+        }
+
+        public String getProtocol() {
+            return protocol;
+        }
+
+        public boolean isLoggedOn() {
+            return loggedOn;
+        }
+
+        public long getConnectedAt() {
+            return connectedAt;
+        }
+
+        /**
+         * 最近一次收发数据包的时间
+         */
+        public long getLastIOTime() {
+            return lastIOTime;
+        }
+
+        public long getIdleMillis() {
+            return idleMillis;
+        }
+
+        /**
+         * 经过磁盘驱动读取的字节数，与元数据缓存、块缓存的命中同样计入
+         */
+        public long getReadBytes() {
+            return readBytes;
+        }
+
+        public long getWriteBytes() {
+            return writeBytes;
+        }
+
+        /**
+         * 磁盘操作次数（打开、读写、查询、搜索等）
+         */
+        public long getOperations() {
+            return operations;
+        }
+
+        public int getTreeConnections() {
+            return treeConnections;
+        }
+
+        public int getOpenFiles() {
+            return openFiles;
+        }
+
+        /**
+         * 树连接与打开的文件，列表中为 null
+         */
+        public List<TreeInfo> getTrees() {
+            return trees;
+        }
+    }
+
+    /**
+     * 树连接（会话连接的共享）
+     */
+    public static class TreeInfo {
+        private final int treeId;
+        private final int circuitId;
+        private final String share;
+        private final int openFileCount;
+        private final List<FileInfo> files;
+
+        public TreeInfo(int treeId, int circuitId, String share, int openFileCount, List<FileInfo> files) {
+            this.treeId = treeId;
+            this.circuitId = circuitId;
+            this.share = share;
+            this.openFileCount = openFileCount;
+            this.files = files;
+        }
+
+        public int getTreeId() {
+            return treeId;
+        }
+
+        /**
+         * 所属虚拟电路（SMB2 中即登录会话）
+         */
+        public int getCircuitId() {
+            return circuitId;
+        }
+
+        public String getShare() {
+            return share;
+        }
+
+        public int getOpenFileCount() {
+            return openFileCount;
+        }
+
+        public List<FileInfo> getFiles() {
+            return files;
+        }
+    }
+
+    /**
+     * 打开的文件句柄
+     */
+    public static class FileInfo {
+        private final int fileId;
+        private final String path;
+        private final boolean directory;
+        private final long size;
+        private final String access;
+        private final int reads;
+        private final int writes;
+        private final int locks;
+        private final String oplock;
+
+        public FileInfo(int fileId, String path, boolean directory, long size, String access, int reads,
+                        int writes, int locks, String oplock) {
+            this.fileId = fileId;
+            this.path = path;
+            this.directory = directory;
+            this.size = size;
+            this.access = access;
+            this.reads = reads;
+            this.writes = writes;
+            this.locks = locks;
+            this.oplock = oplock;
+        }
+
+        /**
+         * 树连接内的文件句柄号，关闭句柄时使用
+         */
+        public int getFileId() {
+            return fileId;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public boolean isDirectory() {
+            return directory;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * 授予的访问权限：READ_ONLY、WRITE_ONLY、READ_WRITE 或 ATTRIBUTES_ONLY
+         */
+        public String getAccess() {
+            return access;
+        }
+
+        public int getReads() {
+            return reads;
+        }
+
+        public int getWrites() {
+            return writes;
+        }
+
+        /**
+         * 持有的字节范围锁数
+         */
+        public int getLocks() {
+            return locks;
+        }
+
+        /**
+         * 持有的机会锁类型，没有时为 null
+         */
+        public String getOplock() {
+            return oplock;
+        }
+    }
+}
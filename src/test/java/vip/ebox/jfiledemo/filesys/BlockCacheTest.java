@@ -0,0 +1,118 @@
+package vip.ebox.jfiledemo.filesys;
+
+import org.filesys.server.filesys.NetworkFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/23  10:20
+ * @Description: 同一文件的多个句柄共用块缓存时，任一句柄的写入对其它句柄的读取立即可见
+ */
+class BlockCacheTest {
+
+    private static final int BLOCK = 4096;
+
+    @TempDir
+    Path dir;
+
+    private BlockCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new BlockCache(64L * BLOCK, BLOCK, 0, 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        cache.shutdown();
+    }
+
+    @Test
+    void writeThroughOneHandleIsVisibleToHandleOpenedAfterResize() throws Exception {
+        Path path = dir.resolve("shared.dat");
+        Files.write(path, pattern(2 * BLOCK, 1));
+
+        NIONetworkFile writer = open(path);
+        // 写入改变了文件大小，之后打开的句柄看到的大小与缓存时不同
+        writer.writeFile(pattern(BLOCK, 2), BLOCK, 0, 2L * BLOCK);
+
+        NIONetworkFile reader = open(path);
+        assertArrayEquals(pattern(BLOCK, 1), read(reader, 0));
+
+        byte[] update = pattern(BLOCK, 3);
+        writer.writeFile(update, BLOCK, 0, 0L);
+        assertArrayEquals(update, read(reader, 0));
+        assertArrayEquals(pattern(BLOCK, 2), read(reader, 2L * BLOCK));
+
+        reader.closeFile();
+        writer.closeFile();
+    }
+
+    @Test
+    void writeThroughEitherHandleInvalidatesBlocksCachedByTheOther() throws Exception {
+        Path path = dir.resolve("both.dat");
+        Files.write(path, pattern(BLOCK, 1));
+
+        NIONetworkFile first = open(path);
+        NIONetworkFile second = open(path);
+        assertArrayEquals(pattern(BLOCK, 1), read(first, 0));
+        assertArrayEquals(pattern(BLOCK, 1), read(second, 0));
+
+        second.writeFile(pattern(BLOCK, 2), BLOCK, 0, 0L);
+        assertArrayEquals(pattern(BLOCK, 2), read(first, 0));
+
+        first.writeFile(pattern(BLOCK, 3), BLOCK, 0, 0L);
+        assertArrayEquals(pattern(BLOCK, 3), read(second, 0));
+
+        second.closeFile();
+        first.closeFile();
+    }
+
+    @Test
+    void externalChangeIsSeenByNextOpen() throws Exception {
+        Path path = dir.resolve("external.dat");
+        Files.write(path, pattern(BLOCK, 1));
+
+        NIONetworkFile held = open(path);
+        assertArrayEquals(pattern(BLOCK, 1), read(held, 0));
+
+        // 不经过服务器的修改改变了大小，新打开的句柄不使用之前缓存的块
+        Files.write(path, pattern(2 * BLOCK, 4));
+        NIONetworkFile reopened = open(path);
+        assertArrayEquals(Arrays.copyOf(pattern(2 * BLOCK, 4), BLOCK), read(reopened, 0));
+
+        reopened.closeFile();
+        held.closeFile();
+    }
+
+    private NIONetworkFile open(Path path) throws IOException {
+        NIONetworkFile file = new NIONetworkFile(path, "\\" + path.getFileName(), cache, null);
+        file.setGrantedAccess(NetworkFile.Access.READ_WRITE);
+        return file;
+    }
+
+    private static byte[] read(NIONetworkFile file, long pos) throws IOException {
+        byte[] buf = new byte[BLOCK];
+        assertEquals(BLOCK, file.readFile(buf, BLOCK, 0, pos));
+        return buf;
+    }
+
+    private static byte[] pattern(int len, int seed) {
+        byte[] data = new byte[len];
+        for (int i = 0; i < len; i++) {
+            data[i] = (byte) (i * 31 + seed * 17);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,105 @@
+package vip.ebox.jfiledemo.filesys;
+
+import org.filesys.server.filesys.*;
+import org.filesys.server.filesys.cache.FileState;
+import org.filesys.smb.ImpersonationLevel;
+import org.filesys.smb.SharingMode;
+import org.filesys.smb.server.disk.JavaNIODiskDriver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.extensions.config.element.GenericConfigElement;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/18  18:30
+ * @Description: 删除、重命名时仍被打开的文件状态不能丢失
+ */
+class FileStateDiskDriverTest {
+
+    @TempDir
+    Path dir;
+
+    private FileStateDiskDriver driver;
+    private TreeConnection tree;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Files.write(dir.resolve("a.dat"), new byte[16]);
+        Files.write(dir.resolve("b.dat"), new byte[16]);
+
+        driver = new FileStateDiskDriver(new JavaNIODiskDriver(), "TEST", 60000, 15000, false);
+        GenericConfigElement args = new GenericConfigElement("disk");
+        GenericConfigElement localPath = new GenericConfigElement("LocalPath");
+        localPath.setValue(dir.toAbsolutePath().toString());
+        args.addChild(localPath);
+        DiskDeviceContext ctx = (DiskDeviceContext) driver.createContext("TEST", args);
+        ctx.setStateCache(driver.getStateCache());
+        tree = new TreeConnection(new DiskSharedDevice("TEST", driver, ctx));
+    }
+
+    @AfterEach
+    void tearDown() {
+        driver.shutdown();
+    }
+
+    @Test
+    void deleteKeepsStateOfOpenFile() throws Exception {
+        NetworkFile file = open("\\a.dat", SharingMode.ALL);
+
+        driver.deleteFile(null, tree, "\\a.dat");
+        FileState state = driver.getStateCache().findFileState("\\a.dat");
+        assertNotNull(state);
+        assertEquals(1, state.getOpenCount());
+        assertEquals(FileStatus.NotExist, driver.fileExists(null, tree, "\\a.dat"));
+
+        driver.closeFile(null, tree, file);
+        driver.deleteFile(null, tree, "\\b.dat");
+        assertNull(driver.getStateCache().findFileState("\\b.dat"));
+    }
+
+    @Test
+    void renameOverOpenTargetIsRefused() throws Exception {
+        NetworkFile target = open("\\b.dat", SharingMode.ALL);
+
+        assertThrows(FileSharingException.class, () -> driver.renameFile(null, tree, "\\a.dat", "\\b.dat", null));
+        assertTrue(Files.exists(dir.resolve("a.dat")));
+        assertEquals(1, driver.getStateCache().findFileState("\\b.dat").getOpenCount());
+
+        // 关闭后不再拦截，是否允许覆盖由下层驱动决定（JavaNIODiskDriver 不覆盖已有文件）
+        driver.closeFile(null, tree, target);
+        assertThrows(FileExistsException.class, () -> driver.renameFile(null, tree, "\\a.dat", "\\b.dat", null));
+    }
+
+    @Test
+    void renameMovesStateOfOpenFile() throws Exception {
+        NetworkFile file = open("\\a.dat", SharingMode.READ_DELETE);
+
+        driver.renameFile(null, tree, "\\a.dat", "\\c.dat", file);
+        FileState state = driver.getStateCache().findFileState("\\c.dat");
+        assertNotNull(state);
+        assertEquals(1, state.getOpenCount());
+
+        // 共享模式随状态迁移，不允许写的打开仍然冲突
+        assertThrows(FileSharingException.class, () -> open("\\c.dat", SharingMode.ALL, AccessMode.NTReadWrite));
+        driver.closeFile(null, tree, file);
+    }
+
+    private NetworkFile open(String path, SharingMode sharing) throws IOException {
+        return open(path, sharing, AccessMode.NTRead);
+    }
+
+    private NetworkFile open(String path, SharingMode sharing, int access) throws IOException {
+        FileOpenParams params = new FileOpenParams(path, CreateDisposition.OPEN, access, 0, sharing, 0,
+                ImpersonationLevel.IMPERSONATION, 0);
+        return driver.openFile(null, tree, params);
+    }
+}
@@ -0,0 +1,134 @@
+package vip.ebox.jfiledemo.filesys;
+
+import org.filesys.server.filesys.*;
+import org.filesys.smb.server.disk.JavaNIODiskDriver;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.extensions.config.element.GenericConfigElement;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/18  16:20
+ * @Description: IndexedDiskDriver 与 JavaNIODiskDriver 搜索结果的一致性
+ */
+class IndexedDiskDriverTest {
+
+    private static final int ALL = FileAttribute.Directory + FileAttribute.Hidden + FileAttribute.System;
+
+    @TempDir
+    Path dir;
+
+    private IndexedDiskDriver indexed;
+    private TreeConnection indexedTree;
+    private JavaNIODiskDriver nio;
+    private TreeConnection nioTree;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Files.createDirectory(dir.resolve("sub"));
+        for (int i = 0; i < 1500; i++) {
+            Files.createFile(dir.resolve(String.format("file-%04d.dat", i)));
+            if (i < 20) {
+                Files.createFile(dir.resolve("sub").resolve(String.format("item-%02d.iso", i)));
+            }
+        }
+        Files.createDirectory(dir.resolve("sub").resolve("nested"));
+
+        indexed = new IndexedDiskDriver(new JavaNIODiskDriver(), 0, 4, Long.MAX_VALUE);
+        indexedTree = tree(indexed);
+        nio = new JavaNIODiskDriver();
+        nioTree = tree(nio);
+    }
+
+    @Test
+    void externalCreateIsListedAfterDriverDelete() throws Exception {
+        // 1500 个文件、sub 目录以及 createContext 创建的 .Trashcan
+        assertEquals(1502, list(indexed, indexedTree, "\\*", ALL).size());
+
+        // 经驱动删除会标记变更，同一时段在 SMB 之外创建的文件也必须可见
+        indexed.deleteFile(null, indexedTree, "\\file-0000.dat");
+        Files.createFile(dir.resolve("ext-1.dat"));
+        Files.setLastModifiedTime(dir, FileTime.fromMillis(System.currentTimeMillis() + 1000));
+
+        Map<String, FileInfo> all = list(indexed, indexedTree, "\\*", ALL);
+        assertEquals(1502, all.size());
+        assertFalse(all.containsKey("file-0000.dat"));
+        assertEquals(1, list(indexed, indexedTree, "\\ext*", ALL).size());
+    }
+
+    @Test
+    void externalModifyIsListedAfterInvalidate() throws Exception {
+        list(indexed, indexedTree, "\\*", ALL);
+        long dirTime = Files.getLastModifiedTime(dir).toMillis();
+
+        // 写入已有文件不改变目录修改时间，只能由变更通知标记
+        Files.write(dir.resolve("file-0001.dat"), new byte[100]);
+        Files.setLastModifiedTime(dir, FileTime.fromMillis(dirTime));
+        assertEquals(0, list(indexed, indexedTree, "\\file-0001*", ALL).get("file-0001.dat").getSize());
+
+        indexed.invalidateExternal("\\file-0001.dat", false);
+        assertEquals(100, list(indexed, indexedTree, "\\file-0001*", ALL).get("file-0001.dat").getSize());
+    }
+
+    @Test
+    void fileOnlySearchSkipsDirectories() throws Exception {
+        Map<String, FileInfo> files = list(indexed, indexedTree, "\\sub\\*", 0);
+        assertEquals(20, files.size());
+        assertFalse(files.containsKey("nested"));
+
+        assertTrue(list(indexed, indexedTree, "\\sub\\*", ALL).containsKey("nested"));
+        assertTrue(list(indexed, indexedTree, "\\su*", 0).isEmpty());
+    }
+
+    @Test
+    void resultsMatchJavaNioSearch() throws Exception {
+        Map<String, FileInfo> expected = list(nio, nioTree, "\\sub\\*", ALL);
+        Map<String, FileInfo> actual = list(indexed, indexedTree, "\\sub\\*", ALL);
+
+        assertEquals(expected.keySet(), actual.keySet());
+        for (Map.Entry<String, FileInfo> entry : expected.entrySet()) {
+            FileInfo a = actual.get(entry.getKey());
+            FileInfo e = entry.getValue();
+            // 文件 id 与 getFileInformation 一致（按共享内相对路径计算）
+            FileInfo byPath = nio.getFileInformation(null, nioTree, "\\sub\\" + entry.getKey());
+            assertEquals(byPath.getFileId(), a.getFileId(), entry.getKey());
+            assertEquals(e.getSize(), a.getSize(), entry.getKey());
+            assertEquals(e.getFileAttributes(), a.getFileAttributes(), entry.getKey());
+            assertEquals(e.getModifyDateTime(), a.getModifyDateTime(), entry.getKey());
+        }
+    }
+
+    private TreeConnection tree(DiskInterface driver) throws Exception {
+        GenericConfigElement args = new GenericConfigElement("disk");
+        GenericConfigElement localPath = new GenericConfigElement("LocalPath");
+        localPath.setValue(dir.toAbsolutePath().toString());
+        args.addChild(localPath);
+        DiskDeviceContext ctx = (DiskDeviceContext) driver.createContext("TEST", args);
+        return new TreeConnection(new DiskSharedDevice("TEST", driver, ctx));
+    }
+
+    private static Map<String, FileInfo> list(DiskInterface driver, TreeConnection tree, String searchPath, int attrib)
+            throws IOException {
+        SearchContext ctx = driver.startSearch(null, tree, searchPath, attrib, EnumSet.noneOf(SearchFlags.class));
+        Map<String, FileInfo> result = new HashMap<>();
+        FileInfo info = new FileInfo();
+        while (ctx.nextFileInfo(info)) {
+            result.put(info.getFileName(), info);
+            info = new FileInfo();
+        }
+        ctx.closeSearch();
+        return result;
+    }
+}
@@ -0,0 +1,273 @@
+package vip.ebox.jfiledemo.filesys;
+
+import org.filesys.server.SrvSession;
+import org.filesys.server.filesys.*;
+import org.filesys.smb.ImpersonationLevel;
+import org.filesys.smb.SharingMode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.extensions.config.element.GenericConfigElement;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/24  16:10
+ * @Description: 配额计数随写入、截断、删除、覆盖重命名增量更新，多个句柄共用一条记录；
+ *  异常退出后按不完整的检查点加载并扫描校正
+ */
+class QuotaDiskDriverTest {
+
+    private static final String SHARE = "QUOTA";
+
+    @TempDir
+    Path dir;
+
+    private Path root;
+    private Path checkpoints;
+    private NIODiskDriver nio;
+    private FaultyDriver faulty;
+    private ShareQuota quota;
+    private QuotaDiskDriver driver;
+    private TreeConnection tree;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        root = Files.createDirectories(dir.resolve("share"));
+        checkpoints = Files.createDirectories(dir.resolve("quota"));
+        nio = new NIODiskDriver(null, null, null);
+        faulty = new FaultyDriver(nio);
+        quota = startQuota(3600000);
+        driver = new QuotaDiskDriver(faulty, nio, quota);
+
+        GenericConfigElement args = new GenericConfigElement("disk");
+        GenericConfigElement localPath = new GenericConfigElement("LocalPath");
+        localPath.setValue(root.toAbsolutePath().toString());
+        args.addChild(localPath);
+        DiskDeviceContext ctx = (DiskDeviceContext) driver.createContext(SHARE, args);
+        tree = new TreeConnection(new DiskSharedDevice(SHARE, driver, ctx));
+    }
+
+    @AfterEach
+    void tearDown() {
+        quota.shutdown();
+    }
+
+    @Test
+    void writeGrowthIsChargedAndFailedWriteRollsBack() throws Exception {
+        NetworkFile file = create("\\a.dat");
+        write(file, 0, 1000);
+        assertEquals(1000, quota.getUsed());
+
+        // 覆盖已有范围不占用空间
+        write(file, 200, 500);
+        assertEquals(1000, quota.getUsed());
+
+        // 下层写入失败时退回这次增长
+        faulty.failWrites = true;
+        assertThrows(IOException.class, () -> write(file, 1000, 500));
+        assertEquals(1000, quota.getUsed());
+        faulty.failWrites = false;
+
+        // 之后的写入按失败前的大小计算增长
+        write(file, 1000, 24);
+        assertEquals(1024, quota.getUsed());
+        driver.closeFile(null, tree, file);
+        assertEquals(1024, Files.size(root.resolve("a.dat")));
+    }
+
+    @Test
+    void writeOverLimitIsRejected() throws Exception {
+        quota.shutdown();
+        quota = startQuota(4096, 3600000);
+        driver = new QuotaDiskDriver(faulty, nio, quota);
+
+        NetworkFile file = create("\\big.dat");
+        write(file, 0, 4000);
+        assertThrows(DiskFullException.class, () -> write(file, 4000, 200));
+        assertEquals(4000, quota.getUsed());
+        assertEquals(1, quota.getStats().getDenied());
+        driver.closeFile(null, tree, file);
+    }
+
+    @Test
+    void truncateReleasesAndExtendCharges() throws Exception {
+        NetworkFile file = create("\\t.dat");
+        write(file, 0, 1000);
+
+        driver.truncateFile(null, tree, file, 100);
+        assertEquals(100, quota.getUsed());
+        driver.truncateFile(null, tree, file, 3000);
+        assertEquals(3000, quota.getUsed());
+        driver.closeFile(null, tree, file);
+    }
+
+    @Test
+    void deleteOnCloseReleasesAfterClose() throws Exception {
+        NetworkFile file = create("\\temp.dat");
+        write(file, 0, 2048);
+        file.setDeleteOnClose(true);
+        assertEquals(2048, quota.getUsed());
+
+        driver.closeFile(null, tree, file);
+        assertFalse(Files.exists(root.resolve("temp.dat")));
+        assertEquals(0, quota.getUsed());
+    }
+
+    @Test
+    void renameOverExistingFileReleasesReplacedFile() throws Exception {
+        NetworkFile source = create("\\new.dat");
+        write(source, 0, 1000);
+        driver.closeFile(null, tree, source);
+        NetworkFile target = create("\\old.dat");
+        write(target, 0, 3000);
+        driver.closeFile(null, tree, target);
+        assertEquals(4000, quota.getUsed());
+
+        driver.renameFile(null, tree, "\\new.dat", "\\old.dat", null);
+        assertEquals(1000, quota.getUsed());
+        assertEquals(1000, Files.size(root.resolve("old.dat")));
+
+        // 重命名后按新路径继续计数
+        NetworkFile file = open("\\old.dat");
+        write(file, 1000, 500);
+        assertEquals(1500, quota.getUsed());
+        driver.closeFile(null, tree, file);
+    }
+
+    @Test
+    void handlesOnOnePathShareOneRecord() throws Exception {
+        NetworkFile first = create("\\shared.dat");
+        NetworkFile second = open("\\shared.dat");
+
+        write(first, 0, 1000);
+        write(second, 0, 1500);
+        assertEquals(1500, quota.getUsed());
+
+        // 一个句柄关闭后，另一个句柄仍按同一条记录计算增长
+        driver.closeFile(null, tree, first);
+        write(second, 1500, 500);
+        assertEquals(2000, quota.getUsed());
+
+        driver.closeFile(null, tree, second);
+        driver.deleteFile(null, tree, "\\shared.dat");
+        assertEquals(0, quota.getUsed());
+    }
+
+    @Test
+    void uncleanCheckpointIsReloadedAndReconciled() throws Exception {
+        quota.shutdown();
+        quota = startQuota(50);
+        driver = new QuotaDiskDriver(faulty, nio, quota);
+
+        NetworkFile file = create("\\kept.dat");
+        write(file, 0, 5000);
+        driver.closeFile(null, tree, file);
+        Path checkpoint = checkpoints.resolve(SHARE + ".quota");
+        assertTrue(await(() -> read(checkpoint).contains("used=5000")));
+        assertTrue(read(checkpoint).contains("clean=false"));
+
+        // 进程异常退出：检查点停留在周期写入的状态，之后共享目录又被直接修改
+        String crashed = read(checkpoint);
+        quota.shutdown();
+        Files.write(checkpoint, crashed.getBytes(StandardCharsets.UTF_8));
+        Files.write(root.resolve("external.dat"), new byte[700]);
+
+        quota = startQuota(3600000);
+        assertTrue(await(() -> !quota.getStats().isScanning()));
+        assertEquals(5700, quota.getUsed());
+        assertEquals(700, quota.getStats().getLastDrift());
+
+        // 正常关闭后的检查点直接使用，不扫描
+        quota.shutdown();
+        Files.write(root.resolve("later.dat"), new byte[300]);
+        quota = startQuota(3600000);
+        assertFalse(quota.getStats().isScanning());
+        assertEquals(5700, quota.getUsed());
+    }
+
+    private ShareQuota startQuota(long checkpointMillis) throws Exception {
+        return startQuota(0, checkpointMillis);
+    }
+
+    private ShareQuota startQuota(long limit, long checkpointMillis) throws Exception {
+        ShareQuota q = new ShareQuota(SHARE, List.of(root), checkpoints, limit, 0, null, checkpointMillis, false);
+        assertTrue(await(() -> !q.getStats().isScanning()));
+        return q;
+    }
+
+    private NetworkFile create(String path) throws IOException {
+        return driver.createFile(null, tree, params(path, CreateDisposition.CREATE));
+    }
+
+    private NetworkFile open(String path) throws IOException {
+        return driver.openFile(null, tree, params(path, CreateDisposition.OPEN));
+    }
+
+    private void write(NetworkFile file, long pos, int len) throws IOException {
+        driver.writeFile(null, tree, file, new byte[len], 0, len, pos);
+    }
+
+    private static FileOpenParams params(String path, CreateDisposition disposition) {
+        return new FileOpenParams(path, disposition, AccessMode.NTReadWrite, 0, SharingMode.ALL, 0,
+                ImpersonationLevel.IMPERSONATION, 0);
+    }
+
+    private static String read(Path file) {
+        try {
+            return Files.readString(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    private static boolean await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            if (condition.getAsBoolean()) {
+                return true;
+            }
+            Thread.sleep(10);
+        }
+        return condition.getAsBoolean();
+    }
+
+    /**
+     * 可让写入失败的下层驱动；重命名时覆盖已存在的目标，与客户端请求替换时相同
+     */
+    private static final class FaultyDriver extends FilterDiskDriver {
+        private volatile boolean failWrites;
+
+        FaultyDriver(DiskInterface driver) {
+            super(driver);
+        }
+
+        @Override
+        public int writeFile(SrvSession<?> sess, TreeConnection tree, NetworkFile file,
+                             byte[] buf, int bufoff, int siz, long fileoff) throws IOException {
+            if (failWrites) {
+                throw new IOException("模拟写入失败");
+            }
+            return driver.writeFile(sess, tree, file, buf, bufoff, siz, fileoff);
+        }
+
+        @Override
+        public void renameFile(SrvSession<?> sess, TreeConnection tree, String oldName, String newName,
+                               NetworkFile netFile) throws IOException {
+            if (driver.fileExists(sess, tree, newName) == FileStatus.FileExists) {
+                driver.deleteFile(sess, tree, newName);
+            }
+            driver.renameFile(sess, tree, oldName, newName, netFile);
+        }
+    }
+}
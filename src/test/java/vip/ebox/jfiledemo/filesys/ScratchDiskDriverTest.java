@@ -0,0 +1,229 @@
+package vip.ebox.jfiledemo.filesys;
+
+import org.filesys.server.SrvSession;
+import org.filesys.server.filesys.*;
+import org.filesys.smb.ImpersonationLevel;
+import org.filesys.smb.SharingMode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.extensions.config.element.GenericConfigElement;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/24  17:30
+ * @Description: 内存临时共享的溢出：预算用尽时最久未使用的文件写出到磁盘；
+ *  溢出等待期间文件被重命名时写到新路径，被删除时不再写出
+ */
+class ScratchDiskDriverTest {
+
+    private static final String SHARE = "SCRATCH";
+    private static final int PAGE = ScratchMemory.PAGE_SIZE;
+
+    @TempDir
+    Path dir;
+
+    private Path root;
+    private NIODiskDriver nio;
+    private BlockingDriver blocking;
+    private ScratchMemory memory;
+    private ScratchDiskDriver driver;
+    private TreeConnection tree;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        root = Files.createDirectories(dir.resolve("share"));
+        nio = new NIODiskDriver(null, null, null);
+        blocking = new BlockingDriver(nio);
+    }
+
+    @AfterEach
+    void tearDown() {
+        blocking.release.countDown();
+        if (memory != null) {
+            memory.shutdown();
+        }
+    }
+
+    @Test
+    void leastRecentlyUsedFileSpillsWhenBudgetIsFull() throws Exception {
+        start(2 * PAGE);
+        writeFile("\\a.dat", fill(PAGE, 1));
+        writeFile("\\b.dat", fill(PAGE, 2));
+        assertEquals(0, Files.size(root.resolve("a.dat")));
+        assertEquals(2, driver.getResidentFiles());
+
+        // 第三个文件需要页面时，最久未使用的 a.dat 写出到磁盘
+        writeFile("\\c.dat", fill(100, 3));
+        ScratchMemory.ScratchStats stats = memory.getStats();
+        assertEquals(1, stats.getSpills());
+        assertEquals(PAGE, stats.getSpilledBytes());
+        assertEquals(0, stats.getSpillFailures());
+        assertEquals(2 * PAGE, stats.getMemoryUsed());
+        assertEquals(2, driver.getResidentFiles());
+        assertArrayEquals(fill(PAGE, 1), Files.readAllBytes(root.resolve("a.dat")));
+        assertEquals(0, Files.size(root.resolve("b.dat")));
+
+        // 溢出后的文件由 NIO 驱动读取，仍在内存中的文件按内存中的大小显示
+        assertArrayEquals(fill(PAGE, 1), readFile("\\a.dat", PAGE));
+        assertArrayEquals(fill(PAGE, 2), readFile("\\b.dat", PAGE));
+        assertEquals(100, driver.getFileInformation(null, tree, "\\c.dat").getSize());
+    }
+
+    @Test
+    void renameDuringSpillWritesToNewPath() throws Exception {
+        start(PAGE);
+        writeFile("\\a.dat", fill(PAGE, 1));
+
+        // 重命名在磁盘上改名后停住，此时写入新文件需要溢出 a.dat，溢出等待重命名完成
+        Thread rename = run(() -> driver.renameFile(null, tree, "\\a.dat", "\\moved.dat", null));
+        blocking.entered.await();
+        Thread writer = run(() -> writeFile("\\b.dat", fill(100, 2)));
+        awaitWaiting(writer);
+        assertEquals(0, memory.getStats().getSpills());
+
+        blocking.release.countDown();
+        rename.join(5000);
+        writer.join(5000);
+
+        assertFalse(Files.exists(root.resolve("a.dat")));
+        assertArrayEquals(fill(PAGE, 1), Files.readAllBytes(root.resolve("moved.dat")));
+        assertEquals(1, memory.getStats().getSpills());
+        assertEquals(0, memory.getStats().getSpillFailures());
+        assertEquals(1, driver.getResidentFiles());
+        assertArrayEquals(fill(100, 2), readFile("\\b.dat", 100));
+    }
+
+    @Test
+    void deleteDuringSpillDoesNotRecreateFile() throws Exception {
+        start(PAGE);
+        writeFile("\\a.dat", fill(PAGE, 1));
+
+        // 删除在磁盘上删除文件后停住，关闭共享时的溢出等待删除完成
+        Thread delete = run(() -> driver.deleteFile(null, tree, "\\a.dat"));
+        blocking.entered.await();
+        Thread spill = run(() -> driver.shutdown());
+        awaitWaiting(spill);
+
+        blocking.release.countDown();
+        delete.join(5000);
+        spill.join(5000);
+
+        assertFalse(Files.exists(root.resolve("a.dat")));
+        ScratchMemory.ScratchStats stats = memory.getStats();
+        assertEquals(0, stats.getSpills());
+        assertEquals(0, stats.getSpillFailures());
+        assertEquals(0, stats.getMemoryUsed());
+        assertEquals(0, stats.getResidentFiles());
+        assertEquals(0, driver.getResidentFiles());
+    }
+
+    private void start(long budget) throws Exception {
+        memory = new ScratchMemory(budget, 0);
+        driver = new ScratchDiskDriver(blocking, nio, memory, SHARE);
+
+        GenericConfigElement args = new GenericConfigElement("disk");
+        GenericConfigElement localPath = new GenericConfigElement("LocalPath");
+        localPath.setValue(root.toAbsolutePath().toString());
+        args.addChild(localPath);
+        DiskDeviceContext ctx = (DiskDeviceContext) driver.createContext(SHARE, args);
+        tree = new TreeConnection(new DiskSharedDevice(SHARE, driver, ctx));
+    }
+
+    private void writeFile(String path, byte[] data) throws IOException {
+        NetworkFile file = driver.createFile(null, tree, params(path, CreateDisposition.CREATE));
+        driver.writeFile(null, tree, file, data, 0, data.length, 0);
+        driver.closeFile(null, tree, file);
+    }
+
+    private byte[] readFile(String path, int len) throws IOException {
+        NetworkFile file = driver.openFile(null, tree, params(path, CreateDisposition.OPEN));
+        byte[] buf = new byte[len];
+        int read = driver.readFile(null, tree, file, buf, 0, len, 0);
+        driver.closeFile(null, tree, file);
+        return Arrays.copyOf(buf, read);
+    }
+
+    private static FileOpenParams params(String path, CreateDisposition disposition) {
+        return new FileOpenParams(path, disposition, AccessMode.NTReadWrite, 0, SharingMode.ALL, 0,
+                ImpersonationLevel.IMPERSONATION, 0);
+    }
+
+    private static byte[] fill(int len, int value) {
+        byte[] data = new byte[len];
+        Arrays.fill(data, (byte) value);
+        return data;
+    }
+
+    private static Thread run(IoTask task) {
+        Thread thread = new Thread(() -> {
+            try {
+                task.run();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * 等待线程阻塞在锁上
+     */
+    private static void awaitWaiting(Thread thread) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (thread.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(Thread.State.WAITING, thread.getState());
+    }
+
+    private interface IoTask {
+        void run() throws IOException;
+    }
+
+    /**
+     * 在磁盘上完成重命名或删除后停住，直到测试放行，用于让溢出与之交错
+     */
+    private static final class BlockingDriver extends FilterDiskDriver {
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        BlockingDriver(DiskInterface driver) {
+            super(driver);
+        }
+
+        @Override
+        public void renameFile(SrvSession<?> sess, TreeConnection tree, String oldName, String newName,
+                               NetworkFile netFile) throws IOException {
+            driver.renameFile(sess, tree, oldName, newName, netFile);
+            pause();
+        }
+
+        @Override
+        public void deleteFile(SrvSession<?> sess, TreeConnection tree, String name) throws IOException {
+            driver.deleteFile(sess, tree, name);
+            pause();
+        }
+
+        private void pause() throws IOException {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+        }
+    }
+}
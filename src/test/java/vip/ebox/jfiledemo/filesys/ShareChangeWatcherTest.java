@@ -0,0 +1,93 @@
+package vip.ebox.jfiledemo.filesys;
+
+import org.filesys.server.filesys.*;
+import org.filesys.smb.ImpersonationLevel;
+import org.filesys.smb.SharingMode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.extensions.config.element.GenericConfigElement;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/23  12:10
+ * @Description: 本地修改转为变更通知，通过 SMB 的修改不重复通知
+ */
+class ShareChangeWatcherTest {
+
+    private static final String SHARE = "TEST";
+    private static final long DEBOUNCE = 50;
+
+    @TempDir
+    Path dir;
+
+    private ChangeTrackingDiskDriver driver;
+    private DiskDeviceContext context;
+    private TreeConnection tree;
+    private ShareChangeWatcher watcher;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        driver = new ChangeTrackingDiskDriver(new NIODiskDriver(null, null, null), 2000);
+        GenericConfigElement args = new GenericConfigElement("disk");
+        GenericConfigElement localPath = new GenericConfigElement("LocalPath");
+        localPath.setValue(dir.toAbsolutePath().toString());
+        args.addChild(localPath);
+        context = (DiskDeviceContext) driver.createContext(SHARE, args);
+        context.enableChangeHandler(true);
+        tree = new TreeConnection(new DiskSharedDevice(SHARE, driver, context));
+        watcher = new ShareChangeWatcher(SHARE, List.of(dir), context, null, null, driver, DEBOUNCE, 16);
+    }
+
+    @AfterEach
+    void tearDown() {
+        watcher.shutdown();
+        context.enableChangeHandler(false);
+    }
+
+    @Test
+    void smbWriteDoesNotProduceWatcherNotification() throws Exception {
+        FileOpenParams params = new FileOpenParams("\\smb.dat", CreateDisposition.CREATE, AccessMode.NTReadWrite, 0,
+                SharingMode.ALL, 0, ImpersonationLevel.IMPERSONATION, 0);
+        NetworkFile file = driver.createFile(null, tree, params);
+        byte[] data = new byte[8192];
+        driver.writeFile(null, tree, file, data, 0, data.length, 0);
+        driver.writeFile(null, tree, file, data, 0, data.length, data.length);
+        driver.closeFile(null, tree, file);
+
+        assertTrue(await(() -> watcher.getStats().getIgnored() > 0));
+        // 等待足够多个合并窗口，确认没有通知被发送
+        Thread.sleep(DEBOUNCE * 10);
+        ShareChangeWatcher.ChangeNotifyStats stats = watcher.getStats();
+        assertEquals(stats.getEvents(), stats.getIgnored());
+        assertEquals(0, stats.getNotifications());
+    }
+
+    @Test
+    void externalWriteIsNotified() throws Exception {
+        Files.write(dir.resolve("external.dat"), new byte[8192]);
+
+        assertTrue(await(() -> watcher.getStats().getNotifications() == 1));
+        assertEquals(0, watcher.getStats().getIgnored());
+    }
+
+    private static boolean await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(20);
+        }
+        return true;
+    }
+}
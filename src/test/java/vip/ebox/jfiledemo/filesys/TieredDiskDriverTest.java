@@ -0,0 +1,164 @@
+package vip.ebox.jfiledemo.filesys;
+
+import org.filesys.server.filesys.*;
+import org.filesys.smb.ImpersonationLevel;
+import org.filesys.smb.SharingMode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.extensions.config.element.GenericConfigElement;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/24  14:20
+ * @Description: 冷热分层的迁移：常用的冷层文件迁入热层，长时间未访问的文件迁出，已打开的文件（含重命名目录下的）不迁移
+ */
+class TieredDiskDriverTest {
+
+    private static final String SHARE = "TIER";
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    @TempDir
+    Path dir;
+
+    private Path hot;
+    private Path cold;
+    private NIODiskDriver nio;
+    private TieredDiskDriver driver;
+    private TreeConnection tree;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        hot = Files.createDirectories(dir.resolve("hot"));
+        cold = Files.createDirectories(dir.resolve("cold"));
+        nio = new NIODiskDriver(null, null, null);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (driver != null) {
+            driver.shutdown();
+        }
+    }
+
+    @Test
+    void frequentlyOpenedColdFileIsPromoted() throws Exception {
+        start(0);
+        Files.write(cold.resolve("setup.iso"), new byte[4096]);
+
+        for (int i = 0; i < 2; i++) {
+            driver.closeFile(null, tree, open("\\setup.iso"));
+        }
+        assertEquals(2, driver.getStats().getColdHits());
+        driver.runMover();
+
+        assertTrue(Files.exists(hot.resolve("setup.iso")));
+        assertFalse(Files.exists(cold.resolve("setup.iso")));
+        assertEquals(1, driver.getStats().getPromotions());
+        assertEquals(4096, driver.getStats().getPromotedBytes());
+
+        driver.closeFile(null, tree, open("\\setup.iso"));
+        assertEquals(1, driver.getStats().getHotHits());
+    }
+
+    @Test
+    void idleHotFileIsDemoted() throws Exception {
+        start(0);
+        Files.createDirectories(hot.resolve("old"));
+        idle(Files.write(hot.resolve("old").resolve("report.doc"), new byte[1024]));
+        Files.write(hot.resolve("recent.doc"), new byte[1024]);
+
+        driver.runMover();
+
+        assertTrue(Files.exists(cold.resolve("old").resolve("report.doc")));
+        assertFalse(Files.exists(hot.resolve("old").resolve("report.doc")));
+        assertTrue(Files.exists(hot.resolve("recent.doc")));
+        assertEquals(1, driver.getStats().getDemotions());
+
+        // 迁出后路径不变，仍可打开
+        NetworkFile file = open("\\old\\report.doc");
+        assertEquals(1, driver.getStats().getColdHits());
+        driver.closeFile(null, tree, file);
+    }
+
+    @Test
+    void openFileIsNotMigrated() throws Exception {
+        // 容量上限 1 字节，所有热层文件都需要迁出
+        start(1);
+        idle(Files.write(hot.resolve("open.dat"), new byte[1024]));
+        idle(Files.write(hot.resolve("closed.dat"), new byte[1024]));
+
+        NetworkFile file = open("\\open.dat");
+        driver.runMover();
+        assertTrue(Files.exists(hot.resolve("open.dat")));
+        assertFalse(Files.exists(cold.resolve("open.dat")));
+        assertTrue(Files.exists(cold.resolve("closed.dat")));
+
+        driver.closeFile(null, tree, file);
+        driver.runMover();
+        assertTrue(Files.exists(cold.resolve("open.dat")));
+        assertEquals(2, driver.getStats().getDemotions());
+    }
+
+    @Test
+    void fileInRenamedDirectoryStaysOpenForMover() throws Exception {
+        start(1);
+        Files.createDirectories(hot.resolve("work"));
+        idle(Files.write(hot.resolve("work").resolve("data.bin"), new byte[1024]));
+
+        NetworkFile file = open("\\work\\data.bin");
+        driver.renameFile(null, tree, "\\work", "\\moved", null);
+        driver.runMover();
+
+        // 目录下打开的文件按新路径计数，迁移线程不会把它移走
+        assertTrue(Files.exists(hot.resolve("moved").resolve("data.bin")));
+        assertFalse(Files.exists(cold.resolve("moved").resolve("data.bin")));
+        assertEquals(0, driver.getStats().getDemotions());
+
+        driver.closeFile(null, tree, file);
+        driver.runMover();
+        assertTrue(Files.exists(cold.resolve("moved").resolve("data.bin")));
+        assertEquals(1, driver.getStats().getDemotions());
+    }
+
+    /**
+     * 创建分层驱动，迁入需要打开 2 次，一小时未访问的文件迁出；迁移周期很长，由测试调用 runMover
+     */
+    private void start(long hotMaxBytes) throws Exception {
+        DiskDeviceContext hotContext = context(hot);
+        driver = new TieredDiskDriver(nio, SHARE, hot, context(cold), hotMaxBytes, 2, HOUR, HOUR);
+        tree = new TreeConnection(new DiskSharedDevice(SHARE, driver, hotContext));
+    }
+
+    private DiskDeviceContext context(Path root) throws Exception {
+        GenericConfigElement args = new GenericConfigElement("disk");
+        GenericConfigElement localPath = new GenericConfigElement("LocalPath");
+        localPath.setValue(root.toAbsolutePath().toString());
+        args.addChild(localPath);
+        return (DiskDeviceContext) nio.createContext(SHARE, args);
+    }
+
+    private NetworkFile open(String path) throws Exception {
+        FileOpenParams params = new FileOpenParams(path, CreateDisposition.OPEN, AccessMode.NTRead, 0,
+                SharingMode.ALL, 0, ImpersonationLevel.IMPERSONATION, 0);
+        return driver.openFile(null, tree, params);
+    }
+
+    /**
+     * 把文件的修改与访问时间设为两小时前
+     */
+    private static void idle(Path file) throws Exception {
+        FileTime old = FileTime.fromMillis(System.currentTimeMillis() - 2 * HOUR);
+        Files.getFileAttributeView(file, BasicFileAttributeView.class).setTimes(old, old, null);
+    }
+}
@@ -0,0 +1,209 @@
+package vip.ebox.jfiledemo.filesys;
+
+import org.filesys.server.filesys.NetworkFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/18  17:40
+ * @Description: 延迟写入的合并、写出、失败重试与内存上限
+ */
+class WriteBehindBufferTest {
+
+    private static final int BUFFER = 65536;
+
+    @TempDir
+    Path dir;
+
+    private WriteBehindManager manager;
+
+    @AfterEach
+    void tearDown() {
+        if (manager != null) {
+            manager.shutdown();
+        }
+    }
+
+    @Test
+    void adjacentWritesAreMergedIntoOneFlush() throws Exception {
+        manager = new WriteBehindManager(BUFFER, 60000, BUFFER);
+        NIONetworkFile file = open("seq.dat");
+        byte[] expected = pattern(8 * 4096, 1);
+        for (int i = 0; i < 8; i++) {
+            file.writeFile(expected, 4096, i * 4096, i * 4096L);
+        }
+        assertEquals(0, Files.size(dir.resolve("seq.dat")));
+
+        file.closeFile();
+        assertArrayEquals(expected, Files.readAllBytes(dir.resolve("seq.dat")));
+        assertEquals(8, manager.getStats().getBufferedWrites());
+        assertEquals(1, manager.getStats().getFlushes());
+        assertEquals(0, manager.getStats().getAllocatedBytes());
+    }
+
+    @Test
+    void precedingAndOverlappingWritesAreMerged() throws Exception {
+        manager = new WriteBehindManager(BUFFER, 60000, BUFFER);
+        NIONetworkFile file = open("overlap.dat");
+        byte[] a = pattern(4096, 1);
+        byte[] b = pattern(4096, 2);
+        byte[] c = pattern(4096, 3);
+        file.writeFile(a, 4096, 0, 4096L);
+        file.writeFile(b, 4096, 0, 0L);
+        file.writeFile(c, 4096, 0, 2048L);
+        file.closeFile();
+
+        byte[] expected = new byte[8192];
+        System.arraycopy(b, 0, expected, 0, 4096);
+        System.arraycopy(a, 0, expected, 4096, 4096);
+        System.arraycopy(c, 0, expected, 2048, 4096);
+        assertArrayEquals(expected, Files.readAllBytes(dir.resolve("overlap.dat")));
+        assertEquals(1, manager.getStats().getFlushes());
+    }
+
+    @Test
+    void gapFlushesPreviousRange() throws Exception {
+        manager = new WriteBehindManager(BUFFER, 60000, BUFFER);
+        NIONetworkFile file = open("gap.dat");
+        byte[] data = pattern(4096, 1);
+        file.writeFile(data, 4096, 0, 0L);
+        file.writeFile(data, 4096, 0, 1L << 20);
+
+        assertEquals(1, manager.getStats().getGapFlushes());
+        assertEquals(4096, Files.size(dir.resolve("gap.dat")));
+        file.closeFile();
+        assertEquals((1L << 20) + 4096, Files.size(dir.resolve("gap.dat")));
+    }
+
+    @Test
+    void failedFlushKeepsBufferedData() throws Exception {
+        manager = new WriteBehindManager(BUFFER, 60000, BUFFER);
+        FailingFile file = new FailingFile(create("retry.dat"), 1);
+        byte[] data = pattern(4096, 1);
+        file.writeFile(data, 4096, 0, 0L);
+
+        assertThrows(IOException.class, file::flushFile);
+        assertEquals(0, Files.size(dir.resolve("retry.dat")));
+
+        file.flushFile();
+        assertArrayEquals(data, Files.readAllBytes(dir.resolve("retry.dat")));
+        file.closeFile();
+        assertEquals(1, manager.getStats().getErrors());
+    }
+
+    @Test
+    void backgroundFailureIsReportedOnClose() throws Exception {
+        manager = new WriteBehindManager(BUFFER, 1, BUFFER);
+        FailingFile file = new FailingFile(create("close.dat"), Integer.MAX_VALUE);
+        file.writeFile(pattern(4096, 1), 4096, 0, 0L);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (manager.getStats().getErrors() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(manager.getStats().getErrors() > 0);
+        assertThrows(IOException.class, file::closeFile);
+        assertEquals(0, manager.getStats().getAllocatedBytes());
+    }
+
+    @Test
+    void writesGoDirectWhenMemoryLimitReached() throws Exception {
+        manager = new WriteBehindManager(BUFFER, 60000, BUFFER);
+        NIONetworkFile first = open("first.dat");
+        NIONetworkFile second = open("second.dat");
+        byte[] data = pattern(4096, 1);
+
+        first.writeFile(data, 4096, 0, 0L);
+        second.writeFile(data, 4096, 0, 0L);
+
+        assertEquals(0, Files.size(dir.resolve("first.dat")));
+        assertArrayEquals(data, Files.readAllBytes(dir.resolve("second.dat")));
+        assertEquals(1, manager.getStats().getDirectWrites());
+        assertEquals(BUFFER, manager.getStats().getAllocatedBytes());
+
+        first.closeFile();
+        second.closeFile();
+        assertEquals(0, manager.getStats().getAllocatedBytes());
+    }
+
+    @Test
+    void writeThroughHandleBypassesBuffer() throws Exception {
+        manager = new WriteBehindManager(BUFFER, 60000, BUFFER);
+        NIONetworkFile buffered = open("shared.dat");
+        NIONetworkFile through = open("shared.dat");
+        through.setWriteThrough(true);
+
+        byte[] a = pattern(4096, 1);
+        byte[] b = pattern(4096, 2);
+        buffered.writeFile(a, 4096, 0, 0L);
+        through.writeFile(b, 4096, 0, 2048L);
+
+        // 先写出重叠的缓冲数据，再直接写入
+        byte[] expected = new byte[6144];
+        System.arraycopy(a, 0, expected, 0, 4096);
+        System.arraycopy(b, 0, expected, 2048, 4096);
+        assertArrayEquals(expected, Files.readAllBytes(dir.resolve("shared.dat")));
+        assertEquals(1, manager.getStats().getBufferedWrites());
+
+        buffered.closeFile();
+        through.closeFile();
+    }
+
+    private NIONetworkFile open(String name) throws IOException {
+        NIONetworkFile file = new NIONetworkFile(create(name), "\\" + name, null, null);
+        file.setGrantedAccess(NetworkFile.Access.READ_WRITE);
+        file.setWriteBehind(manager);
+        return file;
+    }
+
+    private Path create(String name) throws IOException {
+        Path path = dir.resolve(name);
+        if (!Files.exists(path)) {
+            Files.createFile(path);
+        }
+        return path;
+    }
+
+    private static byte[] pattern(int len, int seed) {
+        byte[] data = new byte[len];
+        Arrays.fill(data, (byte) seed);
+        for (int i = 0; i < len; i += 97) {
+            data[i] = (byte) (i * seed);
+        }
+        return data;
+    }
+
+    /**
+     * 前 failures 次写出失败的文件
+     */
+    private class FailingFile extends NIONetworkFile {
+
+        private final AtomicInteger failures;
+
+        FailingFile(Path path, int failures) throws IOException {
+            super(path, "\\" + path.getFileName(), null, null);
+            this.failures = new AtomicInteger(failures);
+            setGrantedAccess(Access.READ_WRITE);
+            setWriteBehind(manager);
+        }
+
+        @Override
+        void writeThrough(byte[] buf, int off, int len, long pos) throws IOException {
+            if (failures.getAndDecrement() > 0) {
+                throw new IOException("模拟写入失败");
+            }
+            super.writeThrough(buf, off, len, pos);
+        }
+    }
+}
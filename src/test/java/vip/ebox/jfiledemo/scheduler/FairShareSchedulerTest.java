@@ -0,0 +1,138 @@
+package vip.ebox.jfiledemo.scheduler;
+
+import org.filesys.server.filesys.DiskSharedDevice;
+import org.filesys.server.filesys.TreeConnection;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/23  15:40
+ * @Description: 占满并发上限的共享的请求在分发前留在队列中，不占用其它共享需要的工作线程；
+ *  请求按自己访问的树连接找到共享，只有打开、创建在排队已满时被拒绝
+ */
+class FairShareSchedulerTest {
+
+    @Test
+    void saturatedShareHoldsRequestsInsteadOfWorkers() throws Exception {
+        // 5 个工作线程，备份共享并发上限 4
+        FairShareScheduler scheduler = new FairShareScheduler(() -> 5);
+        FairShareScheduler.ShareQueue backup = scheduler.register("BACKUP", 1, 4, 32);
+        FairShareScheduler.ShareQueue installers = scheduler.register("INSTALLERS", 4, 0, 0);
+        for (int i = 0; i < 4; i++) {
+            backup.acquire(16, false);
+        }
+
+        // 第五个请求不交给工作线程
+        AtomicInteger resumed = new AtomicInteger();
+        assertSame(backup, scheduler.find(tree("backup")));
+        assertTrue(scheduler.defer(backup, resumed::incrementAndGet));
+        assertEquals(0, resumed.get());
+
+        // 安装包共享仍有工作线程与槽位可用
+        assertSame(installers, scheduler.find(tree("INSTALLERS")));
+        assertFalse(scheduler.defer(installers, () -> fail("安装包共享的请求不应被留下")));
+        installers.acquire(1, true);
+        installers.release();
+
+        backup.release();
+        assertEquals(1, resumed.get());
+
+        FairShareScheduler.QueueStats stats = scheduler.getStats().get(0);
+        assertEquals(4, stats.getMaxConcurrent());
+        assertEquals(1, stats.getDeferred());
+        assertEquals(0, stats.getQueueDepth());
+        for (int i = 0; i < 3; i++) {
+            backup.release();
+        }
+    }
+
+    @Test
+    void sessionSwitchingSharesIsHeldOnlyForTheTargetShare() throws Exception {
+        FairShareScheduler scheduler = new FairShareScheduler(() -> 2);
+        FairShareScheduler.ShareQueue backup = scheduler.register("BACKUP", 1, 1, 1);
+        scheduler.register("INSTALLERS", 1, 0, 0);
+        TreeConnection backupTree = tree("BACKUP");
+        TreeConnection installersTree = tree("INSTALLERS");
+
+        // 同一客户端先写备份共享，占满其并发上限
+        backup.acquire(16, false);
+
+        // 随后访问安装包共享的请求不因会话刚访问过备份共享而被留下
+        assertFalse(scheduler.defer(scheduler.find(installersTree), () -> fail("安装包共享的请求不应被留下")));
+
+        // 再切回备份共享时留在队列中
+        AtomicInteger resumed = new AtomicInteger();
+        assertTrue(scheduler.defer(scheduler.find(backupTree), resumed::incrementAndGet));
+
+        // 排队已满：打开被拒绝，写入排队等待
+        assertThrows(ShareBusyException.class, () -> scheduler.find(backupTree).acquire(1, true));
+        CompletableFuture<Void> write = CompletableFuture.runAsync(() -> {
+            try {
+                backup.acquire(16, false);
+                backup.release();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertThrows(TimeoutException.class, () -> write.get(200, TimeUnit.MILLISECONDS));
+
+        // 释放后等待中的写入先执行，之后重新分发留下的请求
+        backup.release();
+        write.get(5, TimeUnit.SECONDS);
+        assertEquals(1, resumed.get());
+        assertFalse(scheduler.defer(scheduler.find(installersTree), () -> fail("安装包共享的请求不应被留下")));
+
+        FairShareScheduler.QueueStats stats = scheduler.getStats().get(0);
+        assertEquals(1, stats.getRejected());
+        assertEquals(1, stats.getDeferred());
+        assertEquals(0, stats.getQueueDepth());
+    }
+
+    @Test
+    void slotCountFollowsWorkerCount() throws Exception {
+        AtomicInteger workers = new AtomicInteger(1);
+        FairShareScheduler scheduler = new FairShareScheduler(workers::get);
+        FairShareScheduler.ShareQueue share = scheduler.register("DATA", 1, 0, 0);
+
+        share.acquire(1, true);
+        AtomicInteger resumed = new AtomicInteger();
+        assertTrue(scheduler.defer(share, resumed::incrementAndGet));
+
+        // 工作线程增加后，请求结束时补上留在队列中的请求
+        workers.set(2);
+        scheduler.completed();
+        assertEquals(1, resumed.get());
+        assertEquals(2, scheduler.getTotalSlots());
+        share.release();
+    }
+
+    @Test
+    void unknownOrRemovedShareIsNotHeld() throws Exception {
+        FairShareScheduler scheduler = new FairShareScheduler(() -> 1);
+        FairShareScheduler.ShareQueue share = scheduler.register("DATA", 1, 0, 0);
+        share.acquire(1, true);
+
+        assertNull(scheduler.find(tree("OTHER")));
+        assertNull(scheduler.find(null));
+
+        AtomicInteger resumed = new AtomicInteger();
+        assertTrue(scheduler.defer(share, resumed::incrementAndGet));
+        scheduler.unregister(share);
+        assertEquals(1, resumed.get());
+        assertNull(scheduler.find(tree("DATA")));
+        assertFalse(scheduler.defer(share, () -> fail("已注销的共享不应留下请求")));
+        share.release();
+    }
+
+    private static TreeConnection tree(String share) {
+        return new TreeConnection(new DiskSharedDevice(share, null, null));
+    }
+}
@@ -0,0 +1,183 @@
+package vip.ebox.jfiledemo.scheduler;
+
+import org.filesys.server.SrvSession;
+import org.filesys.server.auth.ClientInfo;
+import org.filesys.server.thread.ThreadRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/24  18:20
+ * @Description: 令牌桶按实际读写扣减、允许欠账且欠账不超过 maxDelay；
+ *  欠账的会话的请求在欠账还清时才重新分发，同一用户的会话共用用户的令牌桶
+ */
+class TrafficShaperTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private TrafficShaper shaper;
+
+    @AfterEach
+    void tearDown() {
+        if (shaper != null) {
+            shaper.shutdown();
+        }
+    }
+
+    @Test
+    void debtDefersRequestUntilRepaid() throws Exception {
+        // 每秒读 1000 字节，桶容量 100 字节
+        shaper = new TrafficShaper(new TrafficShaper.Limits(1000, 0, 0, 100), null, null, 1000);
+        TestSession sess = new TestSession(1, null);
+        RecordingQueue queue = new RecordingQueue();
+
+        // 尚未进行过磁盘操作的会话直接分发
+        assertFalse(shaper.defer(new TestRequest(sess), queue));
+
+        // 读取 600 字节后欠 500 字节，约 500 毫秒后还清
+        shaper.charge(sess, 600, 0);
+        long readTokens = shaper.getStats().getClients().get(0).getReadTokens();
+        assertTrue(readTokens <= -450 && readTokens > -500, "欠账 " + readTokens);
+
+        TestRequest request = new TestRequest(sess);
+        long start = System.nanoTime();
+        assertTrue(shaper.defer(request, queue));
+        Long offered = queue.offers.poll(5, TimeUnit.SECONDS);
+        assertNotNull(offered);
+        long waited = (offered - start) / MILLIS;
+        assertTrue(waited >= 450 && waited < 1000, "等待 " + waited + " 毫秒");
+
+        // 到期重新分发时已还清，不再延后
+        assertFalse(shaper.defer(request, queue));
+        TrafficShaper.ShapingStats stats = shaper.getStats();
+        assertEquals(1, stats.getThrottled());
+        assertEquals(1, stats.getClients().get(0).getThrottled());
+        assertEquals(600, stats.getClients().get(0).getReadBytes());
+    }
+
+    @Test
+    void debtIsCappedAtMaxDelay() throws Exception {
+        // 欠账上限为 200 毫秒内的速率，即 200 字节
+        shaper = new TrafficShaper(new TrafficShaper.Limits(0, 1000, 0, 100), null, null, 200);
+        TestSession sess = new TestSession(1, null);
+        RecordingQueue queue = new RecordingQueue();
+
+        shaper.charge(sess, 0, 50_000);
+        assertEquals(-200, shaper.getStats().getClients().get(0).getWriteTokens(), 5);
+
+        long start = System.nanoTime();
+        assertTrue(shaper.defer(new TestRequest(sess), queue));
+        Long offered = queue.offers.poll(5, TimeUnit.SECONDS);
+        assertNotNull(offered);
+        long waited = (offered - start) / MILLIS;
+        assertTrue(waited >= 150 && waited < 1000, "等待 " + waited + " 毫秒");
+        assertTrue(shaper.getStats().getDelayMillis() <= 200);
+    }
+
+    @Test
+    void sessionsOfOneUserShareUserBucket() throws Exception {
+        // 会话不限速，用户每秒 10 次操作，桶容量 1 次；alice 的限速单独覆盖为不限制
+        shaper = new TrafficShaper(null, new TrafficShaper.Limits(0, 0, 10, 100),
+                Map.of("ALICE", TrafficShaper.Limits.UNLIMITED), 1000);
+        TestSession first = new TestSession(1, "bob");
+        TestSession second = new TestSession(2, "bob");
+        TestSession other = new TestSession(3, "alice");
+        RecordingQueue queue = new RecordingQueue();
+
+        chargeOperation(first);
+        chargeOperation(first);
+        chargeOperation(second);
+        chargeOperation(other);
+        chargeOperation(other);
+
+        // 同一用户的另一个会话同样延后，其它用户不受影响
+        assertTrue(shaper.defer(new TestRequest(second), queue));
+        assertFalse(shaper.defer(new TestRequest(other), queue));
+
+        TrafficShaper.UserStats bob = shaper.getStats().getUsers().get(1);
+        assertEquals("bob", bob.getUser());
+        assertEquals(2, bob.getSessions());
+        assertEquals(3, bob.getOperations());
+        assertEquals(1, bob.getThrottled());
+        assertNotNull(queue.offers.poll(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * 客户端信息保存在线程变量中，与工作线程执行请求时相同，扣减前设置为该会话的用户
+     */
+    private void chargeOperation(TestSession sess) {
+        sess.setClientInformation(sess.client);
+        try {
+            shaper.charge(sess, 0, 0);
+        } finally {
+            sess.setClientInformation(null);
+        }
+    }
+
+    /**
+     * 记录重新分发的时间
+     */
+    private static final class RecordingQueue extends RequestQueueAdapter {
+        private final BlockingQueue<Long> offers = new LinkedBlockingQueue<>();
+
+        @Override
+        public boolean offer(ThreadRequest request) {
+            offers.add(System.nanoTime());
+            return true;
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+
+    /**
+     * 与 SMB 线程请求相同，会话保存在 m_sess 字段中
+     */
+    private static final class TestRequest implements ThreadRequest {
+        @SuppressWarnings("unused")
+        private final SrvSession<?> m_sess;
+
+        TestRequest(SrvSession<?> sess) {
+            this.m_sess = sess;
+        }
+
+        @Override
+        public void runRequest() {
+        }
+    }
+
+    private enum Dialect {
+        NONE
+    }
+
+    private static final class TestSession extends SrvSession<Dialect> {
+
+        private final ClientInfo client;
+
+        TestSession(int id, String user) {
+            super(id, null, "TEST", null, Dialect.class);
+            this.client = user != null ? ClientInfo.createInfo(user, new byte[0]) : null;
+        }
+
+        @Override
+        public InetAddress getRemoteAddress() {
+            return InetAddress.getLoopbackAddress();
+        }
+
+        @Override
+        public boolean useCaseSensitiveSearch() {
+            return false;
+        }
+    }
+}
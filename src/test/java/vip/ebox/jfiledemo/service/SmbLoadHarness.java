@@ -0,0 +1,402 @@
+package vip.ebox.jfiledemo.service;
+
+import jcifs.CIFSContext;
+import jcifs.CIFSException;
+import jcifs.config.PropertyConfiguration;
+import jcifs.context.BaseContext;
+import jcifs.smb.NtlmPasswordAuthenticator;
+import jcifs.smb.SmbFile;
+import jcifs.smb.SmbRandomAccessFile;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.Environment;
+import vip.ebox.jfiledemo.JFileWrapperApplication;
+import vip.ebox.jfiledemo.config.JFileServerProperties;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Stream;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/19  16:00
+ * @Description: 端到端 SMB 压力测试
+ *  在当前进程中以临时共享目录和空闲端口启动 JFileServerService，通过回环地址用 jcifs-ng（SMB1）建立多个会话并发访问，
+ *  输出各类操作的次数、ops/s、MB/s 以及 p50/p99/p999 延迟，用于在同一台机器上比较线程池、内存池等配置
+ *
+ *  负载类型（load.workload）：
+ *  - read：顺序读取大文件，每次 60KB
+ *  - create：创建 4KB 小文件后删除
+ *  - list：列出 2000 个文件的目录
+ *  - meta：查询随机文件的属性
+ *  - mixed：按 40% read、20% create、10% list、30% meta 混合
+ *
+ *  运行方式（所有参数均为 Spring 属性，jfileserver.* 用于覆盖服务器配置）：
+ *  mvn test-compile exec:java -Dexec.classpathScope=test \
+ *      -Dexec.mainClass=vip.ebox.jfiledemo.service.SmbLoadHarness \
+ *      -Dexec.args="--load.sessions=16 --load.duration=30 --load.workload=mixed --jfileserver.max-threads=50"
+ */
+public class SmbLoadHarness {
+
+    private static final int READ_SIZE = 61440;
+    private static final int SMALL_FILE_SIZE = 4096;
+    private static final int LIST_ENTRIES = 2000;
+
+    /**
+     * 统计的操作类型
+     */
+    enum Op {
+        READ, CREATE, DELETE, LIST, META
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path shareDir = Files.createTempDirectory("jfs-load");
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        // SpringApplicationBuilder.properties 只是默认值，会被 application.yml 覆盖，这里改为命令行参数；
+        // 命令行中已指定的项保持不变
+        List<String> runArgs = new ArrayList<>(Arrays.asList(args));
+        addDefault(runArgs, "jfileserver.auto-start", "false");
+        addDefault(runArgs, "jfileserver.port", Integer.toString(port));
+        addDefault(runArgs, "jfileserver.share-path", shareDir.toAbsolutePath().toString());
+        addDefault(runArgs, "jfileserver.log-file-path",
+                shareDir.resolveSibling(shareDir.getFileName() + ".log").toString());
+        ConfigurableApplicationContext ctx = new SpringApplicationBuilder(JFileWrapperApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(runArgs.toArray(new String[0]));
+        try {
+            Environment env = ctx.getEnvironment();
+            int sessions = env.getProperty("load.sessions", Integer.class, 8);
+            int duration = env.getProperty("load.duration", Integer.class, 30);
+            int warmup = env.getProperty("load.warmup", Integer.class, 5);
+            String workload = env.getProperty("load.workload", "mixed");
+            int fileSizeMb = env.getProperty("load.file-size-mb", Integer.class, 256);
+
+            prepare(shareDir, fileSizeMb);
+
+            JFileServerService service = ctx.getBean(JFileServerService.class);
+            JFileServerProperties properties = ctx.getBean(JFileServerProperties.class);
+            service.start();
+
+            System.out.printf("workload=%s sessions=%d duration=%ds threads=%d-%d memoryPool=%s/%s%n",
+                    workload, sessions, duration, properties.getMinThreads(), properties.getMaxThreads(),
+                    Arrays.toString(properties.getMemoryPoolSizes()), Arrays.toString(properties.getMemoryPoolMaxAlloc()));
+
+            String url = "smb://127.0.0.1:" + port + "/" + properties.getShareName() + "/";
+            List<Client> clients = new ArrayList<>();
+            for (int i = 0; i < sessions; i++) {
+                clients.add(new Client(i, url, properties, workload, fileSizeMb));
+            }
+
+            // 预热结束后清空统计，只统计测量阶段
+            long warmupEnd = System.nanoTime() + warmup * 1_000_000_000L;
+            long end = warmupEnd + duration * 1_000_000_000L;
+            CountDownLatch done = new CountDownLatch(sessions);
+            for (Client client : clients) {
+                Thread t = new Thread(() -> {
+                    try {
+                        client.run(warmupEnd, end);
+                    } finally {
+                        done.countDown();
+                    }
+                }, "load-" + client.id);
+                t.start();
+            }
+            done.await();
+
+            report(clients, duration);
+            for (Client client : clients) {
+                client.close();
+            }
+            service.stop();
+        } finally {
+            ctx.close();
+            delete(shareDir);
+        }
+    }
+
+    /**
+     * 命令行参数中没有该项时追加 --key=value
+     */
+    private static void addDefault(List<String> args, String key, String value) {
+        for (String arg : args) {
+            if (arg.startsWith("--" + key + "=")) {
+                return;
+            }
+        }
+        args.add("--" + key + "=" + value);
+    }
+
+    /**
+     * 在共享目录中生成读取用的大文件与列表/属性查询用的小文件
+     */
+    private static void prepare(Path shareDir, int fileSizeMb) throws IOException {
+        byte[] chunk = new byte[1 << 20];
+        new Random(1).nextBytes(chunk);
+        try (OutputStream out = Files.newOutputStream(shareDir.resolve("large.dat"))) {
+            for (int i = 0; i < fileSizeMb; i++) {
+                out.write(chunk);
+            }
+        }
+        Path list = Files.createDirectory(shareDir.resolve("list"));
+        for (int i = 0; i < LIST_ENTRIES; i++) {
+            Files.write(list.resolve(String.format("file-%05d.dat", i)), new byte[128]);
+        }
+        Files.createDirectory(shareDir.resolve("create"));
+    }
+
+    private static void report(List<Client> clients, int duration) {
+        System.out.printf("%-8s %10s %10s %10s %10s %10s %10s %8s%n",
+                "op", "count", "ops/s", "MB/s", "p50(ms)", "p99(ms)", "p999(ms)", "errors");
+        for (Op op : Op.values()) {
+            long bytes = 0;
+            long errors = 0;
+            int count = 0;
+            for (Client client : clients) {
+                LatencyLog log = client.logs.get(op);
+                count += log.size;
+                bytes += log.bytes;
+                errors += log.errors;
+            }
+            if (count == 0 && errors == 0) {
+                continue;
+            }
+            long[] all = new long[count];
+            int pos = 0;
+            for (Client client : clients) {
+                LatencyLog log = client.logs.get(op);
+                System.arraycopy(log.nanos, 0, all, pos, log.size);
+                pos += log.size;
+            }
+            Arrays.sort(all);
+            System.out.printf("%-8s %10d %10.1f %10.1f %10.3f %10.3f %10.3f %8d%n",
+                    op.name().toLowerCase(), count, (double) count / duration, bytes / 1048576.0 / duration,
+                    percentile(all, 0.50), percentile(all, 0.99), percentile(all, 0.999), errors);
+        }
+    }
+
+    private static double percentile(long[] sorted, double q) {
+        if (sorted.length == 0) {
+            return 0.0;
+        }
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(q * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> {
+                try {
+                    Files.deleteIfExists(p);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    /**
+     * 单个操作类型的延迟记录，由一个客户端线程独占
+     */
+    static class LatencyLog {
+        private long[] nanos = new long[4096];
+        private int size;
+        private long bytes;
+        private long errors;
+
+        void record(long latency, long n) {
+            if (size == nanos.length) {
+                nanos = Arrays.copyOf(nanos, size * 2);
+            }
+            nanos[size++] = latency;
+            bytes += n;
+        }
+
+        void reset() {
+            size = 0;
+            bytes = 0;
+            errors = 0;
+        }
+    }
+
+    /**
+     * 一个 SMB 会话，每个客户端使用独立的 CIFSContext，因此各自建立连接并登录
+     */
+    static class Client {
+        private final int id;
+        private final String url;
+        private final CIFSContext context;
+        private final String workload;
+        private final long fileSize;
+        private final SplittableRandom random;
+        private final Map<Op, LatencyLog> logs = new EnumMap<>(Op.class);
+        private final byte[] buf = new byte[READ_SIZE];
+        private final byte[] small = new byte[SMALL_FILE_SIZE];
+
+        private SmbRandomAccessFile large;
+        private long readPos;
+        private long created;
+
+        Client(int id, String url, JFileServerProperties properties, String workload, int fileSizeMb)
+                throws CIFSException {
+            this.id = id;
+            this.url = url;
+            this.workload = workload;
+            this.fileSize = (long) fileSizeMb * 1024 * 1024;
+            this.random = new SplittableRandom(id);
+            for (Op op : Op.values()) {
+                logs.put(op, new LatencyLog());
+            }
+
+            // 服务器只支持 SMB1，关闭 SMB2 协商与 NetBIOS 名称解析
+            Properties props = new Properties();
+            props.setProperty("jcifs.smb.client.minVersion", "SMB1");
+            props.setProperty("jcifs.smb.client.maxVersion", "SMB1");
+            props.setProperty("jcifs.smb.client.useSMB2Negotiation", "false");
+            props.setProperty("jcifs.smb.client.dfs.disabled", "true");
+            props.setProperty("jcifs.smb.client.signingPreferred", "false");
+            props.setProperty("jcifs.resolveOrder", "DNS");
+            props.setProperty("jcifs.smb.client.responseTimeout", "60000");
+            this.context = new BaseContext(new PropertyConfiguration(props)).withCredentials(
+                    new NtlmPasswordAuthenticator(properties.getDomain(), properties.getUsername(),
+                            properties.getPassword()));
+        }
+
+        void run(long warmupEnd, long end) {
+            // 各会话从随机位置开始读取，避免全部读取同一段数据
+            readPos = random.nextLong(fileSize / READ_SIZE) * READ_SIZE;
+            boolean measuring = false;
+            long now;
+            while ((now = System.nanoTime()) < end) {
+                if (!measuring && now >= warmupEnd) {
+                    logs.values().forEach(LatencyLog::reset);
+                    measuring = true;
+                }
+                Op op = next();
+                try {
+                    execute(op);
+                } catch (IOException | RuntimeException e) {
+                    logs.get(op).errors++;
+                    if (logs.get(op).errors == 1) {
+                        System.err.printf("session %d %s failed: %s%n", id, op, e);
+                    }
+                }
+            }
+        }
+
+        private Op next() {
+            switch (workload) {
+                case "read":
+                    return Op.READ;
+                case "create":
+                    return Op.CREATE;
+                case "list":
+                    return Op.LIST;
+                case "meta":
+                    return Op.META;
+                default:
+                    int r = random.nextInt(100);
+                    return r < 40 ? Op.READ : r < 60 ? Op.CREATE : r < 70 ? Op.LIST : Op.META;
+            }
+        }
+
+        private void execute(Op op) throws IOException {
+            switch (op) {
+                case READ:
+                    read();
+                    break;
+                case CREATE:
+                    createAndDelete();
+                    break;
+                case LIST:
+                    list();
+                    break;
+                default:
+                    meta();
+                    break;
+            }
+        }
+
+        private void read() throws IOException {
+            if (large == null) {
+                large = new SmbRandomAccessFile(new SmbFile(url + "large.dat", context), "r");
+            }
+            if (readPos + READ_SIZE > fileSize) {
+                readPos = 0;
+            }
+            long start = System.nanoTime();
+            large.seek(readPos);
+            int n = large.read(buf, 0, READ_SIZE);
+            logs.get(Op.READ).record(System.nanoTime() - start, Math.max(0, n));
+            readPos += READ_SIZE;
+        }
+
+        private void createAndDelete() throws IOException {
+            try (SmbFile file = new SmbFile(url + "create/s" + id + "-" + (created++) + ".dat", context)) {
+                long start = System.nanoTime();
+                try (OutputStream out = file.openOutputStream()) {
+                    out.write(small);
+                }
+                logs.get(Op.CREATE).record(System.nanoTime() - start, small.length);
+
+                start = System.nanoTime();
+                file.delete();
+                logs.get(Op.DELETE).record(System.nanoTime() - start, 0);
+            }
+        }
+
+        private void list() throws IOException {
+            try (SmbFile dir = new SmbFile(url + "list/", context)) {
+                long start = System.nanoTime();
+                int n = dir.list().length;
+                logs.get(Op.LIST).record(System.nanoTime() - start, 0);
+                if (n != LIST_ENTRIES) {
+                    throw new IOException("目录条目数不正确: " + n);
+                }
+            }
+        }
+
+        private void meta() throws IOException {
+            String name = String.format("list/file-%05d.dat", random.nextInt(LIST_ENTRIES));
+            // 每次新建 SmbFile，避免命中客户端的属性缓存
+            try (SmbFile file = new SmbFile(url + name, context)) {
+                long start = System.nanoTime();
+                long length = file.length();
+                logs.get(Op.META).record(System.nanoTime() - start, 0);
+                if (length != 128) {
+                    throw new IOException("文件大小不正确: " + length);
+                }
+            }
+        }
+
+        void close() {
+            try {
+                if (large != null) {
+                    large.close();
+                }
+                context.close();
+            } catch (CIFSException e) {
+                System.err.printf("session %d close failed: %s%n", id, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package vip.ebox.jfiledemo.session;
+
+import jcifs.CIFSContext;
+import jcifs.SmbConstants;
+import jcifs.config.PropertyConfiguration;
+import jcifs.context.BaseContext;
+import jcifs.smb.NtlmPasswordAuthenticator;
+import jcifs.smb.SmbException;
+import jcifs.smb.SmbFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import vip.ebox.jfiledemo.JFileWrapperApplication;
+import vip.ebox.jfiledemo.config.JFileServerProperties;
+import vip.ebox.jfiledemo.service.JFileServerService;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @Author: Yunnuo
+ * @Email: ymz@ebox.vip
+ * @Date: 2026/10/24  19:10
+ * @Description: 通过管理接口关闭的文件句柄与会话经过共享的驱动链关闭：
+ *  一个客户端独占打开文件，另一个客户端打开失败；关闭该句柄或会话后，另一个客户端可以打开
+ */
+class SessionRegistryTest {
+
+    @TempDir
+    Path dir;
+
+    private ConfigurableApplicationContext ctx;
+    private JFileServerService service;
+    private String url;
+    private JFileServerProperties properties;
+    private final List<CIFSContext> clients = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Path share = Files.createDirectories(dir.resolve("share"));
+        Files.write(share.resolve("report.doc"), new byte[1024]);
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        ctx = new SpringApplicationBuilder(JFileWrapperApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--jfileserver.auto-start=false",
+                        "--jfileserver.port=" + port,
+                        "--jfileserver.share-path=" + share.toAbsolutePath(),
+                        "--jfileserver.log-file-path=" + dir.resolve("jfileserver.log"));
+        service = ctx.getBean(JFileServerService.class);
+        properties = ctx.getBean(JFileServerProperties.class);
+        service.start();
+        url = "smb://127.0.0.1:" + port + "/" + properties.getShareName() + "/report.doc";
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (CIFSContext client : clients) {
+            client.close();
+        }
+        if (ctx != null) {
+            service.stop();
+            ctx.close();
+        }
+    }
+
+    @Test
+    void closeFileReleasesHandleThroughDriverChain() throws Exception {
+        SmbFile owner = new SmbFile(url, client());
+        OutputStream out = owner.openOutputStream(true, SmbConstants.FILE_NO_SHARE);
+        out.write(new byte[16]);
+        SmbFile other = new SmbFile(url, client());
+        assertThrows(SmbException.class, () -> read(other));
+
+        SessionRegistry.SessionInfo session = sessionWithOpenFile();
+        SessionRegistry.TreeInfo tree = session.getTrees().get(0);
+        SessionRegistry.FileInfo file = tree.getFiles().get(0);
+        assertEquals("\\report.doc", file.getPath());
+
+        assertTrue(service.closeFile(session.getSessionId(), tree.getTreeId(), file.getFileId()));
+        assertFalse(service.closeFile(session.getSessionId(), tree.getTreeId(), file.getFileId()));
+
+        // 文件状态中的共享模式已释放，会话仍然连接；独占句柄追加的 16 字节已写入
+        assertEquals(1040, read(other));
+        SessionRegistry.SessionInfo after = service.getSession(session.getSessionId());
+        assertNotNull(after);
+        assertEquals(0, after.getOpenFiles());
+        closeQuietly(out);
+    }
+
+    @Test
+    void closeSessionReleasesItsOpenFiles() throws Exception {
+        SmbFile owner = new SmbFile(url, client());
+        OutputStream out = owner.openOutputStream(true, SmbConstants.FILE_NO_SHARE);
+        out.write(new byte[16]);
+        SmbFile other = new SmbFile(url, client());
+        assertThrows(SmbException.class, () -> read(other));
+
+        SessionRegistry.SessionInfo session = sessionWithOpenFile();
+        assertTrue(service.closeSession(session.getSessionId()));
+        assertNull(service.getSession(session.getSessionId()));
+        assertFalse(service.closeSession(session.getSessionId()));
+
+        assertEquals(1040, read(other));
+        closeQuietly(out);
+    }
+
+    /**
+     * 每个客户端使用独立的 CIFSContext，各自建立连接并登录；服务器只支持 SMB1
+     */
+    private CIFSContext client() throws Exception {
+        Properties props = new Properties();
+        props.setProperty("jcifs.smb.client.minVersion", "SMB1");
+        props.setProperty("jcifs.smb.client.maxVersion", "SMB1");
+        props.setProperty("jcifs.smb.client.useSMB2Negotiation", "false");
+        props.setProperty("jcifs.smb.client.dfs.disabled", "true");
+        props.setProperty("jcifs.smb.client.signingPreferred", "false");
+        props.setProperty("jcifs.resolveOrder", "DNS");
+        CIFSContext client = new BaseContext(new PropertyConfiguration(props)).withCredentials(
+                new NtlmPasswordAuthenticator(properties.getDomain(), properties.getUsername(),
+                        properties.getPassword()));
+        clients.add(client);
+        return client;
+    }
+
+    private SessionRegistry.SessionInfo sessionWithOpenFile() {
+        List<SessionRegistry.SessionInfo> open = new ArrayList<>();
+        service.forEachSession(s -> {
+            if (s.getOpenFiles() > 0) {
+                open.add(s);
+            }
+        });
+        assertEquals(1, open.size());
+        return open.get(0);
+    }
+
+    private static int read(SmbFile file) throws IOException {
+        try (InputStream in = file.openInputStream()) {
+            return in.readAllBytes().length;
+        }
+    }
+
+    /**
+     * 句柄已被服务器关闭，客户端关闭时可能返回无效句柄
+     */
+    private static void closeQuietly(OutputStream out) {
+        try {
+            out.close();
+        } catch (IOException e) {
+            // 忽略
+        }
+    }
+}